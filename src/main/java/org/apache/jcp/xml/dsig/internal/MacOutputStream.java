@@ -18,7 +18,7 @@
  */
 package org.apache.jcp.xml.dsig.internal;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import javax.crypto.Mac;
 
 /**
@@ -27,7 +27,7 @@ import javax.crypto.Mac;
  *
  *
  */
-public class MacOutputStream extends ByteArrayOutputStream {
+public class MacOutputStream extends OutputStream {
     private final Mac mac;
 
     public MacOutputStream(Mac mac) {
@@ -36,13 +36,11 @@ public class MacOutputStream extends ByteArrayOutputStream {
 
     @Override
     public void write(int arg0) {
-        super.write(arg0);
         mac.update((byte) arg0);
     }
 
     @Override
     public void write(byte[] arg0, int arg1, int arg2) {
-        super.write(arg0, arg1, arg2);
         mac.update(arg0, arg1, arg2);
     }
 }
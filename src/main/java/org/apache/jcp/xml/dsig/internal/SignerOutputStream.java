@@ -21,7 +21,7 @@
  */
 package org.apache.jcp.xml.dsig.internal;
 
-import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
 import java.security.Signature;
 import java.security.SignatureException;
 
@@ -31,7 +31,7 @@ import java.security.SignatureException;
  * org.apache.xml.security.algorithms.SignatureAlgorithm objects.
  *
  */
-public class SignerOutputStream extends ByteArrayOutputStream {
+public class SignerOutputStream extends OutputStream {
     private final Signature sig;
 
     public SignerOutputStream(Signature sig) {
@@ -40,7 +40,6 @@ public class SignerOutputStream extends ByteArrayOutputStream {
 
     @Override
     public void write(int arg0) {
-        super.write(arg0);
         try {
             sig.update((byte)arg0);
         } catch (SignatureException e) {
@@ -50,7 +49,6 @@ public class SignerOutputStream extends ByteArrayOutputStream {
 
     @Override
     public void write(byte[] arg0, int arg1, int arg2) {
-        super.write(arg0, arg1, arg2);
         try {
             sig.update(arg0, arg1, arg2);
         } catch (SignatureException e) {
@@ -104,6 +104,30 @@ public abstract class ApacheCanonicalizer extends TransformService {
         return canonicalize(data, xc, null);
     }
 
+    /**
+     * Canonicalizes the given data like {@code transform(data, xc)}, but
+     * writes the canonical octets directly to the given stream instead of
+     * buffering them first, e.g. into the digest stream of a Reference.
+     */
+    public void canonicalizeTo(Data data, XMLCryptoContext xc, OutputStream os)
+        throws TransformException
+    {
+        if (os == null) {
+            throw new NullPointerException("output stream must not be null");
+        }
+        selectCanonicalizer(data);
+        canonicalize(data, xc, os);
+    }
+
+    /**
+     * Selects the canonicalizer to be used for the given data before it is
+     * transformed. The default canonicalizer is created lazily for the
+     * algorithm, subclasses may replace it here.
+     */
+    protected void selectCanonicalizer(Data data) throws TransformException {
+        // use the default canonicalizer
+    }
+
     public Data canonicalize(Data data, XMLCryptoContext xc, OutputStream os)
         throws TransformException
     {
@@ -129,25 +153,25 @@ public abstract class ApacheCanonicalizer extends TransformService {
                 if (in.isElement()) {
                     if (inclusiveNamespaces != null) {
                         canonicalizer.canonicalizeSubtree(in.getSubNode(), inclusiveNamespaces, writer);
-                        return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                        return getC14nData(writer, isByteArrayOutputStream);
                     } else {
                         canonicalizer.canonicalizeSubtree(in.getSubNode(), writer);
-                        return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                        return getC14nData(writer, isByteArrayOutputStream);
                     }
                 } else if (in.isNodeSet()) {
                     nodeSet = in.getNodeSet();
                 } else {
                     canonicalizer.canonicalize(Utils.readBytesFromStream(in.getOctetStream()), writer, secVal);
-                    return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                    return getC14nData(writer, isByteArrayOutputStream);
                 }
             } else if (data instanceof DOMSubTreeData) {
                 DOMSubTreeData subTree = (DOMSubTreeData)data;
                 if (inclusiveNamespaces != null) {
                     canonicalizer.canonicalizeSubtree(subTree.getRoot(), inclusiveNamespaces, writer);
-                    return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                    return getC14nData(writer, isByteArrayOutputStream);
                 } else {
                     canonicalizer.canonicalizeSubtree(subTree.getRoot(), writer);
-                    return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                    return getC14nData(writer, isByteArrayOutputStream);
                 }
             } else if (data instanceof NodeSetData) {
                 NodeSetData nsd = (NodeSetData)data;
@@ -158,25 +182,26 @@ public abstract class ApacheCanonicalizer extends TransformService {
                 LOG.debug("Canonicalizing {} nodes", nodeSet.size());
             } else {
                 canonicalizer.canonicalize(Utils.readBytesFromStream(((OctetStreamData)data).getOctetStream()), writer, secVal);
-                return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                return getC14nData(writer, isByteArrayOutputStream);
             }
 
             if (inclusiveNamespaces != null) {
                 canonicalizer.canonicalizeXPathNodeSet(nodeSet, inclusiveNamespaces, writer);
-                return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                return getC14nData(writer, isByteArrayOutputStream);
             } else {
                 canonicalizer.canonicalizeXPathNodeSet(nodeSet, writer);
-                return new OctetStreamData(new ByteArrayInputStream(getC14nBytes(writer, isByteArrayOutputStream)));
+                return getC14nData(writer, isByteArrayOutputStream);
             }
         } catch (Exception e) {
             throw new TransformException(e);
         }
     }
 
-    private byte[] getC14nBytes(OutputStream outputStream, boolean isByteArrayOutputStream) {    // NOPMD - preserving previous behavior here
+    private Data getC14nData(OutputStream outputStream, boolean isByteArrayOutputStream) {
         if (isByteArrayOutputStream) {
-            return ((ByteArrayOutputStream)outputStream).toByteArray();
+            return new OctetStreamData(new ByteArrayInputStream(((ByteArrayOutputStream)outputStream).toByteArray()));
         }
+        // the canonical octets have been written to the caller's stream
         return null;
     }
 
@@ -47,7 +47,12 @@ public final class DOMCanonicalXMLC14NMethod extends ApacheCanonicalizer {
 
     public Data transform(Data data, XMLCryptoContext xc)
         throws TransformException {
+        selectCanonicalizer(data);
+        return canonicalize(data, xc);
+    }
 
+    @Override
+    protected void selectCanonicalizer(Data data) throws TransformException {
         // ignore comments if dereferencing same-document URI that requires
         // you to omit comments, even if the Transform says otherwise -
         // this is to be compliant with section 4.3.3.3 of W3C Rec.
@@ -65,7 +70,5 @@ public final class DOMCanonicalXMLC14NMethod extends ApacheCanonicalizer {
                 }
             }
         }
-
-        return canonicalize(data, xc);
     }
 }
@@ -136,6 +136,12 @@ public final class DOMExcC14NMethod extends ApacheCanonicalizer {
     public Data transform(Data data, XMLCryptoContext xc)
         throws TransformException
     {
+        selectCanonicalizer(data);
+        return canonicalize(data, xc);
+    }
+
+    @Override
+    protected void selectCanonicalizer(Data data) throws TransformException {
         // ignore comments if dereferencing same-document URI that require
         // you to omit comments, even if the Transform says otherwise -
         // this is to be compliant with section 4.3.3.3 of W3C Rec.
@@ -153,7 +159,5 @@ public final class DOMExcC14NMethod extends ApacheCanonicalizer {
                 }
             }
         }
-
-        return canonicalize(data, xc);
     }
 }
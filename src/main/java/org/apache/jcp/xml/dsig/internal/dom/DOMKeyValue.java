@@ -543,8 +543,7 @@ public abstract class DOMKeyValue<K extends PublicKey> extends DOMStructure impl
             ECPoint ecPoint = null;
 
             try {
-                String content = XMLUtils.getFullTextChildrenFromNode(curElem);
-                ecPoint = decodePoint(XMLUtils.decode(content),
+                ecPoint = decodePoint(XMLUtils.decodeTextChildren(curElem),
                                       ecParams.getCurve());
             } catch (IOException ioe) {
                 throw new MarshalException("Invalid EC Point", ioe);
@@ -150,11 +150,9 @@ public final class DOMPGPData extends DOMStructure implements PGPData {
                 String localName = childElem.getLocalName();
                 String namespace = childElem.getNamespaceURI();
                 if ("PGPKeyID".equals(localName) && XMLSignature.XMLNS.equals(namespace)) {
-                    String content = XMLUtils.getFullTextChildrenFromNode(childElem);
-                    pgpKeyId = XMLUtils.decode(content);
+                    pgpKeyId = XMLUtils.decodeTextChildren(childElem);
                 } else if ("PGPKeyPacket".equals(localName) && XMLSignature.XMLNS.equals(namespace)) {
-                    String content = XMLUtils.getFullTextChildrenFromNode(childElem);
-                    pgpKeyPacket = XMLUtils.decode(content);
+                    pgpKeyPacket = XMLUtils.decodeTextChildren(childElem);
                 } else {
                     other.add
                     (new javax.xml.crypto.dom.DOMStructure(childElem));
@@ -44,6 +44,10 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import org.apache.xml.security.utils.CountingOutputStream;
+import org.apache.xml.security.utils.JCAInstancePool;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 
 import org.apache.jcp.xml.dsig.internal.DigesterOutputStream;
@@ -93,7 +97,6 @@ public final class DOMReference extends DOMStructure
     private boolean validationStatus;
     private Data derefData;
     private InputStream dis;
-    private MessageDigest md;
     private Provider provider;
 
     /**
@@ -236,8 +239,7 @@ public final class DOMReference extends DOMStructure
 
         // unmarshal DigestValue
         Element dvElem = DOMUtils.getNextSiblingElement(dmElem, "DigestValue", XMLSignature.XMLNS);
-        String content = XMLUtils.getFullTextChildrenFromNode(dvElem);
-        this.digestValue = XMLUtils.decode(content);
+        this.digestValue = XMLUtils.decodeTextChildren(dvElem);
 
         // check for extra elements
         if (DOMUtils.getNextSiblingElement(dvElem) != null) {
@@ -422,15 +424,13 @@ public final class DOMReference extends DOMStructure
                              XMLCryptoContext context)
         throws XMLSignatureException
     {
-        if (md == null) {
-            try {
-                md = MessageDigest.getInstance
-                    (((DOMDigestMethod)digestMethod).getMessageDigestAlgorithm());
-            } catch (NoSuchAlgorithmException nsae) {
-                throw new XMLSignatureException(nsae);
-            }
+        String mdAlgorithm = ((DOMDigestMethod)digestMethod).getMessageDigestAlgorithm();
+        MessageDigest md;
+        try {
+            md = JCAInstancePool.getMessageDigest(mdAlgorithm);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new XMLSignatureException(nsae);
         }
-        md.reset();
         DigesterOutputStream dos;
         Boolean cache = (Boolean)
             context.getProperty("javax.xml.crypto.dsig.cacheReference");
@@ -441,7 +441,9 @@ public final class DOMReference extends DOMStructure
             dos = new DigesterOutputStream(md);
         }
         Data data = dereferencedData;
-        try (OutputStream os = new UnsyncBufferedOutputStream(dos)) {
+        long start = XMLSecurityMetrics.start();
+        CountingOutputStream counter = start != 0L ? new CountingOutputStream(dos) : null;
+        try (OutputStream os = new UnsyncBufferedOutputStream(counter != null ? counter : dos)) {
             for (int i = 0, size = transforms.size(); i < size; i++) {
                 DOMTransform transform = (DOMTransform)transforms.get(i);
                 if (i < size - 1) {
@@ -475,63 +477,58 @@ public final class DOMReference extends DOMStructure
                     xi = new XMLSignatureInput
                         (((OctetStreamData)data).getOctetStream());
                 } else if (data instanceof NodeSetData) {
-                    TransformService spi = null;
-                    if (provider == null) {
-                        spi = TransformService.getInstance(c14nalg, "DOM");
+                    TransformService spi = getC14NTransformService(c14nalg);
+                    if (spi instanceof ApacheCanonicalizer) {
+                        // canonicalize straight into the digest stream instead
+                        // of buffering the canonical octets first
+                        ((ApacheCanonicalizer)spi).canonicalizeTo(data, context, os);
+                        xi = null;
                     } else {
-                        try {
-                            spi = TransformService.getInstance(c14nalg, "DOM", provider);
-                        } catch (NoSuchAlgorithmException nsae) {
-                            spi = TransformService.getInstance(c14nalg, "DOM");
-                        }
+                        data = spi.transform(data, context);
+                        xi = new XMLSignatureInput
+                            (((OctetStreamData)data).getOctetStream());
                     }
-                    data = spi.transform(data, context);
-                    xi = new XMLSignatureInput
-                        (((OctetStreamData)data).getOctetStream());
                 } else {
                     throw new XMLSignatureException("unrecognized Data type");
                 }
 
-                boolean secVal = Utils.secureValidation(context);
-                xi.setSecureValidation(secVal);
-                if (context instanceof XMLSignContext && c14n11
-                    && !xi.isOctetStream() && !xi.isOutputStreamSet()) {
-                    TransformService spi = null;
-                    if (provider == null) {
-                        spi = TransformService.getInstance(c14nalg, "DOM");
-                    } else {
-                        try {
-                            spi = TransformService.getInstance(c14nalg, "DOM", provider);
-                        } catch (NoSuchAlgorithmException nsae) {
-                            spi = TransformService.getInstance(c14nalg, "DOM");
+                if (xi != null) {
+                    boolean secVal = Utils.secureValidation(context);
+                    xi.setSecureValidation(secVal);
+                    if (context instanceof XMLSignContext && c14n11
+                        && !xi.isOctetStream() && !xi.isOutputStreamSet()) {
+                        TransformService spi = getC14NTransformService(c14nalg);
+
+                        DOMTransform t = new DOMTransform(spi);
+                        Element transformsElem = null;
+                        String dsPrefix = DOMUtils.getSignaturePrefix(context);
+                        if (allTransforms.isEmpty()) {
+                            transformsElem = DOMUtils.createElement(
+                                refElem.getOwnerDocument(),
+                                "Transforms", XMLSignature.XMLNS, dsPrefix);
+                            refElem.insertBefore(transformsElem,
+                                DOMUtils.getFirstChildElement(refElem));
+                        } else {
+                            transformsElem = DOMUtils.getFirstChildElement(refElem);
                         }
-                    }
-
-                    DOMTransform t = new DOMTransform(spi);
-                    Element transformsElem = null;
-                    String dsPrefix = DOMUtils.getSignaturePrefix(context);
-                    if (allTransforms.isEmpty()) {
-                        transformsElem = DOMUtils.createElement(
-                            refElem.getOwnerDocument(),
-                            "Transforms", XMLSignature.XMLNS, dsPrefix);
-                        refElem.insertBefore(transformsElem,
-                            DOMUtils.getFirstChildElement(refElem));
+                        t.marshal(transformsElem, dsPrefix,
+                                  (DOMCryptoContext)context);
+                        allTransforms.add(t);
+                        xi.updateOutputStream(os, true);
                     } else {
-                        transformsElem = DOMUtils.getFirstChildElement(refElem);
+                        xi.updateOutputStream(os);
                     }
-                    t.marshal(transformsElem, dsPrefix,
-                              (DOMCryptoContext)context);
-                    allTransforms.add(t);
-                    xi.updateOutputStream(os, true);
-                } else {
-                    xi.updateOutputStream(os);
                 }
             }
             os.flush();
             if (cache != null && cache) {
                 this.dis = dos.getInputStream();
             }
-            return dos.getDigestValue();
+            byte[] digestValue = dos.getDigestValue();
+            if (counter != null) {
+                XMLSecurityMetrics.record(Operation.DIGEST, digestMethod.getAlgorithm(), start, counter.getCount());
+            }
+            return digestValue;
         } catch (NoSuchAlgorithmException e) {
             throw new XMLSignatureException(e);
         } catch (TransformException e) {
@@ -543,14 +540,33 @@ public final class DOMReference extends DOMStructure
         } catch (org.apache.xml.security.c14n.CanonicalizationException e) {
             throw new XMLSignatureException(e);
         } finally { //NOPMD
-            if (dos != null) {
-                try {
+            try {
+                if (dos != null) {
                     dos.close();
-                } catch (IOException e) {
-                    throw new XMLSignatureException(e);
                 }
+            } catch (IOException e) {
+                throw new XMLSignatureException(e);
+            } finally {
+                JCAInstancePool.releaseMessageDigest(mdAlgorithm, md);
+            }
+        }
+    }
+
+    /**
+     * Returns the TransformService of the implicit canonicalization. It is taken from the
+     * provider of this reference if that supports it, otherwise from this implementation,
+     * without searching the installed providers.
+     */
+    private TransformService getC14NTransformService(String c14nalg)
+        throws NoSuchAlgorithmException {
+        if (provider != null) {
+            try {
+                return TransformService.getInstance(c14nalg, "DOM", provider);
+            } catch (NoSuchAlgorithmException nsae) { //NOPMD
+                //fall back to this implementation
             }
         }
+        return XMLDSigRI.getTransformService(c14nalg);
     }
 
     public Node getHere() {
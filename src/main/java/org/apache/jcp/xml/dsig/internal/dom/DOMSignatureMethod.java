@@ -32,6 +32,7 @@ import java.security.spec.AlgorithmParameterSpec;
 import org.w3c.dom.Element;
 
 import org.apache.xml.security.algorithms.implementations.SignatureECDSA;
+import org.apache.xml.security.utils.JCAInstancePool;
 import org.apache.xml.security.utils.JavaUtils;
 import org.apache.jcp.xml.dsig.internal.SignerOutputStream;
 
@@ -204,37 +205,39 @@ public abstract class DOMSignatureMethod extends AbstractDOMSignatureMethod {
         if (!(key instanceof PublicKey)) {
             throw new InvalidKeyException("key must be PublicKey");
         }
-        if (signature == null) {
-            try {
-                Provider p = (Provider)context.getProperty(DOM_SIGNATURE_PROVIDER);
-                signature = (p == null)
-                    ? Signature.getInstance(getJCAAlgorithm())
-                    : Signature.getInstance(getJCAAlgorithm(), p);
-            } catch (NoSuchAlgorithmException nsae) {
-                throw new XMLSignatureException(nsae);
-            }
+        // the verifying engines only hold public keys, so they are pooled
+        Provider p = (Provider)context.getProperty(DOM_SIGNATURE_PROVIDER);
+        Signature verifier;
+        try {
+            verifier = JCAInstancePool.getSignature(getJCAAlgorithm(), p);
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new XMLSignatureException(nsae);
         }
-        signature.initVerify((PublicKey)key);
-        LOG.debug("Signature provider: {}", signature.getProvider());
-        LOG.debug("Verifying with key: {}", key);
-        LOG.debug("JCA Algorithm: {}", getJCAAlgorithm());
-        LOG.debug("Signature Bytes length: {}", sig.length);
-
-        try (SignerOutputStream outputStream = new SignerOutputStream(signature)) {
-            ((DOMSignedInfo)si).canonicalize(context, outputStream);
-
-            Type type = getAlgorithmType();
-            if (type == Type.DSA) {
-                int size = ((DSAKey)key).getParams().getQ().bitLength();
-                return signature.verify(JavaUtils.convertDsaXMLDSIGtoASN1(sig,
-                                                                       size/8));
-            } else if (type == Type.ECDSA) {
-                return signature.verify(SignatureECDSA.convertXMLDSIGtoASN1(sig));
-            } else {
-                return signature.verify(sig);
+        try {
+            verifier.initVerify((PublicKey)key);
+            LOG.debug("Signature provider: {}", verifier.getProvider());
+            LOG.debug("Verifying with key: {}", key);
+            LOG.debug("JCA Algorithm: {}", getJCAAlgorithm());
+            LOG.debug("Signature Bytes length: {}", sig.length);
+
+            try (SignerOutputStream outputStream = new SignerOutputStream(verifier)) {
+                ((DOMSignedInfo)si).canonicalize(context, outputStream);
+
+                Type type = getAlgorithmType();
+                if (type == Type.DSA) {
+                    int size = ((DSAKey)key).getParams().getQ().bitLength();
+                    return verifier.verify(JavaUtils.convertDsaXMLDSIGtoASN1(sig,
+                                                                           size/8));
+                } else if (type == Type.ECDSA) {
+                    return verifier.verify(SignatureECDSA.convertXMLDSIGtoASN1(sig));
+                } else {
+                    return verifier.verify(sig);
+                }
+            } catch (IOException ioe) {
+                throw new XMLSignatureException(ioe);
             }
-        } catch (IOException ioe) {
-            throw new XMLSignatureException(ioe);
+        } finally {
+            JCAInstancePool.releaseSignature(getJCAAlgorithm(), p, verifier);
         }
     }
 
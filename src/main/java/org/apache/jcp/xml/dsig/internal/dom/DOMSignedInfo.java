@@ -26,7 +26,6 @@ import javax.xml.crypto.dom.DOMCryptoContext;
 import javax.xml.crypto.dsig.*;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.IOException;
@@ -38,6 +37,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 import org.apache.xml.security.utils.XMLUtils;
 
 /**
@@ -203,24 +203,48 @@ public final class DOMSignedInfo extends DOMStructure implements SignedInfo {
         return references;
     }
 
+    /**
+     * Returns the canonical form of the SignedInfo of the last signing or
+     * validation operation. It is only retained if the
+     * <code>javax.xml.crypto.dsig.cacheReference</code> property of the
+     * context was <code>Boolean.TRUE</code>, otherwise <code>null</code> is
+     * returned.
+     */
     public InputStream getCanonicalizedData() {
         return canonData;
     }
 
-    public void canonicalize(XMLCryptoContext context, ByteArrayOutputStream bos)
+    /**
+     * Canonicalizes the SignedInfo once, directly into the given stream
+     * (normally the update stream of the signature engine). The canonical
+     * octets are only buffered if they have to be retained for
+     * {@link #getCanonicalizedData()}, or logged.
+     */
+    public void canonicalize(XMLCryptoContext context, OutputStream os)
         throws XMLSignatureException {
         if (context == null) {
             throw new NullPointerException("context cannot be null");
         }
 
+        boolean retain = Boolean.TRUE.equals
+            (context.getProperty("javax.xml.crypto.dsig.cacheReference"));
+        this.canonData = null;
         DOMSubTreeData subTree = new DOMSubTreeData(localSiElem, true);
-        try (OutputStream os = new UnsyncBufferedOutputStream(bos)) {
-            ((DOMCanonicalizationMethod)
-                canonicalizationMethod).canonicalize(subTree, context, os);
-
-            os.flush();
+        try {
+            if (!retain && !LOG.isDebugEnabled()) {
+                try (OutputStream bos = new UnsyncBufferedOutputStream(os)) {
+                    ((DOMCanonicalizationMethod)
+                        canonicalizationMethod).canonicalize(subTree, context, bos);
+                }
+                return;
+            }
 
-            byte[] signedInfoBytes = bos.toByteArray();
+            UnsyncByteArrayOutputStream baos = new UnsyncByteArrayOutputStream();
+            ((DOMCanonicalizationMethod)
+                canonicalizationMethod).canonicalize(subTree, context, baos);
+            byte[] signedInfoBytes = baos.toByteArray();
+            os.write(signedInfoBytes);
+            os.close();
 
             // this whole block should only be done if LOGging is enabled
             if (LOG.isDebugEnabled()) {
@@ -233,7 +257,9 @@ public final class DOMSignedInfo extends DOMStructure implements SignedInfo {
                 LOG.debug("Data to be signed/verified:" + XMLUtils.encodeToString(signedInfoBytes));
             }
 
-            this.canonData = new ByteArrayInputStream(signedInfoBytes);
+            if (retain) {
+                this.canonData = new ByteArrayInputStream(signedInfoBytes);
+            }
         } catch (TransformException te) {
             throw new XMLSignatureException(te);
         } catch (IOException e) {
@@ -26,7 +26,7 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import org.apache.xml.security.Init;
-import org.apache.xml.security.utils.XMLUtils;
+import org.apache.xml.security.utils.DocumentIdIndex;
 import org.apache.xml.security.utils.resolver.ResourceResolver;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
 import org.apache.xml.security.signature.XMLSignatureInput;
@@ -42,6 +42,11 @@ public final class DOMURIDereferencer implements URIDereferencer {
 
     static final URIDereferencer INSTANCE = new DOMURIDereferencer();
 
+    /**
+     * The key of the Id index of the current validation pass in the context
+     */
+    static final Object ID_INDEX_KEY = new Object();
+
     private DOMURIDereferencer() {
         // need to call org.apache.xml.security.Init.init()
         // before calling any apache security code
@@ -65,6 +70,7 @@ public final class DOMURIDereferencer implements URIDereferencer {
         String baseURI = context.getBaseURI();
 
         boolean secVal = Utils.secureValidation(context);
+        DocumentIdIndex idIndex = (DocumentIdIndex) context.get(ID_INDEX_KEY);
 
         // Check if same-document URI and already registered on the context
         if (uri != null && uri.length() != 0 && uri.charAt(0) == '#') {
@@ -79,8 +85,8 @@ public final class DOMURIDereferencer implements URIDereferencer {
             Node referencedElem = dcc.getElementById(id);
             if (referencedElem != null) {
                 if (secVal) {
-                    Element start = referencedElem.getOwnerDocument().getDocumentElement();
-                    if (!XMLUtils.protectAgainstWrappingAttack(start, (Element)referencedElem, id)) {
+                    if (!DocumentIdIndex.isUnique(idIndex, referencedElem.getOwnerDocument(),
+                                                  id, (Element)referencedElem)) {
                         String error = "Multiple Elements with the same ID " + id + " were detected";
                         throw new URIReferenceException(error);
                     }
@@ -103,7 +109,7 @@ public final class DOMURIDereferencer implements URIDereferencer {
         }
 
         try {
-            ResourceResolverContext resContext = new ResourceResolverContext(uriAttr, baseURI, secVal);
+            ResourceResolverContext resContext = new ResourceResolverContext(uriAttr, baseURI, secVal, null, idIndex);
             XMLSignatureInput in = ResourceResolver.resolve(resContext);
             if (in.isOctetStream()) {
                 return new ApacheOctetStreamData(in);
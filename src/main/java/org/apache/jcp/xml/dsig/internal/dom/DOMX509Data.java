@@ -117,8 +117,7 @@ public final class DOMX509Data extends DOMStructure implements X509Data {
                 } else if ("X509SubjectName".equals(localName) && XMLSignature.XMLNS.equals(namespace)) {
                     newContent.add(childElem.getFirstChild().getNodeValue());
                 } else if ("X509SKI".equals(localName) && XMLSignature.XMLNS.equals(namespace)) {
-                    String content = XMLUtils.getFullTextChildrenFromNode(childElem);
-                    newContent.add(XMLUtils.decode(content));
+                    newContent.add(XMLUtils.decodeTextChildren(childElem));
                 } else if ("X509CRL".equals(localName) && XMLSignature.XMLNS.equals(namespace)) {
                     newContent.add(unmarshalX509CRL(childElem));
                 } else {
@@ -244,8 +243,7 @@ public final class DOMX509Data extends DOMStructure implements X509Data {
             if (cf == null) {
                 cf = CertificateFactory.getInstance("X.509");
             }
-            String content = XMLUtils.getFullTextChildrenFromNode(elem);
-            return new ByteArrayInputStream(XMLUtils.decode(content));
+            return new ByteArrayInputStream(XMLUtils.decodeTextChildren(elem));
         } catch (CertificateException e) {
             throw new MarshalException("Cannot create CertificateFactory", e);
         }
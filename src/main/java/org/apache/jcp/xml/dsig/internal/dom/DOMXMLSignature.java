@@ -43,12 +43,19 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import org.apache.xml.security.utils.DocumentIdIndex;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 
 /**
@@ -72,6 +79,12 @@ public final class DOMXMLSignature extends DOMStructure
     private boolean validated = false;
     private KeySelectorResult ksr;
     private Map<String, XMLStructure> signatureIdMap;
+    // the KeyInfo and Object elements which are not unmarshalled yet, if
+    // unmarshalled lazily, and what is needed to unmarshal them
+    private Element kiElem;
+    private List<Element> objElems;
+    private XMLCryptoContext unmarshalContext;
+    private Provider unmarshalProvider;
 
     static {
         org.apache.xml.security.Init.init();
@@ -116,7 +129,13 @@ public final class DOMXMLSignature extends DOMStructure
     }
 
     /**
-     * Creates a <code>DOMXMLSignature</code> from XML.
+     * Creates a <code>DOMXMLSignature</code> from XML. If the
+     * <code>org.apache.jcp.xml.dsig.lazyUnmarshal</code> property of the
+     * context is <code>Boolean.TRUE</code>, the content of the KeyInfo and
+     * Object elements is only unmarshalled on first access, which saves the
+     * work for signatures which are rejected before it is needed. Errors in
+     * that content are then reported by the accessors (as an
+     * <code>IllegalStateException</code>) or by {@link #validate}.
      *
      * @param sigElem Signature element
      * @throws MarshalException if XMLSignature cannot be unmarshalled
@@ -142,19 +161,19 @@ public final class DOMXMLSignature extends DOMStructure
                                                             XMLSignature.XMLNS);
         sv = new DOMSignatureValue(sigValElem);
 
-        // unmarshal KeyInfo, if specified
+        // find KeyInfo, if specified
         Element nextSibling = DOMUtils.getNextSiblingElement(sigValElem);
         if (nextSibling != null && "KeyInfo".equals(nextSibling.getLocalName())
             && XMLSignature.XMLNS.equals(nextSibling.getNamespaceURI())) {
-            ki = new DOMKeyInfo(nextSibling, context, provider);
+            kiElem = nextSibling;
             nextSibling = DOMUtils.getNextSiblingElement(nextSibling);
         }
 
-        // unmarshal Objects, if specified
+        // find Objects, if specified
         if (nextSibling == null) {
-            objects = Collections.emptyList();
+            objElems = Collections.emptyList();
         } else {
-            List<XMLObject> tempObjects = new ArrayList<>();
+            objElems = new ArrayList<>();
             while (nextSibling != null) {
                 String name = nextSibling.getLocalName();
                 String namespace = nextSibling.getNamespaceURI();
@@ -162,11 +181,95 @@ public final class DOMXMLSignature extends DOMStructure
                     throw new MarshalException("Invalid element name: " + namespace + ":" + name +
                                                ", expected KeyInfo or Object");
                 }
-                tempObjects.add(new DOMXMLObject(nextSibling,
-                                                 context, provider));
+                objElems.add(nextSibling);
                 nextSibling = DOMUtils.getNextSiblingElement(nextSibling);
             }
-            objects = Collections.unmodifiableList(tempObjects);
+        }
+
+        unmarshalContext = context;
+        unmarshalProvider = provider;
+        if (context != null
+            && Boolean.TRUE.equals(context.getProperty("org.apache.jcp.xml.dsig.lazyUnmarshal"))) {
+            // References may point to these elements by Id before they are unmarshalled
+            if (kiElem != null) {
+                registerId(kiElem);
+            }
+            for (Element objElem : objElems) {
+                registerObjectIds(objElem);
+            }
+        } else {
+            unmarshalKeyInfo();
+            unmarshalObjects();
+        }
+    }
+
+    /**
+     * Unmarshals the KeyInfo, if not done yet.
+     */
+    private synchronized KeyInfo unmarshalKeyInfo() throws MarshalException {
+        if (kiElem != null) {
+            ki = new DOMKeyInfo(kiElem, unmarshalContext, unmarshalProvider);
+            kiElem = null;
+            releaseUnmarshalContext();
+        }
+        return ki;
+    }
+
+    /**
+     * Unmarshals the Objects, if not done yet.
+     */
+    private synchronized List<XMLObject> unmarshalObjects() throws MarshalException {
+        if (objElems != null) {
+            if (objElems.isEmpty()) {
+                objects = Collections.emptyList();
+            } else {
+                List<XMLObject> tempObjects = new ArrayList<>(objElems.size());
+                for (Element objElem : objElems) {
+                    tempObjects.add(new DOMXMLObject(objElem, unmarshalContext,
+                                                     unmarshalProvider));
+                }
+                objects = Collections.unmodifiableList(tempObjects);
+            }
+            objElems = null;
+            releaseUnmarshalContext();
+        }
+        return objects;
+    }
+
+    private void releaseUnmarshalContext() {
+        if (kiElem == null && objElems == null) {
+            unmarshalContext = null;
+            unmarshalProvider = null;
+        }
+    }
+
+    /**
+     * Registers the Id attributes of an Object, and of the Manifests and
+     * SignatureProperties in it, as unmarshalling the Object would.
+     */
+    private static void registerObjectIds(Element objElem) {
+        registerId(objElem);
+        Element child = DOMUtils.getFirstChildElement(objElem);
+        while (child != null) {
+            if (XMLSignature.XMLNS.equals(child.getNamespaceURI())) {
+                String name = child.getLocalName();
+                if ("Manifest".equals(name) || "SignatureProperties".equals(name)) {
+                    registerId(child);
+                    Element grandChild = DOMUtils.getFirstChildElement(child);
+                    while (grandChild != null) {
+                        registerId(grandChild);
+                        grandChild = DOMUtils.getNextSiblingElement(grandChild);
+                    }
+                }
+            }
+            child = DOMUtils.getNextSiblingElement(child);
+        }
+    }
+
+    private static void registerId(Element elem) {
+        Attr attr = elem.getAttributeNodeNS(null, "Id");
+        if (attr != null) {
+            elem.setIdAttributeNode(attr, true);
         }
     }
 
@@ -175,7 +278,11 @@ public final class DOMXMLSignature extends DOMStructure
     }
 
     public KeyInfo getKeyInfo() {
-        return ki;
+        try {
+            return unmarshalKeyInfo();
+        } catch (MarshalException me) {
+            throw new IllegalStateException(me);
+        }
     }
 
     public SignedInfo getSignedInfo() {
@@ -183,7 +290,11 @@ public final class DOMXMLSignature extends DOMStructure
     }
 
     public List<XMLObject> getObjects() {
-        return objects;
+        try {
+            return unmarshalObjects();
+        } catch (MarshalException me) {
+            throw new IllegalStateException(me);
+        }
     }
 
     public SignatureValue getSignatureValue() {
@@ -225,13 +336,15 @@ public final class DOMXMLSignature extends DOMStructure
         ((DOMSignatureValue)sv).marshal(sigElem, dsPrefix, context);
 
         // create and append KeyInfo element if necessary
-        if (ki != null) {
-            ((DOMKeyInfo)ki).marshal(sigElem, null, dsPrefix, context);
+        KeyInfo keyInfo = unmarshalKeyInfo();
+        if (keyInfo != null) {
+            ((DOMKeyInfo)keyInfo).marshal(sigElem, null, dsPrefix, context);
         }
 
         // create and append Object elements if necessary
-        for (int i = 0, size = objects.size(); i < size; i++) {
-            ((DOMXMLObject)objects.get(i)).marshal(sigElem, dsPrefix, context);
+        List<XMLObject> xmlObjects = unmarshalObjects();
+        for (int i = 0, size = xmlObjects.size(); i < size; i++) {
+            ((DOMXMLObject)xmlObjects.get(i)).marshal(sigElem, dsPrefix, context);
         }
 
         // append Id attribute
@@ -240,6 +353,20 @@ public final class DOMXMLSignature extends DOMStructure
         parent.insertBefore(sigElem, nextSibling);
     }
 
+    /**
+     * Validates the signature. Besides the standard properties, the following properties
+     * of the context are supported:
+     * <ul>
+     * <li><code>org.apache.jcp.xml.dsig.referenceValidationExecutor</code>: an
+     * {@link Executor} which validates the References concurrently. The DOM implementation
+     * must support concurrent reads of the document, which e.g. Xerces with deferred node
+     * expansion does not.</li>
+     * <li><code>org.apache.jcp.xml.dsig.validateAllReferences</code>: if
+     * <code>Boolean.TRUE</code>, all References are validated even if the signature value or
+     * a Reference is invalid, so that the validation status of every Reference is available.
+     * By default the validation stops at the first failure.</li>
+     * </ul>
+     */
     @Override
     public boolean validate(XMLValidateContext vc)
         throws XMLSignatureException
@@ -257,65 +384,182 @@ public final class DOMXMLSignature extends DOMStructure
             return validationStatus;
         }
 
+        boolean validateAll = Utils.validateAllReferences(vc);
+
         // validate the signature
         boolean sigValidity = sv.validate(vc);
-        if (!sigValidity) {
+        if (!sigValidity && !validateAll) {
             validationStatus = false;
             validated = true;
             return validationStatus;
         }
 
-        // validate all References
-        @SuppressWarnings("unchecked")
-        List<Reference> refs = this.si.getReferences();
-        boolean validateRefs = true;
-        for (int i = 0, size = refs.size(); validateRefs && i < size; i++) {
-            Reference ref = refs.get(i);
-            boolean refValid = ref.validate(vc);
-            LOG.debug("Reference [{}] is valid: {}", ref.getURI(), refValid);
-            validateRefs &= refValid;
+        // The References of this pass share one Id index, which is dropped
+        // afterwards as the document may change
+        Object previousIdIndex = vc.put(DOMURIDereferencer.ID_INDEX_KEY, new DocumentIdIndex(ownerDoc));
+        boolean validateRefs;
+        try {
+            validateRefs = validateReferences(vc, validateAll);
+        } finally {
+            vc.put(DOMURIDereferencer.ID_INDEX_KEY, previousIdIndex);
         }
         if (!validateRefs) {
             LOG.debug("Couldn't validate the References");
-            validationStatus = false;
-            validated = true;
-            return validationStatus;
         }
 
-        // validate Manifests, if property set
-        boolean validateMans = true;
+        validationStatus = sigValidity && validateRefs;
+        validated = true;
+        return validationStatus;
+    }
+
+    /**
+     * Validates the References of SignedInfo and, if requested, of the Manifests.
+     */
+    private boolean validateReferences(XMLValidateContext vc, boolean validateAll)
+        throws XMLSignatureException
+    {
+        // collect all References, including the ones of the Manifests, if property set
+        @SuppressWarnings("unchecked")
+        List<Reference> refs = new ArrayList<>(this.si.getReferences());
+        int siRefCount = refs.size();
         if (Boolean.TRUE.equals(vc.getProperty
                                 ("org.jcp.xml.dsig.validateManifests")))
         {
-            for (int i=0, size=objects.size(); validateMans && i < size; i++) {
-                XMLObject xo = objects.get(i);
+            List<XMLObject> xmlObjects;
+            try {
+                xmlObjects = unmarshalObjects();
+            } catch (MarshalException me) {
+                throw new XMLSignatureException(me);
+            }
+            for (XMLObject xo : xmlObjects) {
                 @SuppressWarnings("unchecked")
                 List<XMLStructure> content = xo.getContent();
-                int csize = content.size();
-                for (int j = 0; validateMans && j < csize; j++) {
-                    XMLStructure xs = content.get(j);
+                for (XMLStructure xs : content) {
                     if (xs instanceof Manifest) {
-                        LOG.debug("validating manifest");
-                        Manifest man = (Manifest)xs;
                         @SuppressWarnings("unchecked")
-                        List<Reference> manRefs = man.getReferences();
-                        int rsize = manRefs.size();
-                        for (int k = 0; validateMans && k < rsize; k++) {
-                            Reference ref = manRefs.get(k);
-                            boolean refValid = ref.validate(vc);
-                            LOG.debug(
-                                "Manifest ref [{}] is valid: {}", ref.getURI(),  refValid
-                            );
-                            validateMans &= refValid;
-                        }
+                        List<Reference> manRefs = ((Manifest)xs).getReferences();
+                        refs.addAll(manRefs);
                     }
                 }
             }
         }
 
-        validationStatus = validateMans;
-        validated = true;
-        return validationStatus;
+        Executor executor = Utils.referenceValidationExecutor(vc);
+        if (executor == null || refs.size() < 2) {
+            return validateReferences(refs, siRefCount, vc, !validateAll);
+        } else {
+            return validateReferences(refs, siRefCount, vc, !validateAll, executor);
+        }
+    }
+
+    /**
+     * Validates the References in the calling thread, in document order.
+     */
+    private static boolean validateReferences(List<Reference> refs, int siRefCount,
+                                              XMLValidateContext vc, boolean failFast)
+        throws XMLSignatureException
+    {
+        boolean valid = true;
+        XMLSignatureException exception = null;
+        for (int i = 0, size = refs.size(); i < size; i++) {
+            Reference ref = refs.get(i);
+            try {
+                boolean refValid = ref.validate(vc);
+                logValidity(ref, i < siRefCount, refValid);
+                valid &= refValid;
+            } catch (XMLSignatureException e) {
+                if (failFast) {
+                    throw e;
+                }
+                if (exception == null) {
+                    exception = e;
+                }
+            }
+            if (!valid && failFast) {
+                return false;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        return valid;
+    }
+
+    /**
+     * Validates the References concurrently with the given Executor. In fail-fast mode the
+     * References which were not started yet are skipped after the first failure. The method
+     * only returns when no validation of this call is running anymore.
+     */
+    private static boolean validateReferences(List<Reference> refs, int siRefCount,
+                                              final XMLValidateContext vc, final boolean failFast,
+                                              Executor executor)
+        throws XMLSignatureException
+    {
+        final int size = refs.size();
+        final Object[] results = new Object[size];
+        final AtomicBoolean failed = new AtomicBoolean();
+        final CountDownLatch done = new CountDownLatch(size);
+        for (int i = 0; i < size; i++) {
+            final int index = i;
+            final Reference ref = refs.get(i);
+            Runnable task = () -> {
+                try {
+                    if (failFast && failed.get()) {
+                        return;
+                    }
+                    boolean refValid = ref.validate(vc);
+                    results[index] = refValid;
+                    if (!refValid) {
+                        failed.set(true);
+                    }
+                } catch (XMLSignatureException | RuntimeException | Error e) {
+                    results[index] = e;
+                    failed.set(true);
+                } finally {
+                    done.countDown();
+                }
+            };
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Reference validation was rejected by the executor, validating in the calling thread");
+                task.run();
+            }
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new XMLSignatureException(e);
+        }
+
+        boolean valid = true;
+        for (int i = 0; i < size; i++) {
+            Object result = results[i];
+            if (result instanceof XMLSignatureException) {
+                throw (XMLSignatureException)result;
+            } else if (result instanceof RuntimeException) {
+                throw (RuntimeException)result;
+            } else if (result instanceof Error) {
+                throw (Error)result;
+            } else if (result != null) {
+                boolean refValid = (Boolean)result;
+                logValidity(refs.get(i), i < siRefCount, refValid);
+                valid &= refValid;
+            } else {
+                // skipped after a failure in fail-fast mode
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private static void logValidity(Reference ref, boolean signedInfoRef, boolean refValid) {
+        if (signedInfoRef) {
+            LOG.debug("Reference [{}] is valid: {}", ref.getURI(), refValid);
+        } else {
+            LOG.debug("Manifest ref [{}] is valid: {}", ref.getURI(), refValid);
+        }
     }
 
     @Override
@@ -394,8 +638,10 @@ public final class DOMXMLSignature extends DOMStructure
 
         // calculate signature value
         try {
+            long start = XMLSecurityMetrics.start();
             byte[] val = ((AbstractDOMSignatureMethod)
                 si.getSignatureMethod()).sign(signingKey, si, signContext);
+            XMLSecurityMetrics.record(Operation.SIGN, si.getSignatureMethod().getAlgorithm(), start, -1L);
             ((DOMSignatureValue)sv).setValue(val);
         } catch (InvalidKeyException ike) {
             throw new XMLSignatureException(ike);
@@ -418,13 +664,13 @@ public final class DOMXMLSignature extends DOMStructure
         boolean idEqual =
             id == null ? osig.getId() == null : id.equals(osig.getId());
         boolean keyInfoEqual =
-            ki == null ? osig.getKeyInfo() == null
-                        : ki.equals(osig.getKeyInfo());
+            getKeyInfo() == null ? osig.getKeyInfo() == null
+                                 : getKeyInfo().equals(osig.getKeyInfo());
 
         return idEqual && keyInfoEqual &&
                 sv.equals(osig.getSignatureValue()) &&
                 si.equals(osig.getSignedInfo()) &&
-                objects.equals(osig.getObjects());
+                getObjects().equals(osig.getObjects());
     }
 
     @Override
@@ -433,12 +679,12 @@ public final class DOMXMLSignature extends DOMStructure
         if (id != null) {
             result = 31 * result + id.hashCode();
         }
-        if (ki != null) {
-            result = 31 * result + ki.hashCode();
+        if (getKeyInfo() != null) {
+            result = 31 * result + getKeyInfo().hashCode();
         }
         result = 31 * result + sv.hashCode();
         result = 31 * result + si.hashCode();
-        result = 31 * result + objects.hashCode();
+        result = 31 * result + getObjects().hashCode();
 
         return result;
     }
@@ -501,8 +747,7 @@ public final class DOMXMLSignature extends DOMStructure
             throws MarshalException
         {
             // base64 decode signatureValue
-            String content = XMLUtils.getFullTextChildrenFromNode(sigValueElem);
-            value = XMLUtils.decode(content);
+            value = XMLUtils.decodeTextChildren(sigValueElem);
 
             Attr attr = sigValueElem.getAttributeNodeNS(null, "Id");
             if (attr != null) {
@@ -546,7 +791,8 @@ public final class DOMXMLSignature extends DOMStructure
                 KeySelector keySelector = validateContext.getKeySelector();
                 if (keySelector != null) {
                     ksResult = keySelector.select
-                        (ki, KeySelector.Purpose.VERIFY, sm, validateContext);
+                        (unmarshalKeyInfo(), KeySelector.Purpose.VERIFY, sm,
+                         validateContext);
                     if (ksResult != null) {
                         validationKey = ksResult.getKey();
                     }
@@ -558,12 +804,16 @@ public final class DOMXMLSignature extends DOMStructure
             } catch (KeySelectorException kse) {
                 throw new XMLSignatureException("cannot find validation " +
                                                 "key", kse);
+            } catch (MarshalException me) {
+                throw new XMLSignatureException(me);
             }
 
             // canonicalize SignedInfo and verify signature
             try {
+                long start = XMLSecurityMetrics.start();
                 validationStatus = ((AbstractDOMSignatureMethod)sm).verify
                     (validationKey, si, value, validateContext);
+                XMLSecurityMetrics.record(Operation.VERIFY, sm.getAlgorithm(), start, -1L);
             } catch (Exception e) {
                 throw new XMLSignatureException(e);
             }
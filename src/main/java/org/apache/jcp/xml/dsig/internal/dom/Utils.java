@@ -25,6 +25,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Executor;
 import javax.xml.crypto.XMLCryptoContext;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -109,6 +110,28 @@ public final class Utils {
         return getBoolean(xc, "org.apache.jcp.xml.dsig.secureValidation");
     }
 
+    /**
+     * Returns the Executor which runs the validation of the References,
+     * or null if they are validated in the calling thread.
+     */
+    static Executor referenceValidationExecutor(XMLCryptoContext xc) {
+        if (xc == null) {
+            return null;
+        }
+        return (Executor)xc.getProperty("org.apache.jcp.xml.dsig.referenceValidationExecutor");
+    }
+
+    /**
+     * Returns whether all References are validated, instead of stopping at
+     * the first invalid one.
+     */
+    static boolean validateAllReferences(XMLCryptoContext xc) {
+        if (xc == null) {
+            return false;
+        }
+        return getBoolean(xc, "org.apache.jcp.xml.dsig.validateAllReferences");
+    }
+
     private static boolean getBoolean(XMLCryptoContext xc, String name) {
         Boolean value = (Boolean)xc.getProperty(name);
         return value != null && value.booleanValue();
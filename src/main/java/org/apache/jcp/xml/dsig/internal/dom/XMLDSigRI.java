@@ -29,6 +29,7 @@
 package org.apache.jcp.xml.dsig.internal.dom;
 
 import java.util.*;
+import java.util.function.Supplier;
 import java.security.*;
 
 import javax.xml.crypto.dsig.*;
@@ -51,6 +52,33 @@ public final class XMLDSigRI extends Provider {
         "C14N 1.0, C14N 1.1, Exclusive C14N, Base64, Enveloped, XPath, " +
         "XPath2, XSLT TransformServices)";
 
+    /**
+     * The constructors of the engines, pre-resolved by type and algorithm,
+     * so that no algorithm comparisons are done for every new instance.
+     */
+    private static final Map<String, Supplier<Object>> FACTORIES = new HashMap<>();
+
+    static {
+        FACTORIES.put("XMLSignatureFactory.DOM", DOMXMLSignatureFactory::new);
+        FACTORIES.put("KeyInfoFactory.DOM", DOMKeyInfoFactory::new);
+        putTransformService(CanonicalizationMethod.INCLUSIVE, DOMCanonicalXMLC14NMethod::new);
+        putTransformService(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS, DOMCanonicalXMLC14NMethod::new);
+        putTransformService("http://www.w3.org/2006/12/xml-c14n11", DOMCanonicalXMLC14N11Method::new);
+        putTransformService("http://www.w3.org/2006/12/xml-c14n11#WithComments",
+                            DOMCanonicalXMLC14N11Method::new);
+        putTransformService(CanonicalizationMethod.EXCLUSIVE, DOMExcC14NMethod::new);
+        putTransformService(CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS, DOMExcC14NMethod::new);
+        putTransformService(Transform.BASE64, DOMBase64Transform::new);
+        putTransformService(Transform.ENVELOPED, DOMEnvelopedTransform::new);
+        putTransformService(Transform.XPATH2, DOMXPathFilter2Transform::new);
+        putTransformService(Transform.XPATH, DOMXPathTransform::new);
+        putTransformService(Transform.XSLT, DOMXSLTTransform::new);
+    }
+
+    private static void putTransformService(String algorithm, Supplier<Object> factory) {
+        FACTORIES.put("TransformService." + algorithm, factory);
+    }
+
     private static final class ProviderService extends Provider.Service {
 
         ProviderService(Provider p, String type, String algo, String cn) {
@@ -79,46 +107,33 @@ public final class XMLDSigRI extends Provider {
             }
 
             String algo = getAlgorithm();
-            try {
-                if ("XMLSignatureFactory".equals(type)) {
-                    if ("DOM".equals(algo)) {
-                        return new DOMXMLSignatureFactory();
-                    }
-                } else if ("KeyInfoFactory".equals(type)) {
-                    if ("DOM".equals(algo)) {
-                        return new DOMKeyInfoFactory();
-                    }
-                } else if ("TransformService".equals(type)) {
-                    if (algo.equals(CanonicalizationMethod.INCLUSIVE) ||
-                        algo.equals(CanonicalizationMethod.INCLUSIVE_WITH_COMMENTS)) {
-                        return new DOMCanonicalXMLC14NMethod();
-                    } else if ("http://www.w3.org/2006/12/xml-c14n11".equals(algo) ||
-                        "http://www.w3.org/2006/12/xml-c14n11#WithComments".equals(algo)) {
-                        return new DOMCanonicalXMLC14N11Method();
-                    } else if (algo.equals(CanonicalizationMethod.EXCLUSIVE) ||
-                        algo.equals(CanonicalizationMethod.EXCLUSIVE_WITH_COMMENTS)) {
-                        return new DOMExcC14NMethod();
-                    } else if (algo.equals(Transform.BASE64)) {
-                        return new DOMBase64Transform();
-                    } else if (algo.equals(Transform.ENVELOPED)) {
-                        return new DOMEnvelopedTransform();
-                    } else if (algo.equals(Transform.XPATH2)) {
-                        return new DOMXPathFilter2Transform();
-                    } else if (algo.equals(Transform.XPATH)) {
-                        return new DOMXPathTransform();
-                    } else if (algo.equals(Transform.XSLT)) {
-                        return new DOMXSLTTransform();
-                    }
+            Supplier<Object> factory = FACTORIES.get(type + '.' + algo);
+            if (factory != null) {
+                try {
+                    return factory.get();
+                } catch (Exception ex) {
+                    throw new NoSuchAlgorithmException("Error constructing " +
+                        type + " for " + algo + " using XMLDSig", ex);
                 }
-            } catch (Exception ex) {
-                throw new NoSuchAlgorithmException("Error constructing " +
-                    type + " for " + algo + " using XMLDSig", ex);
             }
             throw new ProviderException("No impl for " + algo +
                 " " + type);
         }
     }
 
+    /**
+     * Returns a new DOM TransformService of this provider, without searching the
+     * installed providers for it.
+     */
+    static TransformService getTransformService(String algorithm)
+        throws NoSuchAlgorithmException {
+        return TransformService.getInstance(algorithm, "DOM", InstanceHolder.INSTANCE);
+    }
+
+    private static final class InstanceHolder {
+        static final XMLDSigRI INSTANCE = new XMLDSigRI();
+    }
+
     public XMLDSigRI() {
         /* We are the ApacheXMLDSig provider */
         super("ApacheXMLDSig", 2.20, INFO);
@@ -37,6 +37,9 @@ import org.apache.xml.security.c14n.helper.AttrCompare;
 import org.apache.xml.security.signature.NodeFilter;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.CountingOutputStream;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Comment;
@@ -174,6 +177,8 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
      */
     protected void engineCanonicalizeSubTree(Node rootNode, Node excludeNode, OutputStream writer)
         throws CanonicalizationException {
+        long start = XMLSecurityMetrics.start();
+        CountingOutputStream counter = start != 0L ? new CountingOutputStream(writer) : null;
         try {
             NameSpaceSymbTable ns = new NameSpaceSymbTable();
             int nodeLevel = NODE_BEFORE_DOCUMENT_ELEMENT;
@@ -182,8 +187,9 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
                 getParentNameSpaces((Element)rootNode, ns);
                 nodeLevel = NODE_NOT_BEFORE_OR_AFTER_DOCUMENT_ELEMENT;
             }
-            this.canonicalizeSubTree(rootNode, ns, rootNode, nodeLevel, excludeNode, writer);
+            this.canonicalizeSubTree(rootNode, ns, rootNode, nodeLevel, excludeNode, counter != null ? counter : writer);
             writer.flush();
+            recordCanonicalization(start, counter);
         } catch (UnsupportedEncodingException ex) {
             throw new CanonicalizationException(ex);
         } catch (IOException ex) {
@@ -306,14 +312,23 @@ public abstract class CanonicalizerBase extends CanonicalizerSpi {
 
     private void engineCanonicalizeXPathNodeSetInternal(Node doc, OutputStream writer)
         throws CanonicalizationException {
+        long start = XMLSecurityMetrics.start();
+        CountingOutputStream counter = start != 0L ? new CountingOutputStream(writer) : null;
         try {
-            this.canonicalizeXPathNodeSet(doc, doc, writer);
+            this.canonicalizeXPathNodeSet(doc, doc, counter != null ? counter : writer);
             writer.flush();
+            recordCanonicalization(start, counter);
         } catch (IOException ex) {
             throw new CanonicalizationException(ex);
         }
     }
 
+    private void recordCanonicalization(long start, CountingOutputStream counter) {
+        if (counter != null) {
+            XMLSecurityMetrics.record(Operation.CANONICALIZATION, engineGetURI(), start, counter.getCount());
+        }
+    }
+
     /**
      * Canonicalizes all the nodes included in the currentNode and contained in the
      * xpathNodeSet field.
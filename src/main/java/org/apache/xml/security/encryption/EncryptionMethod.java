@@ -101,6 +101,26 @@ public interface EncryptionMethod {
      */
     String getMGFAlgorithm();
 
+    /**
+     * Set the segment size to use for segmented AES-GCM encryption. The default implementation
+     * does not support segmentation.
+     * @param segmentSize the plaintext size of a segment, or 0 for regular (unsegmented) encryption
+     * @throws UnsupportedOperationException if segmentation is not supported
+     */
+    default void setSegmentSize(int segmentSize) {
+        if (segmentSize != 0) {
+            throw new UnsupportedOperationException("Segmented encryption is not supported");
+        }
+    }
+
+    /**
+     * Get the segment size of segmented AES-GCM encryption. The default implementation returns 0.
+     * @return the plaintext size of a segment, or 0 for regular (unsegmented) encryption
+     */
+    default int getSegmentSize() {
+        return 0;
+    }
+
     /**
      * Returns an iterator over all the additional elements contained in the
      * <code>EncryptionMethod</code>.
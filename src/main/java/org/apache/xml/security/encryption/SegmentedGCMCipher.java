@@ -0,0 +1,186 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+
+import org.apache.xml.security.utils.EncryptionConstants;
+
+/**
+ * Segmented AES-GCM as used when an <code>EncryptionMethod</code> carries a
+ * <code>SegmentSize</code> parameter.
+ * <p>
+ * The plaintext is split into segments of <code>segmentSize</code> octets (the last one may
+ * be shorter or empty) and every segment is encrypted and authenticated on its own, so a
+ * decryptor can verify and release plaintext segment by segment instead of buffering the
+ * whole ciphertext until the single GCM tag at the very end has been checked.
+ * <p>
+ * The resulting octet sequence is <code>IV || C_0 || ... || C_n-1</code> where every
+ * <code>C_i</code> is the GCM ciphertext of segment <code>i</code> followed by its 16 octet tag.
+ * The nonce of segment <code>i</code> is the IV with its last four octets XORed with the
+ * big-endian segment index, and the additional authenticated data is the big-endian segment
+ * index followed by one octet which is <code>1</code> for the final segment and <code>0</code>
+ * otherwise. This binds every segment to its position and detects reordering and truncation.
+ */
+public final class SegmentedGCMCipher {
+
+    /** Length of the IV prepended to the cipher octets */
+    public static final int IV_LENGTH = 12;
+
+    /** Length of the authentication tag appended to every segment */
+    public static final int TAG_LENGTH = 16;
+
+    /** Smallest segment size accepted when encrypting or decrypting */
+    public static final int MIN_SEGMENT_SIZE = 1024;
+
+    /**
+     * Largest segment size accepted. A decryptor has to buffer one complete segment, so this
+     * bounds the memory an incoming <code>SegmentSize</code> parameter can claim.
+     */
+    public static final int MAX_SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /** Segment size used when segmentation is requested without an explicit size */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024;
+
+    private final Cipher cipher;
+    private final Key key;
+    private final byte[] iv;
+    private final int segmentSize;
+    private final byte[] nonce = new byte[IV_LENGTH];
+    private final byte[] aad = new byte[5];
+
+    /**
+     * @param cipher an "AES/GCM/NoPadding" cipher instance, which will be (re-)initialized per segment
+     * @param key the AES key
+     * @param iv the IV of {@link #IV_LENGTH} octets
+     * @param segmentSize the plaintext size of all but the last segment
+     * @throws XMLEncryptionException if the IV or the segment size is invalid
+     */
+    public SegmentedGCMCipher(Cipher cipher, Key key, byte[] iv, int segmentSize) throws XMLEncryptionException {
+        checkSegmentSize(segmentSize);
+        if (iv == null || iv.length != IV_LENGTH) {
+            throw new XMLEncryptionException("empty", "Segmented GCM requires an IV of " + IV_LENGTH + " bytes");
+        }
+        this.cipher = cipher;
+        this.key = key;
+        this.iv = iv.clone();
+        this.segmentSize = segmentSize;
+    }
+
+    public byte[] getIV() {
+        return iv.clone();
+    }
+
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Returns an instance with the same key, IV and segment size but its own Cipher, so that
+     * segments can be processed concurrently.
+     */
+    SegmentedGCMCipher copy() throws XMLEncryptionException {
+        try {
+            return new SegmentedGCMCipher(
+                Cipher.getInstance(cipher.getAlgorithm(), cipher.getProvider()), key, iv, segmentSize);
+        } catch (NoSuchAlgorithmException e) {
+            throw new XMLEncryptionException(e);
+        } catch (NoSuchPaddingException e) {
+            throw new XMLEncryptionException(e);
+        }
+    }
+
+    /**
+     * Encrypts one segment into <code>output</code> and returns the number of octets written,
+     * which is always <code>length + TAG_LENGTH</code>.
+     */
+    public int encryptSegment(byte[] input, int offset, int length, int segmentIndex, boolean lastSegment,
+                              byte[] output, int outputOffset) throws GeneralSecurityException {
+        if (length > segmentSize || !lastSegment && length != segmentSize) {
+            throw new GeneralSecurityException("Invalid segment length " + length);
+        }
+        return process(Cipher.ENCRYPT_MODE, input, offset, length, segmentIndex, lastSegment, output, outputOffset);
+    }
+
+    /**
+     * Decrypts and verifies one segment into <code>output</code> and returns the number of
+     * plaintext octets written, which is always <code>length - TAG_LENGTH</code>.
+     */
+    public int decryptSegment(byte[] input, int offset, int length, int segmentIndex, boolean lastSegment,
+                              byte[] output, int outputOffset) throws GeneralSecurityException {
+        if (length < TAG_LENGTH || length > segmentSize + TAG_LENGTH
+            || !lastSegment && length != segmentSize + TAG_LENGTH) {
+            throw new GeneralSecurityException("Invalid segment length " + length);
+        }
+        return process(Cipher.DECRYPT_MODE, input, offset, length, segmentIndex, lastSegment, output, outputOffset);
+    }
+
+    private int process(int mode, byte[] input, int offset, int length, int segmentIndex, boolean lastSegment,
+                        byte[] output, int outputOffset) throws GeneralSecurityException {
+        if (segmentIndex < 0) {
+            throw new GeneralSecurityException("Too many segments");
+        }
+        System.arraycopy(iv, 0, nonce, 0, IV_LENGTH);
+        nonce[IV_LENGTH - 4] ^= (byte) (segmentIndex >>> 24);
+        nonce[IV_LENGTH - 3] ^= (byte) (segmentIndex >>> 16);
+        nonce[IV_LENGTH - 2] ^= (byte) (segmentIndex >>> 8);
+        nonce[IV_LENGTH - 1] ^= (byte) segmentIndex;
+
+        aad[0] = (byte) (segmentIndex >>> 24);
+        aad[1] = (byte) (segmentIndex >>> 16);
+        aad[2] = (byte) (segmentIndex >>> 8);
+        aad[3] = (byte) segmentIndex;
+        aad[4] = (byte) (lastSegment ? 1 : 0);
+
+        cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        cipher.updateAAD(aad);
+        return cipher.doFinal(input, offset, length, output, outputOffset);
+    }
+
+    /**
+     * Returns true if the given XML Encryption algorithm URI denotes an AES-GCM algorithm
+     * and can therefore be used in segmented mode.
+     */
+    public static boolean isGCMAlgorithm(String algorithmURI) {
+        return EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES128_GCM.equals(algorithmURI)
+            || EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES192_GCM.equals(algorithmURI)
+            || EncryptionConstants.ALGO_ID_BLOCKCIPHER_AES256_GCM.equals(algorithmURI);
+    }
+
+    public static void checkSegmentSize(int segmentSize) throws XMLEncryptionException {
+        if (segmentSize < MIN_SEGMENT_SIZE || segmentSize > MAX_SEGMENT_SIZE) {
+            throw new XMLEncryptionException("empty", "Invalid GCM segment size " + segmentSize);
+        }
+    }
+
+    /**
+     * Returns the number of octets (including the IV) the segmented encryption of
+     * <code>plaintextLength</code> octets produces.
+     */
+    public static long getCipherTextLength(long plaintextLength, int segmentSize) {
+        long segments = Math.max(1, (plaintextLength + segmentSize - 1) / segmentSize);
+        return IV_LENGTH + plaintextLength + segments * TAG_LENGTH;
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+import javax.crypto.Cipher;
+
+/**
+ * Pull-style decryption of segmented AES-GCM cipher octets, e.g. the content of a
+ * <code>CipherReference</code> such as an attachment. The wrapped stream must deliver
+ * <code>IV || C_0 || ... || C_n-1</code>; plaintext becomes readable segment by segment,
+ * each only after its tag has been verified.
+ */
+public class SegmentedGCMDecryptingInputStream extends FilterInputStream {
+
+    private final Cipher cipher;
+    private final Key key;
+    private final int segmentSize;
+    private final byte[] cipherSegment;
+    private final byte[] segment;
+    private SegmentedGCMCipher segmentedCipher;
+    private int segmentIndex;
+    private int pos;
+    private int limit;
+    private int lookahead = -1;
+    private boolean finished;
+
+    public SegmentedGCMDecryptingInputStream(InputStream in, Cipher cipher, Key key, int segmentSize)
+        throws XMLEncryptionException {
+        super(in);
+        SegmentedGCMCipher.checkSegmentSize(segmentSize);
+        this.cipher = cipher;
+        this.key = key;
+        this.segmentSize = segmentSize;
+        this.cipherSegment = new byte[segmentSize + SegmentedGCMCipher.TAG_LENGTH];
+        this.segment = new byte[segmentSize];
+    }
+
+    @Override
+    public int read() throws IOException {
+        while (pos == limit) {
+            if (finished) {
+                return -1;
+            }
+            nextSegment();
+        }
+        return segment[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (pos == limit) {
+            if (finished) {
+                return -1;
+            }
+            nextSegment();
+        }
+        int count = Math.min(len, limit - pos);
+        System.arraycopy(segment, pos, b, off, count);
+        pos += count;
+        return count;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = 0;
+        while (skipped < n && read() != -1) {
+            skipped++;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    @Override
+    public synchronized void mark(int readlimit) {
+        //not supported
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        throw new IOException("mark/reset not supported");
+    }
+
+    private void nextSegment() throws IOException {
+        try {
+            if (segmentedCipher == null) {
+                byte[] iv = new byte[SegmentedGCMCipher.IV_LENGTH];
+                if (readFully(iv, 0, iv.length) != iv.length) {
+                    throw new IOException("Segmented GCM cipher data too short");
+                }
+                segmentedCipher = new SegmentedGCMCipher(cipher, key, iv, segmentSize);
+            }
+
+            int length = 0;
+            if (lookahead != -1) {
+                cipherSegment[length++] = (byte) lookahead;
+            }
+            length += readFully(cipherSegment, length, cipherSegment.length - length);
+            //a segment is the last one if no further octet follows it
+            lookahead = length == cipherSegment.length ? in.read() : -1;
+            boolean lastSegment = lookahead == -1;
+
+            limit = segmentedCipher.decryptSegment(cipherSegment, 0, length, segmentIndex++, lastSegment, segment, 0);
+            pos = 0;
+            finished = lastSegment;
+        } catch (GeneralSecurityException | XMLEncryptionException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int total = 0;
+        while (total < len) {
+            int read = in.read(b, off + total, len - total);
+            if (read == -1) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.encryption;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Encrypts the written plaintext with a {@link SegmentedGCMCipher} and writes
+ * <code>IV || C_0 || ... || C_n-1</code> to the underlying stream. A full segment is emitted
+ * as soon as the next plaintext octet arrives, and the pending segment is emitted as the final
+ * one on {@link #close()}.
+ * <p>
+ * Without an Executor at most one segment is buffered. With an Executor a batch of segments,
+ * by default one per available processor, is buffered and the segments of a batch are encrypted
+ * concurrently, each with its own Cipher instance. The output is the same in both cases.
+ */
+public class SegmentedGCMEncryptingOutputStream extends FilterOutputStream {
+
+    private final SegmentedGCMCipher segmentedCipher;
+    private final Executor executor;
+    private final SegmentedGCMCipher[] segmentedCiphers;
+    private final byte[][] segments;
+    private final byte[][] cipherSegments;
+    private final int[] cipherSegmentLengths;
+    //the slot of the segment which is currently filled
+    private int slot;
+    private int pos;
+    //the index of the segment in the first slot
+    private int segmentIndex;
+    private boolean ivWritten;
+    private boolean closed;
+
+    public SegmentedGCMEncryptingOutputStream(OutputStream out, SegmentedGCMCipher segmentedCipher) {
+        this(out, segmentedCipher, null);
+    }
+
+    /**
+     * @param executor the Executor to encrypt segments concurrently on, or null to encrypt them
+     *                 in the writing thread
+     */
+    public SegmentedGCMEncryptingOutputStream(OutputStream out, SegmentedGCMCipher segmentedCipher,
+                                              Executor executor) {
+        this(out, segmentedCipher, executor, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param executor the Executor to encrypt segments concurrently on, or null to encrypt them
+     *                 in the writing thread
+     * @param batchSize the number of segments which are encrypted concurrently
+     */
+    public SegmentedGCMEncryptingOutputStream(OutputStream out, SegmentedGCMCipher segmentedCipher,
+                                              Executor executor, int batchSize) {
+        super(out);
+        batchSize = executor == null ? 1 : Math.max(1, batchSize);
+        this.segmentedCipher = segmentedCipher;
+        this.executor = batchSize > 1 ? executor : null;
+        this.segmentedCiphers = new SegmentedGCMCipher[batchSize];
+        this.segmentedCiphers[0] = segmentedCipher;
+        this.segments = new byte[batchSize][];
+        this.cipherSegments = new byte[batchSize][];
+        this.cipherSegmentLengths = new int[batchSize];
+        this.segments[0] = new byte[segmentedCipher.getSegmentSize()];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (pos == segments[slot].length) {
+            nextSegment();
+        }
+        segments[slot][pos++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (pos == segments[slot].length) {
+                nextSegment();
+            }
+            byte[] segment = segments[slot];
+            int count = Math.min(len, segment.length - pos);
+            System.arraycopy(b, off, segment, pos, count);
+            pos += count;
+            off += count;
+            len -= count;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        //buffered segments can't be flushed, so we only forward already encrypted data
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        encryptSegments(true);
+        out.close();
+    }
+
+    /**
+     * The current segment is full and more plaintext follows, so it isn't the final one
+     */
+    private void nextSegment() throws IOException {
+        if (slot + 1 < segments.length) {
+            slot++;
+            if (segments[slot] == null) {
+                segments[slot] = new byte[segmentedCipher.getSegmentSize()];
+            }
+        } else {
+            encryptSegments(false);
+        }
+        pos = 0;
+    }
+
+    /**
+     * Encrypts and writes the segments of all slots up to the current one
+     */
+    private void encryptSegments(boolean lastSegment) throws IOException {
+        if (!ivWritten) {
+            out.write(segmentedCipher.getIV());
+            ivWritten = true;
+        }
+        int count = slot + 1;
+        if (executor == null || count == 1) {
+            for (int i = 0; i < count; i++) {
+                encryptSegment(i, lastSegment && i == slot);
+            }
+        } else {
+            encryptSegmentsConcurrently(count, lastSegment);
+        }
+        for (int i = 0; i < count; i++) {
+            out.write(cipherSegments[i], 0, cipherSegmentLengths[i]);
+        }
+        segmentIndex += count;
+        slot = 0;
+        pos = 0;
+    }
+
+    private void encryptSegmentsConcurrently(int count, boolean lastSegment) throws IOException {
+        FutureTask<?>[] futures = new FutureTask<?>[count];
+        try {
+            for (int i = 1; i < count; i++) {
+                final int segmentSlot = i;
+                final boolean last = lastSegment && i == slot;
+                if (segmentedCiphers[i] == null) {
+                    segmentedCiphers[i] = segmentedCipher.copy();
+                }
+                futures[i] = new FutureTask<>(() -> {
+                    encryptSegment(segmentSlot, last);
+                    return null;
+                });
+                try {
+                    executor.execute(futures[i]);
+                } catch (RejectedExecutionException e) {
+                    //the executor is saturated, so encrypt this segment in the writing thread
+                    futures[i].run();
+                }
+            }
+            //the writing thread takes the first segment itself
+            encryptSegment(0, lastSegment && slot == 0);
+            for (int i = 1; i < count; i++) {
+                futures[i].get();
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (XMLEncryptionException e) {
+            throw new IOException(e);
+        } finally {
+            //tasks which haven't started yet don't run anymore when one of them failed
+            for (FutureTask<?> future : futures) {
+                if (future != null) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private void encryptSegment(int segmentSlot, boolean lastSegment) throws IOException {
+        if (cipherSegments[segmentSlot] == null) {
+            cipherSegments[segmentSlot] = new byte[segmentedCipher.getSegmentSize() + SegmentedGCMCipher.TAG_LENGTH];
+        }
+        int length = segmentSlot == slot ? pos : segments[segmentSlot].length;
+        try {
+            cipherSegmentLengths[segmentSlot] =
+                segmentedCiphers[segmentSlot].encryptSegment(segments[segmentSlot], 0, length,
+                                                             segmentIndex + segmentSlot, lastSegment,
+                                                             cipherSegments[segmentSlot], 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+}
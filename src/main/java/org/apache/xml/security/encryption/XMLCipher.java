@@ -21,6 +21,7 @@ package org.apache.xml.security.encryption;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -40,6 +41,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Executor;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -63,8 +65,13 @@ import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.transforms.InvalidTransformException;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.CountingOutputStream;
 import org.apache.xml.security.utils.ElementProxy;
 import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -283,6 +290,10 @@ public class XMLCipher {
 
     private String digestAlg;
 
+    private int segmentSize;
+
+    private Executor segmentExecutor;
+
     /** List of internal KeyResolvers for DECRYPT and UNWRAP modes. */
     private List<KeyResolverSpi> internalKeyResolvers;
 
@@ -663,6 +674,28 @@ public class XMLCipher {
         this.secureValidation = secureValidation;
     }
 
+    /**
+     * Set the segment size for segmented AES-GCM encryption. When a positive size is set and an
+     * AES-GCM algorithm is used, the data is encrypted as independently authenticated segments
+     * (see {@link SegmentedGCMCipher}) and the size is recorded in the EncryptionMethod. The
+     * default is 0, i.e. regular single-stream encryption.
+     *
+     * @param segmentSize the plaintext size of a segment, or 0 to disable segmentation
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Set the Executor on which the segments of segmented AES-GCM encryption are encrypted
+     * concurrently. The default is null, i.e. the segments are encrypted in the calling thread.
+     *
+     * @param segmentExecutor the Executor to use, or null to encrypt in the calling thread
+     */
+    public void setSegmentExecutor(Executor segmentExecutor) {
+        this.segmentExecutor = segmentExecutor;
+    }
+
     /**
      * This method is used to add a custom {@link KeyResolverSpi} to an XMLCipher.
      * These KeyResolvers are used in KeyInfo objects in DECRYPT and
@@ -1106,6 +1139,7 @@ public class XMLCipher {
         Document context, Element element, String type, InputStream serializedData
     ) throws /* XMLEncryption */ Exception {
         contextDocument = context;
+        long start = XMLSecurityMetrics.start();
 
         if (algorithm == null) {
             throw new XMLEncryptionException("empty", "XMLCipher instance without transformation specified");
@@ -1134,6 +1168,10 @@ public class XMLCipher {
             }
         }
 
+        if (segmentSize > 0) {
+            return encryptDataSegmented(type, serializedOctets, serializedData, start);
+        }
+
         byte[] encryptedBytes = null;
 
         // Now create the working cipher if none was created already
@@ -1196,6 +1234,7 @@ public class XMLCipher {
         byte[] finalEncryptedBytes = new byte[iv.length + encryptedBytes.length];
         System.arraycopy(iv, 0, finalEncryptedBytes, 0, iv.length);
         System.arraycopy(encryptedBytes, 0, finalEncryptedBytes, iv.length, encryptedBytes.length);
+        XMLSecurityMetrics.record(Operation.ENCRYPTION, algorithm, start, finalEncryptedBytes.length);
         String base64EncodedEncryptedOctets = XMLUtils.encodeToString(finalEncryptedBytes);
 
         LOG.debug("Encrypted octets:\n{}", base64EncodedEncryptedOctets);
@@ -1219,6 +1258,63 @@ public class XMLCipher {
         return ed;
     }
 
+    private EncryptedData encryptDataSegmented(
+        String type, byte[] serializedOctets, InputStream serializedData, long start
+    ) throws Exception {
+        if (!SegmentedGCMCipher.isGCMAlgorithm(algorithm)) {
+            throw new XMLEncryptionException("empty", "Segmented encryption requires an AES-GCM algorithm");
+        }
+        Cipher c;
+        if (contextCipher == null) {
+            c = constructCipher(algorithm, null);
+        } else {
+            c = contextCipher;
+        }
+        byte[] iv = XMLSecurityConstants.generateBytes(SegmentedGCMCipher.IV_LENGTH);
+        SegmentedGCMCipher segmentedCipher = new SegmentedGCMCipher(c, key, iv, segmentSize);
+
+        //the plaintext is encrypted segment by segment as it is read, and the cipher octets
+        //are Base64 encoded on the fly, so neither of them is held in memory as a whole
+        UnsyncByteArrayOutputStream base64Output = new UnsyncByteArrayOutputStream();
+        CountingOutputStream cipherTextCounter = new CountingOutputStream(XMLUtils.wrapEncoder(base64Output));
+        try (OutputStream outputStream =
+                 new SegmentedGCMEncryptingOutputStream(cipherTextCounter, segmentedCipher, segmentExecutor)) {
+            if (serializedData != null) {
+                int numBytes;
+                byte[] buf = new byte[8192];
+                while ((numBytes = serializedData.read(buf)) != -1) {
+                    outputStream.write(buf, 0, numBytes);
+                }
+            } else {
+                outputStream.write(serializedOctets);
+            }
+        } catch (IOException ex) {
+            throw new XMLEncryptionException(ex);
+        }
+        XMLSecurityMetrics.record(Operation.ENCRYPTION, algorithm, start, cipherTextCounter.getCount());
+        String base64EncodedEncryptedOctets = new String(base64Output.toByteArray(), StandardCharsets.US_ASCII);
+
+        LOG.debug("Encrypted octets length = {}", base64EncodedEncryptedOctets.length());
+
+        try {
+            CipherData cd = ed.getCipherData();
+            CipherValue cv = cd.getCipherValue();
+            cv.setValue(base64EncodedEncryptedOctets);
+
+            if (type != null) {
+                ed.setType(new URI(type).toString());
+            }
+            EncryptionMethod method =
+                factory.newEncryptionMethod(new URI(algorithm).toString());
+            method.setDigestAlgorithm(digestAlg);
+            method.setSegmentSize(segmentSize);
+            ed.setEncryptionMethod(method);
+        } catch (URISyntaxException ex) {
+            throw new XMLEncryptionException(ex);
+        }
+        return ed;
+    }
+
     /**
      * Build an <code>AlgorithmParameterSpec</code> instance used to initialize a <code>Cipher</code> instance
      * for block cipher encryption and decryption.
@@ -1775,6 +1871,7 @@ public class XMLCipher {
         }
 
         // Obtain the encrypted octets
+        long start = XMLSecurityMetrics.start();
         XMLCipherInput cipherInput = new XMLCipherInput(encryptedData);
         cipherInput.setSecureValidation(secureValidation);
         byte[] encryptedBytes = cipherInput.getBytes();
@@ -1784,6 +1881,30 @@ public class XMLCipher {
             JCEMapper.translateURItoJCEID(encMethodAlgorithm);
         LOG.debug("JCE Algorithm = {}", jceAlgorithm);
 
+        int encMethodSegmentSize = encryptedData.getEncryptionMethod().getSegmentSize();
+        if (encMethodSegmentSize > 0) {
+            if (!SegmentedGCMCipher.isGCMAlgorithm(encMethodAlgorithm)) {
+                throw new XMLEncryptionException("empty", "Segmented encryption requires an AES-GCM algorithm");
+            }
+            //every segment is verified and decrypted on its own, so only one segment is
+            //buffered in addition to the cipher octets and the plaintext
+            UnsyncByteArrayOutputStream plainOutput = new UnsyncByteArrayOutputStream();
+            try (InputStream inputStream = new SegmentedGCMDecryptingInputStream(
+                new UnsyncByteArrayInputStream(encryptedBytes), constructCipher(encMethodAlgorithm, null),
+                key, encMethodSegmentSize)) {
+                byte[] buf = new byte[8192];
+                int numBytes;
+                while ((numBytes = inputStream.read(buf)) != -1) {
+                    plainOutput.write(buf, 0, numBytes);
+                }
+            } catch (IOException ex) {
+                throw new XMLEncryptionException(ex);
+            }
+            byte[] plainBytes = plainOutput.toByteArray();
+            XMLSecurityMetrics.record(Operation.DECRYPTION, encMethodAlgorithm, start, encryptedBytes.length);
+            return plainBytes;
+        }
+
         Cipher c;
         try {
             if (requestedJCEProvider == null) {
@@ -1824,7 +1945,9 @@ public class XMLCipher {
         }
 
         try {
-            return c.doFinal(encryptedBytes, ivLen, encryptedBytes.length - ivLen);
+            byte[] plainBytes = c.doFinal(encryptedBytes, ivLen, encryptedBytes.length - ivLen);
+            XMLSecurityMetrics.record(Operation.DECRYPTION, encMethodAlgorithm, start, encryptedBytes.length);
+            return plainBytes;
         } catch (IllegalBlockSizeException ibse) {
             throw new XMLEncryptionException(ibse);
         } catch (BadPaddingException bpe) {
@@ -2382,8 +2505,9 @@ public class XMLCipher {
         /**
          * @param element
          * @return a new EncryptionMethod
+         * @throws XMLEncryptionException if the SegmentSize parameter is invalid
          */
-        EncryptionMethod newEncryptionMethod(Element element) {
+        EncryptionMethod newEncryptionMethod(Element element) throws XMLEncryptionException {
             String encAlgorithm = element.getAttributeNS(null, EncryptionConstants._ATT_ALGORITHM);
             EncryptionMethod result = newEncryptionMethod(encAlgorithm);
 
@@ -2422,6 +2546,20 @@ public class XMLCipher {
                 result.setMGFAlgorithm(mgfAlgorithm);
             }
 
+            Element segmentSizeElement =
+                (Element) element.getElementsByTagNameNS(
+                    EncryptionConstants.SantuarioEncryptionNS, EncryptionConstants._TAG_SEGMENTSIZE).item(0);
+            if (segmentSizeElement != null) {
+                int segmentSize;
+                try {
+                    segmentSize = Integer.parseInt(XMLUtils.getFullTextChildrenFromNode(segmentSizeElement).trim());
+                } catch (NumberFormatException ex) {
+                    throw new XMLEncryptionException(ex);
+                }
+                SegmentedGCMCipher.checkSegmentSize(segmentSize);
+                result.setSegmentSize(segmentSize);
+            }
+
             // TODO: Make this mess work
             // <any namespace='##other' minOccurs='0' maxOccurs='unbounded'/>
 
@@ -3082,6 +3220,7 @@ public class XMLCipher {
             private List<Element> encryptionMethodInformation;
             private String digestAlgorithm;
             private String mgfAlgorithm;
+            private int segmentSize;
 
             /**
              * Constructor.
@@ -3144,6 +3283,16 @@ public class XMLCipher {
                 return mgfAlgorithm;
             }
 
+            /** {@inheritDoc} */
+            public void setSegmentSize(int segmentSize) {
+                this.segmentSize = segmentSize;
+            }
+
+            /** {@inheritDoc} */
+            public int getSegmentSize() {
+                return segmentSize;
+            }
+
             /** {@inheritDoc} */
             public Iterator<Element> getEncryptionMethodInformation() {
                 return encryptionMethodInformation.iterator();
@@ -3204,6 +3353,20 @@ public class XMLCipher {
                     );
                     result.appendChild(mgfElement);
                 }
+                if (segmentSize > 0) {
+                    Element segmentSizeElement =
+                        contextDocument.createElementNS(
+                            EncryptionConstants.SantuarioEncryptionNS,
+                            EncryptionConstants.SantuarioEncryptionPrefix + ":" + EncryptionConstants._TAG_SEGMENTSIZE
+                        );
+                    segmentSizeElement.setAttributeNS(
+                        Constants.NamespaceSpecNS,
+                        "xmlns:" + EncryptionConstants.SantuarioEncryptionPrefix,
+                        EncryptionConstants.SantuarioEncryptionNS
+                    );
+                    segmentSizeElement.appendChild(contextDocument.createTextNode(String.valueOf(segmentSize)));
+                    result.appendChild(segmentSizeElement);
+                }
                 Iterator<Element> itr = encryptionMethodInformation.iterator();
                 while (itr.hasNext()) {
                     result.appendChild(itr.next());
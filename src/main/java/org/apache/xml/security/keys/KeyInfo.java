@@ -50,7 +50,9 @@ import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.ElementProxy;
 import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.SignatureElementProxy;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -819,6 +821,13 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public PublicKey getPublicKey() throws KeyResolverException {
+        long start = XMLSecurityMetrics.start();
+        PublicKey result = lookupPublicKey();
+        XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
+        return result;
+    }
+
+    private PublicKey lookupPublicKey() throws KeyResolverException {
         PublicKey pk = this.getPublicKeyFromInternalResolvers();
 
         if (pk != null) {
@@ -909,6 +918,13 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public X509Certificate getX509Certificate() throws KeyResolverException {
+        long start = XMLSecurityMetrics.start();
+        X509Certificate result = lookupX509Certificate();
+        XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
+        return result;
+    }
+
+    private X509Certificate lookupX509Certificate() throws KeyResolverException {
         // First search using the individual resolvers from the user
         X509Certificate cert = this.getX509CertificateFromInternalResolvers();
 
@@ -1009,6 +1025,13 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public SecretKey getSecretKey() throws KeyResolverException {
+        long start = XMLSecurityMetrics.start();
+        SecretKey result = lookupSecretKey();
+        XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
+        return result;
+    }
+
+    private SecretKey lookupSecretKey() throws KeyResolverException {
         SecretKey sk = this.getSecretKeyFromInternalResolvers();
 
         if (sk != null) {
@@ -1100,6 +1123,13 @@ public class KeyInfo extends SignatureElementProxy {
      * @throws KeyResolverException
      */
     public PrivateKey getPrivateKey() throws KeyResolverException {
+        long start = XMLSecurityMetrics.start();
+        PrivateKey result = lookupPrivateKey();
+        XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
+        return result;
+    }
+
+    private PrivateKey lookupPrivateKey() throws KeyResolverException {
         PrivateKey pk = this.getPrivateKeyFromInternalResolvers();
 
         if (pk != null) {
@@ -192,8 +192,7 @@ public class ECKeyValue extends Signature11ElementProxy implements KeyValueConte
             ECPoint ecPoint = null;
 
             try {
-                String content = XMLUtils.getFullTextChildrenFromNode(curElem);
-                ecPoint = decodePoint(XMLUtils.decode(content), ecParams.getCurve());
+                ecPoint = decodePoint(XMLUtils.decodeTextChildren(curElem), ecParams.getCurve());
             } catch (IOException ioe) {
                 throw new MarshalException("Invalid EC Point", ioe);
             }
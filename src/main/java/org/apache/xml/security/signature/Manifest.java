@@ -36,6 +36,7 @@ import org.apache.xml.security.c14n.InvalidCanonicalizerException;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.DocumentIdIndex;
 import org.apache.xml.security.utils.I18n;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.XMLUtils;
@@ -79,6 +80,9 @@ public class Manifest extends SignatureElementProxy {
     /** Field perManifestResolvers */
     private List<ResourceResolverSpi> perManifestResolvers;
 
+    /** The Id index of the current validation pass */
+    private DocumentIdIndex idIndex;
+
     private boolean secureValidation;
 
     /**
@@ -307,6 +311,21 @@ public class Manifest extends SignatureElementProxy {
      * @throws XMLSecurityException
      */
     public boolean verifyReferences(boolean followManifests)
+        throws MissingResourceFailureException, XMLSecurityException {
+        if (idIndex != null) {
+            return verifyReferencesWithIdIndex(followManifests);
+        }
+        // The References and nested Manifests of this pass share one index,
+        // which is dropped afterwards as the document may change
+        idIndex = new DocumentIdIndex(getDocument());
+        try {
+            return verifyReferencesWithIdIndex(followManifests);
+        } finally {
+            idIndex = null;
+        }
+    }
+
+    private boolean verifyReferencesWithIdIndex(boolean followManifests)
         throws MissingResourceFailureException, XMLSecurityException {
         if (referencesEl == null) {
             this.referencesEl =
@@ -385,6 +404,7 @@ public class Manifest extends SignatureElementProxy {
 
                         referencedManifest.perManifestResolvers = this.perManifestResolvers;
                         referencedManifest.resolverProperties = this.resolverProperties;
+                        referencedManifest.idIndex = this.idIndex;
 
                         boolean referencedManifestValid =
                             referencedManifest.verifyReferences(followManifests);
@@ -486,6 +506,13 @@ public class Manifest extends SignatureElementProxy {
         return perManifestResolvers;
     }
 
+    /**
+     * @return the Id index of the current validation pass, or null
+     */
+    DocumentIdIndex getIdIndex() {
+        return idIndex;
+    }
+
     /**
      * Get the resolver property map
      * @return the resolver property map
@@ -41,9 +41,12 @@ import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.transforms.params.InclusiveNamespaces;
 import org.apache.xml.security.utils.Constants;
+import org.apache.xml.security.utils.CountingOutputStream;
 import org.apache.xml.security.utils.DigesterOutputStream;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.resolver.ResourceResolver;
 import org.apache.xml.security.utils.resolver.ResourceResolverContext;
@@ -419,7 +422,7 @@ public class Reference extends SignatureElementProxy {
 
             ResourceResolverContext resolverContext =
                 new ResourceResolverContext(uriAttr, this.baseURI,
-                    secureValidation, this.manifest.getResolverProperties());
+                    secureValidation, this.manifest.getResolverProperties(), this.manifest.getIdIndex());
 
             return ResourceResolver.resolve(this.manifest.getPerManifestResolvers(), resolverContext);
         }  catch (ResourceResolverException ex) {
@@ -718,8 +721,10 @@ public class Reference extends SignatureElementProxy {
         MessageDigestAlgorithm mda = this.getMessageDigestAlgorithm();
         mda.reset();
 
+        long start = XMLSecurityMetrics.start();
         try (DigesterOutputStream diOs = new DigesterOutputStream(mda);
-            OutputStream os = new UnsyncBufferedOutputStream(diOs)) {
+            CountingOutputStream counter = start != 0L ? new CountingOutputStream(diOs) : null;
+            OutputStream os = new UnsyncBufferedOutputStream(counter != null ? counter : diOs)) {
 
             XMLSignatureInput output = this.getContentsAfterTransformation(input, os);
             this.transformsOutput = output;
@@ -747,7 +752,11 @@ public class Reference extends SignatureElementProxy {
             //this.getReferencedBytes(diOs);
             //mda.update(data);
 
-            return diOs.getDigestValue();
+            byte[] digestValue = diOs.getDigestValue();
+            if (counter != null) {
+                XMLSecurityMetrics.record(Operation.DIGEST, mda.getAlgorithmURI(), start, counter.getCount());
+            }
+            return digestValue;
         } catch (XMLSecurityException ex) {
             throw new ReferenceNotInitializedException(ex);
         } catch (IOException ex) {
@@ -784,8 +793,7 @@ public class Reference extends SignatureElementProxy {
                 "signature.Verification.NoSignatureElement", exArgs
             );
         }
-        String content = XMLUtils.getFullTextChildrenFromNode(digestValueElement);
-        return XMLUtils.decode(content);
+        return XMLUtils.decodeTextChildren(digestValueElement);
     }
 
 
@@ -38,9 +38,11 @@ import org.apache.xml.security.keys.content.X509Data;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.Constants;
 import org.apache.xml.security.utils.I18n;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.SignatureElementProxy;
 import org.apache.xml.security.utils.SignerOutputStream;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
 import org.w3c.dom.Attr;
@@ -644,8 +646,7 @@ public final class XMLSignature extends SignatureElementProxy {
      * @throws XMLSignatureException If there is no content
      */
     public byte[] getSignatureValue() throws XMLSignatureException {
-        String content = XMLUtils.getFullTextChildrenFromNode(signatureValueElement);
-        return XMLUtils.decode(content);
+        return XMLUtils.decodeTextChildren(signatureValueElement);
     }
 
     /**
@@ -783,6 +784,7 @@ public final class XMLSignature extends SignatureElementProxy {
             // generate digest values for all References in this SignedInfo
             si.generateDigestValues();
 
+            long start = XMLSecurityMetrics.start();
             // initialize SignatureAlgorithm for signing
             sa.initSign(signingKey);
 
@@ -791,6 +793,7 @@ public final class XMLSignature extends SignatureElementProxy {
 
             // set them on the SignatureValue element
             this.setSignatureValueElement(sa.sign());
+            XMLSecurityMetrics.record(Operation.SIGN, sa.getAlgorithmURI(), start, -1L);
         } catch (XMLSignatureException ex) {
             throw ex;
         } catch (CanonicalizationException ex) {
@@ -868,6 +871,7 @@ public final class XMLSignature extends SignatureElementProxy {
             LOG.debug("jceSigProvider = {}", sa.getJCEProviderName());
             LOG.debug("PublicKey = {}", pk);
 
+            long start = XMLSecurityMetrics.start();
             byte[] sigBytes = null;
             try (SignerOutputStream so = new SignerOutputStream(sa);
                 OutputStream bos = new UnsyncBufferedOutputStream(so)) {
@@ -887,7 +891,9 @@ public final class XMLSignature extends SignatureElementProxy {
 
             // have SignatureAlgorithm sign the input bytes and compare them to
             // the bytes that were stored in the signature.
-            if (!sa.verify(sigBytes)) {
+            boolean valid = sa.verify(sigBytes);
+            XMLSecurityMetrics.record(Operation.VERIFY, sa.getAlgorithmURI(), start, -1L);
+            if (!valid) {
                 LOG.warn("Signature verification failed.");
                 return false;
             }
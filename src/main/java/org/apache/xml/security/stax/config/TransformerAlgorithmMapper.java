@@ -19,14 +19,27 @@
 package org.apache.xml.security.stax.config;
 
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.Transformer;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.impl.transformer.TransformBase64Decode;
+import org.apache.xml.security.stax.impl.transformer.TransformEnvelopedSignature;
+import org.apache.xml.security.stax.impl.transformer.TransformIdentity;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer11_OmitCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer11_WithCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_ExclOmitCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_ExclWithCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_OmitCommentsTransformer;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_WithCommentsTransformer;
 import org.apache.xml.security.utils.ClassLoaderUtils;
 import org.apache.xml.security.configuration.TransformAlgorithmType;
 import org.apache.xml.security.configuration.TransformAlgorithmsType;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Mapping between JCE id and xmlsec uri's for algorithms
@@ -38,6 +51,29 @@ public final class TransformerAlgorithmMapper {
     private static Map<String, Class<?>> algorithmsClassMapIn;
     private static Map<String, Class<?>> algorithmsClassMapOut;
 
+    //the shipped transformers are instantiated directly, everything else through its cached constructor
+    private static final Map<Class<?>, TransformerFactory> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        FACTORIES.put(TransformIdentity.class, TransformIdentity::new);
+        FACTORIES.put(TransformBase64Decode.class, TransformBase64Decode::new);
+        FACTORIES.put(TransformEnvelopedSignature.class, TransformEnvelopedSignature::new);
+        FACTORIES.put(Canonicalizer20010315_OmitCommentsTransformer.class,
+                Canonicalizer20010315_OmitCommentsTransformer::new);
+        FACTORIES.put(Canonicalizer20010315_WithCommentsTransformer.class,
+                Canonicalizer20010315_WithCommentsTransformer::new);
+        FACTORIES.put(Canonicalizer11_OmitCommentsTransformer.class, Canonicalizer11_OmitCommentsTransformer::new);
+        FACTORIES.put(Canonicalizer11_WithCommentsTransformer.class, Canonicalizer11_WithCommentsTransformer::new);
+        FACTORIES.put(Canonicalizer20010315_ExclOmitCommentsTransformer.class,
+                Canonicalizer20010315_ExclOmitCommentsTransformer::new);
+        FACTORIES.put(Canonicalizer20010315_ExclWithCommentsTransformer.class,
+                Canonicalizer20010315_ExclWithCommentsTransformer::new);
+    }
+
+    private interface TransformerFactory {
+        Transformer newTransformer() throws XMLSecurityException;
+    }
+
     private TransformerAlgorithmMapper() {
     }
 
@@ -83,4 +119,36 @@ public final class TransformerAlgorithmMapper {
         }
         return clazz;
     }
+
+    /**
+     * Returns a new Transformer instance for the given algorithm. The instances are created by a
+     * factory that is looked up once per transformer class, so no reflection is needed per call for
+     * the shipped transformers.
+     */
+    public static Transformer newTransformer(String algoURI, XMLSecurityConstants.DIRECTION direction)
+            throws XMLSecurityException {
+        Class<?> clazz = getTransformerClass(algoURI, direction);
+        TransformerFactory factory = FACTORIES.get(clazz);
+        if (factory == null) {
+            factory = newFactory(clazz);
+            FACTORIES.put(clazz, factory);
+        }
+        return factory.newTransformer();
+    }
+
+    private static TransformerFactory newFactory(Class<?> clazz) throws XMLSecurityException {
+        final Constructor<? extends Transformer> constructor;
+        try {
+            constructor = clazz.asSubclass(Transformer.class).getConstructor();
+        } catch (ClassCastException | NoSuchMethodException e) {
+            throw new XMLSecurityException(e);
+        }
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
+                throw new XMLSecurityException(e);
+            }
+        };
+    }
 }
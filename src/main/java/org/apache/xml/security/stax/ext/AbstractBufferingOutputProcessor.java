@@ -20,8 +20,10 @@ package org.apache.xml.security.stax.ext;
 
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.impl.util.CompactXMLSecEventBuffer;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.UncheckedIOException;
 import java.util.*;
 
 /**
@@ -30,26 +32,53 @@ import java.util.*;
  */
 public abstract class AbstractBufferingOutputProcessor extends AbstractOutputProcessor {
 
-    private final ArrayDeque<XMLSecEvent> xmlSecEventBuffer = new ArrayDeque<>(100);
+    private Deque<XMLSecEvent> xmlSecEventBuffer;
 
     protected AbstractBufferingOutputProcessor() throws XMLSecurityException {
         super();
     }
 
+    /**
+     * @return the buffered events. The events are binary encoded if
+     * {@link XMLSecurityProperties#isCompactEventBuffer()} is set, in which case the operations
+     * other than the queue operations and pushing events back to the head decode all events.
+     */
     protected Deque<XMLSecEvent> getXmlSecEventBuffer() {
+        if (xmlSecEventBuffer == null) {
+            XMLSecurityProperties securityProperties = getSecurityProperties();
+            if (securityProperties != null && securityProperties.isCompactEventBuffer()) {
+                xmlSecEventBuffer = new CompactXMLSecEventBuffer(securityProperties.getDirectBufferPool(),
+                                                                 securityProperties.getEventBufferSpillThreshold());
+            } else {
+                xmlSecEventBuffer = new ArrayDeque<>(100);
+            }
+        }
         return xmlSecEventBuffer;
     }
 
     @Override
     public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
             throws XMLStreamException, XMLSecurityException {
-        xmlSecEventBuffer.offer(xmlSecEvent);
+        try {
+            getXmlSecEventBuffer().offer(xmlSecEvent);
+        } catch (UncheckedIOException e) {
+            throw new XMLStreamException(e.getCause());
+        }
     }
 
     @Override
     public void doFinal(OutputProcessorChain outputProcessorChain) throws XMLStreamException, XMLSecurityException {
         OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
-        flushBufferAndCallbackAfterHeader(subOutputProcessorChain, getXmlSecEventBuffer());
+        Deque<XMLSecEvent> buffer = getXmlSecEventBuffer();
+        try {
+            flushBufferAndCallbackAfterHeader(subOutputProcessorChain, buffer);
+        } catch (UncheckedIOException e) {
+            throw new XMLStreamException(e.getCause());
+        } finally {
+            if (buffer instanceof CompactXMLSecEventBuffer) {
+                ((CompactXMLSecEventBuffer) buffer).close();
+            }
+        }
         //call final on the rest of the chain
         subOutputProcessorChain.doFinal();
         //this processor is now finished and we can remove it now
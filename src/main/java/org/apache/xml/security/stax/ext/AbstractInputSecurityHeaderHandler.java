@@ -21,6 +21,8 @@ package org.apache.xml.security.stax.ext;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.apache.xml.security.stax.impl.util.UnmarshallerPool;
+import org.apache.xml.security.stax.impl.util.XMLSecStructureBinder;
 
 import javax.xml.bind.JAXBException;
 import javax.xml.bind.Unmarshaller;
@@ -39,9 +41,20 @@ public abstract class AbstractInputSecurityHeaderHandler implements XMLSecurityH
     @SuppressWarnings("unchecked")
     protected <T> T parseStructure(final Deque<XMLSecEvent> eventDeque, final int index,
                                    final XMLSecurityProperties securityProperties) throws XMLSecurityException {
+        //without schema validation the common structures are bound directly, anything unusual is left to JAXB
+        if (securityProperties.isDisableSchemaValidation()) {
+            Object boundStructure = XMLSecStructureBinder.bind(eventDeque, index);
+            if (boundStructure != null) {
+                return (T) boundStructure;
+            }
+        }
         try {
-            Unmarshaller unmarshaller = XMLSecurityConstants.getJaxbUnmarshaller(securityProperties.isDisableSchemaValidation());
-            return (T) unmarshaller.unmarshal(new XMLSecurityEventReader(eventDeque, index));
+            UnmarshallerPool unmarshallerPool =
+                XMLSecurityConstants.getJaxbUnmarshallerPool(securityProperties.isDisableSchemaValidation());
+            Unmarshaller unmarshaller = unmarshallerPool.borrow();
+            T structure = (T) unmarshaller.unmarshal(new XMLSecurityEventReader(eventDeque, index));
+            unmarshallerPool.release(unmarshaller);
+            return structure;
 
         } catch (JAXBException e) {
             if (e.getCause() != null && e.getCause() instanceof Exception) {
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.ext;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The default XMLStreamFactorySupplier. It uses the StAX implementation found by the
+ * factory lookup of the JDK. The XMLInputFactory has DTD support and external entities
+ * disabled and interns the names when the parser is Woodstox.
+ */
+public class DefaultXMLStreamFactorySupplier implements XMLStreamFactorySupplier {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultXMLStreamFactorySupplier.class);
+
+    public static final DefaultXMLStreamFactorySupplier INSTANCE = new DefaultXMLStreamFactorySupplier();
+
+    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        try {
+            xmlInputFactory.setProperty("org.codehaus.stax2.internNames", true);
+            xmlInputFactory.setProperty("org.codehaus.stax2.internNsUris", true);
+            xmlInputFactory.setProperty("org.codehaus.stax2.preserveLocation", false);
+        } catch (IllegalArgumentException e) {
+            LOG.debug(e.getMessage(), e);
+            //ignore
+        }
+    }
+
+    protected DefaultXMLStreamFactorySupplier() {
+    }
+
+    @Override
+    public XMLInputFactory getXMLInputFactory() {
+        return xmlInputFactory;
+    }
+
+    @Override
+    public XMLOutputFactory getXMLOutputFactory(boolean repairingNamespaces) {
+        return repairingNamespaces
+            ? XMLSecurityConstants.xmlOutputFactory : XMLSecurityConstants.xmlOutputFactoryNonRepairingNs;
+    }
+}
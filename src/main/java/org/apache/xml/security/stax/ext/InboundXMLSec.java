@@ -20,6 +20,7 @@ package org.apache.xml.security.stax.ext;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.impl.DocumentContextImpl;
 import org.apache.xml.security.stax.impl.InputProcessorChainImpl;
 import org.apache.xml.security.stax.impl.InboundSecurityContextImpl;
@@ -27,11 +28,11 @@ import org.apache.xml.security.stax.impl.XMLSecurityStreamReader;
 import org.apache.xml.security.stax.impl.processor.input.LogInputProcessor;
 import org.apache.xml.security.stax.impl.processor.input.XMLEventReaderInputProcessor;
 import org.apache.xml.security.stax.impl.processor.input.XMLSecurityInputProcessor;
+import org.apache.xml.security.stax.impl.util.ProcessorPool;
 import org.apache.xml.security.stax.securityEvent.SecurityEvent;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 
 import javax.xml.stream.Location;
-import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 
@@ -48,25 +49,13 @@ public class InboundXMLSec {
 
     protected static final transient Logger LOG = LoggerFactory.getLogger(InboundXMLSec.class);
 
-    private static final XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
-
-    static {
-        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
-        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
-        try {
-            xmlInputFactory.setProperty("org.codehaus.stax2.internNames", true);
-            xmlInputFactory.setProperty("org.codehaus.stax2.internNsUris", true);
-            xmlInputFactory.setProperty("org.codehaus.stax2.preserveLocation", false);
-        } catch (IllegalArgumentException e) {
-            LOG.debug(e.getMessage(), e);
-            //ignore
-        }
-    }
-
     private final XMLSecurityProperties securityProperties;
+    private final ProcessorPool<XMLSecurityInputProcessor> securityProcessorPool;
 
-    public InboundXMLSec(XMLSecurityProperties securityProperties) {
+    public InboundXMLSec(final XMLSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
+        this.securityProcessorPool = new ProcessorPool<>(() -> new XMLSecurityInputProcessor(securityProperties),
+                                                         securityProperties.getProcessorPoolSize());
     }
 
     /**
@@ -119,7 +108,8 @@ public class InboundXMLSec {
         inboundSecurityContext.putList(SecurityEvent.class, requestSecurityEvents);
         inboundSecurityContext.addSecurityEventListener(securityEventListener);
 
-        inboundSecurityContext.put(XMLSecurityConstants.XMLINPUTFACTORY, xmlInputFactory);
+        inboundSecurityContext.put(XMLSecurityConstants.XMLINPUTFACTORY,
+                                   securityProperties.getXMLStreamFactorySupplier().getXMLInputFactory());
 
         DocumentContextImpl documentContext = new DocumentContextImpl();
         documentContext.setEncoding(xmlStreamReader.getEncoding() != null ? xmlStreamReader.getEncoding() : java.nio.charset.StandardCharsets.UTF_8.name());
@@ -141,7 +131,13 @@ public class InboundXMLSec {
             }
         }
 
-        inputProcessorChain.addProcessor(new XMLSecurityInputProcessor(securityProperties));
+        final XMLSecurityInputProcessor securityInputProcessor;
+        try {
+            securityInputProcessor = securityProcessorPool.borrow();
+        } catch (XMLSecurityException e) {
+            throw new XMLStreamException(e);
+        }
+        inputProcessorChain.addProcessor(securityInputProcessor);
 
         if (LOG.isTraceEnabled()) {
             LogInputProcessor LOGInputProcessor = new LogInputProcessor(securityProperties);
@@ -149,6 +145,19 @@ public class InboundXMLSec {
             inputProcessorChain.addProcessor(LOGInputProcessor);
         }
 
-        return new XMLSecurityStreamReader(inputProcessorChain, securityProperties);
+        XMLSecurityStreamReader streamReader = new XMLSecurityStreamReader(inputProcessorChain, securityProperties);
+        //the processor is reused for the next message once this one is finished
+        streamReader.setCloseListener(() -> {
+            securityInputProcessor.reset();
+            securityProcessorPool.release(securityInputProcessor);
+        });
+        return streamReader;
+    }
+
+    /**
+     * @return the pool of the security processors of this instance
+     */
+    public ProcessorPool<XMLSecurityInputProcessor> getSecurityProcessorPool() {
+        return securityProcessorPool;
     }
 }
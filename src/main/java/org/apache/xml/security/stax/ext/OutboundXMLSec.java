@@ -18,15 +18,23 @@
  */
 package org.apache.xml.security.stax.ext;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.Key;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.crypto.KeyGenerator;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.xml.security.exceptions.XMLSecurityException;
@@ -34,12 +42,16 @@ import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
 import org.apache.xml.security.stax.impl.DocumentContextImpl;
 import org.apache.xml.security.stax.impl.OutboundSecurityContextImpl;
 import org.apache.xml.security.stax.impl.OutputProcessorChainImpl;
+import org.apache.xml.security.stax.impl.TwoPassSignature;
 import org.apache.xml.security.stax.impl.XMLSecurityStreamWriter;
 import org.apache.xml.security.stax.impl.processor.output.FinalOutputProcessor;
+import org.apache.xml.security.stax.impl.processor.output.TwoPassSignatureCollectingOutputProcessor;
+import org.apache.xml.security.stax.impl.processor.output.TwoPassSignatureReplayOutputProcessor;
 import org.apache.xml.security.stax.impl.processor.output.XMLEncryptOutputProcessor;
 import org.apache.xml.security.stax.impl.processor.output.XMLSignatureOutputProcessor;
 import org.apache.xml.security.stax.impl.securityToken.GenericOutboundSecurityToken;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
+import org.apache.xml.security.stax.impl.util.ProcessorPool;
 import org.apache.xml.security.stax.securityEvent.SecurityEventListener;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
@@ -53,9 +65,15 @@ import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
 public class OutboundXMLSec {
 
     private final XMLSecurityProperties securityProperties;
+    private final ProcessorPool<XMLSignatureOutputProcessor> signatureProcessorPool;
+    private final ProcessorPool<XMLEncryptOutputProcessor> encryptionProcessorPool;
 
     public OutboundXMLSec(XMLSecurityProperties securityProperties) {
         this.securityProperties = securityProperties;
+        this.signatureProcessorPool =
+            new ProcessorPool<>(XMLSignatureOutputProcessor::new, securityProperties.getProcessorPoolSize());
+        this.encryptionProcessorPool =
+            new ProcessorPool<>(XMLEncryptOutputProcessor::new, securityProperties.getProcessorPoolSize());
     }
 
     /**
@@ -92,13 +110,67 @@ public class OutboundXMLSec {
         return processOutMessage((Object) xmlStreamWriter, encoding, eventListener);
     }
 
+    /**
+     * Secures the document read from the given file and writes it to the outputStream.
+     * <p>
+     * When signing is the only action, the file is read twice, so that the document doesn't have
+     * to be buffered until the Signature can be written before the signed content: the first pass
+     * computes the digests and the Signature, the second pass writes the document with the Signature
+     * inserted at its configured position. The memory needed stays the same regardless of the
+     * document size. Other actions are processed in a single pass.
+     *
+     * @param document The file to read the document from
+     * @param outputStream The outputStream to write the secured document to
+     * @param encoding The encoding of the secured document
+     * @throws XMLSecurityException thrown when a Security failure occurs
+     */
+    public void processOutMessage(Path document, OutputStream outputStream, String encoding)
+            throws XMLSecurityException {
+        processOutMessage(document, outputStream, encoding, null);
+    }
+
+    public void processOutMessage(Path document, OutputStream outputStream, String encoding,
+                                  SecurityEventListener eventListener) throws XMLSecurityException {
+        List<XMLSecurityConstants.Action> actions = securityProperties.getActions();
+        if (actions.size() != 1 || !XMLSecurityConstants.SIGNATURE.equals(actions.get(0))) {
+            copyDocument(document, processOutMessage((Object) outputStream, encoding, eventListener), encoding);
+            return;
+        }
+
+        TwoPassSignature twoPassSignature = new TwoPassSignature();
+        //first pass: compute the digests and the Signature, the document itself isn't written
+        copyDocument(document,
+                     processOutMessage(new TwoPassSignatureCollectingOutputProcessor(twoPassSignature), encoding,
+                                       eventListener, twoPassSignature),
+                     encoding);
+
+        //second pass: write the document with the Id attributes and the Signature of the first pass
+        final DocumentContextImpl documentContext = new DocumentContextImpl();
+        documentContext.setEncoding(encoding);
+        OutputProcessorChainImpl outputProcessorChain =
+            new OutputProcessorChainImpl(new OutboundSecurityContextImpl(), documentContext);
+        initializeOutputProcessor(outputProcessorChain, new TwoPassSignatureReplayOutputProcessor(twoPassSignature),
+                                  XMLSecurityConstants.SIGNATURE);
+        initializeOutputProcessor(outputProcessorChain, newFinalOutputProcessor(outputStream, encoding), null);
+        copyDocument(document, new XMLSecurityStreamWriter(outputProcessorChain), encoding);
+    }
+
     private XMLStreamWriter processOutMessage(
         Object output, String encoding, SecurityEventListener eventListener) throws XMLSecurityException {
+        return processOutMessage(output, encoding, eventListener, null);
+    }
+
+    private XMLStreamWriter processOutMessage(
+        Object output, String encoding, SecurityEventListener eventListener, TwoPassSignature twoPassSignature)
+        throws XMLSecurityException {
         final OutboundSecurityContextImpl outboundSecurityContext = new OutboundSecurityContextImpl();
 
         if (eventListener != null) {
             outboundSecurityContext.addSecurityEventListener(eventListener);
         }
+        if (twoPassSignature != null) {
+            outboundSecurityContext.put(XMLSecurityConstants.PROP_TWO_PASS_SIGNATURE, twoPassSignature);
+        }
 
         final DocumentContextImpl documentContext = new DocumentContextImpl();
         documentContext.setEncoding(encoding);
@@ -107,10 +179,13 @@ public class OutboundXMLSec {
 
         SecurePart signEntireRequestPart = null;
         SecurePart encryptEntireRequestPart = null;
+        final List<XMLSignatureOutputProcessor> signatureOutputProcessors = new ArrayList<>(1);
+        final List<XMLEncryptOutputProcessor> encryptOutputProcessors = new ArrayList<>(1);
 
         for (XMLSecurityConstants.Action action : securityProperties.getActions()) {
             if (XMLSecurityConstants.SIGNATURE.equals(action)) {
-                XMLSignatureOutputProcessor signatureOutputProcessor = new XMLSignatureOutputProcessor();
+                XMLSignatureOutputProcessor signatureOutputProcessor = signatureProcessorPool.borrow();
+                signatureOutputProcessors.add(signatureOutputProcessor);
                 initializeOutputProcessor(outputProcessorChain, signatureOutputProcessor, action);
 
                 configureSignatureKeys(outboundSecurityContext);
@@ -134,7 +209,8 @@ public class OutboundXMLSec {
                     }
                 }
             } else if (XMLSecurityConstants.ENCRYPT.equals(action)) {
-                XMLEncryptOutputProcessor encryptOutputProcessor = new XMLEncryptOutputProcessor();
+                XMLEncryptOutputProcessor encryptOutputProcessor = encryptionProcessorPool.borrow();
+                encryptOutputProcessors.add(encryptOutputProcessor);
                 initializeOutputProcessor(outputProcessorChain, encryptOutputProcessor, action);
 
                 configureEncryptionKeys(outboundSecurityContext);
@@ -160,13 +236,16 @@ public class OutboundXMLSec {
             }
         }
         if (output instanceof OutputStream) {
-            final FinalOutputProcessor finalOutputProcessor = new FinalOutputProcessor((OutputStream) output, encoding);
+            final FinalOutputProcessor finalOutputProcessor = newFinalOutputProcessor((OutputStream) output, encoding);
             initializeOutputProcessor(outputProcessorChain, finalOutputProcessor, null);
 
         } else if (output instanceof XMLStreamWriter) {
             final FinalOutputProcessor finalOutputProcessor = new FinalOutputProcessor((XMLStreamWriter) output);
             initializeOutputProcessor(outputProcessorChain, finalOutputProcessor, null);
 
+        } else if (output instanceof OutputProcessor) {
+            initializeOutputProcessor(outputProcessorChain, (OutputProcessor) output, null);
+
         } else {
             throw new IllegalArgumentException(output + " is not supported as output");
         }
@@ -174,10 +253,124 @@ public class OutboundXMLSec {
         XMLSecurityStreamWriter streamWriter = new XMLSecurityStreamWriter(outputProcessorChain);
         streamWriter.setSignEntireRequestPart(signEntireRequestPart);
         streamWriter.setEncryptEntireRequestPart(encryptEntireRequestPart);
+        //the processors are reused for the next message once this one is finished
+        streamWriter.setCloseListener(() -> {
+            for (XMLSignatureOutputProcessor signatureOutputProcessor : signatureOutputProcessors) {
+                signatureOutputProcessor.reset();
+                signatureProcessorPool.release(signatureOutputProcessor);
+            }
+            for (XMLEncryptOutputProcessor encryptOutputProcessor : encryptOutputProcessors) {
+                encryptOutputProcessor.reset();
+                encryptionProcessorPool.release(encryptOutputProcessor);
+            }
+        });
 
         return streamWriter;
     }
 
+    /**
+     * @return the pool of the signature processors of this instance
+     */
+    public ProcessorPool<XMLSignatureOutputProcessor> getSignatureProcessorPool() {
+        return signatureProcessorPool;
+    }
+
+    /**
+     * @return the pool of the encryption processors of this instance
+     */
+    public ProcessorPool<XMLEncryptOutputProcessor> getEncryptionProcessorPool() {
+        return encryptionProcessorPool;
+    }
+
+    /**
+     * Writes the document read from the file to the xmlStreamWriter and closes the writer
+     */
+    private void copyDocument(Path document, XMLStreamWriter xmlStreamWriter, String encoding)
+            throws XMLSecurityException {
+        try (InputStream inputStream = Files.newInputStream(document)) {
+            XMLStreamReader xmlStreamReader =
+                securityProperties.getXMLStreamFactorySupplier().getXMLInputFactory().createXMLStreamReader(inputStream);
+            try {
+                int eventType = xmlStreamReader.getEventType();
+                while (true) {
+                    copyEvent(xmlStreamReader, eventType, xmlStreamWriter, encoding);
+                    if (!xmlStreamReader.hasNext()) {
+                        break;
+                    }
+                    eventType = xmlStreamReader.next();
+                }
+            } finally {
+                xmlStreamReader.close();
+            }
+            xmlStreamWriter.close();
+        } catch (IOException | XMLStreamException e) {
+            throw new XMLSecurityException(e);
+        }
+    }
+
+    private static void copyEvent(XMLStreamReader xmlStreamReader, int eventType, XMLStreamWriter xmlStreamWriter,
+                                  String encoding) throws XMLStreamException {
+        switch (eventType) {
+            case XMLStreamConstants.START_ELEMENT:
+                String prefix = xmlStreamReader.getPrefix();
+                String namespaceURI = xmlStreamReader.getNamespaceURI();
+                xmlStreamWriter.writeStartElement(prefix == null ? "" : prefix, xmlStreamReader.getLocalName(),
+                                                  namespaceURI == null ? "" : namespaceURI);
+                for (int i = 0; i < xmlStreamReader.getNamespaceCount(); i++) {
+                    String namespacePrefix = xmlStreamReader.getNamespacePrefix(i);
+                    if (namespacePrefix == null || namespacePrefix.isEmpty()) {
+                        xmlStreamWriter.writeDefaultNamespace(xmlStreamReader.getNamespaceURI(i));
+                    } else {
+                        xmlStreamWriter.writeNamespace(namespacePrefix, xmlStreamReader.getNamespaceURI(i));
+                    }
+                }
+                for (int i = 0; i < xmlStreamReader.getAttributeCount(); i++) {
+                    String attributeNamespace = xmlStreamReader.getAttributeNamespace(i);
+                    String attributePrefix = xmlStreamReader.getAttributePrefix(i);
+                    xmlStreamWriter.writeAttribute(attributePrefix == null ? "" : attributePrefix,
+                                                   attributeNamespace == null ? "" : attributeNamespace,
+                                                   xmlStreamReader.getAttributeLocalName(i),
+                                                   xmlStreamReader.getAttributeValue(i));
+                }
+                break;
+            case XMLStreamConstants.END_ELEMENT:
+                xmlStreamWriter.writeEndElement();
+                break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.SPACE:
+                xmlStreamWriter.writeCharacters(xmlStreamReader.getTextCharacters(), xmlStreamReader.getTextStart(),
+                                                xmlStreamReader.getTextLength());
+                break;
+            case XMLStreamConstants.CDATA:
+                xmlStreamWriter.writeCData(xmlStreamReader.getText());
+                break;
+            case XMLStreamConstants.COMMENT:
+                xmlStreamWriter.writeComment(xmlStreamReader.getText());
+                break;
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                xmlStreamWriter.writeProcessingInstruction(xmlStreamReader.getPITarget(), xmlStreamReader.getPIData());
+                break;
+            case XMLStreamConstants.ENTITY_REFERENCE:
+                xmlStreamWriter.writeEntityRef(xmlStreamReader.getLocalName());
+                break;
+            case XMLStreamConstants.START_DOCUMENT:
+                //the declaration has to match the encoding of the output
+                xmlStreamWriter.writeStartDocument(encoding, xmlStreamReader.getVersion());
+                break;
+            case XMLStreamConstants.END_DOCUMENT:
+                xmlStreamWriter.writeEndDocument();
+                break;
+            default:
+                break;
+        }
+    }
+
+    private FinalOutputProcessor newFinalOutputProcessor(OutputStream outputStream, String encoding)
+            throws XMLSecurityException {
+        return new FinalOutputProcessor(outputStream, encoding,
+                                        securityProperties.getXMLStreamFactorySupplier().getXMLOutputFactory(true));
+    }
+
     private void initializeOutputProcessor(OutputProcessorChainImpl outputProcessorChain, OutputProcessor outputProcessor, XMLSecurityConstants.Action action) throws XMLSecurityException {
         outputProcessor.setXMLSecurityProperties(securityProperties);
         outputProcessor.setAction(action);
@@ -24,6 +24,8 @@ import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 
 import java.io.InputStream;
 
+import javax.xml.namespace.QName;
+
 /**
  */
 public interface ResourceResolver {
@@ -32,5 +34,22 @@ public interface ResourceResolver {
 
     boolean matches(XMLSecStartElement xmlSecStartElement);
 
+    /**
+     * Matches the start element against the reference, using the given attribute as Id attribute.
+     * The default implementation ignores the Id attribute name.
+     */
+    default boolean matches(XMLSecStartElement xmlSecStartElement, QName idAttributeNS) {
+        return matches(xmlSecStartElement);
+    }
+
+    /**
+     * Returns the Id value the reference points to when the reference is resolved solely by
+     * the Id attribute of an element, otherwise null. References with an Id are matched through
+     * a lookup instead of calling matches() for every start element.
+     */
+    default String getReferencedId() {
+        return null;
+    }
+
     InputStream getInputStreamFromExternalReference() throws XMLSecurityException;
 }
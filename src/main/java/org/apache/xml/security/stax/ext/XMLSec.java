@@ -29,6 +29,7 @@ import javax.xml.bind.JAXBContext;
 import javax.xml.bind.JAXBException;
 import javax.xml.validation.Schema;
 
+import org.apache.xml.security.encryption.SegmentedGCMCipher;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.config.Init;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
@@ -178,6 +179,16 @@ public class XMLSec {
                 if (securityProperties.getEncryptionKeyIdentifier() == null) {
                     securityProperties.setEncryptionKeyIdentifier(SecurityTokenConstants.KeyIdentifier_IssuerSerial);
                 }
+                if (securityProperties.getEncryptionSegmentSize() != 0) {
+                    if (!SegmentedGCMCipher.isGCMAlgorithm(securityProperties.getEncryptionSymAlgorithm())) {
+                        throw new XMLSecurityConfigurationException("stax.encryption.segmentationRequiresGCM");
+                    }
+                    if (securityProperties.getEncryptionSegmentSize() < SegmentedGCMCipher.MIN_SEGMENT_SIZE
+                        || securityProperties.getEncryptionSegmentSize() > SegmentedGCMCipher.MAX_SEGMENT_SIZE) {
+                        throw new XMLSecurityConfigurationException("stax.encryption.invalidSegmentSize",
+                            new Object[] {securityProperties.getEncryptionSegmentSize()});
+                    }
+                }
             }
         }
         return new XMLSecurityProperties(securityProperties);
@@ -18,7 +18,9 @@
  */
 package org.apache.xml.security.stax.ext;
 
+import java.security.AccessController;
 import java.security.NoSuchAlgorithmException;
+import java.security.PrivilegedAction;
 import java.security.SecureRandom;
 
 import javax.xml.bind.JAXBContext;
@@ -31,6 +33,7 @@ import javax.xml.stream.XMLOutputFactory;
 import javax.xml.validation.Schema;
 
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.impl.util.UnmarshallerPool;
 
 /**
  * XMLSecurityConstants for global use
@@ -43,8 +46,14 @@ public class XMLSecurityConstants {
     public static final XMLOutputFactory xmlOutputFactoryNonRepairingNs;
 
     private static final SecureRandom SECURE_RANDOM;
+    private static final int UNMARSHALLER_POOL_SIZE =
+        AccessController.doPrivileged(
+            (PrivilegedAction<Integer>) () -> Integer.getInteger("org.apache.xml.security.jaxb.pool-size", 20));
+
     private static JAXBContext jaxbContext;
     private static Schema schema;
+    private static volatile UnmarshallerPool validatingUnmarshallerPool;
+    private static volatile UnmarshallerPool nonValidatingUnmarshallerPool;
 
     static {
         try {
@@ -88,22 +97,37 @@ public class XMLSecurityConstants {
 
     public static synchronized void setJaxbContext(JAXBContext jaxbContext) {
         XMLSecurityConstants.jaxbContext = jaxbContext;
+        resetUnmarshallerPools();
     }
 
     public static synchronized void setJaxbSchemas(Schema schema) {
         XMLSecurityConstants.schema = schema;
+        resetUnmarshallerPools();
     }
 
     public static synchronized Schema getJaxbSchemas() {
         return XMLSecurityConstants.schema;
     }
 
+    private static void resetUnmarshallerPools() {
+        validatingUnmarshallerPool = new UnmarshallerPool(jaxbContext, schema, UNMARSHALLER_POOL_SIZE);
+        nonValidatingUnmarshallerPool = new UnmarshallerPool(jaxbContext, null, UNMARSHALLER_POOL_SIZE);
+    }
+
+    /**
+     * Returns the pool of Unmarshallers for the given schema validation setting. The pools are
+     * replaced when the JAXBContext or the Schema is changed.
+     */
+    public static UnmarshallerPool getJaxbUnmarshallerPool(boolean disableSchemaValidation) {
+        return disableSchemaValidation ? nonValidatingUnmarshallerPool : validatingUnmarshallerPool;
+    }
+
+    /**
+     * Returns an Unmarshaller borrowed from the pool. Callers which want to give it back after use
+     * should borrow it directly from {@link #getJaxbUnmarshallerPool(boolean)}.
+     */
     public static Unmarshaller getJaxbUnmarshaller(boolean disableSchemaValidation) throws JAXBException {
-        Unmarshaller unmarshaller = jaxbContext.createUnmarshaller();
-        if (!disableSchemaValidation) {
-            unmarshaller.setSchema(schema);
-        }
-        return unmarshaller;
+        return getJaxbUnmarshallerPool(disableSchemaValidation).borrow();
     }
 
     public enum Phase {
@@ -144,6 +168,10 @@ public class XMLSecurityConstants {
 
     public static final QName TAG_xenc11_MGF = new QName(NS_XMLENC11, "MGF", PREFIX_XENC11);
 
+    public static final String NS_SXENC = "http://santuario.apache.org/xmlenc#";
+    public static final String PREFIX_SXENC = "sxenc";
+    public static final QName TAG_sxenc_SegmentSize = new QName(NS_SXENC, "SegmentSize", PREFIX_SXENC);
+
     public static final String PREFIX_DSIG = "dsig";
     public static final String PREFIX_DSIG_MORE_PSS = "pss";
     public static final QName TAG_dsig_KeyInfo = new QName(NS_DSIG, "KeyInfo", PREFIX_DSIG);
@@ -256,6 +284,7 @@ public class XMLSecurityConstants {
     public static final String PROP_USE_THIS_TOKEN_ID_FOR_SIGNATURE = "PROP_USE_THIS_TOKEN_ID_FOR_SIGNATURE";
     public static final String PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION = "PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTION";
     public static final String PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY = "PROP_USE_THIS_TOKEN_ID_FOR_ENCRYPTED_KEY";
+    public static final String PROP_TWO_PASS_SIGNATURE = "PROP_TWO_PASS_SIGNATURE";
 
     public static final String SIGNATURE_PARTS = "signatureParts";
     public static final String ENCRYPTION_PARTS = "encryptionParts";
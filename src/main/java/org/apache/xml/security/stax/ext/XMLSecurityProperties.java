@@ -18,12 +18,14 @@
  */
 package org.apache.xml.security.stax.ext;
 
+import org.apache.xml.security.stax.impl.util.DirectBufferPool;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 
 import java.security.Key;
 import java.security.cert.X509Certificate;
 import java.security.spec.AlgorithmParameterSpec;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 import javax.xml.namespace.QName;
 
@@ -43,6 +45,8 @@ public class XMLSecurityProperties {
 
     private X509Certificate encryptionUseThisCertificate;
     private String encryptionSymAlgorithm;
+    private int encryptionSegmentSize;
+    private Executor encryptionSegmentExecutor;
     private String encryptionKeyTransportAlgorithm;
     private String encryptionKeyTransportDigestAlgorithm;
     private String encryptionKeyTransportMGFAlgorithm;
@@ -54,6 +58,15 @@ public class XMLSecurityProperties {
     private String encryptionKeyName;
 
     private Key decryptionKey;
+    private Executor decryptionExecutor;
+    private boolean decryptionInSameThread;
+    private long bufferSpillThreshold = -1;
+    private int directBufferPoolSize;
+    private DirectBufferPool directBufferPool;
+    private boolean compactEventBuffer;
+    private long eventBufferSpillThreshold = -1;
+    private int processorPoolSize = 8;
+    private XMLStreamFactorySupplier xmlStreamFactorySupplier = DefaultXMLStreamFactorySupplier.INSTANCE;
 
     private final List<SecurePart> signatureParts = new LinkedList<>();
     private String signatureAlgorithm;
@@ -67,6 +80,8 @@ public class XMLSecurityProperties {
     private boolean useSingleCert = true;
 
     private Key signatureVerificationKey;
+    private Executor externalReferenceExecutor;
+    private boolean verifyExternalReferencesEagerly;
 
     private int signaturePosition;
 
@@ -91,6 +106,8 @@ public class XMLSecurityProperties {
         this.actions = xmlSecurityProperties.actions;
         this.encryptionUseThisCertificate = xmlSecurityProperties.encryptionUseThisCertificate;
         this.encryptionSymAlgorithm = xmlSecurityProperties.encryptionSymAlgorithm;
+        this.encryptionSegmentSize = xmlSecurityProperties.encryptionSegmentSize;
+        this.encryptionSegmentExecutor = xmlSecurityProperties.encryptionSegmentExecutor;
         this.encryptionKeyTransportAlgorithm = xmlSecurityProperties.encryptionKeyTransportAlgorithm;
         this.encryptionKeyTransportDigestAlgorithm = xmlSecurityProperties.encryptionKeyTransportDigestAlgorithm;
         this.encryptionKeyTransportMGFAlgorithm = xmlSecurityProperties.encryptionKeyTransportMGFAlgorithm;
@@ -100,6 +117,16 @@ public class XMLSecurityProperties {
         this.encryptionTransportKey = xmlSecurityProperties.encryptionTransportKey;
         this.encryptionKeyIdentifier = xmlSecurityProperties.encryptionKeyIdentifier;
         this.decryptionKey = xmlSecurityProperties.decryptionKey;
+        this.decryptionExecutor = xmlSecurityProperties.decryptionExecutor;
+        this.decryptionInSameThread = xmlSecurityProperties.decryptionInSameThread;
+        this.bufferSpillThreshold = xmlSecurityProperties.bufferSpillThreshold;
+        this.directBufferPoolSize = xmlSecurityProperties.directBufferPoolSize;
+        //share the pool with the original instead of creating one per copy
+        this.directBufferPool = xmlSecurityProperties.getDirectBufferPool();
+        this.compactEventBuffer = xmlSecurityProperties.compactEventBuffer;
+        this.eventBufferSpillThreshold = xmlSecurityProperties.eventBufferSpillThreshold;
+        this.processorPoolSize = xmlSecurityProperties.processorPoolSize;
+        this.xmlStreamFactorySupplier = xmlSecurityProperties.xmlStreamFactorySupplier;
         this.signatureParts.addAll(xmlSecurityProperties.signatureParts);
         this.signatureAlgorithm = xmlSecurityProperties.signatureAlgorithm;
         this.signatureDigestAlgorithm = xmlSecurityProperties.signatureDigestAlgorithm;
@@ -110,6 +137,8 @@ public class XMLSecurityProperties {
         this.signatureKeyIdentifiers.addAll(xmlSecurityProperties.signatureKeyIdentifiers);
         this.useSingleCert = xmlSecurityProperties.useSingleCert;
         this.signatureVerificationKey = xmlSecurityProperties.signatureVerificationKey;
+        this.externalReferenceExecutor = xmlSecurityProperties.externalReferenceExecutor;
+        this.verifyExternalReferencesEagerly = xmlSecurityProperties.verifyExternalReferencesEagerly;
         this.signaturePosition = xmlSecurityProperties.signaturePosition;
         this.idAttributeNS = xmlSecurityProperties.idAttributeNS;
         this.signatureKeyName = xmlSecurityProperties.signatureKeyName;
@@ -233,6 +262,159 @@ public class XMLSecurityProperties {
         return decryptionKey;
     }
 
+    /**
+     * Returns the Executor which runs the streaming decryption of EncryptedData structures
+     *
+     * @return the configured Executor or null if the default one is used
+     */
+    public Executor getDecryptionExecutor() {
+        return decryptionExecutor;
+    }
+
+    /**
+     * Sets the Executor which runs the streaming decryption of EncryptedData structures.
+     * Nested EncryptedData structures are decrypted in the reading thread, and so is an
+     * EncryptedData whose task the Executor rejects. When not set,
+     * {@link org.apache.xml.security.utils.ExecutorUtils#getDefaultExecutor()} is used.
+     *
+     * @param decryptionExecutor the Executor to use or null to use the default one
+     */
+    public void setDecryptionExecutor(Executor decryptionExecutor) {
+        this.decryptionExecutor = decryptionExecutor;
+    }
+
+    public boolean isDecryptionInSameThread() {
+        return decryptionInSameThread;
+    }
+
+    /**
+     * Specifies whether EncryptedData structures are decrypted on demand by the thread which reads
+     * the decrypted events, instead of in a separate task which streams the plaintext to the reader.
+     * This avoids the thread hand-off, which dominates for small encrypted parts.
+     *
+     * @param decryptionInSameThread set to true to decrypt in the reading thread, false (default)
+     *                               to use the decryption executor
+     */
+    public void setDecryptionInSameThread(boolean decryptionInSameThread) {
+        this.decryptionInSameThread = decryptionInSameThread;
+    }
+
+    public long getBufferSpillThreshold() {
+        return bufferSpillThreshold;
+    }
+
+    /**
+     * Specifies the number of bytes an internal buffer, which has to hold a whole encrypted part
+     * (e.g. the plaintext of an AES-GCM encrypted element until it is authenticated), keeps in memory.
+     * Beyond that the data is moved to a temporary file, encrypted with an ephemeral key.
+     *
+     * @param bufferSpillThreshold the threshold in bytes, or a negative value (default) to keep all data in memory
+     */
+    public void setBufferSpillThreshold(long bufferSpillThreshold) {
+        this.bufferSpillThreshold = bufferSpillThreshold;
+    }
+
+    public int getDirectBufferPoolSize() {
+        return directBufferPoolSize;
+    }
+
+    /**
+     * Specifies the number of reusable direct (off-heap) buffers of
+     * {@link DirectBufferPool#DEFAULT_BUFFER_SIZE} bytes which back the internal buffers
+     * instead of byte arrays on the heap. The pool is created on first use, and is shared by
+     * all copies of these properties.
+     *
+     * @param directBufferPoolSize the number of pooled buffers, or 0 (default) to buffer on the heap
+     */
+    public synchronized void setDirectBufferPoolSize(int directBufferPoolSize) {
+        if (this.directBufferPoolSize != directBufferPoolSize) {
+            this.directBufferPoolSize = directBufferPoolSize;
+            this.directBufferPool = null;
+        }
+    }
+
+    /**
+     * @return the pool of direct buffers, or null if the internal buffers use the heap
+     */
+    public synchronized DirectBufferPool getDirectBufferPool() {
+        if (directBufferPool == null && directBufferPoolSize > 0) {
+            directBufferPool = new DirectBufferPool(directBufferPoolSize);
+        }
+        return directBufferPool;
+    }
+
+    /**
+     * Specifies the pool of direct buffers which back the internal buffers, e.g. to share one
+     * pool between several configurations. This overrides {@link #setDirectBufferPoolSize(int)}.
+     *
+     * @param directBufferPool the pool of direct buffers, or null to buffer on the heap
+     */
+    public synchronized void setDirectBufferPool(DirectBufferPool directBufferPool) {
+        this.directBufferPool = directBufferPool;
+        this.directBufferPoolSize = 0;
+    }
+
+    public boolean isCompactEventBuffer() {
+        return compactEventBuffer;
+    }
+
+    /**
+     * Specifies whether the outbound processors which have to hold back the document until the
+     * Signature or the EncryptedKey can be written (e.g. a Signature placed after the root element)
+     * buffer the events binary encoded instead of as event objects. The encoded events take a
+     * fraction of the memory and are backed by the direct buffer pool if one is configured.
+     *
+     * @param compactEventBuffer set to true to encode the buffered events, false (default) to keep the objects
+     */
+    public void setCompactEventBuffer(boolean compactEventBuffer) {
+        this.compactEventBuffer = compactEventBuffer;
+    }
+
+    public long getEventBufferSpillThreshold() {
+        return eventBufferSpillThreshold;
+    }
+
+    /**
+     * Specifies the number of bytes of encoded events a compact event buffer keeps in memory.
+     * Beyond that the events are moved to a temporary file, encrypted with an ephemeral key.
+     *
+     * @param eventBufferSpillThreshold the threshold in bytes, or a negative value (default) to keep all
+     *                                  events in memory
+     * @see #setCompactEventBuffer(boolean)
+     */
+    public void setEventBufferSpillThreshold(long eventBufferSpillThreshold) {
+        this.eventBufferSpillThreshold = eventBufferSpillThreshold;
+    }
+
+    public int getProcessorPoolSize() {
+        return processorPoolSize;
+    }
+
+    /**
+     * Specifies how many idle security processors an InboundXMLSec or OutboundXMLSec instance keeps
+     * for reuse. A processor is reset and returned to the pool when the stream of its message was
+     * closed successfully.
+     *
+     * @param processorPoolSize the maximum number of idle processors per action (default 8), 0 disables the reuse
+     */
+    public void setProcessorPoolSize(int processorPoolSize) {
+        this.processorPoolSize = processorPoolSize;
+    }
+
+    public XMLStreamFactorySupplier getXMLStreamFactorySupplier() {
+        return xmlStreamFactorySupplier;
+    }
+
+    /**
+     * Specifies the supplier of the StAX factories for the readers and writers which are created
+     * internally, e.g. to plug in a faster parser configuration. The factories are shared by all messages.
+     *
+     * @param xmlStreamFactorySupplier the supplier to use, the default is {@link DefaultXMLStreamFactorySupplier}
+     */
+    public void setXMLStreamFactorySupplier(XMLStreamFactorySupplier xmlStreamFactorySupplier) {
+        this.xmlStreamFactorySupplier = xmlStreamFactorySupplier;
+    }
+
     public void setEncryptionTransportKey(Key encryptionTransportKey) {
         this.encryptionTransportKey = encryptionTransportKey;
     }
@@ -285,6 +467,41 @@ public class XMLSecurityProperties {
         this.encryptionSymAlgorithm = encryptionSymAlgorithm;
     }
 
+    /**
+     * Returns the segment size used for segmented AES-GCM encryption
+     *
+     * @return the plaintext size of a segment, or 0 if segmentation is disabled
+     */
+    public int getEncryptionSegmentSize() {
+        return encryptionSegmentSize;
+    }
+
+    /**
+     * Enables segmented AES-GCM encryption, where every segment of the given size is
+     * authenticated on its own so that it can be verified and released incrementally
+     * on decryption. Requires an AES-GCM encryption algorithm.
+     *
+     * @param encryptionSegmentSize the plaintext size of a segment, or 0 (default) to disable segmentation
+     */
+    public void setEncryptionSegmentSize(int encryptionSegmentSize) {
+        this.encryptionSegmentSize = encryptionSegmentSize;
+    }
+
+    public Executor getEncryptionSegmentExecutor() {
+        return encryptionSegmentExecutor;
+    }
+
+    /**
+     * Specifies the Executor on which the segments of segmented AES-GCM encryption are encrypted
+     * concurrently, see {@link #setEncryptionSegmentSize(int)}.
+     *
+     * @param encryptionSegmentExecutor the Executor to use, or null (default) to encrypt the segments
+     *                                  in the writing thread
+     */
+    public void setEncryptionSegmentExecutor(Executor encryptionSegmentExecutor) {
+        this.encryptionSegmentExecutor = encryptionSegmentExecutor;
+    }
+
     /**
      * Returns the encryption key transport algorithm
      *
@@ -433,6 +650,46 @@ public class XMLSecurityProperties {
         this.signatureVerificationKey = signatureVerificationKey;
     }
 
+    /**
+     * Returns the Executor which fetches and digests the external references of a signature
+     *
+     * @return the configured Executor or null if the references are verified sequentially
+     */
+    public Executor getExternalReferenceExecutor() {
+        return externalReferenceExecutor;
+    }
+
+    /**
+     * Specifies an Executor on which the external (not same-document) references of a signature
+     * are fetched and digested concurrently. The digests are still compared and the security
+     * events are still fired in the thread processing the document. References the Executor rejects
+     * are verified at the end of the document. Processors which override
+     * <code>verifyExternalReference</code> always verify the references sequentially.
+     *
+     * @param externalReferenceExecutor the Executor to use or null (default) to verify the references
+     *                                  sequentially at the end of the document
+     */
+    public void setExternalReferenceExecutor(Executor externalReferenceExecutor) {
+        this.externalReferenceExecutor = externalReferenceExecutor;
+    }
+
+    public boolean isVerifyExternalReferencesEagerly() {
+        return verifyExternalReferencesEagerly;
+    }
+
+    /**
+     * Specifies whether the verification of the external references starts as soon as the SignedInfo
+     * is processed instead of at the end of the document, overlapping with the streaming of the document.
+     * {@link org.apache.xml.security.utils.ExecutorUtils#getDefaultIOExecutor()} is used when no
+     * external reference Executor is configured.
+     *
+     * @param verifyExternalReferencesEagerly set to true to start the verification early, false (default)
+     *                                        to start it at the end of the document
+     */
+    public void setVerifyExternalReferencesEagerly(boolean verifyExternalReferencesEagerly) {
+        this.verifyExternalReferencesEagerly = verifyExternalReferencesEagerly;
+    }
+
     /**
      * Returns if the framework is skipping document-events
      *
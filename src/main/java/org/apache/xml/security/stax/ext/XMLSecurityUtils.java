@@ -46,12 +46,15 @@ import javax.xml.transform.stream.StreamSource;
 import javax.xml.validation.Schema;
 import javax.xml.validation.SchemaFactory;
 
+import org.w3c.dom.Element;
 import org.w3c.dom.ls.LSInput;
 import org.w3c.dom.ls.LSResourceResolver;
 import org.xml.sax.SAXException;
 
 import org.apache.xml.security.algorithms.JCEMapper;
 import org.apache.xml.security.algorithms.implementations.ECDSAUtils;
+import org.apache.xml.security.binding.xmlenc.EncryptionMethodType;
+import org.apache.xml.security.encryption.SegmentedGCMCipher;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.keys.content.x509.XMLX509SKI;
 import org.apache.xml.security.stax.config.TransformerAlgorithmMapper;
@@ -132,24 +135,14 @@ public class XMLSecurityUtils {
             Transformer transformer, OutputStream outputStream, Map<String, Object> properties, String algorithm,
             XMLSecurityConstants.DIRECTION direction) throws XMLSecurityException {
 
-        @SuppressWarnings("unchecked")
-        Class<Transformer> transformerClass = (Class<Transformer>) TransformerAlgorithmMapper.getTransformerClass(algorithm, direction);
-        Transformer childTransformer = null;
-
-        try {
-            childTransformer = transformerClass.newInstance();
-            if (properties != null) {
-                childTransformer.setProperties(properties);
-            }
-            if (outputStream != null) {
-                childTransformer.setOutputStream(outputStream);
-            } else {
-                childTransformer.setTransformer(transformer);
-            }
-        } catch (InstantiationException e) {
-            throw new XMLSecurityException(e);
-        } catch (IllegalAccessException e) {
-            throw new XMLSecurityException(e);
+        Transformer childTransformer = TransformerAlgorithmMapper.newTransformer(algorithm, direction);
+        if (properties != null) {
+            childTransformer.setProperties(properties);
+        }
+        if (outputStream != null) {
+            childTransformer.setOutputStream(outputStream);
+        } else {
+            childTransformer.setTransformer(transformer);
         }
         return childTransformer;
     }
@@ -186,6 +179,35 @@ public class XMLSecurityUtils {
         return attributes.get(qName);
     }
 
+    /**
+     * Returns the segment size of segmented AES-GCM encryption as recorded in the
+     * sxenc:SegmentSize child of the EncryptionMethod, or 0 when the data is not segmented.
+     */
+    public static int getEncryptionSegmentSize(EncryptionMethodType encryptionMethodType) throws XMLSecurityException {
+        if (encryptionMethodType == null) {
+            return 0;
+        }
+        List<Object> content = encryptionMethodType.getContent();
+        for (int i = 0; i < content.size(); i++) {
+            Object o = content.get(i);
+            if (o instanceof Element) {
+                Element element = (Element) o;
+                if (XMLSecurityConstants.TAG_sxenc_SegmentSize.getNamespaceURI().equals(element.getNamespaceURI())
+                    && XMLSecurityConstants.TAG_sxenc_SegmentSize.getLocalPart().equals(element.getLocalName())) {
+                    int segmentSize;
+                    try {
+                        segmentSize = Integer.parseInt(element.getTextContent().trim());
+                    } catch (NumberFormatException e) {
+                        throw new XMLSecurityException(e);
+                    }
+                    SegmentedGCMCipher.checkSegmentSize(segmentSize);
+                    return segmentSize;
+                }
+            }
+        }
+        return 0;
+    }
+
     public static void createKeyValueTokenStructure(AbstractOutputProcessor abstractOutputProcessor,
                                                     OutputProcessorChain outputProcessorChain, X509Certificate[] x509Certificates)
             throws XMLStreamException, XMLSecurityException {
@@ -555,7 +577,8 @@ public class XMLSecurityUtils {
                         new StreamSource(ClassLoaderUtils.getResourceAsStream("bindings/schemas/xenc-schema.xsd", XMLSecurityConstants.class)),
                         new StreamSource(ClassLoaderUtils.getResourceAsStream("bindings/schemas/xenc-schema-11.xsd", XMLSecurityConstants.class)),
                         new StreamSource(ClassLoaderUtils.getResourceAsStream("bindings/schemas/xmldsig11-schema.xsd", XMLSecurityConstants.class)),
-                        new StreamSource(ClassLoaderUtils.getResourceAsStream("bindings/schemas/rsa-pss.xsd", XMLSecurityConstants.class))
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("bindings/schemas/rsa-pss.xsd", XMLSecurityConstants.class)),
+                        new StreamSource(ClassLoaderUtils.getResourceAsStream("bindings/schemas/santuario-xenc.xsd", XMLSecurityConstants.class))
                 }
                 );
         return schema;
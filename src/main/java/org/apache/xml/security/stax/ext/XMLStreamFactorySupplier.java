@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.ext;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+
+/**
+ * Supplies the StAX factories which are used for all the readers and writers the library creates
+ * itself, e.g. for decrypted content, the SignedInfo element, the final output and the cleartext
+ * of encrypted parts. The factories are shared by all messages, so an implementation should return
+ * preconfigured, cached instances.
+ * <p>
+ * Warning: an XMLInputFactory must be configured securely, at minimum with DTD support and
+ * external entities disabled.
+ *
+ * @see DefaultXMLStreamFactorySupplier
+ */
+public interface XMLStreamFactorySupplier {
+
+    /**
+     * @return the XMLInputFactory to create XMLStreamReaders with
+     */
+    XMLInputFactory getXMLInputFactory();
+
+    /**
+     * @param repairingNamespaces whether the writers must repair the namespaces
+     * @return the XMLOutputFactory to create XMLStreamWriters with
+     */
+    XMLOutputFactory getXMLOutputFactory(boolean repairingNamespaces);
+}
@@ -50,6 +50,29 @@ public final class XMLSecEventFactory {
     }
 
     public static XMLSecEvent allocate(XMLStreamReader xmlStreamReader, XMLSecStartElement parentXMLSecStartElement) throws XMLStreamException {
+        return allocate(xmlStreamReader, parentXMLSecStartElement, null);
+    }
+
+    /**
+     * Creates the XMLSecEvent for the current event of the reader.
+     *
+     * @param symbolTable the symbol table of the stream to intern the names and namespaces, or null
+     */
+    public static XMLSecEvent allocate(XMLStreamReader xmlStreamReader, XMLSecStartElement parentXMLSecStartElement,
+                                       XMLSecSymbolTable symbolTable) throws XMLStreamException {
+        if (symbolTable != null) {
+            switch (xmlStreamReader.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    return allocateStartElement(xmlStreamReader, parentXMLSecStartElement, symbolTable);
+                case XMLStreamConstants.END_ELEMENT:
+                    return new XMLSecEndElementImpl(
+                        symbolTable.getQName(xmlStreamReader.getNamespaceURI(), xmlStreamReader.getLocalName(),
+                                             xmlStreamReader.getPrefix()),
+                        parentXMLSecStartElement);
+                default:
+                    break;
+            }
+        }
         switch (xmlStreamReader.getEventType()) {
             case XMLStreamConstants.START_ELEMENT: {
                 List<XMLSecAttribute> comparableAttributes = null;
@@ -107,6 +130,39 @@ public final class XMLSecEventFactory {
         throw new IllegalArgumentException("Unknown XML event occurred");
     }
 
+    private static XMLSecStartElement allocateStartElement(XMLStreamReader xmlStreamReader,
+                                                           XMLSecStartElement parentXMLSecStartElement,
+                                                           XMLSecSymbolTable symbolTable) {
+        List<XMLSecAttribute> comparableAttributes = null;
+        final int attributeCount = xmlStreamReader.getAttributeCount();
+        if (attributeCount > 0) {
+            comparableAttributes = new ArrayList<>(attributeCount);
+            for (int i = 0; i < attributeCount; i++) {
+                final String attributeNamespaceURI = xmlStreamReader.getAttributeNamespace(i);
+                final String attributePrefix = xmlStreamReader.getAttributePrefix(i);
+                comparableAttributes.add(new XMLSecAttributeImpl(
+                    symbolTable.getQName(attributeNamespaceURI, xmlStreamReader.getAttributeLocalName(i), attributePrefix),
+                    symbolTable.getNamespace(attributePrefix, attributeNamespaceURI),
+                    xmlStreamReader.getAttributeValue(i)));
+            }
+        }
+
+        List<XMLSecNamespace> comparableNamespaces = null;
+        final int namespaceCount = xmlStreamReader.getNamespaceCount();
+        if (namespaceCount > 0) {
+            comparableNamespaces = new ArrayList<>(namespaceCount);
+            for (int i = 0; i < namespaceCount; i++) {
+                comparableNamespaces.add(
+                    symbolTable.getNamespace(xmlStreamReader.getNamespacePrefix(i), xmlStreamReader.getNamespaceURI(i)));
+            }
+        }
+        final String namespaceURI = xmlStreamReader.getNamespaceURI();
+        final String prefix = xmlStreamReader.getPrefix();
+        return new XMLSecStartElementImpl(symbolTable.getQName(namespaceURI, xmlStreamReader.getLocalName(), prefix),
+                                          symbolTable.getNamespace(prefix, namespaceURI),
+                                          comparableAttributes, comparableNamespaces, parentXMLSecStartElement);
+    }
+
     public static XMLSecStartElement createXmlSecStartElement(QName name, List<XMLSecAttribute> attributes, List<XMLSecNamespace> namespaces) {
         return new XMLSecStartElementImpl(name, attributes, namespaces);
     }
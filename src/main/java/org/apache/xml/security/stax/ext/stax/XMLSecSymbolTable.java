@@ -0,0 +1,131 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.ext.stax;
+
+import javax.xml.namespace.QName;
+
+import org.apache.xml.security.stax.impl.stax.XMLSecNamespaceImpl;
+
+/**
+ * A symbol table for the events of one stream. Element and attribute names and namespace
+ * bindings are interned, so that the same QName and XMLSecNamespace instances are shared by all
+ * events of the stream and compare by identity in the common case.
+ * <p>
+ * The lookups don't allocate key objects. The table is bounded: names beyond the limit are still
+ * returned, just not interned, so a document with many distinct names can't grow it without limit.
+ * Not thread-safe, a table must only be used by the thread reading the stream.
+ */
+public final class XMLSecSymbolTable {
+
+    private static final int MAX_ENTRIES = 1024;
+
+    private QName[] qNames = new QName[64];
+    private int qNameCount;
+    private XMLSecNamespace[] namespaces = new XMLSecNamespace[32];
+    private int namespaceCount;
+
+    /**
+     * Returns the interned QName for the given namespace URI, local name and prefix.
+     * Null namespace URIs and prefixes are treated as empty.
+     */
+    public QName getQName(String namespaceURI, String localName, String prefix) {
+        final String uri = namespaceURI == null ? "" : namespaceURI;
+        final String prefixToUse = prefix == null ? "" : prefix;
+        final QName[] table = qNames;
+        final int mask = table.length - 1;
+        int idx = hash(localName, uri, prefixToUse) & mask;
+        QName qName;
+        while ((qName = table[idx]) != null) {
+            if (qName.getLocalPart().equals(localName) && qName.getNamespaceURI().equals(uri)
+                && qName.getPrefix().equals(prefixToUse)) {
+                return qName;
+            }
+            idx = (idx + 1) & mask;
+        }
+        qName = new QName(uri, localName, prefixToUse);
+        if (qNameCount < MAX_ENTRIES) {
+            table[idx] = qName;
+            if (++qNameCount * 2 > table.length) {
+                qNames = rehash(table, new QName[table.length * 2]);
+            }
+        }
+        return qName;
+    }
+
+    /**
+     * Returns the interned namespace binding of the given prefix and URI.
+     * Null prefixes and URIs are treated as empty.
+     */
+    public XMLSecNamespace getNamespace(String prefix, String namespaceURI) {
+        final String uri = namespaceURI == null ? "" : namespaceURI;
+        final String prefixToUse = prefix == null ? "" : prefix;
+        final XMLSecNamespace[] table = namespaces;
+        final int mask = table.length - 1;
+        int idx = hash(prefixToUse, uri, "") & mask;
+        XMLSecNamespace namespace;
+        while ((namespace = table[idx]) != null) {
+            if (namespace.getPrefix().equals(prefixToUse) && namespace.getNamespaceURI().equals(uri)) {
+                return namespace;
+            }
+            idx = (idx + 1) & mask;
+        }
+        namespace = XMLSecNamespaceImpl.getInstance(prefixToUse, uri);
+        if (namespaceCount < MAX_ENTRIES) {
+            table[idx] = namespace;
+            if (++namespaceCount * 2 > table.length) {
+                namespaces = rehash(table, new XMLSecNamespace[table.length * 2]);
+            }
+        }
+        return namespace;
+    }
+
+    private static QName[] rehash(QName[] oldTable, QName[] newTable) {
+        final int mask = newTable.length - 1;
+        for (QName qName : oldTable) {
+            if (qName != null) {
+                int idx = hash(qName.getLocalPart(), qName.getNamespaceURI(), qName.getPrefix()) & mask;
+                while (newTable[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                newTable[idx] = qName;
+            }
+        }
+        return newTable;
+    }
+
+    private static XMLSecNamespace[] rehash(XMLSecNamespace[] oldTable, XMLSecNamespace[] newTable) {
+        final int mask = newTable.length - 1;
+        for (XMLSecNamespace namespace : oldTable) {
+            if (namespace != null) {
+                int idx = hash(namespace.getPrefix(), namespace.getNamespaceURI(), "") & mask;
+                while (newTable[idx] != null) {
+                    idx = (idx + 1) & mask;
+                }
+                newTable[idx] = namespace;
+            }
+        }
+        return newTable;
+    }
+
+    private static int hash(String first, String second, String third) {
+        //the String hash codes are cached, so this is cheap for the parser's (interned) names
+        int h = (first.hashCode() * 31 + second.hashCode()) * 31 + third.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
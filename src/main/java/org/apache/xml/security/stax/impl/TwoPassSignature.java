@@ -0,0 +1,79 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+
+/**
+ * TwoPassSignature holds what the first pass of a two-pass signature learns about the document:
+ * the Id attributes added to the signed elements, the position of the Signature and the Signature
+ * events themselves. The second pass replays them while the document is written.
+ * Events are counted from 1, in the order they enter the output processor chain.
+ */
+public class TwoPassSignature {
+
+    private final Map<Long, List<XMLSecAttribute>> addedAttributes = new HashMap<>();
+    private final List<XMLSecEvent> signatureEvents = new ArrayList<>();
+    private long signaturePosition = -1;
+
+    /**
+     * Records the attributes which were added to the start element with the given number.
+     */
+    public void addAttributes(long startElementNumber, List<XMLSecAttribute> attributes) {
+        List<XMLSecAttribute> attributeList = addedAttributes.get(startElementNumber);
+        if (attributeList == null) {
+            attributeList = new ArrayList<>(attributes.size());
+            addedAttributes.put(startElementNumber, attributeList);
+        }
+        attributeList.addAll(attributes);
+    }
+
+    /**
+     * @return the attributes to add to the start element with the given number, or null
+     */
+    public List<XMLSecAttribute> getAddedAttributes(long startElementNumber) {
+        return addedAttributes.get(startElementNumber);
+    }
+
+    public List<XMLSecEvent> getSignatureEvents() {
+        return Collections.unmodifiableList(signatureEvents);
+    }
+
+    public void addSignatureEvent(XMLSecEvent xmlSecEvent) {
+        signatureEvents.add(xmlSecEvent);
+    }
+
+    /**
+     * @return the number of the event after which the Signature is written, or -1 if unknown
+     */
+    public long getSignaturePosition() {
+        return signaturePosition;
+    }
+
+    public void setSignaturePosition(long signaturePosition) {
+        this.signaturePosition = signaturePosition;
+    }
+}
@@ -55,6 +55,7 @@ public class XMLSecurityStreamReader implements XMLStreamReader {
     private boolean standalone;
     private boolean standaloneSet;
     private String characterEncodingScheme;
+    private Runnable closeListener;
 
     private static final String ERR_STATE_NOT_ELEM = "Current state not START_ELEMENT or END_ELEMENT";
     private static final String ERR_STATE_NOT_STELEM = "Current state not START_ELEMENT";
@@ -65,6 +66,13 @@ public class XMLSecurityStreamReader implements XMLStreamReader {
         this.skipDocumentEvents = securityProperties.isSkipDocumentEvents();
     }
 
+    /**
+     * Sets a callback that is run once after close() finished the document successfully.
+     */
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
     @Override
     public Object getProperty(String name) throws IllegalArgumentException {
         if (XMLInputFactory.IS_NAMESPACE_AWARE.equals(name)) {
@@ -212,6 +220,11 @@ public class XMLSecurityStreamReader implements XMLStreamReader {
         } catch (XMLSecurityException e) {
             throw new XMLStreamException(e);
         }
+        if (closeListener != null) {
+            Runnable listener = closeListener;
+            closeListener = null;
+            listener.run();
+        }
     }
 
     @Override
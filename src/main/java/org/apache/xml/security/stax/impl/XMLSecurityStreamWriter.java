@@ -51,11 +51,19 @@ public class XMLSecurityStreamWriter implements XMLStreamWriter {
     private boolean haveToWriteEndElement = false;
     private SecurePart signEntireRequestPart;
     private SecurePart encryptEntireRequestPart;
+    private Runnable closeListener;
 
     public XMLSecurityStreamWriter(OutputProcessorChain outputProcessorChain) {
         this.outputProcessorChain = outputProcessorChain;
     }
 
+    /**
+     * Sets a callback that is run once after close() finished the document successfully.
+     */
+    public void setCloseListener(Runnable closeListener) {
+        this.closeListener = closeListener;
+    }
+
     private void chainProcessEvent(XMLSecEvent xmlSecEvent) throws XMLStreamException {
         try {
             outputProcessorChain.reset();
@@ -191,6 +199,11 @@ public class XMLSecurityStreamWriter implements XMLStreamWriter {
         } catch (XMLSecurityException e) {
             throw new XMLStreamException(e);
         }
+        if (closeListener != null) {
+            Runnable listener = closeListener;
+            closeListener = null;
+            listener.run();
+        }
     }
 
     @Override
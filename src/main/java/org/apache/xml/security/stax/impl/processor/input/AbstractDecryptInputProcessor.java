@@ -22,8 +22,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -37,6 +35,9 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -62,6 +63,8 @@ import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
 import org.apache.xml.security.binding.xmlenc.ReferenceList;
 import org.apache.xml.security.binding.xmlenc.ReferenceType;
 import org.apache.xml.security.binding.xop.Include;
+import org.apache.xml.security.encryption.SegmentedGCMCipher;
+import org.apache.xml.security.encryption.SegmentedGCMDecryptingInputStream;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.config.ConfigurationProperties;
 import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
@@ -77,17 +80,26 @@ import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
 import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.ext.stax.XMLSecSymbolTable;
 import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.apache.xml.security.stax.impl.util.DirectBufferPool;
 import org.apache.xml.security.stax.impl.util.FullyBufferedOutputStream;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.impl.util.IVSplittingOutputStream;
 import org.apache.xml.security.stax.impl.util.MultiInputStream;
 import org.apache.xml.security.stax.impl.util.ReplaceableOuputStream;
+import org.apache.xml.security.stax.impl.util.RingBuffer;
+import org.apache.xml.security.stax.impl.util.UnmarshallerPool;
+import org.apache.xml.security.stax.impl.util.XMLSecStructureBinder;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.CountingOutputStream;
+import org.apache.xml.security.utils.ExecutorUtils;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -235,7 +247,6 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                 handleSecurityToken(inboundSecurityToken, inputProcessorChain.getSecurityContext(), encryptedDataType);
 
                 final String algorithmURI = encryptedDataType.getEncryptionMethod().getAlgorithm();
-                final int ivLength = JCEAlgorithmMapper.getIVLengthFromURI(algorithmURI) / 8;
                 Cipher symCipher = getCipher(algorithmURI);
 
                 if (encryptedDataType.getCipherData().getCipherReference() != null) {
@@ -256,6 +267,10 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                                 inputProcessorChain.getSecurityContext()
                         );
 
+                //a nested EncryptedData is decrypted from the plaintext of another decryption task,
+                //so it must not wait for a free thread of a bounded executor
+                boolean nestedDecryption = inputProcessorChain.getDocumentContext().isInEncryptedContent();
+
                 //add the new created EventReader processor to the chain.
                 inputProcessorChain.addProcessor(decryptedEventReaderInputProcessor);
 
@@ -290,11 +305,13 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                         xmlSecEvents.push(nextEvent);
                         xmlSecEvents.push(XMLSecEventFactory.createXmlSecEndElement(XMLSecurityConstants.TAG_XOP_INCLUDE));
 
-                        Unmarshaller unmarshaller =
-                                XMLSecurityConstants.getJaxbUnmarshaller(getSecurityProperties().isDisableSchemaValidation());
+                        UnmarshallerPool unmarshallerPool =
+                                XMLSecurityConstants.getJaxbUnmarshallerPool(getSecurityProperties().isDisableSchemaValidation());
+                        Unmarshaller unmarshaller = unmarshallerPool.borrow();
                         @SuppressWarnings("unchecked")
                         JAXBElement<Include> includeJAXBElement =
                                 (JAXBElement<Include>) unmarshaller.unmarshal(new XMLSecurityEventReader(xmlSecEvents, 0));
+                        unmarshallerPool.release(unmarshaller);
                         Include include = includeJAXBElement.getValue();
                         String href = include.getHref();
 
@@ -304,30 +321,39 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                         throw new XMLSecurityException(e);
                     }
                 } else {
-                    //create a new Thread for streaming decryption
-                    DecryptionThread decryptionThread = new DecryptionThread(subInputProcessorChain, isSecurityHeaderEvent, nextEvent);
+                    //decrypt in a separate task which streams the plaintext to the StAX reader
+                    //or, if configured, on demand in this thread while the StAX reader consumes the plaintext
+                    boolean sameThread = getSecurityProperties().isDecryptionInSameThread() || nestedDecryption;
                     Key decryptionKey =
                         inboundSecurityToken.getSecretKey(algorithmURI, XMLSecurityConstants.Enc, encryptedDataType.getId());
                     decryptionKey = XMLSecurityUtils.prepareSecretKey(algorithmURI, decryptionKey.getEncoded());
-                    decryptionThread.setSecretKey(decryptionKey);
-                    decryptionThread.setSymmetricCipher(symCipher);
-                    decryptionThread.setIvLength(ivLength);
+                    DecryptionThread decryptionThread =
+                        newDecryptionThread(subInputProcessorChain, isSecurityHeaderEvent, nextEvent, sameThread,
+                                            decryptionKey, symCipher, encryptedDataType);
+
+                    if (!sameThread) {
+                        //we have to start the decryption before the StAX reader is created below.
+                        //Otherwise we will end in a deadlock, because the StAX reader expects already data.
+                        LOG.debug("Starting decryption thread");
+                        Executor executor = getSecurityProperties().getDecryptionExecutor();
+                        if (executor == null) {
+                            executor = ExecutorUtils.getDefaultExecutor();
+                        }
+                        try {
+                            executor.execute(decryptionThread);
+                        } catch (RejectedExecutionException e) {
+                            //the executor is saturated, so decrypt on demand in this thread instead
+                            LOG.debug("Decryption task rejected, decrypting in the reading thread");
+                            decryptionThread =
+                                newDecryptionThread(subInputProcessorChain, isSecurityHeaderEvent, nextEvent, true,
+                                                    decryptionKey, symCipher, encryptedDataType);
+                        }
+                    }
 
-                    Thread thread = new Thread(decryptionThread);
-                    thread.setPriority(Thread.NORM_PRIORITY + 1);
-                    thread.setName("decryption thread");
                     //when an exception in the decryption thread occurs, we want to forward them:
-                    thread.setUncaughtExceptionHandler(decryptedEventReaderInputProcessor);
+                    decryptedEventReaderInputProcessor.setDecryptionThread(decryptionThread);
 
-                    decryptedEventReaderInputProcessor.setDecryptionThread(thread);
-
-                    //we have to start the thread before we call decryptionThread.getPipedInputStream().
-                    //Otherwise we will end in a deadlock, because the StAX reader expects already data.
-                    //@See some lines below:
-                    LOG.debug("Starting decryption thread");
-                    thread.start();
-
-                    decryptInputStream = decryptionThread.getPipedInputStream();
+                    decryptInputStream = decryptionThread.getInputStream();
                 }
 
                 InputStream prologInputStream;
@@ -345,13 +371,21 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
 
                 //spec says (4.2): "The cleartext octet sequence obtained in step 3 is
                 //interpreted as UTF-8 encoded character data."
-                XMLStreamReader xmlStreamReader =
-                        inputProcessorChain.getSecurityContext().<XMLInputFactory>get(
-                                XMLSecurityConstants.XMLINPUTFACTORY).createXMLStreamReader(
-                                new MultiInputStream(prologInputStream, decryptInputStream, epilogInputStream), StandardCharsets.UTF_8.name());
-
-                //forward to wrapper element
-                forwardToWrapperElement(xmlStreamReader);
+                XMLStreamReader xmlStreamReader;
+                try {
+                    xmlStreamReader =
+                            inputProcessorChain.getSecurityContext().<XMLInputFactory>get(
+                                    XMLSecurityConstants.XMLINPUTFACTORY).createXMLStreamReader(
+                                    new MultiInputStream(prologInputStream, decryptInputStream, epilogInputStream), StandardCharsets.UTF_8.name());
+
+                    //forward to wrapper element
+                    forwardToWrapperElement(xmlStreamReader);
+                } catch (XMLStreamException e) {
+                    //the reader reads ahead, so a failed decryption can already show up here
+                    decryptedEventReaderInputProcessor.testAndThrowUncaughtException();
+                    decryptedEventReaderInputProcessor.cancelDecryption();
+                    throw e;
+                }
 
                 decryptedEventReaderInputProcessor.setXmlStreamReader(xmlStreamReader);
 
@@ -437,6 +471,35 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
         } while (xmlStreamReader.hasNext());
     }
 
+    private DecryptionThread newDecryptionThread(InputProcessorChain inputProcessorChain, boolean header,
+                                                 XMLSecEvent firstEvent, boolean sameThread, Key decryptionKey,
+                                                 Cipher symCipher, EncryptedDataType encryptedDataType)
+        throws XMLStreamException, XMLSecurityException {
+        String algorithmURI = encryptedDataType.getEncryptionMethod().getAlgorithm();
+        DecryptionThread decryptionThread = new DecryptionThread(inputProcessorChain, header, firstEvent, sameThread);
+        decryptionThread.setSecretKey(decryptionKey);
+        decryptionThread.setSymmetricCipher(symCipher);
+        decryptionThread.setAlgorithmURI(algorithmURI);
+        decryptionThread.setIvLength(JCEAlgorithmMapper.getIVLengthFromURI(algorithmURI) / 8);
+        decryptionThread.setSegmentSize(getSegmentSize(encryptedDataType));
+        decryptionThread.setBufferPool(getSecurityProperties().getDirectBufferPool());
+        decryptionThread.setBufferSpillThreshold(getSecurityProperties().getBufferSpillThreshold());
+        return decryptionThread;
+    }
+
+    /**
+     * Returns the segment size if the EncryptedData was encrypted with segmented AES-GCM, 0 otherwise.
+     * Subclasses handling CipherReferences or xop:Includes can use this to wrap the referenced
+     * cipher octets with a {@link SegmentedGCMDecryptingInputStream}.
+     */
+    protected int getSegmentSize(EncryptedDataType encryptedDataType) throws XMLSecurityException {
+        int segmentSize = XMLSecurityUtils.getEncryptionSegmentSize(encryptedDataType.getEncryptionMethod());
+        if (segmentSize > 0 && !SegmentedGCMCipher.isGCMAlgorithm(encryptedDataType.getEncryptionMethod().getAlgorithm())) {
+            throw new XMLSecurityException("stax.encryption.segmentationRequiresGCM");
+        }
+        return segmentSize;
+    }
+
     private Cipher getCipher(String algorithmURI) throws XMLSecurityException {
         Cipher symCipher;
         try {
@@ -485,10 +548,13 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
         }
 
         //retrieve the securityToken which must be used for decryption
-        return SecurityTokenFactory.getInstance().getSecurityToken(
+        long start = XMLSecurityMetrics.start();
+        InboundSecurityToken inboundSecurityToken = SecurityTokenFactory.getInstance().getSecurityToken(
                 keyInfoType, SecurityTokenConstants.KeyUsage_Decryption,
                 getSecurityProperties(),
                 inputProcessorChain.getSecurityContext());
+        XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
+        return inboundSecurityToken;
     }
 
     private EncryptedDataType parseEncryptedDataStructure(
@@ -537,12 +603,23 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
 
         EncryptedDataType encryptedDataType;
 
+        if (getSecurityProperties().isDisableSchemaValidation()) {
+            @SuppressWarnings("unchecked")
+            JAXBElement<EncryptedDataType> boundEncryptedDataType =
+                    (JAXBElement<EncryptedDataType>) XMLSecStructureBinder.bind(xmlSecEvents, 0);
+            if (boundEncryptedDataType != null) {
+                return boundEncryptedDataType.getValue();
+            }
+        }
+
         try {
-            Unmarshaller unmarshaller =
-                    XMLSecurityConstants.getJaxbUnmarshaller(getSecurityProperties().isDisableSchemaValidation());
+            UnmarshallerPool unmarshallerPool =
+                    XMLSecurityConstants.getJaxbUnmarshallerPool(getSecurityProperties().isDisableSchemaValidation());
+            Unmarshaller unmarshaller = unmarshallerPool.borrow();
             @SuppressWarnings("unchecked")
             JAXBElement<EncryptedDataType> encryptedDataTypeJAXBElement =
                     (JAXBElement<EncryptedDataType>) unmarshaller.unmarshal(new XMLSecurityEventReader(xmlSecEvents, 0));
+            unmarshallerPool.release(unmarshaller);
             encryptedDataType = encryptedDataTypeJAXBElement.getValue();
 
         } catch (JAXBException e) {
@@ -620,17 +697,17 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
      * The DecryptedEventReaderInputProcessor reads the decrypted stream with a StAX reader and
      * forwards the generated XMLEvents
      */
-    public abstract class AbstractDecryptedEventReaderInputProcessor
-            extends AbstractInputProcessor implements Thread.UncaughtExceptionHandler {
+    public abstract class AbstractDecryptedEventReaderInputProcessor extends AbstractInputProcessor {
 
         private int currentXMLStructureDepth;
         private XMLStreamReader xmlStreamReader;
+        private final XMLSecSymbolTable symbolTable = new XMLSecSymbolTable();
         private XMLSecStartElement parentXmlSecStartElement;
         private boolean encryptedHeader = false;
         private final InboundSecurityToken inboundSecurityToken;
         private boolean rootElementProcessed;
         private EncryptedDataType encryptedDataType;
-        private Thread decryptionThread;
+        private DecryptionThread decryptionThread;
 
         public AbstractDecryptedEventReaderInputProcessor(
                 XMLSecurityProperties securityProperties, SecurePart.Modifier encryptionModifier,
@@ -652,10 +729,17 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
             }
         }
 
-        public void setDecryptionThread(Thread decryptionThread) {
+        void setDecryptionThread(DecryptionThread decryptionThread) {
             this.decryptionThread = decryptionThread;
         }
 
+        void cancelDecryption() {
+            //nobody reads the plaintext anymore, so the decryption must not block its thread forever
+            if (decryptionThread != null) {
+                decryptionThread.cancel();
+            }
+        }
+
         public void setXmlStreamReader(XMLStreamReader xmlStreamReader) {
             this.xmlStreamReader = xmlStreamReader;
         }
@@ -674,10 +758,27 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
 
         private XMLSecEvent processEvent(InputProcessorChain inputProcessorChain, boolean headerEvent)
                 throws XMLStreamException, XMLSecurityException {
+            try {
+                return nextDecryptedEvent(inputProcessorChain, headerEvent);
+            } catch (XMLStreamException | XMLSecurityException | RuntimeException e) {
+                cancelDecryption();
+                throw e;
+            }
+        }
+
+        private XMLSecEvent nextDecryptedEvent(InputProcessorChain inputProcessorChain, boolean headerEvent)
+                throws XMLStreamException, XMLSecurityException {
             //did a execption occur during decryption in the decryption thread?
             testAndThrowUncaughtException();
 
-            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+            XMLSecEvent xmlSecEvent;
+            try {
+                xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement, symbolTable);
+            } catch (XMLStreamException e) {
+                //prefer the root cause when the decryption failed while the reader was waiting for data
+                testAndThrowUncaughtException();
+                throw e;
+            }
             //here we request the next XMLEvent from the decryption thread
             //instead from the processor-chain as we normally would do
             if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
@@ -735,19 +836,25 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                     }
 
                     if (decryptionThread != null) {
-                        //wait until the decryption thread dies...
+                        //wait until the decryption thread has finished...
                         try {
-                            decryptionThread.join();
+                            decryptionThread.awaitTermination();
                         } catch (InterruptedException e) {
                             throw new XMLStreamException(e);
                         }
                         //...and test again for an exception in the decryption thread.
                         testAndThrowUncaughtException();
+                        decryptionThread.destroySecretKey();
                     }
                     inputProcessorChain.removeProcessor(this);
                 }
             }
-            xmlStreamReader.next();
+            try {
+                xmlStreamReader.next();
+            } catch (XMLStreamException e) {
+                testAndThrowUncaughtException();
+                throw e;
+            }
             return xmlSecEvent;
         }
 
@@ -755,58 +862,134 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
                 InputProcessorChain inputProcessorChain, XMLSecStartElement xmlSecStartElement,
                 InboundSecurityToken inboundSecurityToken, EncryptedDataType encryptedDataType) throws XMLSecurityException;
 
-        private volatile Throwable thrownException;
-
-        @Override
-        public void uncaughtException(Thread t, Throwable e) {
-            this.thrownException = e;
-        }
-
         private void testAndThrowUncaughtException() throws XMLStreamException {
-            if (this.thrownException != null) {
-                if (this.thrownException instanceof UncheckedXMLSecurityException) {
-                    UncheckedXMLSecurityException uxse = (UncheckedXMLSecurityException) this.thrownException;
+            Throwable thrownException = decryptionThread != null ? decryptionThread.getThrownException() : null;
+            if (thrownException != null) {
+                if (thrownException instanceof UncheckedXMLSecurityException) {
+                    UncheckedXMLSecurityException uxse = (UncheckedXMLSecurityException) thrownException;
                     throw new XMLStreamException(uxse.getCause());
                 } else {
-                    throw new XMLStreamException(this.thrownException.getCause());
+                    throw new XMLStreamException(thrownException.getCause());
                 }
             }
         }
     }
 
     /**
-     * The DecryptionThread handles encrypted XML-Parts
+     * The DecryptionThread handles encrypted XML-Parts. Either it is submitted to an Executor and
+     * hands the plaintext over to the reading thread through a RingBuffer, or the reading thread
+     * drives it itself through the InputStream returned by {@link #getInputStream()}.
      */
     static class DecryptionThread implements Runnable {
 
         private final InputProcessorChain inputProcessorChain;
         private final boolean header;
-        private final PipedOutputStream pipedOutputStream;
-        private final PipedInputStream pipedInputStream;
+        private final RingBuffer ringBuffer;
+        private final PullInputStream pullInputStream;
+        private final OutputStream pipedOutputStream;
+        private final CountDownLatch finished = new CountDownLatch(1);
+        private volatile Throwable thrownException;
         private Cipher symmetricCipher;
+        private String algorithmURI;
         private int ivLength;
+        private int segmentSize;
+        private DirectBufferPool bufferPool;
+        private long bufferSpillThreshold = -1;
         private Key secretKey;
-        private final XMLSecEvent firstEvent;
+        private XMLSecEvent xmlSecEvent;
+        private OutputStreamWriter outputStreamWriter;
+        private CountingOutputStream cipherTextCounter;
+        private FullyBufferedOutputStream authenticationBuffer;
 
         protected DecryptionThread(InputProcessorChain inputProcessorChain,
                                    boolean header,
                                    XMLSecEvent firstEvent) throws XMLStreamException, XMLSecurityException {
+            this(inputProcessorChain, header, firstEvent, false);
+        }
+
+        /**
+         * @param sameThread true if the reading thread decrypts the data on demand instead of running
+         *                   this instance in a separate thread
+         */
+        protected DecryptionThread(InputProcessorChain inputProcessorChain,
+                                   boolean header,
+                                   XMLSecEvent firstEvent,
+                                   boolean sameThread) throws XMLStreamException, XMLSecurityException {
 
             this.inputProcessorChain = inputProcessorChain;
             this.header = header;
-            this.firstEvent = firstEvent;
+            this.xmlSecEvent = firstEvent;
 
-            //prepare the piped streams and connect them:
-            this.pipedInputStream = new PipedInputStream(8192 * 5);
-            try {
-                this.pipedOutputStream = new PipedOutputStream(pipedInputStream);
-            } catch (IOException e) {
-                throw new XMLStreamException(e);
+            if (sameThread) {
+                this.ringBuffer = null;
+                this.pullInputStream = new PullInputStream();
+                this.pipedOutputStream = pullInputStream.getBuffer();
+            } else {
+                this.ringBuffer = new RingBuffer(8192 * 5);
+                this.pullInputStream = null;
+                this.pipedOutputStream = ringBuffer.getOutputStream();
+            }
+        }
+
+        public InputStream getInputStream() throws XMLSecurityException {
+            InputStream inputStream = pullInputStream != null ? pullInputStream : ringBuffer.getInputStream();
+            if (getSegmentSize() > 0) {
+                //every segment is authenticated on its own, so the plaintext is released segment by segment
+                return new SegmentedGCMDecryptingInputStream(
+                    inputStream, getSymmetricCipher(), getSecretKey(), getSegmentSize());
+            }
+            return inputStream;
+        }
+
+        void destroySecretKey() {
+            if (secretKey instanceof Destroyable && !((Destroyable) secretKey).isDestroyed()) {
+                try {
+                    ((Destroyable)secretKey).destroy();
+                } catch (DestroyFailedException e) {
+                    LOG.debug("Error destroying key: {}", e.getMessage());
+                }
             }
         }
 
-        public PipedInputStream getPipedInputStream() {
-            return pipedInputStream;
+        /**
+         * Closes the reading end of the pipe, so that a running decryption terminates when the
+         * plaintext is not consumed anymore
+         */
+        void cancel() {
+            if (ringBuffer != null) {
+                try {
+                    ringBuffer.getInputStream().close();
+                } catch (IOException e) {
+                    LOG.debug("Error closing the decryption pipe: {}", e.getMessage());
+                }
+            } else {
+                //the decryption runs in the reading thread, so nobody else holds the buffer
+                discardAuthenticationBuffer();
+            }
+        }
+
+        /**
+         * Returns the pooled buffers of plaintext which was not authenticated when the decryption fails
+         */
+        private void discardAuthenticationBuffer() {
+            if (authenticationBuffer != null) {
+                try {
+                    authenticationBuffer.abort();
+                } catch (IOException e) {
+                    LOG.debug("Error discarding the buffered plaintext: {}", e.getMessage());
+                }
+            }
+        }
+
+        /**
+         * Waits until the decryption has finished, successfully or not
+         */
+        void awaitTermination() throws InterruptedException {
+            finished.await();
+        }
+
+        Throwable getThrownException() {
+            return thrownException;
         }
 
         private XMLSecEvent processNextEvent() throws XMLSecurityException, XMLStreamException {
@@ -820,95 +1003,171 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
 
         @Override
         public void run() {
-
             try {
-                final OutputStream outputStream;
+                while (decryptNextEvent()) { //NOPMD
+                    //decrypt until the end of the CipherValue
+                }
+            } catch (Exception e) {
+                LOG.debug("Decryption thread failed", e);
+                //remember the exception before the reader is woken up, so that it can be forwarded.
+                this.thrownException = new UncheckedXMLSecurityException(e);
+                discardAuthenticationBuffer();
+                //we have to terminate the stream when an exception occurs. Otherwise we can run into a deadlock
+                //when an exception occurs before we have written any byte to it.
+                this.ringBuffer.fail(e);
+            } finally {
+                finished.countDown();
+            }
+        }
 
+        /**
+         * Writes the cipher data of the current event to the decrypter-stream and reads the next event.
+         *
+         * @return false when the end of the cipher data has been reached and the decryption is finished
+         */
+        private boolean decryptNextEvent() throws XMLSecurityException, XMLStreamException, IOException {
+            if (outputStreamWriter == null) {
                 final Cipher cipher = getSymmetricCipher();
-                if (cipher.getAlgorithm().toUpperCase().contains("GCM")) {
-                    //we have to buffer the whole data until they are authenticated.
-                    //In GCM mode the authentication tag is appended after the last cipher block...
-                    outputStream = new FullyBufferedOutputStream(pipedOutputStream);
+                final OutputStream decryptOutputStream;
+                if (getSegmentSize() > 0) {
+                    //the cipher octets are decrypted segment by segment by the stream returned from getInputStream()
+                    decryptOutputStream = pipedOutputStream;
                 } else {
-                    outputStream = pipedOutputStream;
+                    decryptOutputStream = newCipherOutputStream(cipher);
                 }
-
-                final CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher) {
-                    //override close() to workaround a bug in oracle-jdk:
-                    //authentication failures when using AEAD ciphers are silently ignored...
-                    @Override
-                    public void close() throws IOException {
-                        super.flush();
-                        try {
-                            byte[] bytes = cipher.doFinal();
-                            outputStream.write(bytes);
-                            outputStream.close();
-                        } catch (IllegalBlockSizeException e) {
-                            throw new IOException(e);
-                        } catch (BadPaddingException e) {
-                            throw new IOException(e);
-                        }
-                    }
-                };
-                IVSplittingOutputStream ivSplittingOutputStream = new IVSplittingOutputStream(
-                        cipherOutputStream,
-                        cipher, getSecretKey(), getIvLength());
-                //buffering seems not to help
-                //bufferedOutputStream = new BufferedOutputStream(new Base64OutputStream(ivSplittingOutputStream, false), 8192 * 5);
-                ReplaceableOuputStream replaceableOuputStream = new ReplaceableOuputStream(ivSplittingOutputStream);
-                OutputStream base64OutputStream = new Base64OutputStream(replaceableOuputStream, false);
-                ivSplittingOutputStream.setParentOutputStream(replaceableOuputStream);
-                OutputStreamWriter outputStreamWriter =
+                OutputStream base64OutputStream;
+                if (XMLSecurityMetrics.isEnabled()) {
+                    cipherTextCounter = new CountingOutputStream(decryptOutputStream);
+                    base64OutputStream = new Base64OutputStream(cipherTextCounter, false);
+                } else {
+                    base64OutputStream = new Base64OutputStream(decryptOutputStream, false);
+                }
+                outputStreamWriter =
                         new OutputStreamWriter(base64OutputStream,
                                                Charset.forName(inputProcessorChain.getDocumentContext().getEncoding()));
+            }
 
-                //read the encrypted data from the stream until an end-element occurs and write then
-                //to the decrypter-stream
-                XMLSecEvent xmlSecEvent = firstEvent;
-                exitLoop:
-                do {
-                    switch (xmlSecEvent.getEventType()) {
-                        case XMLStreamConstants.END_ELEMENT:
-                            //this must be the CipherValue EndElement.
-                            break exitLoop;
-                        case XMLStreamConstants.CHARACTERS:
-                            final char[] data = xmlSecEvent.asCharacters().getText();
-                            outputStreamWriter.write(data);
-                            break;
-                        default:
-                            throw new XMLSecurityException(
-                                    "stax.unexpectedXMLEvent",
-                                    new Object[] {XMLSecurityUtils.getXMLEventAsString(xmlSecEvent)}
-                            );
+            //read the encrypted data from the stream until an end-element occurs and write then
+            //to the decrypter-stream
+            switch (xmlSecEvent.getEventType()) {
+                case XMLStreamConstants.END_ELEMENT:
+                    //this must be the CipherValue EndElement.
+                    //close to get Cipher.doFinal() called
+                    outputStreamWriter.close();
+                    XMLSecurityMetrics.recordStreamed(Operation.DECRYPTION, getAlgorithmURI(),
+                        cipherTextCounter != null ? cipherTextCounter.getCount() : -1L);
+
+                    // Clean the secret key from memory now that we're done with it. Segmented data
+                    // is still being decrypted by the reader, which destroys the key when it's done
+                    if (getSegmentSize() == 0) {
+                        destroySecretKey();
                     }
 
-                    xmlSecEvent = processNextEvent();
-                } while (true);
+                    LOG.debug("Decryption thread finished");
+                    return false;
+                case XMLStreamConstants.CHARACTERS:
+                    final char[] data = xmlSecEvent.asCharacters().getText();
+                    outputStreamWriter.write(data);
+                    break;
+                default:
+                    throw new XMLSecurityException(
+                            "stax.unexpectedXMLEvent",
+                            new Object[] {XMLSecurityUtils.getXMLEventAsString(xmlSecEvent)}
+                    );
+            }
+
+            xmlSecEvent = processNextEvent();
+            return true;
+        }
+
+        /**
+         * Decrypts on demand in the reading thread: every read pulls and decrypts further
+         * CipherValue events until plaintext is available or the cipher data is exhausted.
+         */
+        private class PullInputStream extends InputStream {
 
-                //close to get Cipher.doFinal() called
-                outputStreamWriter.close();
+            private final PlaintextBuffer buffer = new PlaintextBuffer();
+            private boolean done;
 
-                // Clean the secret key from memory now that we're done with it
-                if (secretKey instanceof Destroyable) {
+            PlaintextBuffer getBuffer() {
+                return buffer;
+            }
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int read = read(b, 0, 1);
+                return read == -1 ? -1 : b[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                while (buffer.available() == 0) {
+                    if (done) {
+                        return -1;
+                    }
                     try {
-                        ((Destroyable)secretKey).destroy();
-                    } catch (DestroyFailedException e) {
-                        LOG.debug("Error destroying key: {}", e.getMessage());
+                        done = !decryptNextEvent();
+                    } catch (Exception e) {
+                        done = true;
+                        thrownException = new UncheckedXMLSecurityException(e);
+                        discardAuthenticationBuffer();
+                        throw new IOException(e);
+                    } finally {
+                        if (done) {
+                            finished.countDown();
+                        }
                     }
                 }
+                return buffer.read(b, off, len);
+            }
 
-                LOG.debug("Decryption thread finished");
+            @Override
+            public int available() throws IOException {
+                return buffer.available();
+            }
+        }
 
-            } catch (Exception e) {
-                try {
-                    //we have to close the pipe when an exception occurs. Otherwise we can run into a deadlock when an exception occurs
-                    //before we have written any byte to the pipe.
-                    this.pipedOutputStream.close();
-                } catch (IOException e1) { //NOPMD
-                    //ignore since we will throw the original exception below
-                }
-                throw new UncheckedXMLSecurityException(e);
+        private OutputStream newCipherOutputStream(final Cipher cipher) {
+            final OutputStream outputStream;
+            if (cipher.getAlgorithm().toUpperCase().contains("GCM")) {
+                //we have to buffer the whole data until they are authenticated.
+                //In GCM mode the authentication tag is appended after the last cipher block...
+                authenticationBuffer =
+                    new FullyBufferedOutputStream(pipedOutputStream, getBufferPool(), getBufferSpillThreshold());
+                outputStream = authenticationBuffer;
+            } else {
+                outputStream = pipedOutputStream;
             }
+
+            final CipherOutputStream cipherOutputStream = new CipherOutputStream(outputStream, cipher) {
+                //override close() to workaround a bug in oracle-jdk:
+                //authentication failures when using AEAD ciphers are silently ignored...
+                @Override
+                public void close() throws IOException {
+                    super.flush();
+                    try {
+                        byte[] bytes = cipher.doFinal();
+                        outputStream.write(bytes);
+                        outputStream.close();
+                    } catch (IllegalBlockSizeException e) {
+                        throw new IOException(e);
+                    } catch (BadPaddingException e) {
+                        throw new IOException(e);
+                    }
+                }
+            };
+            IVSplittingOutputStream ivSplittingOutputStream = new IVSplittingOutputStream(
+                    cipherOutputStream,
+                    cipher, getSecretKey(), getIvLength());
+            //buffering seems not to help
+            //bufferedOutputStream = new BufferedOutputStream(new Base64OutputStream(ivSplittingOutputStream, false), 8192 * 5);
+            ReplaceableOuputStream replaceableOuputStream = new ReplaceableOuputStream(ivSplittingOutputStream);
+            ivSplittingOutputStream.setParentOutputStream(replaceableOuputStream);
+            return replaceableOuputStream;
         }
 
         protected Cipher getSymmetricCipher() {
@@ -919,6 +1178,14 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
             this.symmetricCipher = symmetricCipher;
         }
 
+        String getAlgorithmURI() {
+            return algorithmURI;
+        }
+
+        void setAlgorithmURI(String algorithmURI) {
+            this.algorithmURI = algorithmURI;
+        }
+
         int getIvLength() {
             return ivLength;
         }
@@ -927,6 +1194,30 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
             this.ivLength = ivLength;
         }
 
+        int getSegmentSize() {
+            return segmentSize;
+        }
+
+        void setSegmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+        }
+
+        DirectBufferPool getBufferPool() {
+            return bufferPool;
+        }
+
+        void setBufferPool(DirectBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+        }
+
+        long getBufferSpillThreshold() {
+            return bufferSpillThreshold;
+        }
+
+        void setBufferSpillThreshold(long bufferSpillThreshold) {
+            this.bufferSpillThreshold = bufferSpillThreshold;
+        }
+
         protected Key getSecretKey() {
             return secretKey;
         }
@@ -935,4 +1226,49 @@ public abstract class AbstractDecryptInputProcessor extends AbstractInputProcess
             this.secretKey = secretKey;
         }
     }
+
+    /**
+     * Holds the decrypted octets which were not read yet when decrypting in the reading thread
+     */
+    private static class PlaintextBuffer extends OutputStream {
+
+        private byte[] buf = new byte[8192];
+        private int pos;
+        private int count;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (count + len > buf.length) {
+                //compact before growing
+                int remaining = count - pos;
+                byte[] newBuf = remaining + len > buf.length ? new byte[Math.max(buf.length * 2, remaining + len)] : buf;
+                System.arraycopy(buf, pos, newBuf, 0, remaining);
+                buf = newBuf;
+                pos = 0;
+                count = remaining;
+            }
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+        }
+
+        int available() {
+            return count - pos;
+        }
+
+        int read(byte[] b, int off, int len) {
+            int read = Math.min(len, count - pos);
+            System.arraycopy(buf, pos, b, off, read);
+            pos += read;
+            if (pos == count) {
+                pos = 0;
+                count = 0;
+            }
+            return read;
+        }
+    }
 }
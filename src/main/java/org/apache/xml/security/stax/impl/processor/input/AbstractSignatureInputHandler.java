@@ -31,9 +31,11 @@ import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.impl.util.SignerOutputStream;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
 import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
@@ -136,6 +138,7 @@ public abstract class AbstractSignatureInputHandler extends AbstractInputSecurit
 
         SignatureVerifier signatureVerifier = newSignatureVerifier(inputProcessorChain, securityProperties, signatureType);
 
+        long start = XMLSecurityMetrics.start();
         try {
             loop:
             while (iterator.hasNext()) {
@@ -159,6 +162,8 @@ public abstract class AbstractSignatureInputHandler extends AbstractInputSecurit
             throw new XMLSecurityException(e);
         }
         signatureVerifier.doFinal();
+        XMLSecurityMetrics.record(
+            Operation.VERIFY, signatureType.getSignedInfo().getSignatureMethod().getAlgorithm(), start, -1L);
         return signatureVerifier.getInboundSecurityToken();
     }
 
@@ -22,21 +22,27 @@ import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
 
 import org.apache.xml.security.binding.excc14n.InclusiveNamespaces;
 import org.apache.xml.security.binding.xmldsig.ReferenceType;
@@ -64,7 +70,10 @@ import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.impl.util.KeyValue;
 import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
+import org.apache.xml.security.utils.ExecutorUtils;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -87,8 +96,13 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
     private final SignatureType signatureType;
     private final InboundSecurityToken inboundSecurityToken;
     private final List<KeyValue<ResourceResolver, ReferenceType>> sameDocumentReferences;
+    private final Map<String, List<ReferenceType>> sameDocumentReferencesById;
+    private final List<KeyValue<ResourceResolver, ReferenceType>> sameDocumentReferencesWithoutId;
+    private final QName idAttributeNS;
     private final List<KeyValue<ResourceResolver, ReferenceType>> externalReferences;
     private final List<ReferenceType> processedReferences;
+    private final Set<ReferenceType> processedReferenceSet;
+    private List<ExternalReferenceVerification> externalReferenceVerifications;
 
     public AbstractSignatureReferenceVerifyInputProcessor(
             InputProcessorChain inputProcessorChain,
@@ -105,8 +119,12 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
                     new Object[] {referencesTypeList.size(), maximumAllowedReferencesPerManifest});
         }
         sameDocumentReferences = new ArrayList<>(referencesTypeList.size());
+        sameDocumentReferencesById = new HashMap<>();
+        sameDocumentReferencesWithoutId = new ArrayList<>(referencesTypeList.size());
+        idAttributeNS = securityProperties.getIdAttributeNS();
         externalReferences = new ArrayList<>(referencesTypeList.size());
         processedReferences = new ArrayList<>(referencesTypeList.size());
+        processedReferenceSet = new HashSet<>(referencesTypeList.size() * 2);
 
         Iterator<ReferenceType> referenceTypeIterator = referencesTypeList.iterator();
         while (referenceTypeIterator.hasNext()) {
@@ -127,7 +145,14 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
                             referenceType.getURI(), inputProcessorChain.getDocumentContext().getBaseURI());
 
             if (resourceResolver.isSameDocumentReference()) {
-                sameDocumentReferences.add(new KeyValue<ResourceResolver, ReferenceType>(resourceResolver, referenceType));
+                KeyValue<ResourceResolver, ReferenceType> keyValue = new KeyValue<>(resourceResolver, referenceType);
+                sameDocumentReferences.add(keyValue);
+                String referencedId = resourceResolver.getReferencedId();
+                if (referencedId != null) {
+                    sameDocumentReferencesById.computeIfAbsent(referencedId, k -> new ArrayList<>(1)).add(referenceType);
+                } else {
+                    sameDocumentReferencesWithoutId.add(keyValue);
+                }
             } else {
                 if (!allowNotSameDocumentReferences) {
                     throw new XMLSecurityException(
@@ -137,6 +162,13 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
                 externalReferences.add(new KeyValue<ResourceResolver, ReferenceType>(resourceResolver, referenceType));
             }
         }
+
+        if (!externalReferences.isEmpty() && securityProperties.isVerifyExternalReferencesEagerly()
+            && !isVerifyExternalReferenceOverridden()) {
+            Executor executor = securityProperties.getExternalReferenceExecutor();
+            startExternalReferenceVerifications(
+                inputProcessorChain, executor != null ? executor : ExecutorUtils.getDefaultIOExecutor());
+        }
     }
 
     public SignatureType getSignatureType() {
@@ -154,12 +186,28 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
     @Override
     public XMLSecEvent processNextHeaderEvent(InputProcessorChain inputProcessorChain)
             throws XMLStreamException, XMLSecurityException {
-        return inputProcessorChain.processHeaderEvent();
+        try {
+            return inputProcessorChain.processHeaderEvent();
+        } catch (XMLStreamException | XMLSecurityException | RuntimeException e) {
+            cancelExternalReferenceVerifications();
+            throw e;
+        }
     }
 
     @Override
     public XMLSecEvent processNextEvent(InputProcessorChain inputProcessorChain)
             throws XMLStreamException, XMLSecurityException {
+        try {
+            return processEvent(inputProcessorChain);
+        } catch (XMLStreamException | XMLSecurityException | RuntimeException e) {
+            //the processing is aborted, so the outcome of the external references doesn't matter anymore
+            cancelExternalReferenceVerifications();
+            throw e;
+        }
+    }
+
+    private XMLSecEvent processEvent(InputProcessorChain inputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
 
         XMLSecEvent xmlSecEvent = inputProcessorChain.processEvent();
         if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
@@ -169,7 +217,7 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
                 for (int i = 0; i < referenceTypes.size(); i++) {
                     ReferenceType referenceType = referenceTypes.get(i);
 
-                    if (processedReferences.contains(referenceType)) {
+                    if (processedReferenceSet.contains(referenceType)) {
                         throw new XMLSecurityException("signature.Verification.MultipleIDs",
                                                        new Object[] {referenceType.getURI()});
                     }
@@ -180,7 +228,7 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
                         internalSignatureReferenceVerifier.processEvent(xmlSecEvent, inputProcessorChain);
                         inputProcessorChain.addProcessor(internalSignatureReferenceVerifier);
                     }
-                    processedReferences.add(referenceType);
+                    addProcessedReference(referenceType);
                     inputProcessorChain.getDocumentContext().setIsInSignedContent(
                         inputProcessorChain.getProcessors().indexOf(internalSignatureReferenceVerifier),
                         internalSignatureReferenceVerifier);
@@ -197,33 +245,23 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
             List<QName> elementPath, InputProcessorChain inputProcessorChain, XMLSecEvent xmlSecEvent,
             ReferenceType referenceType) throws XMLSecurityException;
 
+    /**
+     * Returns the references which point to the given element. References by Id are looked up
+     * with the value of the configured Id attribute and of the default "Id" attribute, all other
+     * same-document references are asked by their ResourceResolver.
+     */
     protected List<ReferenceType> resolvesResource(XMLSecStartElement xmlSecStartElement) {
         List<ReferenceType> referenceTypes = Collections.emptyList();
-        for (int i = 0; i < sameDocumentReferences.size(); i++) {
-            KeyValue<ResourceResolver, ReferenceType> keyValue = sameDocumentReferences.get(i);
-
-            ResourceResolver resolver = keyValue.getKey();
-            boolean resourceMatches = false;
-            try {
-                // A reflection hack to avoid breaking the ResourceResolver interface for SANTUARIO-407.
-                Method m = resolver.getClass().getMethod("matches", XMLSecStartElement.class, QName.class);
-                if (m != null
-                    && (Boolean)m.invoke(resolver, xmlSecStartElement, getSecurityProperties().getIdAttributeNS())) {
-                    if (referenceTypes == Collections.<ReferenceType>emptyList()) {
-                        referenceTypes = new ArrayList<>();
-                    }
-                    referenceTypes.add(keyValue.getValue());
-                    resourceMatches = true;
-                }
-            } catch (NoSuchMethodException ex) {
-                // No need to report this
-            } catch (InvocationTargetException ex) {
-                // No need to report this
-            } catch (IllegalAccessException ex) {
-                // No need to report this
+        if (!sameDocumentReferencesById.isEmpty()) {
+            referenceTypes = addReferencesById(referenceTypes, xmlSecStartElement, idAttributeNS);
+            if (!XMLSecurityConstants.ATT_NULL_Id.equals(idAttributeNS)) {
+                referenceTypes = addReferencesById(referenceTypes, xmlSecStartElement, XMLSecurityConstants.ATT_NULL_Id);
             }
-
-            if (!resourceMatches && keyValue.getKey().matches(xmlSecStartElement)) {
+        }
+        for (int i = 0; i < sameDocumentReferencesWithoutId.size(); i++) {
+            KeyValue<ResourceResolver, ReferenceType> keyValue = sameDocumentReferencesWithoutId.get(i);
+            ResourceResolver resolver = keyValue.getKey();
+            if (resolver.matches(xmlSecStartElement, idAttributeNS) || resolver.matches(xmlSecStartElement)) {
                 if (referenceTypes == Collections.<ReferenceType>emptyList()) {
                     referenceTypes = new ArrayList<>();
                 }
@@ -233,42 +271,150 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
         return referenceTypes;
     }
 
+    private List<ReferenceType> addReferencesById(List<ReferenceType> referenceTypes,
+                                                  XMLSecStartElement xmlSecStartElement, QName idAttribute) {
+        Attribute attribute = xmlSecStartElement.getAttributeByName(idAttribute);
+        if (attribute == null) {
+            return referenceTypes;
+        }
+        List<ReferenceType> referencedTypes = sameDocumentReferencesById.get(attribute.getValue());
+        if (referencedTypes == null) {
+            return referenceTypes;
+        }
+        if (referenceTypes == Collections.<ReferenceType>emptyList()) {
+            referenceTypes = new ArrayList<>(referencedTypes.size());
+        }
+        for (int i = 0; i < referencedTypes.size(); i++) {
+            ReferenceType referenceType = referencedTypes.get(i);
+            if (!referenceTypes.contains(referenceType)) {
+                referenceTypes.add(referenceType);
+            }
+        }
+        return referenceTypes;
+    }
+
     @Override
     public void doFinal(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        try {
+            verifyReferences(inputProcessorChain);
+        } finally {
+            cancelExternalReferenceVerifications();
+        }
+    }
+
+    private void verifyReferences(InputProcessorChain inputProcessorChain) throws XMLStreamException, XMLSecurityException {
         inputProcessorChain.doFinal();
 
         for (int i = 0; i < sameDocumentReferences.size(); i++) {
             KeyValue<ResourceResolver, ReferenceType> keyValue = sameDocumentReferences.get(i);
-            if (!processedReferences.contains(keyValue.getValue())) {
+            if (!processedReferenceSet.contains(keyValue.getValue())) {
                 throw new XMLSecurityException("stax.signature.unprocessedReferences");
             }
         }
 
         if (!externalReferences.isEmpty()) {
-            for (int i = 0; i < externalReferences.size(); i++) {
-                KeyValue<ResourceResolver, ReferenceType> keyValue = externalReferences.get(i);
-                verifyExternalReference(
-                        inputProcessorChain,
-                        keyValue.getKey().getInputStreamFromExternalReference(),
-                        keyValue.getValue());
-                processedReferences.add(keyValue.getValue());
+            Executor executor = getSecurityProperties().getExternalReferenceExecutor();
+            if (externalReferenceVerifications == null && executor != null && !isVerifyExternalReferenceOverridden()) {
+                startExternalReferenceVerifications(inputProcessorChain, executor);
+            }
+
+            if (externalReferenceVerifications != null) {
+                for (int i = 0; i < externalReferenceVerifications.size(); i++) {
+                    ExternalReferenceVerification externalReferenceVerification =
+                            externalReferenceVerifications.get(i);
+                    compareDigest(externalReferenceVerification.getDigestValue(),
+                                  externalReferenceVerification.referenceType);
+                    addProcessedReference(externalReferenceVerification.referenceType);
+                }
+            } else {
+                for (int i = 0; i < externalReferences.size(); i++) {
+                    KeyValue<ResourceResolver, ReferenceType> keyValue = externalReferences.get(i);
+                    verifyExternalReference(
+                            inputProcessorChain,
+                            openExternalReference(keyValue.getKey()),
+                            keyValue.getValue());
+                    addProcessedReference(keyValue.getValue());
+                }
             }
 
             for (int i = 0; i < externalReferences.size(); i++) {
                 KeyValue<ResourceResolver, ReferenceType> keyValue = externalReferences.get(i);
-                if (!processedReferences.contains(keyValue.getValue())) {
+                if (!processedReferenceSet.contains(keyValue.getValue())) {
                     throw new XMLSecurityException("stax.signature.unprocessedReferences");
                 }
             }
         }
     }
 
+    private void cancelExternalReferenceVerifications() {
+        if (externalReferenceVerifications != null) {
+            for (int i = 0; i < externalReferenceVerifications.size(); i++) {
+                externalReferenceVerifications.get(i).futureTask.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * The concurrent verification of external references doesn't go through
+     * {@link #verifyExternalReference}, so it is only used if that method isn't overridden.
+     */
+    private boolean isVerifyExternalReferenceOverridden() {
+        for (Class<?> clazz = getClass();
+             clazz != AbstractSignatureReferenceVerifyInputProcessor.class; clazz = clazz.getSuperclass()) {
+            try {
+                clazz.getDeclaredMethod(
+                    "verifyExternalReference", InputProcessorChain.class, InputStream.class, ReferenceType.class);
+                return true;
+            } catch (NoSuchMethodException e) { //NOPMD
+                //not overridden in this class
+            } catch (SecurityException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addProcessedReference(ReferenceType referenceType) {
+        if (processedReferenceSet.add(referenceType)) {
+            processedReferences.add(referenceType);
+        }
+    }
+
+    private static InputStream openExternalReference(ResourceResolver resourceResolver) throws XMLSecurityException {
+        long start = XMLSecurityMetrics.start();
+        InputStream inputStream = resourceResolver.getInputStreamFromExternalReference();
+        XMLSecurityMetrics.record(Operation.RESOURCE_RESOLUTION, null, start, -1L);
+        return inputStream;
+    }
+
+    /**
+     * Prepares the digest and transformer chain of all external references in the current thread,
+     * where the security events are fired, and starts fetching and digesting them on the executor.
+     * References the executor rejects are fetched in {@link #doFinal} instead.
+     */
+    private void startExternalReferenceVerifications(InputProcessorChain inputProcessorChain, Executor executor)
+            throws XMLSecurityException {
+        externalReferenceVerifications = new ArrayList<>(externalReferences.size());
+        for (int i = 0; i < externalReferences.size(); i++) {
+            externalReferenceVerifications.add(
+                    new ExternalReferenceVerification(inputProcessorChain, externalReferences.get(i)));
+        }
+        for (int i = 0; i < externalReferenceVerifications.size(); i++) {
+            externalReferenceVerifications.get(i).start(executor);
+        }
+    }
+
     protected InternalSignatureReferenceVerifier getSignatureReferenceVerifier(
             XMLSecurityProperties securityProperties, InputProcessorChain inputProcessorChain,
             ReferenceType referenceType, XMLSecStartElement startElement) throws XMLSecurityException {
         return new InternalSignatureReferenceVerifier(securityProperties, inputProcessorChain, referenceType, startElement);
     }
 
+    /**
+     * Digests an external reference and compares the digest value. Overriding this method disables
+     * the concurrent verification of external references configured with
+     * {@link XMLSecurityProperties#setExternalReferenceExecutor}.
+     */
     protected void verifyExternalReference(InputProcessorChain inputProcessorChain, InputStream inputStream,
                                          ReferenceType referenceType) throws XMLSecurityException, XMLStreamException {
 
@@ -323,7 +469,7 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
             throw new XMLSecurityException(e);
         }
 
-        return new DigestOutputStream(messageDigest);
+        return new DigestOutputStream(messageDigest, digestMethodAlgorithm);
     }
 
     protected Transformer buildTransformerChain(ReferenceType referenceType, OutputStream outputStream,
@@ -409,6 +555,77 @@ public abstract class AbstractSignatureReferenceVerifyInputProcessor extends Abs
         }
     }
 
+    private final class ExternalReferenceVerification implements Callable<byte[]> {
+        private final ResourceResolver resourceResolver;
+        private final ReferenceType referenceType;
+        private final DigestOutputStream digestOutputStream;
+        private final OutputStream bufferedDigestOutputStream;
+        private final Transformer transformer;
+        private final FutureTask<byte[]> futureTask = new FutureTask<>(this);
+        private boolean rejected;
+
+        ExternalReferenceVerification(InputProcessorChain inputProcessorChain,
+                                      KeyValue<ResourceResolver, ReferenceType> externalReference)
+                throws XMLSecurityException {
+            this.resourceResolver = externalReference.getKey();
+            this.referenceType = externalReference.getValue();
+            this.digestOutputStream =
+                    createMessageDigestOutputStream(referenceType, inputProcessorChain.getSecurityContext());
+            this.bufferedDigestOutputStream = new UnsyncBufferedOutputStream(digestOutputStream);
+            if (referenceType.getTransforms() != null) {
+                this.transformer =
+                        buildTransformerChain(referenceType, bufferedDigestOutputStream, inputProcessorChain, null);
+            } else {
+                this.transformer = null;
+            }
+        }
+
+        void start(Executor executor) {
+            try {
+                executor.execute(futureTask);
+            } catch (RejectedExecutionException e) {
+                LOG.debug("Executor rejected the verification of {}, deferring it", referenceType.getURI());
+                rejected = true;
+            }
+        }
+
+        @Override
+        public byte[] call() throws Exception {
+            try (InputStream inputStream = openExternalReference(resourceResolver);
+                 BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream)) {
+                if (transformer != null) {
+                    transformer.transform(bufferedInputStream);
+                } else {
+                    XMLSecurityUtils.copy(bufferedInputStream, bufferedDigestOutputStream);
+                }
+                bufferedDigestOutputStream.close();
+            }
+            return digestOutputStream.getDigestValue();
+        }
+
+        byte[] getDigestValue() throws XMLSecurityException, XMLStreamException {
+            if (rejected) {
+                futureTask.run();
+            }
+            try {
+                return futureTask.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new XMLSecurityException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof XMLSecurityException) {
+                    throw (XMLSecurityException) cause;
+                } else if (cause instanceof XMLStreamException) {
+                    throw (XMLStreamException) cause;
+                } else if (cause instanceof Exception) {
+                    throw new XMLSecurityException((Exception) cause);
+                }
+                throw (Error) cause;
+            }
+        }
+    }
+
     public class InternalSignatureReferenceVerifier extends AbstractInputProcessor {
         private ReferenceType referenceType;
         private Transformer transformer;
@@ -58,6 +58,8 @@ import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -147,12 +149,14 @@ public class XMLEncryptedKeyInputHandler extends AbstractInputSecurityHeaderHand
                             return this.wrappingSecurityToken;
                         }
                         KeyInfoType keyInfoType = encryptedKeyType.getKeyInfo();
+                        long start = XMLSecurityMetrics.start();
                         this.wrappingSecurityToken = SecurityTokenFactory.getInstance().getSecurityToken(
                                 keyInfoType,
                                 SecurityTokenConstants.KeyUsage_Decryption,
                                 securityProperties,
                                 inboundSecurityContext
                         );
+                        XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
                         this.wrappingSecurityToken.addWrappedToken(wrappedSecurityToken);
 
                         return this.wrappingSecurityToken;
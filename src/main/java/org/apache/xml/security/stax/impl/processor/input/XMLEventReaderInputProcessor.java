@@ -33,6 +33,7 @@ import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.ext.stax.XMLSecSymbolTable;
 
 /**
  * The XMLEventReaderInputProcessor reads requested XMLEvents from the original XMLEventReader
@@ -45,6 +46,7 @@ public class XMLEventReaderInputProcessor extends AbstractInputProcessor {
             Integer.valueOf(ConfigurationProperties.getProperty("MaximumAllowedXMLStructureDepth"));
     private int currentXMLStructureDepth;
     private final XMLStreamReader xmlStreamReader;
+    private final XMLSecSymbolTable symbolTable = new XMLSecSymbolTable();
     private XMLSecStartElement parentXmlSecStartElement;
     private boolean EOF = false;
 
@@ -67,7 +69,7 @@ public class XMLEventReaderInputProcessor extends AbstractInputProcessor {
     }
 
     private XMLSecEvent processNextEventInternal() throws XMLStreamException {
-        XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement);
+        XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXmlSecStartElement, symbolTable);
         if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
             currentXMLStructureDepth++;
             if (currentXMLStructureDepth > maximumAllowedXMLStructureDepth) {
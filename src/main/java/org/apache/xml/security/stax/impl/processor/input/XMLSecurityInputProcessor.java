@@ -57,6 +57,16 @@ public class XMLSecurityInputProcessor extends AbstractInputProcessor {
                 securityProperties.getActions().contains(XMLSecurityConstants.ENCRYPT);
     }
 
+    /**
+     * Resets the state of the last message, so that the processor can be added to the chain of the next one.
+     */
+    public void reset() {
+        startIndexForProcessor = 0;
+        internalBufferProcessor = null;
+        signatureElementFound = false;
+        encryptedDataElementFound = false;
+    }
+
     @Override
     public XMLSecEvent processNextHeaderEvent(InputProcessorChain inputProcessorChain)
             throws XMLStreamException, XMLSecurityException {
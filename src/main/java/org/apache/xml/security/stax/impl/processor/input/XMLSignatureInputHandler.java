@@ -31,6 +31,8 @@ import org.apache.xml.security.stax.securityEvent.TokenSecurityEvent;
 import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 
 /**
  * An input handler for XML Signature.
@@ -80,8 +82,10 @@ public class XMLSignatureInputHandler extends AbstractSignatureInputHandler {
                 SignatureType signatureType, XMLSecurityProperties securityProperties,
                 InboundSecurityContext inboundSecurityContext) throws XMLSecurityException {
 
+            long start = XMLSecurityMetrics.start();
             InboundSecurityToken inboundSecurityToken = SecurityTokenFactory.getInstance().getSecurityToken(signatureType.getKeyInfo(),
                     SecurityTokenConstants.KeyUsage_Signature_Verification, securityProperties, inboundSecurityContext);
+            XMLSecurityMetrics.record(Operation.KEY_RESOLUTION, null, start, -1L);
 
             inboundSecurityToken.verify();
 
@@ -36,11 +36,14 @@ import javax.crypto.CipherOutputStream;
 import javax.crypto.NoSuchPaddingException;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 
 import org.apache.commons.codec.binary.Base64OutputStream;
 import org.apache.xml.security.algorithms.JCEMapper;
+import org.apache.xml.security.encryption.SegmentedGCMCipher;
+import org.apache.xml.security.encryption.SegmentedGCMEncryptingOutputStream;
 import org.apache.xml.security.encryption.XMLCipherUtil;
 import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.config.JCEAlgorithmMapper;
@@ -57,6 +60,9 @@ import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.EncryptionPartDef;
 import org.apache.xml.security.stax.impl.XMLSecurityEventWriter;
 import org.apache.xml.security.stax.impl.util.TrimmerOutputStream;
+import org.apache.xml.security.utils.CountingOutputStream;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 
 /**
@@ -118,6 +124,13 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
         }
     }
 
+    /**
+     * Resets the state of the last message, so that the processor can be initialized for the next one.
+     */
+    public void reset() {
+        activeInternalEncryptionOutputProcessor = null;
+    }
+
     protected AbstractInternalEncryptionOutputProcessor getActiveInternalEncryptionOutputProcessor() {
         return activeInternalEncryptionOutputProcessor;
     }
@@ -136,6 +149,7 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
         private CharacterEventGeneratorOutputStream characterEventGeneratorOutputStream;
         private XMLEventWriter xmlEventWriter;
         private OutputStream cipherOutputStream;
+        private CountingOutputStream cipherTextCounter;
         private String encoding;
 
         private XMLSecStartElement xmlSecStartElement;
@@ -167,12 +181,6 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
                 }
                 Cipher symmetricCipher = Cipher.getInstance(jceAlgorithm);
 
-                int ivLen = JCEMapper.getIVLengthFromURI(encryptionSymAlgorithm) / 8;
-                byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
-                AlgorithmParameterSpec parameterSpec =
-                    XMLCipherUtil.constructBlockCipherParameters(encryptionSymAlgorithm, iv);
-                symmetricCipher.init(Cipher.ENCRYPT_MODE, encryptionPartDef.getSymmetricKey(), parameterSpec);
-
                 characterEventGeneratorOutputStream = new CharacterEventGeneratorOutputStream();
                 Base64OutputStream base64EncoderStream = null;
                 if (XMLUtils.isIgnoreLineBreaks()) {
@@ -180,17 +188,40 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
                 } else {
                     base64EncoderStream = new Base64OutputStream(characterEventGeneratorOutputStream, true);
                 }
-                base64EncoderStream.write(iv);
+                OutputStream cipherTextStream = base64EncoderStream;
+                if (XMLSecurityMetrics.isEnabled()) {
+                    cipherTextCounter = new CountingOutputStream(base64EncoderStream);
+                    cipherTextStream = cipherTextCounter;
+                }
 
-                OutputStream outputStream = new CipherOutputStream(base64EncoderStream, symmetricCipher);
+                OutputStream outputStream;
+                int segmentSize = securityProperties.getEncryptionSegmentSize();
+                if (segmentSize > 0) {
+                    //segmented GCM: the stream writes the IV itself and authenticates every segment on its own
+                    byte[] iv = XMLSecurityConstants.generateBytes(SegmentedGCMCipher.IV_LENGTH);
+                    outputStream = new SegmentedGCMEncryptingOutputStream(cipherTextStream,
+                        new SegmentedGCMCipher(symmetricCipher, encryptionPartDef.getSymmetricKey(), iv, segmentSize),
+                        securityProperties.getEncryptionSegmentExecutor());
+                } else {
+                    int ivLen = JCEMapper.getIVLengthFromURI(encryptionSymAlgorithm) / 8;
+                    byte[] iv = XMLSecurityConstants.generateBytes(ivLen);
+                    AlgorithmParameterSpec parameterSpec =
+                        XMLCipherUtil.constructBlockCipherParameters(encryptionSymAlgorithm, iv);
+                    symmetricCipher.init(Cipher.ENCRYPT_MODE, encryptionPartDef.getSymmetricKey(), parameterSpec);
+                    cipherTextStream.write(iv);
+
+                    outputStream = new CipherOutputStream(cipherTextStream, symmetricCipher);
+                }
                 outputStream = applyTransforms(outputStream);
                 //the trimmer output stream is needed to strip away the dummy wrapping element which must be added
                 cipherOutputStream = new TrimmerOutputStream(outputStream, 8192 * 10, 3, 4);
 
                 //we create a new StAX writer for optimized namespace writing.
                 //spec says (4.2): "The cleartext octet sequence obtained in step 3 is interpreted as UTF-8 encoded character data."
+                XMLOutputFactory xmlOutputFactory =
+                        getSecurityProperties().getXMLStreamFactorySupplier().getXMLOutputFactory(false);
                 xmlEventWriter = new XMLSecurityEventWriter(
-                        XMLSecurityConstants.xmlOutputFactoryNonRepairingNs.createXMLStreamWriter(
+                        xmlOutputFactory.createXMLStreamWriter(
                                 cipherOutputStream, java.nio.charset.StandardCharsets.UTF_8.name()));
                 //we have to output a fake element to workaround text-only encryption:
                 xmlEventWriter.add(wrapperStartElement);
@@ -265,20 +296,21 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
                     //not an interesting start nor an interesting end element
                     //so encrypt this
                     encryptEvent(xmlSecEvent);
-
-                    //push all buffered encrypted character events through the chain
-                    final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorOutputStream.getCharactersBuffer();
-                    if (charactersBuffer.size() > 5) {
-                        OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
-                        Iterator<XMLSecCharacters> charactersIterator = charactersBuffer.iterator();
-                        while (charactersIterator.hasNext()) {
-                            XMLSecCharacters characters = charactersIterator.next();
-                            outputAsEvent(subOutputProcessorChain, characters);
-                            charactersIterator.remove();
-                        }
-                    }
                     break;
             }
+
+            //push all buffered encrypted character events through the chain. This is done after every event,
+            //otherwise the cipher data of element-only content would accumulate on the heap until the end.
+            final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorOutputStream.getCharactersBuffer();
+            if (charactersBuffer.size() > 5) {
+                OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this);
+                Iterator<XMLSecCharacters> charactersIterator = charactersBuffer.iterator();
+                while (charactersIterator.hasNext()) {
+                    XMLSecCharacters characters = charactersIterator.next();
+                    outputAsEvent(subOutputProcessorChain, characters);
+                    charactersIterator.remove();
+                }
+            }
         }
 
         private void encryptEvent(XMLSecEvent xmlSecEvent) throws XMLStreamException {
@@ -299,6 +331,12 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
             attributes.add(createAttribute(XMLSecurityConstants.ATT_NULL_Algorithm, securityProperties.getEncryptionSymAlgorithm()));
             createStartElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_EncryptionMethod, false, attributes);
 
+            if (securityProperties.getEncryptionSegmentSize() > 0) {
+                createStartElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_sxenc_SegmentSize, true, null);
+                createCharactersAndOutputAsEvent(outputProcessorChain, String.valueOf(securityProperties.getEncryptionSegmentSize()));
+                createEndElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_sxenc_SegmentSize);
+            }
+
             createEndElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_EncryptionMethod);
             createKeyInfoStructure(outputProcessorChain);
             createStartElementAndOutputAsEvent(outputProcessorChain, XMLSecurityConstants.TAG_xenc_CipherData, false, null);
@@ -339,6 +377,8 @@ public abstract class AbstractEncryptOutputProcessor extends AbstractOutputProce
             } catch (IOException e) {
                 throw new XMLStreamException(e);
             }
+            XMLSecurityMetrics.recordStreamed(Operation.ENCRYPTION, securityProperties.getEncryptionSymAlgorithm(),
+                cipherTextCounter != null ? cipherTextCounter.getCount() : -1L);
 
             //push all buffered encrypted character events through the chain
             final Deque<XMLSecCharacters> charactersBuffer = characterEventGeneratorOutputStream.getCharactersBuffer();
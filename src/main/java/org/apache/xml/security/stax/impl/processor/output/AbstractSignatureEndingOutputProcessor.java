@@ -49,7 +49,9 @@ import org.apache.xml.security.stax.impl.util.SignerOutputStream;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenProvider;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -337,9 +339,11 @@ public abstract class AbstractSignatureEndingOutputProcessor extends AbstractBuf
                 return signatureValue;
             }
             try {
+                long start = XMLSecurityMetrics.start();
                 transformer.doFinal();
                 bufferedSignerOutputStream.close();
                 signatureValue = signerOutputStream.sign();
+                XMLSecurityMetrics.record(Operation.SIGN, getSecurityProperties().getSignatureAlgorithm(), start, -1L);
                 return signatureValue;
             } catch (IOException e) {
                 throw new XMLSecurityException(e);
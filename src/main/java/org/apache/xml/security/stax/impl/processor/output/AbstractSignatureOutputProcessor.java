@@ -50,7 +50,9 @@ import org.apache.xml.security.stax.impl.SignaturePartDef;
 import org.apache.xml.security.stax.impl.transformer.TransformIdentity;
 import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_Excl;
 import org.apache.xml.security.stax.impl.util.DigestOutputStream;
+import org.apache.xml.security.utils.MetricsListener.Operation;
 import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.XMLUtils;
 
 import org.slf4j.Logger;
@@ -64,6 +66,10 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
 
     private final List<SignaturePartDef> signaturePartDefList = new ArrayList<>();
     private InternalSignatureOutputProcessor activeInternalSignatureOutputProcessor;
+    //digest streams and transformer chains of finished references, reused by later references with the
+    //same digest algorithm, transforms and inclusive namespace prefixes. Only the last chain per digest
+    //algorithm and transforms is kept, so that varying inclusive namespace prefixes can't grow the map.
+    private final Map<String, ReferenceDigest> idleReferenceDigests = new HashMap<>();
 
     public AbstractSignatureOutputProcessor() throws XMLSecurityException {
         super();
@@ -73,6 +79,15 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
         return signaturePartDefList;
     }
 
+    /**
+     * Resets the state of the last message, so that the processor can be initialized for the next one.
+     * The digest streams and transformer chains of the finished references are kept for reuse.
+     */
+    public void reset() {
+        signaturePartDefList.clear();
+        activeInternalSignatureOutputProcessor = null;
+    }
+
     @Override
     public abstract void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
             throws XMLStreamException, XMLSecurityException;
@@ -115,7 +130,9 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
         }
 
         DigestOutputStream digestOutputStream = createMessageDigestOutputStream(digestAlgo);
+        long start = XMLSecurityMetrics.start();
         InputStream inputStream = resourceResolver.getInputStreamFromExternalReference();
+        XMLSecurityMetrics.record(Operation.RESOURCE_RESOLUTION, null, start, -1L);
 
         SignaturePartDef signaturePartDef = new SignaturePartDef();
         signaturePartDef.setSecurePart(securePart);
@@ -202,7 +219,7 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
         } catch (NoSuchProviderException e) {
             throw new XMLSecurityException(e);
         }
-        return new DigestOutputStream(messageDigest);
+        return new DigestOutputStream(messageDigest, digestAlgorithm);
     }
 
     protected Transformer buildTransformerChain(OutputStream outputStream,
@@ -229,15 +246,7 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
                 Set<String> prefixSet = XMLSecurityUtils.getExcC14NInclusiveNamespacePrefixes(
                         xmlSecStartElement, signaturePartDef.isExcludeVisibleC14Nprefixes()
                 );
-                StringBuilder prefixes = new StringBuilder();
-                for (Iterator<String> iterator = prefixSet.iterator(); iterator.hasNext(); ) {
-                    String prefix = iterator.next();
-                    if (prefixes.length() != 0) {
-                        prefixes.append(' ');
-                    }
-                    prefixes.append(prefix);
-                }
-                signaturePartDef.setInclusiveNamespacesPrefixes(prefixes.toString());
+                signaturePartDef.setInclusiveNamespacesPrefixes(toPrefixList(prefixSet));
                 List<String> inclusiveNamespacePrefixes = new ArrayList<>(prefixSet);
                 transformerProperties = new HashMap<>();
                 transformerProperties.put(
@@ -255,6 +264,71 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
         return parentTransformer;
     }
 
+    private static String toPrefixList(Set<String> prefixSet) {
+        StringBuilder prefixes = new StringBuilder();
+        for (Iterator<String> iterator = prefixSet.iterator(); iterator.hasNext(); ) {
+            String prefix = iterator.next();
+            if (prefixes.length() != 0) {
+                prefixes.append(' ');
+            }
+            prefixes.append(prefix);
+        }
+        return prefixes.toString();
+    }
+
+    /**
+     * Returns the key under which the idle digest stream and transformer chain of the given reference is kept.
+     */
+    private static String getIdleReferenceDigestKey(SignaturePartDef signaturePartDef) {
+        StringBuilder key = new StringBuilder(signaturePartDef.getDigestAlgo());
+        String[] transforms = signaturePartDef.getTransforms();
+        if (transforms != null) {
+            for (String transform : transforms) {
+                key.append(' ').append(transform);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns the key which a digest stream and transformer chain must match to be reused for the given
+     * reference. The key covers everything the chain is built from.
+     */
+    private String getReferenceDigestKey(SignaturePartDef signaturePartDef, XMLSecStartElement xmlSecStartElement) {
+        StringBuilder key = new StringBuilder(signaturePartDef.getDigestAlgo());
+        String[] transforms = signaturePartDef.getTransforms();
+        if (transforms != null) {
+            for (String transform : transforms) {
+                key.append(' ').append(transform);
+                if (getSecurityProperties().isAddExcC14NInclusivePrefixes() &&
+                        XMLSecurityConstants.NS_C14N_EXCL_OMIT_COMMENTS.equals(transform)) {
+                    Set<String> prefixSet = XMLSecurityUtils.getExcC14NInclusiveNamespacePrefixes(
+                            xmlSecStartElement, signaturePartDef.isExcludeVisibleC14Nprefixes()
+                    );
+                    key.append(" [").append(toPrefixList(prefixSet)).append(']');
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static final class ReferenceDigest {
+        private final DigestOutputStream digestOutputStream;
+        private final OutputStream bufferedDigestOutputStream;
+        private final Transformer transformer;
+        private final String inclusiveNamespacesPrefixes;
+        private final String referenceDigestKey;
+
+        ReferenceDigest(DigestOutputStream digestOutputStream, OutputStream bufferedDigestOutputStream,
+                        Transformer transformer, String inclusiveNamespacesPrefixes, String referenceDigestKey) {
+            this.digestOutputStream = digestOutputStream;
+            this.bufferedDigestOutputStream = bufferedDigestOutputStream;
+            this.transformer = transformer;
+            this.inclusiveNamespacesPrefixes = inclusiveNamespacesPrefixes;
+            this.referenceDigestKey = referenceDigestKey;
+        }
+    }
+
     public class InternalSignatureOutputProcessor extends AbstractOutputProcessor {
 
         private SignaturePartDef signaturePartDef;
@@ -264,6 +338,8 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
         private OutputStream bufferedDigestOutputStream;
         private DigestOutputStream digestOutputStream;
         private Transformer transformer;
+        private String idleReferenceDigestKey;
+        private String referenceDigestKey;
 
         public InternalSignatureOutputProcessor(SignaturePartDef signaturePartDef, XMLSecStartElement xmlSecStartElement)
                 throws XMLSecurityException {
@@ -275,9 +351,22 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
 
         @Override
         public void init(OutputProcessorChain outputProcessorChain) throws XMLSecurityException {
-            this.digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());
-            this.bufferedDigestOutputStream = new UnsyncBufferedOutputStream(digestOutputStream);
-            this.transformer = buildTransformerChain(this.bufferedDigestOutputStream, signaturePartDef, xmlSecStartElement);
+            this.idleReferenceDigestKey = getIdleReferenceDigestKey(signaturePartDef);
+            this.referenceDigestKey = getReferenceDigestKey(signaturePartDef, xmlSecStartElement);
+            ReferenceDigest referenceDigest = idleReferenceDigests.remove(idleReferenceDigestKey);
+            if (referenceDigest != null && referenceDigest.referenceDigestKey.equals(referenceDigestKey)) {
+                this.digestOutputStream = referenceDigest.digestOutputStream;
+                this.bufferedDigestOutputStream = referenceDigest.bufferedDigestOutputStream;
+                this.transformer = referenceDigest.transformer;
+                ((TransformIdentity) this.transformer).reset();
+                if (referenceDigest.inclusiveNamespacesPrefixes != null) {
+                    signaturePartDef.setInclusiveNamespacesPrefixes(referenceDigest.inclusiveNamespacesPrefixes);
+                }
+            } else {
+                this.digestOutputStream = createMessageDigestOutputStream(signaturePartDef.getDigestAlgo());
+                this.bufferedDigestOutputStream = new UnsyncBufferedOutputStream(digestOutputStream);
+                this.transformer = buildTransformerChain(this.bufferedDigestOutputStream, signaturePartDef, xmlSecStartElement);
+            }
             super.init(outputProcessorChain);
         }
 
@@ -297,7 +386,8 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
 
                     transformer.doFinal();
                     try {
-                        bufferedDigestOutputStream.close();
+                        //flush only, the stream is reused by the next reference with the same transforms
+                        bufferedDigestOutputStream.flush();
                     } catch (IOException e) {
                         throw new XMLSecurityException(e);
                     }
@@ -306,6 +396,13 @@ public abstract class AbstractSignatureOutputProcessor extends AbstractOutputPro
                     LOG.debug("Calculated Digest: {}", calculatedDigest);
                     signaturePartDef.setDigestValue(calculatedDigest);
 
+                    if (TransformIdentity.isResettable(transformer)) {
+                        idleReferenceDigests.put(idleReferenceDigestKey,
+                                new ReferenceDigest(digestOutputStream, bufferedDigestOutputStream, transformer,
+                                                    signaturePartDef.getInclusiveNamespacesPrefixes(),
+                                                    referenceDigestKey));
+                    }
+
                     outputProcessorChain.removeProcessor(this);
                     //from now on signature is possible again
                     setActiveInternalSignatureOutputProcessor(null);
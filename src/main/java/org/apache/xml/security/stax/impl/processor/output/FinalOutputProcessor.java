@@ -26,6 +26,7 @@ import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.impl.XMLSecurityEventWriter;
 
 import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamWriter;
 import java.io.OutputStream;
@@ -40,10 +41,15 @@ public class FinalOutputProcessor extends AbstractOutputProcessor {
     private XMLEventWriter xmlEventWriter;
 
     public FinalOutputProcessor(OutputStream outputStream, String encoding) throws XMLSecurityException {
+        this(outputStream, encoding, XMLSecurityConstants.xmlOutputFactory);
+    }
+
+    public FinalOutputProcessor(OutputStream outputStream, String encoding, XMLOutputFactory xmlOutputFactory)
+            throws XMLSecurityException {
         super();
         setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
         try {
-            xmlEventWriter = new XMLSecurityEventWriter(XMLSecurityConstants.xmlOutputFactory.createXMLStreamWriter(outputStream, encoding));
+            xmlEventWriter = new XMLSecurityEventWriter(xmlOutputFactory.createXMLStreamWriter(outputStream, encoding));
         } catch (XMLStreamException e) {
             throw new XMLSecurityException(e);
         }
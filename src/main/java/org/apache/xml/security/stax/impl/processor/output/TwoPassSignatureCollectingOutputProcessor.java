@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.processor.output;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.AbstractOutputProcessor;
+import org.apache.xml.security.stax.ext.OutputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.impl.TwoPassSignature;
+
+/**
+ * The last processor of the first pass of a two-pass signature. The document itself isn't
+ * written in the first pass, so the only events which reach this processor are the ones of
+ * the Signature, which are collected for the second pass.
+ */
+public class TwoPassSignatureCollectingOutputProcessor extends AbstractOutputProcessor {
+
+    private final TwoPassSignature twoPassSignature;
+
+    public TwoPassSignatureCollectingOutputProcessor(TwoPassSignature twoPassSignature) throws XMLSecurityException {
+        super();
+        this.twoPassSignature = twoPassSignature;
+        setPhase(XMLSecurityConstants.Phase.POSTPROCESSING);
+    }
+
+    @Override
+    public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        twoPassSignature.addSignatureEvent(xmlSecEvent);
+    }
+
+    @Override
+    public void doFinal(OutputProcessorChain outputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        //nothing to do here, this is the end of the chain
+    }
+}
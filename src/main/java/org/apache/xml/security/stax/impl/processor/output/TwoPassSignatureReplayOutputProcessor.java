@@ -0,0 +1,80 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.processor.output;
+
+import java.util.List;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.AbstractOutputProcessor;
+import org.apache.xml.security.stax.ext.OutputProcessorChain;
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.impl.TwoPassSignature;
+
+/**
+ * The processor of the second pass of a two-pass signature. It adds the Id attributes the first pass
+ * added to the signed elements, and writes the Signature of the first pass at its position.
+ */
+public class TwoPassSignatureReplayOutputProcessor extends AbstractOutputProcessor {
+
+    private final TwoPassSignature twoPassSignature;
+    private long eventCount;
+    private long startElementCount;
+    private boolean signatureWritten;
+
+    public TwoPassSignatureReplayOutputProcessor(TwoPassSignature twoPassSignature) throws XMLSecurityException {
+        super();
+        this.twoPassSignature = twoPassSignature;
+    }
+
+    @Override
+    public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        if (!signatureWritten && eventCount == twoPassSignature.getSignaturePosition()) {
+            //the parent of the current event is the element in scope after the previous event
+            writeSignature(outputProcessorChain.createSubChain(this, xmlSecEvent.getParentXMLSecStartElement()));
+        }
+        eventCount++;
+        if (xmlSecEvent.isStartElement()) {
+            List<XMLSecAttribute> attributes = twoPassSignature.getAddedAttributes(++startElementCount);
+            if (attributes != null) {
+                xmlSecEvent = addAttributes(xmlSecEvent.asStartElement(), attributes);
+            }
+        }
+        outputProcessorChain.processEvent(xmlSecEvent);
+    }
+
+    @Override
+    public void doFinal(OutputProcessorChain outputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        if (!signatureWritten) {
+            writeSignature(outputProcessorChain.createSubChain(this));
+        }
+        super.doFinal(outputProcessorChain);
+    }
+
+    private void writeSignature(OutputProcessorChain outputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        signatureWritten = true;
+        for (XMLSecEvent xmlSecEvent : twoPassSignature.getSignatureEvents()) {
+            outputAsEvent(outputProcessorChain, xmlSecEvent);
+        }
+    }
+}
@@ -34,6 +34,7 @@ import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.SignaturePartDef;
+import org.apache.xml.security.stax.impl.TwoPassSignature;
 import org.apache.xml.security.stax.impl.algorithms.SignatureAlgorithm;
 import org.apache.xml.security.stax.securityToken.OutboundSecurityToken;
 import org.apache.xml.security.stax.securityEvent.SignatureValueSecurityEvent;
@@ -48,11 +49,94 @@ public class XMLSignatureEndingOutputProcessor extends AbstractSignatureEndingOu
 
     private SignedInfoProcessor signedInfoProcessor;
 
+    //the state of the first pass of a two-pass signature, which doesn't buffer the document
+    private TwoPassSignature twoPassSignature;
+    private long eventCount;
+    private boolean rootElementSeen;
+    private int depth;
+    private int position;
+    private XMLSecStartElement signatureParent;
+
     public XMLSignatureEndingOutputProcessor(XMLSignatureOutputProcessor signatureOutputProcessor) throws XMLSecurityException {
         super(signatureOutputProcessor);
         this.addAfterProcessor(XMLSignatureOutputProcessor.class.getName());
     }
 
+    @Override
+    public void init(OutputProcessorChain outputProcessorChain) throws XMLSecurityException {
+        super.init(outputProcessorChain);
+        twoPassSignature = outputProcessorChain.getSecurityContext().get(XMLSecurityConstants.PROP_TWO_PASS_SIGNATURE);
+    }
+
+    @Override
+    public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain)
+            throws XMLStreamException, XMLSecurityException {
+        if (twoPassSignature == null) {
+            super.processEvent(xmlSecEvent, outputProcessorChain);
+            return;
+        }
+        //the document is written in the second pass, here only the position of the signature is searched
+        //in the same way flushBufferAndCallbackAfterHeader() does it on the buffered events
+        eventCount++;
+        if (twoPassSignature.getSignaturePosition() >= 0) {
+            return;
+        }
+        QName signaturePositionQName = getSecurityProperties().getSignaturePositionQName();
+        boolean start = getSecurityProperties().isSignaturePositionStart();
+        if (!rootElementSeen) {
+            if (xmlSecEvent.isStartElement()) {
+                rootElementSeen = true;
+                if (signaturePositionQName != null
+                    ? start && xmlSecEvent.asStartElement().getName().equals(signaturePositionQName)
+                    : getSecurityProperties().getSignaturePosition() <= 0) {
+                    setSignaturePosition(eventCount, xmlSecEvent.asStartElement());
+                }
+            }
+            return;
+        }
+        if (xmlSecEvent.isStartElement()) {
+            depth++;
+            if (signaturePositionQName != null && start
+                && xmlSecEvent.asStartElement().getName().equals(signaturePositionQName)) {
+                setSignaturePosition(eventCount, xmlSecEvent.asStartElement());
+            }
+        } else if (xmlSecEvent.isEndElement()) {
+            depth--;
+            XMLSecStartElement startElement = xmlSecEvent.getParentXMLSecStartElement();
+            if (depth < 0) {
+                // root-end-element reached
+                setSignaturePosition(eventCount - 1, startElement);
+            } else if (signaturePositionQName != null) {
+                if (!start && xmlSecEvent.asEndElement().getName().equals(signaturePositionQName)) {
+                    setSignaturePosition(eventCount, startElement.getParentXMLSecStartElement());
+                }
+            } else if (depth == 0 && ++position == getSecurityProperties().getSignaturePosition()) {
+                setSignaturePosition(eventCount, startElement.getParentXMLSecStartElement());
+            }
+        }
+    }
+
+    private void setSignaturePosition(long signaturePosition, XMLSecStartElement parentXMLSecStartElement) {
+        twoPassSignature.setSignaturePosition(signaturePosition);
+        this.signatureParent = parentXMLSecStartElement;
+    }
+
+    @Override
+    public void doFinal(OutputProcessorChain outputProcessorChain) throws XMLStreamException, XMLSecurityException {
+        if (twoPassSignature == null) {
+            super.doFinal(outputProcessorChain);
+            return;
+        }
+        if (twoPassSignature.getSignaturePosition() < 0) {
+            twoPassSignature.setSignaturePosition(eventCount);
+        }
+        OutputProcessorChain subOutputProcessorChain = outputProcessorChain.createSubChain(this, signatureParent);
+        processHeaderEvent(subOutputProcessorChain);
+        subOutputProcessorChain.reset();
+        subOutputProcessorChain.doFinal();
+        subOutputProcessorChain.removeProcessor(this);
+    }
+
     @Override
     protected SignedInfoProcessor newSignedInfoProcessor(
             SignatureAlgorithm signatureAlgorithm, String signatureId, XMLSecStartElement xmlSecStartElement,
@@ -35,6 +35,7 @@ import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
 import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
 import org.apache.xml.security.stax.impl.SignaturePartDef;
+import org.apache.xml.security.stax.impl.TwoPassSignature;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 
 /**
@@ -44,13 +45,24 @@ public class XMLSignatureOutputProcessor extends AbstractSignatureOutputProcesso
 
     private static final transient Logger LOG = LoggerFactory.getLogger(XMLSignatureOutputProcessor.class);
 
+    private TwoPassSignature twoPassSignature;
+    private long startElementCount;
+
     public XMLSignatureOutputProcessor() throws XMLSecurityException {
         super();
     }
 
+    @Override
+    public void reset() {
+        super.reset();
+        twoPassSignature = null;
+        startElementCount = 0;
+    }
+
     @Override
     public void init(OutputProcessorChain outputProcessorChain) throws XMLSecurityException {
         super.init(outputProcessorChain);
+        twoPassSignature = outputProcessorChain.getSecurityContext().get(XMLSecurityConstants.PROP_TWO_PASS_SIGNATURE);
         XMLSignatureEndingOutputProcessor signatureEndingOutputProcessor = new XMLSignatureEndingOutputProcessor(this);
         signatureEndingOutputProcessor.setXMLSecurityProperties(getSecurityProperties());
         signatureEndingOutputProcessor.setAction(getAction());
@@ -61,6 +73,7 @@ public class XMLSignatureOutputProcessor extends AbstractSignatureOutputProcesso
     public void processEvent(XMLSecEvent xmlSecEvent, OutputProcessorChain outputProcessorChain) throws XMLStreamException, XMLSecurityException {
         if (xmlSecEvent.getEventType() == XMLStreamConstants.START_ELEMENT) {
             XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+            startElementCount++;
 
             //avoid double signature when child elements matches too
             if (getActiveInternalSignatureOutputProcessor() == null) {
@@ -94,6 +107,9 @@ public class XMLSignatureOutputProcessor extends AbstractSignatureOutputProcesso
                                 List<XMLSecAttribute> attributeList = new ArrayList<>(1);
                                 attributeList.add(createAttribute(securityProperties.getIdAttributeNS(), signaturePartDef.getSigRefId()));
                                 xmlSecEvent = addAttributes(xmlSecStartElement, attributeList);
+                                if (twoPassSignature != null) {
+                                    twoPassSignature.addAttributes(startElementCount, attributeList);
+                                }
                             }
                         } else {
                             signaturePartDef.setSigRefId(securePart.getIdToSign());
@@ -76,6 +76,7 @@ public class ResolverSameDocument implements ResourceResolver, ResourceResolverL
         return this.matches(xmlSecStartElement, XMLSecurityConstants.ATT_NULL_Id);
     }
 
+    @Override
     public boolean matches(XMLSecStartElement xmlSecStartElement, QName idAttributeNS) {
         if (id.isEmpty()) {
             if (firstElementOccured) {
@@ -92,6 +93,11 @@ public class ResolverSameDocument implements ResourceResolver, ResourceResolverL
         return false;
     }
 
+    @Override
+    public String getReferencedId() {
+        return id.isEmpty() ? null : id;
+    }
+
     @Override
     public InputStream getInputStreamFromExternalReference() throws XMLSecurityException {
         return null;
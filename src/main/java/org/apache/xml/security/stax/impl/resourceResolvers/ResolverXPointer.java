@@ -95,6 +95,7 @@ public class ResolverXPointer implements ResourceResolver, ResourceResolverLooku
         return this.matches(xmlSecStartElement, XMLSecurityConstants.ATT_NULL_Id);
     }
 
+    @Override
     public boolean matches(XMLSecStartElement xmlSecStartElement, QName idAttributeNS) {
         //when id is null we have #xpointer(/) and then we just return true for the first start-element
         if (id == null) {
@@ -109,6 +110,11 @@ public class ResolverXPointer implements ResourceResolver, ResourceResolverLooku
         return attribute != null && attribute.getValue().equals(id);
     }
 
+    @Override
+    public String getReferencedId() {
+        return id;
+    }
+
     @Override
     public InputStream getInputStreamFromExternalReference() throws XMLSecurityException {
         return null;
@@ -23,9 +23,9 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.utils.JCAInstancePool;
 
 import java.math.BigInteger;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.DSAPublicKeySpec;
@@ -48,8 +48,7 @@ public class DsaKeyValueSecurityToken extends AbstractInboundSecurityToken {
                 new BigInteger(1, dsaKeyValueType.getP()),
                 new BigInteger(1, dsaKeyValueType.getQ()),
                 new BigInteger(1, dsaKeyValueType.getG()));
-        KeyFactory keyFactory = KeyFactory.getInstance("DSA");
-        return keyFactory.generatePublic(dsaPublicKeySpec);
+        return JCAInstancePool.generatePublic("DSA", dsaPublicKeySpec);
     }
 
     @Override
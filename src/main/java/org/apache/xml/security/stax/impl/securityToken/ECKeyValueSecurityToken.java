@@ -24,9 +24,9 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.utils.JCAInstancePool;
 
 import java.math.BigInteger;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.*;
@@ -84,8 +84,7 @@ public class ECKeyValueSecurityToken extends AbstractInboundSecurityToken {
                         ecCurveDefinition.getH()
                 )
         );
-        KeyFactory keyFactory = KeyFactory.getInstance("EC");
-        return keyFactory.generatePublic(ecPublicKeySpec);
+        return JCAInstancePool.generatePublic("EC", ecPublicKeySpec);
     }
 
     @Override
@@ -23,9 +23,9 @@ import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.InboundSecurityContext;
 import org.apache.xml.security.stax.impl.util.IDGenerator;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.utils.JCAInstancePool;
 
 import java.math.BigInteger;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
 import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
@@ -46,8 +46,7 @@ public class RsaKeyValueSecurityToken extends AbstractInboundSecurityToken {
         RSAPublicKeySpec rsaPublicKeySpec = new RSAPublicKeySpec(
                 new BigInteger(1, rsaKeyValueType.getModulus()),
                 new BigInteger(1, rsaKeyValueType.getExponent()));
-        KeyFactory keyFactory = KeyFactory.getInstance("RSA");
-        return keyFactory.generatePublic(rsaPublicKeySpec);
+        return JCAInstancePool.generatePublic("RSA", rsaPublicKeySpec);
     }
 
     @Override
@@ -23,7 +23,6 @@ import java.io.InputStream;
 import java.security.Key;
 import java.security.PublicKey;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.util.Map;
 
@@ -44,6 +43,7 @@ import org.apache.xml.security.stax.securityToken.InboundSecurityToken;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants.TokenType;
 import org.apache.xml.security.stax.securityToken.SecurityTokenFactory;
+import org.apache.xml.security.utils.JCAInstancePool;
 import org.apache.xml.security.utils.RFC2253Parser;
 import org.apache.xml.security.utils.UnsyncByteArrayInputStream;
 
@@ -295,8 +295,7 @@ public class SecurityTokenFactoryImpl extends SecurityTokenFactory {
     private static X509Certificate getCertificateFromBytes(byte[] data)
             throws XMLSecurityException {
         try (InputStream in = new UnsyncByteArrayInputStream(data)) {
-            CertificateFactory factory = CertificateFactory.getInstance("X.509");
-            return (X509Certificate) factory.generateCertificate(in);
+            return (X509Certificate) JCAInstancePool.generateCertificate("X.509", in);
         } catch (CertificateException | IOException e) {
             throw new XMLSecurityException(e);
         }
@@ -42,6 +42,15 @@ public class XMLSecAttributeImpl extends XMLSecEventBaseImpl implements XMLSecAt
         this.value = value;
     }
 
+    /**
+     * @param attributeNamespace the (interned) namespace binding matching the prefix and URI of the name
+     */
+    public XMLSecAttributeImpl(QName name, XMLSecNamespace attributeNamespace, String value) {
+        this.name = name;
+        this.attributeNamespace = attributeNamespace;
+        this.value = value;
+    }
+
     @Override
     public int compareTo(XMLSecAttribute o) {
         //An element's attribute nodes are sorted lexicographically with namespace URI as the primary
@@ -53,6 +53,15 @@ public class XMLSecStartElementImpl extends XMLSecEventBaseImpl implements XMLSe
         }
     }
 
+    /**
+     * @param elementNamespace the (interned) namespace binding matching the prefix and URI of the element name
+     */
+    public XMLSecStartElementImpl(QName elementName, XMLSecNamespace elementNamespace, List<XMLSecAttribute> attributes,
+                                  List<XMLSecNamespace> namespaces, XMLSecStartElement parentXmlSecStartElement) {
+        this(elementName, attributes, namespaces, parentXmlSecStartElement);
+        this.elementNamespace = elementNamespace;
+    }
+
     public XMLSecStartElementImpl(QName elementName, Collection<XMLSecAttribute> attributes, Collection<XMLSecNamespace> namespaces) {
         this.elementName = elementName;
         if (attributes != null && !attributes.isEmpty()) {
@@ -36,9 +36,11 @@ import java.io.*;
 public class TransformBase64Decode extends TransformIdentity {
 
     private ChildOutputMethod childOutputMethod;
+    private OutputStream decodedOutputStream;
 
     @Override
     public void setOutputStream(OutputStream outputStream) throws XMLSecurityException {
+        this.decodedOutputStream = outputStream;
         super.setOutputStream(new Base64OutputStream(
                 new FilterOutputStream(outputStream) {
                     @Override
@@ -51,6 +53,16 @@ public class TransformBase64Decode extends TransformIdentity {
         );
     }
 
+    @Override
+    public void reset() throws XMLSecurityException {
+        super.reset();
+        childOutputMethod = null;
+        if (decodedOutputStream != null) {
+            //the Base64OutputStream was closed by doFinal()
+            setOutputStream(decodedOutputStream);
+        }
+    }
+
     @Override
     public XMLSecurityConstants.TransformMethod getPreferredTransformMethod(XMLSecurityConstants.TransformMethod forInput) {
         switch (forInput) {
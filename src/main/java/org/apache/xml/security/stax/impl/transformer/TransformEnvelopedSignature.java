@@ -18,6 +18,7 @@
  */
 package org.apache.xml.security.stax.impl.transformer;
 
+import org.apache.xml.security.exceptions.XMLSecurityException;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.stax.XMLSecEndElement;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
@@ -46,6 +47,13 @@ public class TransformEnvelopedSignature extends TransformIdentity {
         }
     }
 
+    @Override
+    public void reset() throws XMLSecurityException {
+        super.reset();
+        curLevel = 0;
+        sigElementLevel = -1;
+    }
+
     @Override
     public void transform(XMLSecEvent xmlSecEvent) throws XMLStreamException {
         if (XMLStreamConstants.START_ELEMENT == xmlSecEvent.getEventType()) {
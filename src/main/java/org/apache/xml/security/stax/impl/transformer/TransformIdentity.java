@@ -99,6 +99,33 @@ public class TransformIdentity implements Transformer {
         throw new UnsupportedOperationException("no properties supported");
     }
 
+    /**
+     * Resets this transformer and its child transformers after doFinal(), so that the chain can
+     * transform the next document into the same output with the same properties.
+     * Subclasses with state of their own must override this method.
+     */
+    public void reset() throws XMLSecurityException {
+        this.xmlEventWriterForOutputStream = null;
+        this.childOutputMethod = null;
+        if (this.transformer != null) {
+            ((TransformIdentity) this.transformer).reset();
+        }
+    }
+
+    /**
+     * Returns true if every transformer of the given chain supports {@link #reset()}.
+     */
+    public static boolean isResettable(Transformer transformer) {
+        Transformer current = transformer;
+        while (current != null) {
+            if (!(current instanceof TransformIdentity)) {
+                return false;
+            }
+            current = ((TransformIdentity) current).getTransformer();
+        }
+        return true;
+    }
+
     @Override
     public XMLSecurityConstants.TransformMethod getPreferredTransformMethod(XMLSecurityConstants.TransformMethod forInput) {
         switch (forInput) {
@@ -24,6 +24,7 @@ import java.io.OutputStream;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -82,6 +83,8 @@ public abstract class CanonicalizerBase extends TransformIdentity {
 
     private static final Map<String, byte[]> cache = new WeakHashMap<>();
     private final C14NStack<XMLSecEvent> outputStack = new C14NStack<>();
+    //reused to sort the attributes of an element without allocating a new list per element
+    private final List<XMLSecAttribute> sortedAttributes = new ArrayList<>();
     private boolean includeComments = false;
     private DocumentLevel currentDocumentLevel = DocumentLevel.NODE_BEFORE_DOCUMENT_ELEMENT;
 
@@ -96,6 +99,18 @@ public abstract class CanonicalizerBase extends TransformIdentity {
         throw new UnsupportedOperationException("InclusiveNamespace-PrefixList not supported");
     }
 
+    @Override
+    public void reset() throws XMLSecurityException {
+        super.reset();
+        outputStack.clear();
+        sortedAttributes.clear();
+        currentDocumentLevel = DocumentLevel.NODE_BEFORE_DOCUMENT_ELEMENT;
+        firstCall = true;
+        if (getTransformer() != null) {
+            ((UnsyncByteArrayOutputStream) getOutputStream()).reset();
+        }
+    }
+
     @Override
     public void setTransformer(Transformer transformer) throws XMLSecurityException {
         //we support only transformers which takes an InputStream otherwise we will break the C14N
@@ -165,11 +180,14 @@ public abstract class CanonicalizerBase extends TransformIdentity {
     protected List<XMLSecAttribute> getCurrentUtilizedAttributes(final XMLSecStartElement xmlSecStartElement,
                                                                       final C14NStack<XMLSecEvent> outputStack) {
         List<XMLSecAttribute> comparableAttributes = xmlSecStartElement.getOnElementDeclaredAttributes();
-        if (comparableAttributes.isEmpty()) {
-            return Collections.emptyList();
+        if (comparableAttributes.size() <= 1) {
+            //nothing to sort, the event's own list can be used as it is
+            return comparableAttributes;
         }
 
-        return new ArrayList<>(comparableAttributes);
+        sortedAttributes.clear();
+        sortedAttributes.addAll(comparableAttributes);
+        return sortedAttributes;
     }
 
     protected List<XMLSecNamespace> getInitialUtilizedNamespaces(final XMLSecStartElement xmlSecStartElement,
@@ -268,13 +286,11 @@ public abstract class CanonicalizerBase extends TransformIdentity {
                     final List<XMLSecAttribute> utilizedAttributes;
 
                     if (firstCall) {
-                        utilizedNamespaces = new ArrayList<>();
-                        utilizedAttributes = new ArrayList<>();
                         outputStack.peek().add(XMLSecEventFactory.createXMLSecNamespace(null, ""));
                         outputStack.push(Collections.<Comparable>emptyList());
 
-                        utilizedNamespaces.addAll(getInitialUtilizedNamespaces(xmlSecStartElement, outputStack));
-                        utilizedAttributes.addAll(getInitialUtilizedAttributes(xmlSecStartElement, outputStack));
+                        utilizedNamespaces = getInitialUtilizedNamespaces(xmlSecStartElement, outputStack);
+                        utilizedAttributes = getInitialUtilizedAttributes(xmlSecStartElement, outputStack);
 
                         firstCall = false;
                     } else {
@@ -292,7 +308,9 @@ public abstract class CanonicalizerBase extends TransformIdentity {
                     UtfHelpper.writeByte(name, outputStream, cache);
 
                     if (!utilizedNamespaces.isEmpty()) {
-                        Collections.sort(utilizedNamespaces);
+                        if (utilizedNamespaces.size() > 1) {
+                            Collections.sort(utilizedNamespaces);
+                        }
                         for (int i = 0; i < utilizedNamespaces.size(); i++) {
                             final XMLSecNamespace xmlSecNamespace = utilizedNamespaces.get(i);
                             if (!namespaceIsAbsolute(xmlSecNamespace.getNamespaceURI())) {
@@ -308,7 +326,9 @@ public abstract class CanonicalizerBase extends TransformIdentity {
                     }
 
                     if (!utilizedAttributes.isEmpty()) {
-                        Collections.sort(utilizedAttributes);
+                        if (utilizedAttributes.size() > 1) {
+                            Collections.sort(utilizedAttributes);
+                        }
                         for (int i = 0; i < utilizedAttributes.size(); i++) {
                             final XMLSecAttribute xmlSecAttribute = utilizedAttributes.get(i);
 
@@ -372,7 +392,7 @@ public abstract class CanonicalizerBase extends TransformIdentity {
                 case XMLStreamConstants.DTD:
                     break;
                 case XMLStreamConstants.CDATA:
-                    outputTextToWriter(xmlSecEvent.asCharacters().getData(), outputStream);
+                    outputTextToWriter(xmlSecEvent.asCharacters().getText(), outputStream);
                     break;
                 case XMLStreamConstants.NAMESPACE:
                     throw new XMLStreamException("illegal event :" + XMLSecurityUtils.getXMLEventAsString(xmlSecEvent));
@@ -655,9 +675,27 @@ public abstract class CanonicalizerBase extends TransformIdentity {
     }
 
 
+    /**
+     * The stack of the rendered namespaces and attributes per element scope. The entries are additionally
+     * indexed by their equality (the prefix for namespaces, the local name for attributes), so that
+     * {@link #containsOnStack(Object)} doesn't have to scan all scopes. The index covers entries which are
+     * added to the lists returned by {@link #peek()}; scopes are expected to be removed with pop().
+     */
     public static class C14NStack<E> extends ArrayDeque<List<Comparable>> {
 
+        private static final long serialVersionUID = 1L;
+
+        private final Map<Object, List<Object>> index = new HashMap<>();
+        private boolean unindexedScope;
+
         public Object containsOnStack(final Object o) {
+            if (!unindexedScope) {
+                final List<Object> entries = index.get(o);
+                if (entries == null || entries.isEmpty()) {
+                    return null;
+                }
+                return entries.get(entries.size() - 1);
+            }
             //Important: iteration order from head to tail!
             final Iterator<List<Comparable>> elementIterator = super.iterator();
             while (elementIterator.hasNext()) {
@@ -678,7 +716,7 @@ public abstract class CanonicalizerBase extends TransformIdentity {
             List<Comparable> list = super.peekFirst();
             if (list == Collections.<Comparable>emptyList()) {
                 super.removeFirst();
-                list = new ArrayList<>();
+                list = new ScopeList(index);
                 super.addFirst(list);
             }
             return list;
@@ -688,5 +726,57 @@ public abstract class CanonicalizerBase extends TransformIdentity {
         public List<Comparable> peekFirst() {
             throw new UnsupportedOperationException("Use peek()");
         }
+
+        @Override
+        public void addFirst(List<Comparable> list) {
+            if (!list.isEmpty() || !(list instanceof ScopeList) && list != Collections.<Comparable>emptyList()) {
+                //a foreign list, entries added to it can't be indexed
+                unindexedScope = true;
+            }
+            super.addFirst(list);
+        }
+
+        @Override
+        public List<Comparable> pollFirst() {
+            final List<Comparable> list = super.pollFirst();
+            if (list != null) {
+                for (int i = list.size() - 1; i >= 0; i--) {
+                    final List<Object> entries = index.get(list.get(i));
+                    if (entries != null && !entries.isEmpty()) {
+                        entries.remove(entries.size() - 1);
+                    }
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void clear() {
+            super.clear();
+            index.clear();
+            unindexedScope = false;
+        }
+
+        private static final class ScopeList extends ArrayList<Comparable> {
+
+            private static final long serialVersionUID = 1L;
+
+            private final transient Map<Object, List<Object>> index;
+
+            ScopeList(Map<Object, List<Object>> index) {
+                this.index = index;
+            }
+
+            @Override
+            public boolean add(Comparable comparable) {
+                List<Object> entries = index.get(comparable);
+                if (entries == null) {
+                    entries = new ArrayList<>(2);
+                    index.put(comparable, entries);
+                }
+                entries.add(comparable);
+                return super.add(comparable);
+            }
+        }
     }
 }
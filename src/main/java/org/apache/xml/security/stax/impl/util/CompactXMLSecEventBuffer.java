@@ -0,0 +1,758 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import javax.xml.namespace.QName;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecCharacters;
+import org.apache.xml.security.stax.ext.stax.XMLSecComment;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecProcessingInstruction;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartDocument;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.stax.XMLSecAttributeImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecCharactersImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecCommentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndDocumentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecEndElementImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecNamespaceImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecProcessingInstructionImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartDocumentImpl;
+import org.apache.xml.security.stax.impl.stax.XMLSecStartElementImpl;
+
+/**
+ * A FIFO buffer of XMLSecEvents which keeps the events binary encoded in byte chunks instead of
+ * as event objects. Names and namespace bindings are written once and referenced by index afterwards.
+ * The chunks are taken from a {@link DirectBufferPool} if one is given (from the heap once the pool
+ * is exhausted), and the encoded events are moved to an encrypted temporary file once they exceed
+ * the spill threshold.
+ * <p>
+ * The events are decoded again when they are taken from the head of the buffer, with the parent
+ * start elements rebuilt. Events of other implementations than the ones of the
+ * org.apache.xml.security.stax.impl.stax package are kept as they are.
+ * <p>
+ * The queue operations and pushing events back to the head work on the encoded events. The
+ * other Deque operations (iterating, accessing the tail, removing occurrences) first decode
+ * all buffered events, so they give up the compact representation of the events buffered
+ * so far. I/O errors are thrown as UncheckedIOException. The buffer must be closed (or
+ * cleared) to release the chunks and delete the temporary file. Not thread-safe.
+ */
+public class CompactXMLSecEventBuffer extends AbstractCollection<XMLSecEvent> implements Deque<XMLSecEvent>, Closeable {
+
+    private static final int CHUNK_SIZE = 8192;
+    private static final int MAX_SYMBOLS = 4096;
+
+    private static final int OBJECT = 0;
+    private static final int START_ELEMENT = 1;
+    private static final int END_ELEMENT = 2;
+    private static final int CHARACTERS = 3;
+    private static final int COMMENT = 4;
+    private static final int PROCESSING_INSTRUCTION = 5;
+    private static final int START_DOCUMENT = 6;
+    private static final int END_DOCUMENT = 7;
+
+    private static final int FLAG_CDATA = 1;
+    private static final int FLAG_IGNORABLE_WHITESPACE = 2;
+    private static final int FLAG_WHITESPACE = 4;
+
+    private final DirectBufferPool bufferPool;
+    private final long spillThreshold;
+
+    //events pushed back to the head, they precede the encoded events
+    private final ArrayDeque<XMLSecEvent> head = new ArrayDeque<>();
+    //events which are not encoded, in the order of their OBJECT records
+    private final ArrayDeque<XMLSecEvent> objects = new ArrayDeque<>();
+    private int encodedCount;
+
+    //encoded data in the order written: sealed chunks, then the spill file, then the write chunk
+    private final ArrayDeque<ByteBuffer> sealedChunks = new ArrayDeque<>();
+    private long sealedSize;
+    private ByteBuffer writeChunk;
+    private ByteBuffer readChunk;
+    private SpillFile spillFile;
+    private ByteBuffer spillReadChunk;
+    private byte[] transferBytes;
+
+    private final Map<QName, Integer> writtenNames = new HashMap<>();
+    private final List<QName> writtenNameList = new ArrayList<>();
+    private final Map<XMLSecNamespace, Integer> writtenNamespaces = new IdentityHashMap<>();
+    private int writtenNamespaceCount;
+    private final List<QName> readNames = new ArrayList<>();
+    private final List<XMLSecNamespace> readNamespaces = new ArrayList<>();
+    private char[] charBuffer = new char[256];
+
+    private boolean started;
+    private XMLSecStartElement parentXMLSecStartElement;
+
+    /**
+     * @param bufferPool the pool of direct buffers the chunks are taken from, or null to use heap chunks
+     * @param spillThreshold the number of encoded bytes which are kept in memory before the events are
+     *                       moved to a temporary file, or a negative value to keep all events in memory
+     */
+    public CompactXMLSecEventBuffer(DirectBufferPool bufferPool, long spillThreshold) {
+        this.bufferPool = bufferPool;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public boolean offerLast(XMLSecEvent xmlSecEvent) {
+        if (xmlSecEvent == null) {
+            throw new NullPointerException();
+        }
+        if (!started) {
+            //the first event is the only one whose parent isn't part of the buffer
+            started = true;
+            parentXMLSecStartElement = xmlSecEvent.getParentXMLSecStartElement();
+        }
+        try {
+            encode(xmlSecEvent);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        encodedCount++;
+        return true;
+    }
+
+    @Override
+    public boolean offerFirst(XMLSecEvent xmlSecEvent) {
+        if (xmlSecEvent == null) {
+            throw new NullPointerException();
+        }
+        head.push(xmlSecEvent);
+        return true;
+    }
+
+    @Override
+    public XMLSecEvent pollFirst() {
+        if (!head.isEmpty()) {
+            return head.pop();
+        }
+        if (encodedCount == 0) {
+            return null;
+        }
+        try {
+            XMLSecEvent xmlSecEvent = decode();
+            encodedCount--;
+            return xmlSecEvent;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public XMLSecEvent peekFirst() {
+        if (head.isEmpty() && encodedCount > 0) {
+            head.push(pollFirst());
+        }
+        return head.peek();
+    }
+
+    @Override
+    public void addFirst(XMLSecEvent xmlSecEvent) {
+        offerFirst(xmlSecEvent);
+    }
+
+    @Override
+    public void addLast(XMLSecEvent xmlSecEvent) {
+        offerLast(xmlSecEvent);
+    }
+
+    @Override
+    public XMLSecEvent removeFirst() {
+        XMLSecEvent xmlSecEvent = pollFirst();
+        if (xmlSecEvent == null) {
+            throw new NoSuchElementException();
+        }
+        return xmlSecEvent;
+    }
+
+    @Override
+    public XMLSecEvent getFirst() {
+        XMLSecEvent xmlSecEvent = peekFirst();
+        if (xmlSecEvent == null) {
+            throw new NoSuchElementException();
+        }
+        return xmlSecEvent;
+    }
+
+    @Override
+    public boolean add(XMLSecEvent xmlSecEvent) {
+        return offerLast(xmlSecEvent);
+    }
+
+    @Override
+    public boolean offer(XMLSecEvent xmlSecEvent) {
+        return offerLast(xmlSecEvent);
+    }
+
+    @Override
+    public XMLSecEvent remove() {
+        return removeFirst();
+    }
+
+    @Override
+    public XMLSecEvent poll() {
+        return pollFirst();
+    }
+
+    @Override
+    public XMLSecEvent element() {
+        return getFirst();
+    }
+
+    @Override
+    public XMLSecEvent peek() {
+        return peekFirst();
+    }
+
+    @Override
+    public void push(XMLSecEvent xmlSecEvent) {
+        addFirst(xmlSecEvent);
+    }
+
+    @Override
+    public XMLSecEvent pop() {
+        return removeFirst();
+    }
+
+    @Override
+    public int size() {
+        return head.size() + encodedCount;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head.isEmpty() && encodedCount == 0;
+    }
+
+    /**
+     * Removes all events and releases the chunks and the temporary file.
+     */
+    @Override
+    public void clear() {
+        head.clear();
+        objects.clear();
+        encodedCount = 0;
+        release(readChunk);
+        readChunk = null;
+        release(writeChunk);
+        writeChunk = null;
+        while (!sealedChunks.isEmpty()) {
+            release(sealedChunks.poll());
+        }
+        sealedSize = 0;
+        writtenNames.clear();
+        writtenNameList.clear();
+        writtenNamespaces.clear();
+        writtenNamespaceCount = 0;
+        readNames.clear();
+        readNamespaces.clear();
+        started = false;
+        parentXMLSecStartElement = null;
+        if (spillFile != null) {
+            try {
+                spillFile.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                spillFile = null;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        clear();
+    }
+
+    /**
+     * @return true if encoded events were moved to the temporary file
+     */
+    public boolean isSpilled() {
+        return spillFile != null;
+    }
+
+    @Override
+    public XMLSecEvent removeLast() {
+        XMLSecEvent xmlSecEvent = pollLast();
+        if (xmlSecEvent == null) {
+            throw new NoSuchElementException();
+        }
+        return xmlSecEvent;
+    }
+
+    @Override
+    public XMLSecEvent pollLast() {
+        decodeAll();
+        return head.pollLast();
+    }
+
+    @Override
+    public XMLSecEvent getLast() {
+        XMLSecEvent xmlSecEvent = peekLast();
+        if (xmlSecEvent == null) {
+            throw new NoSuchElementException();
+        }
+        return xmlSecEvent;
+    }
+
+    @Override
+    public XMLSecEvent peekLast() {
+        decodeAll();
+        return head.peekLast();
+    }
+
+    @Override
+    public boolean removeFirstOccurrence(Object o) {
+        decodeAll();
+        return head.removeFirstOccurrence(o);
+    }
+
+    @Override
+    public boolean removeLastOccurrence(Object o) {
+        decodeAll();
+        return head.removeLastOccurrence(o);
+    }
+
+    @Override
+    public Iterator<XMLSecEvent> iterator() {
+        decodeAll();
+        return head.iterator();
+    }
+
+    @Override
+    public Iterator<XMLSecEvent> descendingIterator() {
+        decodeAll();
+        return head.descendingIterator();
+    }
+
+    /**
+     * Moves all encoded events to the head, behind the events which were pushed back.
+     */
+    private void decodeAll() {
+        if (encodedCount == 0) {
+            return;
+        }
+        try {
+            while (encodedCount > 0) {
+                head.offerLast(decode());
+                encodedCount--;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        //the decoded events may be removed from the tail now, so the parent of the next
+        //offered event is taken from the event itself
+        started = false;
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[size=" + size() + ", spilled=" + isSpilled() + "]";
+    }
+
+    private void encode(XMLSecEvent xmlSecEvent) throws IOException {
+        Class<?> eventClass = xmlSecEvent.getClass();
+        if (eventClass == XMLSecStartElementImpl.class && isEncodable(xmlSecEvent.asStartElement())) {
+            XMLSecStartElement xmlSecStartElement = xmlSecEvent.asStartElement();
+            writeByte(START_ELEMENT);
+            writeName(xmlSecStartElement.getName());
+            List<XMLSecNamespace> namespaces = xmlSecStartElement.getOnElementDeclaredNamespaces();
+            writeVarInt(namespaces.size());
+            for (int i = 0; i < namespaces.size(); i++) {
+                writeNamespace(namespaces.get(i));
+            }
+            List<XMLSecAttribute> attributes = xmlSecStartElement.getOnElementDeclaredAttributes();
+            writeVarInt(attributes.size());
+            for (int i = 0; i < attributes.size(); i++) {
+                XMLSecAttribute xmlSecAttribute = attributes.get(i);
+                writeName(xmlSecAttribute.getName());
+                writeString(xmlSecAttribute.getValue());
+            }
+        } else if (eventClass == XMLSecEndElementImpl.class) {
+            writeByte(END_ELEMENT);
+            writeName(xmlSecEvent.asEndElement().getName());
+        } else if (eventClass == XMLSecCharactersImpl.class) {
+            XMLSecCharacters xmlSecCharacters = xmlSecEvent.asCharacters();
+            int flags = 0;
+            if (xmlSecCharacters.isCData()) {
+                flags |= FLAG_CDATA;
+            }
+            if (xmlSecCharacters.isIgnorableWhiteSpace()) {
+                flags |= FLAG_IGNORABLE_WHITESPACE;
+            }
+            if (xmlSecCharacters.isWhiteSpace()) {
+                flags |= FLAG_WHITESPACE;
+            }
+            writeByte(CHARACTERS);
+            writeByte(flags);
+            char[] text = xmlSecCharacters.getText();
+            writeVarInt(text.length + 1);
+            writeChars(text, text.length);
+        } else if (eventClass == XMLSecCommentImpl.class) {
+            writeByte(COMMENT);
+            writeString(((XMLSecComment) xmlSecEvent).getText());
+        } else if (eventClass == XMLSecProcessingInstructionImpl.class) {
+            XMLSecProcessingInstruction processingInstruction = (XMLSecProcessingInstruction) xmlSecEvent;
+            writeByte(PROCESSING_INSTRUCTION);
+            writeString(processingInstruction.getTarget());
+            writeString(processingInstruction.getData());
+        } else if (eventClass == XMLSecStartDocumentImpl.class) {
+            XMLSecStartDocument startDocument = (XMLSecStartDocument) xmlSecEvent;
+            writeByte(START_DOCUMENT);
+            writeString(startDocument.getSystemId());
+            writeString(startDocument.encodingSet() ? startDocument.getCharacterEncodingScheme() : null);
+            writeByte(startDocument.standaloneSet() ? startDocument.isStandalone() ? 2 : 1 : 0);
+            writeString(startDocument.getVersion());
+        } else if (eventClass == XMLSecEndDocumentImpl.class) {
+            writeByte(END_DOCUMENT);
+        } else {
+            writeByte(OBJECT);
+            objects.offer(xmlSecEvent);
+        }
+    }
+
+    private static boolean isEncodable(XMLSecStartElement xmlSecStartElement) {
+        List<XMLSecNamespace> namespaces = xmlSecStartElement.getOnElementDeclaredNamespaces();
+        for (int i = 0; i < namespaces.size(); i++) {
+            if (namespaces.get(i).getClass() != XMLSecNamespaceImpl.class) {
+                return false;
+            }
+        }
+        List<XMLSecAttribute> attributes = xmlSecStartElement.getOnElementDeclaredAttributes();
+        for (int i = 0; i < attributes.size(); i++) {
+            if (attributes.get(i).getClass() != XMLSecAttributeImpl.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private XMLSecEvent decode() throws IOException {
+        int type = readByte();
+        switch (type) {
+            case START_ELEMENT: {
+                QName name = readName();
+                int namespaceCount = readVarInt();
+                List<XMLSecNamespace> namespaces = null;
+                if (namespaceCount > 0) {
+                    namespaces = new ArrayList<>(namespaceCount);
+                    for (int i = 0; i < namespaceCount; i++) {
+                        namespaces.add(readNamespace());
+                    }
+                }
+                int attributeCount = readVarInt();
+                List<XMLSecAttribute> attributes = null;
+                if (attributeCount > 0) {
+                    attributes = new ArrayList<>(attributeCount);
+                    for (int i = 0; i < attributeCount; i++) {
+                        QName attributeName = readName();
+                        attributes.add(new XMLSecAttributeImpl(attributeName, readString()));
+                    }
+                }
+                XMLSecStartElement xmlSecStartElement =
+                    new XMLSecStartElementImpl(name, attributes, namespaces, parentXMLSecStartElement);
+                parentXMLSecStartElement = xmlSecStartElement;
+                return xmlSecStartElement;
+            }
+            case END_ELEMENT: {
+                XMLSecEvent xmlSecEvent = new XMLSecEndElementImpl(readName(), parentXMLSecStartElement);
+                closeElement();
+                return xmlSecEvent;
+            }
+            case CHARACTERS: {
+                int flags = readByte();
+                int length = readVarInt() - 1;
+                char[] text = new char[length];
+                readChars(text, length);
+                return new XMLSecCharactersImpl(text, (flags & FLAG_CDATA) != 0, (flags & FLAG_IGNORABLE_WHITESPACE) != 0,
+                                                (flags & FLAG_WHITESPACE) != 0, parentXMLSecStartElement);
+            }
+            case COMMENT:
+                return new XMLSecCommentImpl(readString(), parentXMLSecStartElement);
+            case PROCESSING_INSTRUCTION: {
+                String target = readString();
+                return new XMLSecProcessingInstructionImpl(target, readString(), parentXMLSecStartElement);
+            }
+            case START_DOCUMENT: {
+                String systemId = readString();
+                String characterEncodingScheme = readString();
+                int standalone = readByte();
+                return new XMLSecStartDocumentImpl(systemId, characterEncodingScheme,
+                                                   standalone == 0 ? null : standalone == 2, readString());
+            }
+            case END_DOCUMENT:
+                return new XMLSecEndDocumentImpl();
+            case OBJECT: {
+                XMLSecEvent xmlSecEvent = objects.poll();
+                if (xmlSecEvent.isStartElement()) {
+                    parentXMLSecStartElement = xmlSecEvent.asStartElement();
+                } else if (xmlSecEvent.isEndElement()) {
+                    closeElement();
+                }
+                return xmlSecEvent;
+            }
+            default:
+                throw new IOException("Unknown event record " + type);
+        }
+    }
+
+    private void closeElement() {
+        if (parentXMLSecStartElement != null) {
+            parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+        }
+    }
+
+    private void writeName(QName name) throws IOException {
+        Integer index = writtenNames.get(name);
+        //QName.equals() ignores the prefix
+        if (index != null && writtenNameList.get(index).getPrefix().equals(name.getPrefix())) {
+            writeVarInt(index + 1);
+            return;
+        }
+        writeVarInt(0);
+        writeString(name.getNamespaceURI());
+        writeString(name.getLocalPart());
+        writeString(name.getPrefix());
+        if (writtenNameList.size() < MAX_SYMBOLS) {
+            if (index == null) {
+                writtenNames.put(name, writtenNameList.size());
+            }
+            writtenNameList.add(name);
+        }
+    }
+
+    private QName readName() throws IOException {
+        int index = readVarInt();
+        if (index > 0) {
+            return readNames.get(index - 1);
+        }
+        String namespaceURI = readString();
+        String localPart = readString();
+        QName name = new QName(namespaceURI, localPart, readString());
+        if (readNames.size() < MAX_SYMBOLS) {
+            readNames.add(name);
+        }
+        return name;
+    }
+
+    private void writeNamespace(XMLSecNamespace namespace) throws IOException {
+        Integer index = writtenNamespaces.get(namespace);
+        if (index != null) {
+            writeVarInt(index + 1);
+            return;
+        }
+        writeVarInt(0);
+        writeString(namespace.getPrefix());
+        writeString(namespace.getNamespaceURI());
+        if (writtenNamespaceCount < MAX_SYMBOLS) {
+            writtenNamespaces.put(namespace, writtenNamespaceCount++);
+        }
+    }
+
+    private XMLSecNamespace readNamespace() throws IOException {
+        int index = readVarInt();
+        if (index > 0) {
+            return readNamespaces.get(index - 1);
+        }
+        String prefix = readString();
+        XMLSecNamespace namespace = XMLSecNamespaceImpl.getInstance(prefix, readString());
+        if (readNamespaces.size() < MAX_SYMBOLS) {
+            readNamespaces.add(namespace);
+        }
+        return namespace;
+    }
+
+    private void writeString(String value) throws IOException {
+        if (value == null) {
+            writeVarInt(0);
+            return;
+        }
+        int length = value.length();
+        writeVarInt(length + 1);
+        if (charBuffer.length < length) {
+            charBuffer = new char[Math.max(length, charBuffer.length * 2)];
+        }
+        value.getChars(0, length, charBuffer, 0);
+        writeChars(charBuffer, length);
+    }
+
+    private String readString() throws IOException {
+        int length = readVarInt() - 1;
+        if (length < 0) {
+            return null;
+        }
+        if (charBuffer.length < length) {
+            charBuffer = new char[Math.max(length, charBuffer.length * 2)];
+        }
+        readChars(charBuffer, length);
+        return new String(charBuffer, 0, length);
+    }
+
+    //chars are written in the UTF-8 byte layout, surrogates are written separately
+    private void writeChars(char[] chars, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            char c = chars[i];
+            if (c < 0x80) {
+                writeByte(c);
+            } else if (c < 0x800) {
+                writeByte(0xC0 | c >> 6);
+                writeByte(0x80 | c & 0x3F);
+            } else {
+                writeByte(0xE0 | c >> 12);
+                writeByte(0x80 | c >> 6 & 0x3F);
+                writeByte(0x80 | c & 0x3F);
+            }
+        }
+    }
+
+    private void readChars(char[] chars, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            int b = readByte();
+            if (b < 0x80) {
+                chars[i] = (char) b;
+            } else if (b < 0xE0) {
+                chars[i] = (char) ((b & 0x1F) << 6 | readByte() & 0x3F);
+            } else {
+                int b2 = readByte();
+                chars[i] = (char) ((b & 0x0F) << 12 | (b2 & 0x3F) << 6 | readByte() & 0x3F);
+            }
+        }
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            writeByte(value & 0x7F | 0x80);
+            value >>>= 7;
+        }
+        writeByte(value);
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+
+    private void writeByte(int b) throws IOException {
+        if (writeChunk == null) {
+            writeChunk = newChunk();
+        } else if (!writeChunk.hasRemaining()) {
+            sealWriteChunk();
+        }
+        writeChunk.put((byte) b);
+    }
+
+    private int readByte() throws IOException {
+        if (readChunk == null || !readChunk.hasRemaining()) {
+            nextReadChunk();
+        }
+        return readChunk.get() & 0xFF;
+    }
+
+    private void sealWriteChunk() throws IOException {
+        writeChunk.flip();
+        if (spillFile == null && (spillThreshold < 0 || sealedSize + writeChunk.remaining() <= spillThreshold)) {
+            sealedSize += writeChunk.remaining();
+            sealedChunks.offer(writeChunk);
+            writeChunk = newChunk();
+            return;
+        }
+        if (spillFile == null) {
+            spillFile = new SpillFile();
+        }
+        //once spilled, all following chunks go to the file to keep the order
+        if (writeChunk.hasArray()) {
+            spillFile.write(writeChunk.array(), writeChunk.arrayOffset(), writeChunk.remaining());
+        } else {
+            if (transferBytes == null) {
+                transferBytes = new byte[writeChunk.capacity()];
+            }
+            int length = writeChunk.remaining();
+            writeChunk.get(transferBytes, 0, length);
+            spillFile.write(transferBytes, 0, length);
+        }
+        writeChunk.clear();
+    }
+
+    private void nextReadChunk() throws IOException {
+        if (readChunk != spillReadChunk) {
+            release(readChunk);
+        }
+        readChunk = null;
+        if (!sealedChunks.isEmpty()) {
+            readChunk = sealedChunks.poll();
+            sealedSize -= readChunk.remaining();
+        } else if (spillFile != null && spillFile.available() > 0) {
+            if (spillReadChunk == null) {
+                spillReadChunk = ByteBuffer.allocate(CHUNK_SIZE * 8);
+            }
+            spillReadChunk.clear();
+            int count = spillFile.read(spillReadChunk.array(), 0, spillReadChunk.capacity());
+            spillReadChunk.limit(Math.max(count, 0));
+            readChunk = spillReadChunk;
+        } else if (writeChunk != null && writeChunk.position() > 0) {
+            writeChunk.flip();
+            readChunk = writeChunk;
+            writeChunk = null;
+        }
+        if (readChunk == null || !readChunk.hasRemaining()) {
+            throw new IOException("Unexpected end of the event buffer");
+        }
+    }
+
+    private ByteBuffer newChunk() {
+        if (bufferPool != null) {
+            ByteBuffer chunk = bufferPool.acquire();
+            if (chunk != null) {
+                return chunk;
+            }
+            //the pool is exhausted, so we continue on the heap
+        }
+        return ByteBuffer.allocate(CHUNK_SIZE);
+    }
+
+    private void release(ByteBuffer chunk) {
+        if (bufferPool != null && chunk != null && chunk != spillReadChunk) {
+            bufferPool.release(chunk);
+        }
+    }
+}
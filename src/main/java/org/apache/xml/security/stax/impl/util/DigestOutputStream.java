@@ -21,6 +21,8 @@ package org.apache.xml.security.stax.impl.util;
 import java.io.OutputStream;
 import java.security.MessageDigest;
 
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,10 +36,21 @@ public class DigestOutputStream extends OutputStream {
     protected static final transient boolean isDebugEnabled = LOG.isDebugEnabled();
 
     private final MessageDigest messageDigest;
+    private final String algorithmURI;
     private StringBuilder stringBuilder; //NOPMD
+    private long length;
 
     public DigestOutputStream(MessageDigest messageDigest) {
+        this(messageDigest, null);
+    }
+
+    /**
+     * @param messageDigest the digest to update
+     * @param algorithmURI the URI of the digest algorithm, which is reported to the {@link XMLSecurityMetrics}
+     */
+    public DigestOutputStream(MessageDigest messageDigest, String algorithmURI) {
         this.messageDigest = messageDigest;
+        this.algorithmURI = algorithmURI;
         if (isDebugEnabled) {
             stringBuilder = new StringBuilder();
         }
@@ -52,6 +65,7 @@ public class DigestOutputStream extends OutputStream {
     public void write(int arg0) {
         byte asByte = (byte) arg0;
         messageDigest.update(asByte);
+        length++;
         if (isDebugEnabled) {
             stringBuilder.append((char)asByte);
         }
@@ -60,6 +74,7 @@ public class DigestOutputStream extends OutputStream {
     @Override
     public void write(byte[] arg0, int arg1, int arg2) {
         messageDigest.update(arg0, arg1, arg2);
+        length += arg2;
         if (isDebugEnabled) {
             stringBuilder.append(new String(arg0, arg1, arg2, java.nio.charset.StandardCharsets.UTF_8));
         }
@@ -72,6 +87,8 @@ public class DigestOutputStream extends OutputStream {
             LOG.debug("End pre Digest ");
             stringBuilder = new StringBuilder();
         }
+        XMLSecurityMetrics.recordStreamed(Operation.DIGEST, algorithmURI, length);
+        length = 0;
         return messageDigest.digest();
     }
 }
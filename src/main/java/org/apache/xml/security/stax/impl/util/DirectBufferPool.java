@@ -0,0 +1,126 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of equally sized direct ByteBuffers. Buffered data kept in these buffers
+ * lives outside of the java heap, and the buffers are reused instead of being reallocated.
+ * When the pool is empty a new buffer is allocated; a released buffer which doesn't fit into
+ * the pool anymore is left to the garbage collector.
+ * <p>
+ * The number of buffers handed out and not released yet is limited, so that the direct memory
+ * isn't exhausted by large payloads. When the limit is reached {@link #acquire()} returns null
+ * and the caller has to buffer the data elsewhere, e.g. on the heap or in a temporary file.
+ */
+public class DirectBufferPool {
+
+    public static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The direct memory the buffers handed out may take by default: 64 MB
+     */
+    public static final long DEFAULT_MAX_MEMORY = 64L * 1024 * 1024;
+
+    private final int bufferSize;
+    private final int maxBuffers;
+    private final ArrayBlockingQueue<ByteBuffer> buffers;
+    private final AtomicInteger acquiredBuffers = new AtomicInteger();
+    private final byte[] zeros;
+
+    public DirectBufferPool(int poolSize) {
+        this(DEFAULT_BUFFER_SIZE, poolSize);
+    }
+
+    public DirectBufferPool(int bufferSize, int poolSize) {
+        this(bufferSize, poolSize, (int) Math.max(poolSize, DEFAULT_MAX_MEMORY / Math.max(1, bufferSize)));
+    }
+
+    /**
+     * @param bufferSize the size of a buffer in bytes
+     * @param poolSize the number of idle buffers kept for reuse
+     * @param maxBuffers the number of buffers which may be handed out at the same time
+     */
+    public DirectBufferPool(int bufferSize, int poolSize, int maxBuffers) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize <= 0");
+        }
+        if (poolSize <= 0) {
+            throw new IllegalArgumentException("poolSize <= 0");
+        }
+        if (maxBuffers <= 0) {
+            throw new IllegalArgumentException("maxBuffers <= 0");
+        }
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.buffers = new ArrayBlockingQueue<>(poolSize);
+        this.zeros = new byte[bufferSize];
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public int getMaxBuffers() {
+        return maxBuffers;
+    }
+
+    /**
+     * @return a cleared direct buffer of {@link #getBufferSize()} bytes, or null if
+     *         {@link #getMaxBuffers()} buffers are handed out already
+     */
+    public ByteBuffer acquire() {
+        int acquired;
+        do {
+            acquired = acquiredBuffers.get();
+            if (acquired >= maxBuffers) {
+                return null;
+            }
+        } while (!acquiredBuffers.compareAndSet(acquired, acquired + 1));
+
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            try {
+                return ByteBuffer.allocateDirect(bufferSize);
+            } catch (OutOfMemoryError e) {
+                acquiredBuffers.decrementAndGet();
+                throw e;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer obtained by {@link #acquire()} to the pool. The content is wiped first,
+     * since it may contain sensitive data.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.isDirect() || buffer.capacity() != bufferSize) {
+            return;
+        }
+        buffer.clear();
+        buffer.put(zeros);
+        buffer.clear();
+        buffers.offer(buffer);
+        acquiredBuffers.decrementAndGet();
+    }
+}
@@ -21,37 +21,195 @@ package org.apache.xml.security.stax.impl.util;
 import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 
+/**
+ * Buffers all written data until the stream is closed. The data is either kept on the heap,
+ * or in direct buffers of a {@link DirectBufferPool}. When a spill threshold is given, the data
+ * is moved to a temporary file as soon as it exceeds the threshold. The file content is
+ * encrypted with an ephemeral key, since the buffered data is usually plaintext. When the pool
+ * is exhausted, the data is moved to the temporary file if a spill threshold is given, otherwise
+ * to the heap.
+ */
 public class FullyBufferedOutputStream extends FilterOutputStream {
 
-    private UnsyncByteArrayOutputStream buf = new UnsyncByteArrayOutputStream();
+    private final DirectBufferPool bufferPool;
+    private final long spillThreshold;
+    private UnsyncByteArrayOutputStream buf;
+    private List<ByteBuffer> directBuffers;
+    private long size;
+    private SpillFile spillFile;
 
     public FullyBufferedOutputStream(OutputStream out) {
+        this(out, null, -1);
+    }
+
+    /**
+     * @param out the stream to which the buffered data is written on close()
+     * @param bufferPool the pool of direct buffers to keep the data off-heap, or null to keep it on the heap
+     * @param spillThreshold the number of bytes which are kept in memory before the data is moved to a
+     *                       temporary file, or a negative value to keep all data in memory
+     */
+    public FullyBufferedOutputStream(OutputStream out, DirectBufferPool bufferPool, long spillThreshold) {
         super(out);
+        this.bufferPool = bufferPool;
+        this.spillThreshold = spillThreshold;
+        if (bufferPool == null) {
+            buf = new UnsyncByteArrayOutputStream();
+        } else {
+            directBuffers = new ArrayList<>();
+        }
     }
 
     @Override
     public void write(int b) throws IOException {
-        buf.write(b);
+        if (spillFile == null && spillThreshold >= 0 && size + 1 > spillThreshold) {
+            spill();
+        }
+        if (spillFile != null) {
+            spillFile.write(b);
+        } else if (buf != null) {
+            buf.write(b);
+        } else {
+            ByteBuffer directBuffer = getDirectBuffer();
+            if (directBuffer == null) {
+                overflow();
+                write(b);
+                return;
+            }
+            directBuffer.put((byte) b);
+        }
+        size++;
     }
 
     @Override
     public void write(byte[] b) throws IOException {
-        buf.write(b);
+        write(b, 0, b.length);
     }
 
     @Override
     public void write(byte[] b, int off, int len) throws IOException {
-        buf.write(b, off, len);
+        if (spillFile == null && spillThreshold >= 0 && size + len > spillThreshold) {
+            spill();
+        }
+        size += len;
+        if (spillFile != null) {
+            spillFile.write(b, off, len);
+        } else if (buf != null) {
+            buf.write(b, off, len);
+        } else {
+            while (len > 0) {
+                ByteBuffer directBuffer = getDirectBuffer();
+                if (directBuffer == null) {
+                    overflow();
+                    if (spillFile != null) {
+                        spillFile.write(b, off, len);
+                    } else {
+                        buf.write(b, off, len);
+                    }
+                    return;
+                }
+                int count = Math.min(len, directBuffer.remaining());
+                directBuffer.put(b, off, count);
+                off += count;
+                len -= count;
+            }
+        }
+    }
+
+    /**
+     * @return the direct buffer with free space at the end of the buffered data, or null if the pool is exhausted
+     */
+    private ByteBuffer getDirectBuffer() {
+        ByteBuffer directBuffer = directBuffers.isEmpty() ? null : directBuffers.get(directBuffers.size() - 1);
+        if (directBuffer == null || !directBuffer.hasRemaining()) {
+            directBuffer = bufferPool.acquire();
+            if (directBuffer != null) {
+                directBuffers.add(directBuffer);
+            }
+        }
+        return directBuffer;
+    }
+
+    /**
+     * The pool of direct buffers is exhausted, so the data is moved to the temporary file if
+     * spilling is enabled, otherwise to the heap.
+     */
+    private void overflow() throws IOException {
+        if (spillThreshold >= 0) {
+            spill();
+        } else {
+            UnsyncByteArrayOutputStream heapBuffer = new UnsyncByteArrayOutputStream();
+            writeMemoryTo(heapBuffer);
+            buf = heapBuffer;
+        }
+    }
+
+    private void spill() throws IOException {
+        spillFile = new SpillFile();
+        writeMemoryTo(spillFile);
+    }
+
+    private void writeMemoryTo(OutputStream outputStream) throws IOException {
+        if (buf != null) {
+            buf.writeTo(outputStream);
+            buf.close();
+            buf = null;
+        } else if (directBuffers != null) {
+            try {
+                byte[] bytes = new byte[bufferPool.getBufferSize()];
+                for (ByteBuffer directBuffer : directBuffers) {
+                    directBuffer.flip();
+                    int count = directBuffer.remaining();
+                    directBuffer.get(bytes, 0, count);
+                    outputStream.write(bytes, 0, count);
+                }
+            } finally {
+                releaseDirectBuffers();
+            }
+        }
+    }
+
+    private void releaseDirectBuffers() {
+        if (directBuffers != null) {
+            for (ByteBuffer directBuffer : directBuffers) {
+                bufferPool.release(directBuffer);
+            }
+            directBuffers = null;
+        }
     }
 
     @Override
     public void close() throws IOException {
-        buf.writeTo(out);
-        out.close();
-        buf.close();
+        try {
+            if (spillFile != null) {
+                spillFile.writeTo(out);
+            } else {
+                writeMemoryTo(out);
+            }
+            out.close();
+        } finally {
+            releaseDirectBuffers();
+            if (spillFile != null) {
+                spillFile.close();
+            }
+        }
+    }
+
+    /**
+     * Discards the buffered data without writing it to the underlying stream, e.g. when it
+     * failed to authenticate. The direct buffers are returned to the pool.
+     */
+    public void abort() throws IOException {
+        buf = null;
+        releaseDirectBuffers();
+        if (spillFile != null) {
+            spillFile.close();
+        }
     }
 
     @Override
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+
+/**
+ * A bounded pool of security processors of one kind, kept by an InboundXMLSec or OutboundXMLSec
+ * instance so that the processors can be reused across messages. A processor is borrowed for one
+ * message and must only be released after that message was finished successfully and the processor
+ * was reset. A processor which is not released, e.g. after an error, is left to the garbage collector.
+ */
+public class ProcessorPool<T> {
+
+    /**
+     * Creates a new processor when the pool has no idle one.
+     */
+    public interface Factory<T> {
+        T newProcessor() throws XMLSecurityException;
+    }
+
+    private final Factory<T> factory;
+    private final Queue<T> idleProcessors;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * @param factory the factory of the processors
+     * @param maxIdle the maximum number of idle processors kept in the pool, 0 disables the pooling
+     */
+    public ProcessorPool(Factory<T> factory, int maxIdle) {
+        this.factory = factory;
+        this.idleProcessors = maxIdle > 0 ? new ArrayBlockingQueue<>(maxIdle) : null;
+    }
+
+    public T borrow() throws XMLSecurityException {
+        if (idleProcessors != null) {
+            T processor = idleProcessors.poll();
+            if (processor != null) {
+                reused.incrementAndGet();
+                return processor;
+            }
+        }
+        created.incrementAndGet();
+        return factory.newProcessor();
+    }
+
+    /**
+     * Gives a borrowed and reset processor back to the pool. It is discarded if the pool is full.
+     */
+    public void release(T processor) {
+        if (idleProcessors != null && idleProcessors.offer(processor)) {
+            released.incrementAndGet();
+        } else {
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of processors which had to be created
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return the number of borrows served by an idle processor
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * @return the number of processors given back to the pool
+     */
+    public long getReleasedCount() {
+        return released.get();
+    }
+
+    /**
+     * @return the number of released processors which were dropped
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * @return the number of processors currently idle in the pool
+     */
+    public int getIdleCount() {
+        return idleProcessors == null ? 0 : idleProcessors.size();
+    }
+}
@@ -0,0 +1,252 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded byte buffer connecting exactly one writing thread with exactly one reading thread.
+ * It replaces the PipedInputStream/PipedOutputStream pair: no monitor is involved, the positions
+ * are published through volatile fields and a thread waiting for data or for free space is
+ * parked until the other side makes progress. A full buffer blocks the writer (back-pressure).
+ * <p>
+ * The writer can terminate the stream with a failure, which the reader gets thrown on the next read.
+ * When the reader closes its side, a blocked or subsequent write fails instead of blocking forever.
+ * A reader which drops the stream without closing it is detected by the writer as well: a write
+ * fails when the thread which read last has died, or when no space becomes free within the write
+ * timeout.
+ */
+public class RingBuffer {
+
+    /**
+     * The default write timeout in milliseconds, configured by the system property
+     * <code>org.apache.xml.security.stax.ringbuffer.write-timeout</code> (default: 5 minutes).
+     */
+    public static final long DEFAULT_WRITE_TIMEOUT = AccessController.doPrivileged(
+        (PrivilegedAction<Long>) () -> Long.getLong("org.apache.xml.security.stax.ringbuffer.write-timeout",
+                                                    TimeUnit.MINUTES.toMillis(5)));
+
+    //a waiting writer checks this often whether the reader is still there
+    private static final long READER_CHECK_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final byte[] buffer;
+    private final int capacity;
+    private final long writeTimeout;
+    private final InputStream inputStream = new RingBufferInputStream();
+    private final OutputStream outputStream = new RingBufferOutputStream();
+
+    //only written by the writer:
+    private volatile long writePosition;
+    private volatile boolean writerClosed;
+    private volatile Throwable writerFailure;
+    //only written by the reader:
+    private volatile long readPosition;
+    private volatile boolean readerClosed;
+
+    private volatile Thread readingThread;
+
+    private volatile Thread waitingReader;
+    private volatile Thread waitingWriter;
+
+    public RingBuffer(int capacity) {
+        this(capacity, DEFAULT_WRITE_TIMEOUT);
+    }
+
+    /**
+     * @param capacity the size of the buffer in bytes
+     * @param writeTimeout the number of milliseconds a write waits for free space before it fails,
+     *                     or 0 to wait as long as the reading thread is alive
+     */
+    public RingBuffer(int capacity, long writeTimeout) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than zero");
+        }
+        this.capacity = capacity;
+        this.buffer = new byte[capacity];
+        this.writeTimeout = TimeUnit.MILLISECONDS.toNanos(writeTimeout);
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public OutputStream getOutputStream() {
+        return outputStream;
+    }
+
+    /**
+     * Terminates the stream. The reader gets an IOException with the given cause instead of
+     * any data which is still buffered.
+     */
+    public void fail(Throwable cause) {
+        writerFailure = cause;
+        writerClosed = true;
+        unpark(waitingReader);
+    }
+
+    private static void unpark(Thread thread) {
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.interrupted()) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    private class RingBufferInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            int read = read(b, 0, 1);
+            return read == -1 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            Thread currentThread = Thread.currentThread();
+            if (readingThread != currentThread) {
+                readingThread = currentThread;
+            }
+            long available = awaitData();
+            if (available == -1) {
+                return -1;
+            }
+            long position = readPosition;
+            int offset = (int) (position % capacity);
+            int count = (int) Math.min(Math.min(len, available), capacity - offset);
+            System.arraycopy(buffer, offset, b, off, count);
+            readPosition = position + count;
+            unpark(waitingWriter);
+            return count;
+        }
+
+        private long awaitData() throws IOException {
+            while (true) {
+                if (readerClosed) {
+                    throw new IOException("Stream closed");
+                }
+                //read the closed flag first: all data written before close() is visible afterwards
+                boolean closed = writerClosed;
+                Throwable failure = writerFailure;
+                if (failure != null) {
+                    throw new IOException(failure);
+                }
+                long available = writePosition - readPosition;
+                if (available > 0) {
+                    return available;
+                }
+                if (closed) {
+                    return -1;
+                }
+                waitingReader = Thread.currentThread();
+                if (!writerClosed && writePosition == readPosition) {
+                    LockSupport.park(this);
+                }
+                waitingReader = null;
+                checkInterrupted();
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) (writePosition - readPosition);
+        }
+
+        @Override
+        public void close() throws IOException {
+            readerClosed = true;
+            unpark(waitingWriter);
+        }
+    }
+
+    private class RingBufferOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                long free = awaitSpace();
+                long position = writePosition;
+                int offset = (int) (position % capacity);
+                int count = (int) Math.min(Math.min(len, free), capacity - offset);
+                System.arraycopy(b, off, buffer, offset, count);
+                writePosition = position + count;
+                unpark(waitingReader);
+                off += count;
+                len -= count;
+            }
+        }
+
+        private long awaitSpace() throws IOException {
+            long waitingSince = System.nanoTime();
+            while (true) {
+                if (writerClosed) {
+                    throw new IOException("Stream closed");
+                }
+                if (readerClosed) {
+                    throw new IOException("Pipe closed");
+                }
+                long free = capacity - (writePosition - readPosition);
+                if (free > 0) {
+                    return free;
+                }
+                waitingWriter = Thread.currentThread();
+                if (!readerClosed && writePosition - readPosition == capacity) {
+                    LockSupport.parkNanos(this, READER_CHECK_INTERVAL);
+                }
+                waitingWriter = null;
+                checkInterrupted();
+                if (writePosition - readPosition == capacity) {
+                    Thread reader = readingThread;
+                    if (reader != null && !reader.isAlive()) {
+                        throw new IOException("Read end dead");
+                    }
+                    if (writeTimeout > 0 && System.nanoTime() - waitingSince > writeTimeout) {
+                        throw new IOException("Timed out waiting for the reader");
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writerClosed = true;
+            unpark(waitingReader);
+        }
+    }
+}
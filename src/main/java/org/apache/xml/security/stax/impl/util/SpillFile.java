@@ -0,0 +1,140 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+
+/**
+ * A temporary file which is deleted on close and whose content is encrypted with a key
+ * which only exists in memory. The data is read back sequentially, reading may start
+ * before all data is written.
+ */
+class SpillFile extends OutputStream {
+
+    private final FileChannel fileChannel;
+    private final SecretKey key;
+    private final byte[] iv;
+    private final Cipher cipher;
+    private final byte[] singleByte = new byte[1];
+    private Cipher decryptCipher;
+    private long writePosition;
+    private long readPosition;
+
+    SpillFile() throws IOException {
+        try {
+            KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+            keyGenerator.init(128);
+            key = keyGenerator.generateKey();
+            iv = XMLSecurityConstants.generateBytes(16);
+            cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+        } catch (GeneralSecurityException | XMLSecurityException e) {
+            throw new IOException(e);
+        }
+        Path path = Files.createTempFile("xmlsec", ".tmp");
+        try {
+            fileChannel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                           StandardOpenOption.DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        singleByte[0] = (byte) b;
+        write(singleByte, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        byte[] encrypted = cipher.update(b, off, len);
+        if (encrypted != null) {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(encrypted);
+            while (byteBuffer.hasRemaining()) {
+                writePosition += fileChannel.write(byteBuffer, writePosition);
+            }
+        }
+    }
+
+    /**
+     * @return the number of written bytes which were not read yet
+     */
+    long available() {
+        return writePosition - readPosition;
+    }
+
+    /**
+     * Reads the next decrypted bytes.
+     *
+     * @return the number of bytes read, or -1 if all written bytes were read
+     */
+    int read(byte[] b, int off, int len) throws IOException {
+        if (available() == 0) {
+            return -1;
+        }
+        if (decryptCipher == null) {
+            try {
+                decryptCipher = Cipher.getInstance("AES/CTR/NoPadding");
+                decryptCipher.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+            } catch (GeneralSecurityException e) {
+                throw new IOException(e);
+            }
+        }
+        int count = fileChannel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, available())), readPosition);
+        if (count <= 0) {
+            return count;
+        }
+        readPosition += count;
+        try {
+            return decryptCipher.update(b, off, count, b, off);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(e);
+        }
+    }
+
+    void writeTo(OutputStream outputStream) throws IOException {
+        byte[] decrypted = new byte[8192 * 8];
+        int count;
+        while ((count = read(decrypted, 0, decrypted.length)) != -1) {
+            outputStream.write(decrypted, 0, count);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fileChannel.close();
+    }
+}
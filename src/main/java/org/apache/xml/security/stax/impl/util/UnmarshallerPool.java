@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.validation.Schema;
+
+/**
+ * A bounded pool of Unmarshallers created from the same JAXBContext and configured with the same Schema
+ * (or none). Unmarshallers are not thread-safe, so they are borrowed and released after a successful
+ * unmarshal. An Unmarshaller which is not released, e.g. after an error, is simply left to the garbage collector.
+ */
+public class UnmarshallerPool {
+
+    private final JAXBContext jaxbContext;
+    private final Schema schema;
+    private final Queue<Unmarshaller> idleUnmarshallers;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+
+    /**
+     * @param jaxbContext the context the Unmarshallers are created from
+     * @param schema the schema to validate against or null to disable schema validation
+     * @param maxIdle the maximum number of idle Unmarshallers kept in the pool
+     */
+    public UnmarshallerPool(JAXBContext jaxbContext, Schema schema, int maxIdle) {
+        this.jaxbContext = jaxbContext;
+        this.schema = schema;
+        this.idleUnmarshallers = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+    }
+
+    public Unmarshaller borrow() throws JAXBException {
+        Unmarshaller unmarshaller = idleUnmarshallers.poll();
+        if (unmarshaller != null) {
+            reused.incrementAndGet();
+            return unmarshaller;
+        }
+        unmarshaller = jaxbContext.createUnmarshaller();
+        if (schema != null) {
+            unmarshaller.setSchema(schema);
+        }
+        created.incrementAndGet();
+        return unmarshaller;
+    }
+
+    /**
+     * Gives a borrowed Unmarshaller back to the pool. It is discarded if the pool is full or
+     * if its schema was changed in the meantime. Unmarshallers with other changed settings
+     * (event handler, listener, adapters...) must not be released.
+     */
+    public void release(Unmarshaller unmarshaller) {
+        if (unmarshaller == null) {
+            return;
+        }
+        if (unmarshaller.getSchema() == schema && idleUnmarshallers.offer(unmarshaller)) {
+            released.incrementAndGet();
+        } else {
+            discarded.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return the number of Unmarshallers which had to be created
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * @return the number of borrows served by an idle Unmarshaller
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * @return the number of Unmarshallers given back to the pool
+     */
+    public long getReleasedCount() {
+        return released.get();
+    }
+
+    /**
+     * @return the number of released Unmarshallers which were dropped
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    /**
+     * @return the number of Unmarshallers currently idle in the pool
+     */
+    public int getIdleCount() {
+        return idleUnmarshallers.size();
+    }
+}
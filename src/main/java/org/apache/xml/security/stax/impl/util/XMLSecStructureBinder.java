@@ -0,0 +1,756 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.stax.impl.util;
+
+import java.math.BigInteger;
+import java.util.Base64;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamConstants;
+
+import org.apache.xml.security.binding.excc14n.InclusiveNamespaces;
+import org.apache.xml.security.binding.xmldsig.CanonicalizationMethodType;
+import org.apache.xml.security.binding.xmldsig.DigestMethodType;
+import org.apache.xml.security.binding.xmldsig.KeyInfoType;
+import org.apache.xml.security.binding.xmldsig.KeyValueType;
+import org.apache.xml.security.binding.xmldsig.RSAKeyValueType;
+import org.apache.xml.security.binding.xmldsig.ReferenceType;
+import org.apache.xml.security.binding.xmldsig.SignatureMethodType;
+import org.apache.xml.security.binding.xmldsig.SignatureType;
+import org.apache.xml.security.binding.xmldsig.SignatureValueType;
+import org.apache.xml.security.binding.xmldsig.SignedInfoType;
+import org.apache.xml.security.binding.xmldsig.TransformType;
+import org.apache.xml.security.binding.xmldsig.TransformsType;
+import org.apache.xml.security.binding.xmldsig.X509DataType;
+import org.apache.xml.security.binding.xmldsig.X509IssuerSerialType;
+import org.apache.xml.security.binding.xmlenc.CipherDataType;
+import org.apache.xml.security.binding.xmlenc.CipherValueType;
+import org.apache.xml.security.binding.xmlenc.EncryptedDataType;
+import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
+import org.apache.xml.security.binding.xmlenc.EncryptedType;
+import org.apache.xml.security.binding.xmlenc.EncryptionMethodType;
+import org.apache.xml.security.binding.xmlenc.ReferenceList;
+import org.apache.xml.security.binding.xmlenc11.MGFType;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+
+/**
+ * Binds the xmldsig and xmlenc structures which are processed for nearly every message
+ * (Signature, SignedInfo, EncryptedKey and EncryptedData with their usual content) directly
+ * from the buffered events to the JAXB types, without the setup and reflection cost of an
+ * Unmarshaller.
+ * <p>
+ * The binder is strict: it only accepts content which is valid according to the bundled schemas
+ * and which it fully understands, i.e. element order, required elements and attributes, Id,
+ * integer and base64 values are checked. For anything else (unknown attributes or child elements,
+ * Object, RetrievalMethod, CipherReference, xop:Include, SecurityTokenReference...) null is returned
+ * and the caller falls back to JAXB.
+ * <p>
+ * The binder is no replacement for schema validation, so it is only used when schema validation
+ * is disabled. Otherwise the structures are unmarshalled and validated by JAXB as before.
+ */
+public final class XMLSecStructureBinder {
+
+    private static final String NS_XMLENC = XMLSecurityConstants.NS_XMLENC;
+    private static final String NS_DSIG = XMLSecurityConstants.NS_DSIG;
+
+    private static final QName TAG_xenc_KeySize = new QName(NS_XMLENC, "KeySize");
+    private static final QName TAG_xenc_KeyReference = new QName(NS_XMLENC, "KeyReference");
+    private static final QName TAG_xenc_CarriedKeyName = new QName(NS_XMLENC, "CarriedKeyName");
+    private static final QName TAG_dsig_X509CRL = new QName(NS_DSIG, "X509CRL");
+    private static final QName TAG_dsig_XPath = new QName(NS_DSIG, "XPath");
+    private static final QName ATT_NULL_Recipient = new QName(null, "Recipient");
+
+    private static final QName[] ATTS_ID = {XMLSecurityConstants.ATT_NULL_Id};
+    private static final QName[] ATTS_ALGORITHM = {XMLSecurityConstants.ATT_NULL_Algorithm};
+    private static final QName[] ATTS_URI = {XMLSecurityConstants.ATT_NULL_URI};
+    private static final QName[] ATTS_PREFIXLIST = {XMLSecurityConstants.ATT_NULL_PrefixList};
+    private static final QName[] ATTS_REFERENCE = {
+        XMLSecurityConstants.ATT_NULL_Id, XMLSecurityConstants.ATT_NULL_URI, XMLSecurityConstants.ATT_NULL_Type
+    };
+    private static final QName[] ATTS_ENCRYPTEDDATA = {
+        XMLSecurityConstants.ATT_NULL_Id, XMLSecurityConstants.ATT_NULL_Type,
+        XMLSecurityConstants.ATT_NULL_MimeType, XMLSecurityConstants.ATT_NULL_Encoding
+    };
+    private static final QName[] ATTS_ENCRYPTEDKEY = {
+        XMLSecurityConstants.ATT_NULL_Id, XMLSecurityConstants.ATT_NULL_Type,
+        XMLSecurityConstants.ATT_NULL_MimeType, XMLSecurityConstants.ATT_NULL_Encoding, ATT_NULL_Recipient
+    };
+    private static final QName[] ATTS_NONE = {};
+
+    private static final org.apache.xml.security.binding.xmldsig.ObjectFactory DSIG_FACTORY =
+        new org.apache.xml.security.binding.xmldsig.ObjectFactory();
+    private static final org.apache.xml.security.binding.xmlenc.ObjectFactory XENC_FACTORY =
+        new org.apache.xml.security.binding.xmlenc.ObjectFactory();
+    private static final org.apache.xml.security.binding.xmlenc11.ObjectFactory XENC11_FACTORY =
+        new org.apache.xml.security.binding.xmlenc11.ObjectFactory();
+    private static final org.apache.xml.security.binding.excc14n.ObjectFactory EXCC14N_FACTORY =
+        new org.apache.xml.security.binding.excc14n.ObjectFactory();
+
+    /**
+     * Signals content the binder doesn't handle. Shared and without stack trace, since it
+     * only triggers the fallback to JAXB.
+     */
+    private static final class UnsupportedContentException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        UnsupportedContentException() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static final UnsupportedContentException UNSUPPORTED = new UnsupportedContentException();
+
+    private final Iterator<XMLSecEvent> eventIterator;
+    private Set<String> ids;
+
+    private XMLSecStructureBinder(Deque<XMLSecEvent> eventDeque, int index) {
+        this.eventIterator = eventDeque.descendingIterator();
+        int curIdx = 0;
+        while (curIdx++ < index) {
+            this.eventIterator.next();
+        }
+    }
+
+    /**
+     * Binds the structure starting at the given index of the event deque (counted the same way as
+     * by the XMLSecurityEventReader).
+     *
+     * @return the JAXBElement wrapping the bound type, or null if the structure must be unmarshalled by JAXB
+     */
+    public static JAXBElement<?> bind(Deque<XMLSecEvent> eventDeque, int index) {
+        XMLSecStructureBinder binder = new XMLSecStructureBinder(eventDeque, index);
+        try {
+            return binder.bindRootElement();
+        } catch (UnsupportedContentException e) {
+            return null;
+        }
+    }
+
+    private JAXBElement<?> bindRootElement() throws UnsupportedContentException {
+        XMLSecEvent xmlSecEvent = nextEvent();
+        if (xmlSecEvent.getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw UNSUPPORTED;
+        }
+        XMLSecStartElement startElement = xmlSecEvent.asStartElement();
+        QName name = startElement.getName();
+        if (XMLSecurityConstants.TAG_dsig_Signature.equals(name)) {
+            return DSIG_FACTORY.createSignature(bindSignature(startElement));
+        } else if (XMLSecurityConstants.TAG_dsig_SignedInfo.equals(name)) {
+            return DSIG_FACTORY.createSignedInfo(bindSignedInfo(startElement));
+        } else if (XMLSecurityConstants.TAG_xenc_EncryptedKey.equals(name)) {
+            return XENC_FACTORY.createEncryptedKey(bindEncryptedKey(startElement));
+        } else if (XMLSecurityConstants.TAG_xenc_EncryptedData.equals(name)) {
+            return XENC_FACTORY.createEncryptedData(bindEncryptedData(startElement));
+        }
+        throw UNSUPPORTED;
+    }
+
+    private SignatureType bindSignature(XMLSecStartElement startElement) throws UnsupportedContentException {
+        SignatureType signatureType = new SignatureType();
+        signatureType.setId(getId(readAttributes(startElement, ATTS_ID)[0]));
+
+        XMLSecStartElement child = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_SignedInfo);
+        signatureType.setSignedInfo(bindSignedInfo(child));
+
+        child = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_SignatureValue);
+        SignatureValueType signatureValueType = new SignatureValueType();
+        signatureValueType.setId(getId(readAttributes(child, ATTS_ID)[0]));
+        signatureValueType.setValue(decodeBase64(readText()));
+        signatureType.setSignatureValue(signatureValueType);
+
+        child = nextChildElement();
+        if (child != null && XMLSecurityConstants.TAG_dsig_KeyInfo.equals(child.getName())) {
+            signatureType.setKeyInfo(bindKeyInfo(child));
+            child = nextChildElement();
+        }
+        //ds:Object is left to JAXB
+        expectEnd(child);
+        return signatureType;
+    }
+
+    private SignedInfoType bindSignedInfo(XMLSecStartElement startElement) throws UnsupportedContentException {
+        SignedInfoType signedInfoType = new SignedInfoType();
+        signedInfoType.setId(getId(readAttributes(startElement, ATTS_ID)[0]));
+
+        XMLSecStartElement child = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_CanonicalizationMethod);
+        CanonicalizationMethodType canonicalizationMethodType = new CanonicalizationMethodType();
+        canonicalizationMethodType.setAlgorithm(getRequired(readAttributes(child, ATTS_ALGORITHM)[0]));
+        List<Object> content = canonicalizationMethodType.getContent();
+        XMLSecStartElement contentElement;
+        while ((contentElement = nextMixedContentElement(content)) != null) {
+            content.add(bindInclusiveNamespaces(contentElement));
+        }
+        signedInfoType.setCanonicalizationMethod(canonicalizationMethodType);
+
+        child = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_SignatureMethod);
+        SignatureMethodType signatureMethodType = new SignatureMethodType();
+        signatureMethodType.setAlgorithm(getRequired(readAttributes(child, ATTS_ALGORITHM)[0]));
+        content = signatureMethodType.getContent();
+        boolean hmacOutputLength = false;
+        while ((contentElement = nextMixedContentElement(content)) != null) {
+            if (hmacOutputLength || !XMLSecurityConstants.TAG_dsig_HMACOutputLength.equals(contentElement.getName())) {
+                throw UNSUPPORTED;
+            }
+            readAttributes(contentElement, ATTS_NONE);
+            content.add(DSIG_FACTORY.createSignatureMethodTypeHMACOutputLength(parseInteger(readText())));
+            hmacOutputLength = true;
+        }
+        signedInfoType.setSignatureMethod(signatureMethodType);
+
+        List<ReferenceType> references = signedInfoType.getReference();
+        child = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_Reference);
+        do {
+            references.add(bindReference(child));
+            child = nextChildElement();
+        } while (child != null && XMLSecurityConstants.TAG_dsig_Reference.equals(child.getName()));
+        expectEnd(child);
+        return signedInfoType;
+    }
+
+    private ReferenceType bindReference(XMLSecStartElement startElement) throws UnsupportedContentException {
+        ReferenceType referenceType = new ReferenceType();
+        String[] attributes = readAttributes(startElement, ATTS_REFERENCE);
+        referenceType.setId(getId(attributes[0]));
+        referenceType.setURI(attributes[1]);
+        referenceType.setType(attributes[2]);
+
+        XMLSecStartElement child = nextChildElement();
+        if (child != null && XMLSecurityConstants.TAG_dsig_Transforms.equals(child.getName())) {
+            readAttributes(child, ATTS_NONE);
+            TransformsType transformsType = new TransformsType();
+            List<TransformType> transforms = transformsType.getTransform();
+            XMLSecStartElement transform = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_Transform);
+            do {
+                transforms.add(bindTransform(transform));
+                transform = nextChildElement();
+            } while (transform != null && XMLSecurityConstants.TAG_dsig_Transform.equals(transform.getName()));
+            expectEnd(transform);
+            referenceType.setTransforms(transformsType);
+            child = nextChildElement();
+        }
+
+        referenceType.setDigestMethod(bindDigestMethod(expect(child, XMLSecurityConstants.TAG_dsig_DigestMethod)));
+
+        child = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_DigestValue);
+        readAttributes(child, ATTS_NONE);
+        referenceType.setDigestValue(decodeBase64(readText()));
+        expectEnd(nextChildElement());
+        return referenceType;
+    }
+
+    private TransformType bindTransform(XMLSecStartElement startElement) throws UnsupportedContentException {
+        TransformType transformType = new TransformType();
+        transformType.setAlgorithm(getRequired(readAttributes(startElement, ATTS_ALGORITHM)[0]));
+        List<Object> content = transformType.getContent();
+        XMLSecStartElement contentElement;
+        while ((contentElement = nextMixedContentElement(content)) != null) {
+            if (TAG_dsig_XPath.equals(contentElement.getName())) {
+                //XPath elements may carry namespace declarations, which are not part of the bound String
+                throw UNSUPPORTED;
+            }
+            content.add(bindInclusiveNamespaces(contentElement));
+        }
+        return transformType;
+    }
+
+    private JAXBElement<InclusiveNamespaces> bindInclusiveNamespaces(XMLSecStartElement startElement)
+        throws UnsupportedContentException {
+        if (!XMLSecurityConstants.TAG_c14nExcl_InclusiveNamespaces.equals(startElement.getName())) {
+            throw UNSUPPORTED;
+        }
+        String prefixList = readAttributes(startElement, ATTS_PREFIXLIST)[0];
+        InclusiveNamespaces inclusiveNamespaces = new InclusiveNamespaces();
+        if (prefixList != null) {
+            List<String> prefixes = inclusiveNamespaces.getPrefixList();
+            int start = -1;
+            for (int i = 0; i <= prefixList.length(); i++) {
+                if (i == prefixList.length() || isWhitespace(prefixList.charAt(i))) {
+                    if (start >= 0) {
+                        prefixes.add(prefixList.substring(start, i));
+                        start = -1;
+                    }
+                } else if (start < 0) {
+                    start = i;
+                }
+            }
+        }
+        expectEmpty();
+        return EXCC14N_FACTORY.createInclusiveNamespaces(inclusiveNamespaces);
+    }
+
+    private DigestMethodType bindDigestMethod(XMLSecStartElement startElement) throws UnsupportedContentException {
+        DigestMethodType digestMethodType = new DigestMethodType();
+        digestMethodType.setAlgorithm(getRequired(readAttributes(startElement, ATTS_ALGORITHM)[0]));
+        if (nextMixedContentElement(digestMethodType.getContent()) != null) {
+            throw UNSUPPORTED;
+        }
+        return digestMethodType;
+    }
+
+    private KeyInfoType bindKeyInfo(XMLSecStartElement startElement) throws UnsupportedContentException {
+        KeyInfoType keyInfoType = new KeyInfoType();
+        keyInfoType.setId(getId(readAttributes(startElement, ATTS_ID)[0]));
+        List<Object> content = keyInfoType.getContent();
+        boolean empty = true;
+        XMLSecStartElement child;
+        while ((child = nextMixedContentElement(content)) != null) {
+            QName name = child.getName();
+            if (XMLSecurityConstants.TAG_dsig_KeyName.equals(name)) {
+                readAttributes(child, ATTS_NONE);
+                content.add(DSIG_FACTORY.createKeyName(readText()));
+            } else if (XMLSecurityConstants.TAG_dsig_X509Data.equals(name)) {
+                content.add(DSIG_FACTORY.createX509Data(bindX509Data(child)));
+            } else if (XMLSecurityConstants.TAG_dsig_KeyValue.equals(name)) {
+                content.add(DSIG_FACTORY.createKeyValue(bindKeyValue(child)));
+            } else if (XMLSecurityConstants.TAG_xenc_EncryptedKey.equals(name)) {
+                content.add(XENC_FACTORY.createEncryptedKey(bindEncryptedKey(child)));
+            } else {
+                throw UNSUPPORTED;
+            }
+            empty = false;
+        }
+        if (empty) {
+            throw UNSUPPORTED;
+        }
+        return keyInfoType;
+    }
+
+    private X509DataType bindX509Data(XMLSecStartElement startElement) throws UnsupportedContentException {
+        readAttributes(startElement, ATTS_NONE);
+        X509DataType x509DataType = new X509DataType();
+        List<Object> content = x509DataType.getX509IssuerSerialOrX509SKIOrX509SubjectName();
+        XMLSecStartElement child;
+        while ((child = nextChildElement()) != null) {
+            readAttributes(child, ATTS_NONE);
+            QName name = child.getName();
+            if (XMLSecurityConstants.TAG_dsig_X509Certificate.equals(name)) {
+                content.add(DSIG_FACTORY.createX509DataTypeX509Certificate(decodeBase64(readText())));
+            } else if (XMLSecurityConstants.TAG_dsig_X509IssuerSerial.equals(name)) {
+                X509IssuerSerialType x509IssuerSerialType = new X509IssuerSerialType();
+                XMLSecStartElement issuerSerialChild =
+                    expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_X509IssuerName);
+                readAttributes(issuerSerialChild, ATTS_NONE);
+                x509IssuerSerialType.setX509IssuerName(readText());
+                issuerSerialChild = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_X509SerialNumber);
+                readAttributes(issuerSerialChild, ATTS_NONE);
+                x509IssuerSerialType.setX509SerialNumber(parseInteger(readText()));
+                expectEnd(nextChildElement());
+                content.add(DSIG_FACTORY.createX509DataTypeX509IssuerSerial(x509IssuerSerialType));
+            } else if (XMLSecurityConstants.TAG_dsig_X509SKI.equals(name)) {
+                content.add(DSIG_FACTORY.createX509DataTypeX509SKI(decodeBase64(readText())));
+            } else if (XMLSecurityConstants.TAG_dsig_X509SubjectName.equals(name)) {
+                content.add(DSIG_FACTORY.createX509DataTypeX509SubjectName(readText()));
+            } else if (TAG_dsig_X509CRL.equals(name)) {
+                content.add(DSIG_FACTORY.createX509DataTypeX509CRL(decodeBase64(readText())));
+            } else {
+                throw UNSUPPORTED;
+            }
+        }
+        if (content.isEmpty()) {
+            throw UNSUPPORTED;
+        }
+        return x509DataType;
+    }
+
+    private KeyValueType bindKeyValue(XMLSecStartElement startElement) throws UnsupportedContentException {
+        readAttributes(startElement, ATTS_NONE);
+        KeyValueType keyValueType = new KeyValueType();
+        List<Object> content = keyValueType.getContent();
+        XMLSecStartElement child = nextMixedContentElement(content);
+        if (child == null || !XMLSecurityConstants.TAG_dsig_RSAKeyValue.equals(child.getName())) {
+            throw UNSUPPORTED;
+        }
+        readAttributes(child, ATTS_NONE);
+        RSAKeyValueType rsaKeyValueType = new RSAKeyValueType();
+        XMLSecStartElement rsaChild = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_Modulus);
+        readAttributes(rsaChild, ATTS_NONE);
+        rsaKeyValueType.setModulus(decodeBase64(readText()));
+        rsaChild = expect(nextChildElement(), XMLSecurityConstants.TAG_dsig_Exponent);
+        readAttributes(rsaChild, ATTS_NONE);
+        rsaKeyValueType.setExponent(decodeBase64(readText()));
+        expectEnd(nextChildElement());
+        content.add(DSIG_FACTORY.createRSAKeyValue(rsaKeyValueType));
+
+        if (nextMixedContentElement(content) != null) {
+            throw UNSUPPORTED;
+        }
+        return keyValueType;
+    }
+
+    private EncryptedDataType bindEncryptedData(XMLSecStartElement startElement) throws UnsupportedContentException {
+        EncryptedDataType encryptedDataType = new EncryptedDataType();
+        String[] attributes = readAttributes(startElement, ATTS_ENCRYPTEDDATA);
+        expectEnd(bindEncryptedType(encryptedDataType, attributes));
+        return encryptedDataType;
+    }
+
+    private EncryptedKeyType bindEncryptedKey(XMLSecStartElement startElement) throws UnsupportedContentException {
+        EncryptedKeyType encryptedKeyType = new EncryptedKeyType();
+        String[] attributes = readAttributes(startElement, ATTS_ENCRYPTEDKEY);
+        encryptedKeyType.setRecipient(attributes[4]);
+        XMLSecStartElement child = bindEncryptedType(encryptedKeyType, attributes);
+
+        if (child != null && XMLSecurityConstants.TAG_xenc_ReferenceList.equals(child.getName())) {
+            readAttributes(child, ATTS_NONE);
+            ReferenceList referenceList = new ReferenceList();
+            List<JAXBElement<org.apache.xml.security.binding.xmlenc.ReferenceType>> references =
+                referenceList.getDataReferenceOrKeyReference();
+            XMLSecStartElement referenceElement;
+            while ((referenceElement = nextChildElement()) != null) {
+                org.apache.xml.security.binding.xmlenc.ReferenceType referenceType =
+                    new org.apache.xml.security.binding.xmlenc.ReferenceType();
+                referenceType.setURI(getRequired(readAttributes(referenceElement, ATTS_URI)[0]));
+                expectEnd(nextChildElement());
+                if (XMLSecurityConstants.TAG_xenc_DataReference.equals(referenceElement.getName())) {
+                    references.add(XENC_FACTORY.createReferenceListDataReference(referenceType));
+                } else if (TAG_xenc_KeyReference.equals(referenceElement.getName())) {
+                    references.add(XENC_FACTORY.createReferenceListKeyReference(referenceType));
+                } else {
+                    throw UNSUPPORTED;
+                }
+            }
+            if (references.isEmpty()) {
+                throw UNSUPPORTED;
+            }
+            encryptedKeyType.setReferenceList(referenceList);
+            child = nextChildElement();
+        }
+        if (child != null && TAG_xenc_CarriedKeyName.equals(child.getName())) {
+            readAttributes(child, ATTS_NONE);
+            encryptedKeyType.setCarriedKeyName(readText());
+            child = nextChildElement();
+        }
+        expectEnd(child);
+        return encryptedKeyType;
+    }
+
+    /**
+     * Binds the content common to EncryptedData and EncryptedKey
+     *
+     * @return the first child element after the CipherData or null at the end of the element
+     */
+    private XMLSecStartElement bindEncryptedType(EncryptedType encryptedType, String[] attributes)
+        throws UnsupportedContentException {
+        encryptedType.setId(getId(attributes[0]));
+        encryptedType.setType(attributes[1]);
+        encryptedType.setMimeType(attributes[2]);
+        encryptedType.setEncoding(attributes[3]);
+
+        XMLSecStartElement child = nextChildElement();
+        if (child != null && XMLSecurityConstants.TAG_xenc_EncryptionMethod.equals(child.getName())) {
+            encryptedType.setEncryptionMethod(bindEncryptionMethod(child));
+            child = nextChildElement();
+        }
+        if (child != null && XMLSecurityConstants.TAG_dsig_KeyInfo.equals(child.getName())) {
+            encryptedType.setKeyInfo(bindKeyInfo(child));
+            child = nextChildElement();
+        }
+
+        expect(child, XMLSecurityConstants.TAG_xenc_CipherData);
+        readAttributes(child, ATTS_NONE);
+        CipherDataType cipherDataType = new CipherDataType();
+        XMLSecStartElement cipherValue = expect(nextChildElement(), XMLSecurityConstants.TAG_xenc_CipherValue);
+        readAttributes(cipherValue, ATTS_NONE);
+        CipherValueType cipherValueType = new CipherValueType();
+        String text = readText();
+        if (!text.isEmpty()) {
+            cipherValueType.getContent().add(text);
+        }
+        cipherDataType.setCipherValue(cipherValueType);
+        expectEnd(nextChildElement());
+        encryptedType.setCipherData(cipherDataType);
+
+        //EncryptionProperties are left to JAXB
+        return nextChildElement();
+    }
+
+    private EncryptionMethodType bindEncryptionMethod(XMLSecStartElement startElement)
+        throws UnsupportedContentException {
+        EncryptionMethodType encryptionMethodType = new EncryptionMethodType();
+        encryptionMethodType.setAlgorithm(getRequired(readAttributes(startElement, ATTS_ALGORITHM)[0]));
+        List<Object> content = encryptionMethodType.getContent();
+        //sequence of KeySize?, OAEPparams? and elements of other namespaces
+        int stage = 0;
+        XMLSecStartElement child;
+        while ((child = nextMixedContentElement(content)) != null) {
+            QName name = child.getName();
+            if (TAG_xenc_KeySize.equals(name) && stage < 1) {
+                readAttributes(child, ATTS_NONE);
+                content.add(XENC_FACTORY.createEncryptionMethodTypeKeySize(parseInteger(readText())));
+                stage = 1;
+            } else if (XMLSecurityConstants.TAG_xenc_OAEPparams.equals(name) && stage < 2) {
+                readAttributes(child, ATTS_NONE);
+                content.add(XENC_FACTORY.createEncryptionMethodTypeOAEPparams(decodeBase64(readText())));
+                stage = 2;
+            } else if (XMLSecurityConstants.TAG_dsig_DigestMethod.equals(name)) {
+                content.add(DSIG_FACTORY.createDigestMethod(bindDigestMethod(child)));
+                stage = 3;
+            } else if (XMLSecurityConstants.TAG_xenc11_MGF.equals(name)) {
+                MGFType mgfType = new MGFType();
+                mgfType.setAlgorithm(getRequired(readAttributes(child, ATTS_ALGORITHM)[0]));
+                expectEnd(nextChildElement());
+                content.add(XENC11_FACTORY.createMGF(mgfType));
+                stage = 3;
+            } else {
+                throw UNSUPPORTED;
+            }
+        }
+        return encryptionMethodType;
+    }
+
+    private XMLSecEvent nextEvent() throws UnsupportedContentException {
+        while (eventIterator.hasNext()) {
+            XMLSecEvent xmlSecEvent = eventIterator.next();
+            int eventType = xmlSecEvent.getEventType();
+            if (eventType != XMLStreamConstants.COMMENT && eventType != XMLStreamConstants.PROCESSING_INSTRUCTION) {
+                return xmlSecEvent;
+            }
+        }
+        throw UNSUPPORTED;
+    }
+
+    private static boolean isText(int eventType) {
+        return eventType == XMLStreamConstants.CHARACTERS || eventType == XMLStreamConstants.CDATA
+            || eventType == XMLStreamConstants.SPACE;
+    }
+
+    /**
+     * Returns the next child of element-only content, or null when the end of the current element is reached
+     */
+    private XMLSecStartElement nextChildElement() throws UnsupportedContentException {
+        while (true) {
+            XMLSecEvent xmlSecEvent = nextEvent();
+            int eventType = xmlSecEvent.getEventType();
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                return xmlSecEvent.asStartElement();
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                return null;
+            } else if (!isText(eventType) || !isWhitespace(xmlSecEvent.asCharacters().getData())) {
+                throw UNSUPPORTED;
+            }
+        }
+    }
+
+    /**
+     * Returns the next child of mixed content, or null when the end of the current element is reached.
+     * The text in front of it is added to the content as JAXB does.
+     */
+    private XMLSecStartElement nextMixedContentElement(List<Object> content) throws UnsupportedContentException {
+        String text = null;
+        StringBuilder stringBuilder = null;
+        while (true) {
+            XMLSecEvent xmlSecEvent = nextEvent();
+            int eventType = xmlSecEvent.getEventType();
+            if (isText(eventType)) {
+                String data = xmlSecEvent.asCharacters().getData();
+                if (text == null) {
+                    text = data;
+                } else {
+                    if (stringBuilder == null) {
+                        stringBuilder = new StringBuilder(text);
+                    }
+                    stringBuilder.append(data);
+                }
+                continue;
+            }
+            if (eventType != XMLStreamConstants.START_ELEMENT && eventType != XMLStreamConstants.END_ELEMENT) {
+                throw UNSUPPORTED;
+            }
+            if (stringBuilder != null) {
+                text = stringBuilder.toString();
+            }
+            if (text != null && !text.isEmpty()) {
+                content.add(text);
+            }
+            return eventType == XMLStreamConstants.START_ELEMENT ? xmlSecEvent.asStartElement() : null;
+        }
+    }
+
+    /**
+     * Reads the text content up to the end of the current element, child elements are not allowed
+     */
+    private String readText() throws UnsupportedContentException {
+        String text = null;
+        StringBuilder stringBuilder = null;
+        while (true) {
+            XMLSecEvent xmlSecEvent = nextEvent();
+            int eventType = xmlSecEvent.getEventType();
+            if (eventType == XMLStreamConstants.END_ELEMENT) {
+                if (stringBuilder != null) {
+                    return stringBuilder.toString();
+                }
+                return text == null ? "" : text;
+            } else if (!isText(eventType)) {
+                throw UNSUPPORTED;
+            }
+            String data = xmlSecEvent.asCharacters().getData();
+            if (text == null) {
+                text = data;
+            } else {
+                if (stringBuilder == null) {
+                    stringBuilder = new StringBuilder(text);
+                }
+                stringBuilder.append(data);
+            }
+        }
+    }
+
+    private void expectEmpty() throws UnsupportedContentException {
+        if (nextEvent().getEventType() != XMLStreamConstants.END_ELEMENT) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    private static XMLSecStartElement expect(XMLSecStartElement startElement, QName name)
+        throws UnsupportedContentException {
+        if (startElement == null || !name.equals(startElement.getName())) {
+            throw UNSUPPORTED;
+        }
+        return startElement;
+    }
+
+    private static void expectEnd(XMLSecStartElement startElement) throws UnsupportedContentException {
+        if (startElement != null) {
+            throw UNSUPPORTED;
+        }
+    }
+
+    /**
+     * Returns the values of the given attributes. Any other attribute is not supported.
+     */
+    private static String[] readAttributes(XMLSecStartElement startElement, QName[] names)
+        throws UnsupportedContentException {
+        List<XMLSecAttribute> attributes = startElement.getOnElementDeclaredAttributes();
+        String[] values = new String[names.length];
+        for (int i = 0; i < attributes.size(); i++) {
+            XMLSecAttribute attribute = attributes.get(i);
+            QName attributeName = attribute.getName();
+            int j = 0;
+            while (j < names.length && !names[j].equals(attributeName)) {
+                j++;
+            }
+            if (j == names.length) {
+                throw UNSUPPORTED;
+            }
+            values[j] = attribute.getValue();
+        }
+        return values;
+    }
+
+    private static String getRequired(String value) throws UnsupportedContentException {
+        if (value == null) {
+            throw UNSUPPORTED;
+        }
+        return value;
+    }
+
+    /**
+     * Collapses an xs:ID value like the CollapsedStringAdapter and checks that it is a unique NCName
+     */
+    private String getId(String value) throws UnsupportedContentException {
+        if (value == null) {
+            return null;
+        }
+        String id = value.trim();
+        if (id.isEmpty() || !isNCNameStartChar(id.charAt(0))) {
+            throw UNSUPPORTED;
+        }
+        for (int i = 1; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!isNCNameStartChar(c) && !(c >= '0' && c <= '9') && c != '-' && c != '.') {
+                throw UNSUPPORTED;
+            }
+        }
+        if (ids == null) {
+            ids = new HashSet<>();
+        }
+        if (!ids.add(id)) {
+            throw UNSUPPORTED;
+        }
+        return id;
+    }
+
+    private static boolean isNCNameStartChar(char c) {
+        //non ascii names are left to JAXB
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+    }
+
+    private static boolean isWhitespace(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (!isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static BigInteger parseInteger(String text) throws UnsupportedContentException {
+        String value = text.trim();
+        int start = !value.isEmpty() && (value.charAt(0) == '+' || value.charAt(0) == '-') ? 1 : 0;
+        if (value.length() == start) {
+            throw UNSUPPORTED;
+        }
+        for (int i = start; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                throw UNSUPPORTED;
+            }
+        }
+        return new BigInteger(value);
+    }
+
+    private static byte[] decodeBase64(String text) throws UnsupportedContentException {
+        int whitespaces = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (isWhitespace(text.charAt(i))) {
+                whitespaces++;
+            }
+        }
+        String encoded = text;
+        if (whitespaces > 0) {
+            char[] chars = new char[text.length() - whitespaces];
+            int pos = 0;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (!isWhitespace(c)) {
+                    chars[pos++] = c;
+                }
+            }
+            encoded = new String(chars);
+        }
+        try {
+            return Base64.getDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw UNSUPPORTED;
+        }
+    }
+}
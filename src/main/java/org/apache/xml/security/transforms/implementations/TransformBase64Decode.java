@@ -19,6 +19,7 @@
 package org.apache.xml.security.transforms.implementations;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
@@ -26,13 +27,13 @@ import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.transforms.TransformSpi;
 import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.UnsyncBufferedOutputStream;
+import org.apache.xml.security.utils.UnsyncByteArrayOutputStream;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 
-import org.apache.xml.security.utils.JavaUtils;
-
 /**
  * Implements the <CODE>http://www.w3.org/2000/09/xmldsig#base64</CODE> decoding
  * transform.
@@ -80,16 +81,14 @@ public class TransformBase64Decode extends TransformSpi {
             if (input.getSubNode().getNodeType() == Node.TEXT_NODE) {
                 el = el.getParentNode();
             }
-            StringBuilder sb = new StringBuilder();
-            traverseElement((Element)el, sb);
             if (os == null) {
-                byte[] decodedBytes = XMLUtils.decode(sb.toString());
-                XMLSignatureInput output = new XMLSignatureInput(decodedBytes);
+                UnsyncByteArrayOutputStream bytes = new UnsyncByteArrayOutputStream();
+                decodeElement((Element)el, bytes);
+                XMLSignatureInput output = new XMLSignatureInput(bytes.toByteArray());
                 output.setSecureValidation(secureValidation);
                 return output;
             }
-            byte[] bytes = XMLUtils.decode(sb.toString());
-            os.write(bytes);
+            decodeElement((Element)el, os);
             XMLSignatureInput output = new XMLSignatureInput((byte[])null);
             output.setSecureValidation(secureValidation);
             output.setOutputStream(os);
@@ -106,9 +105,14 @@ public class TransformBase64Decode extends TransformSpi {
                 byte[] bytes = XMLUtils.decode(input.getBytes());
                 os.write(bytes);
             } else {
-                byte[] inputBytes = JavaUtils.getBytesFromStream(input.getOctetStreamReal());
-                byte[] bytes = XMLUtils.decode(inputBytes);
-                os.write(bytes);
+                // decode the stream chunk by chunk instead of reading it fully
+                try (InputStream is = XMLUtils.wrapDecoder(input.getOctetStreamReal())) {
+                    byte[] buffer = new byte[4 * 1024];
+                    int bytesread;
+                    while ((bytesread = is.read(buffer)) != -1) {
+                        os.write(buffer, 0, bytesread);
+                    }
+                }
             }
             XMLSignatureInput output = new XMLSignatureInput((byte[])null);
             output.setSecureValidation(secureValidation);
@@ -119,13 +123,29 @@ public class TransformBase64Decode extends TransformSpi {
         throw new TransformationException("empty", new Object[] {"Unrecognized XMLSignatureInput state"});
     }
 
-    private void traverseElement(Element node, StringBuilder sb) {
+    /**
+     * Decodes the text content of the element into the stream, without collecting it first.
+     */
+    private void decodeElement(Element element, OutputStream os) throws IOException {
+        try (OutputStream decoder = new UnsyncBufferedOutputStream(XMLUtils.wrapDecoder(os))) {
+            traverseElement(element, decoder);
+        }
+    }
+
+    private void traverseElement(Element node, OutputStream os) throws IOException {
         Node sibling = node.getFirstChild();
         while (sibling != null) {
             if (Node.ELEMENT_NODE == sibling.getNodeType()) {
-                traverseElement((Element)sibling, sb);
+                traverseElement((Element)sibling, os);
             } else if (Node.TEXT_NODE == sibling.getNodeType()) {
-                sb.append(((Text)sibling).getData());
+                String data = ((Text)sibling).getData();
+                for (int i = 0; i < data.length(); i++) {
+                    char c = data.charAt(i);
+                    // characters outside of the Base64 alphabet are ignored by the decoder
+                    if (c < 0x80) {
+                        os.write(c);
+                    }
+                }
             }
             sibling = sibling.getNextSibling();
         }
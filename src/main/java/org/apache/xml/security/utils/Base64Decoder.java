@@ -0,0 +1,235 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A streaming Base64 decoder, which is as strict as the MIME decoder of <code>java.util.Base64</code>:
+ * characters outside of the Base64 alphabet are ignored, but a misplaced or incomplete padding,
+ * an incomplete final quantum and Base64 characters after the padding are rejected.
+ */
+final class Base64Decoder {
+
+    private static final int DATA = 0;
+    private static final int EXPECT_PAD = 1;
+    private static final int PADDED = 2;
+
+    private int state = DATA;
+    private int bits;
+    private int quantum;
+
+    /**
+     * Decodes the given bytes into the destination, which must have room for
+     * <code>(len / 4 + 1) * 3</code> bytes.
+     *
+     * @return the number of decoded bytes
+     */
+    int decode(byte[] src, int off, int len, byte[] dst, int dstOff) throws IOException {
+        int pos = dstOff;
+        for (int i = off, end = off + len; i < end; i++) {
+            byte c = src[i];
+            int value = c >= 0 ? XMLUtils.BASE64_VALUES[c] : -1;
+            if (state == EXPECT_PAD) {
+                if (c != '=') {
+                    throw new IOException("Incomplete Base64 padding");
+                }
+                state = PADDED;
+            } else if (state == PADDED) {
+                if (value >= 0) {
+                    throw new IOException("Base64 data after the padding");
+                }
+            } else if (value >= 0) {
+                bits = bits << 6 | value;
+                if (++quantum == 4) {
+                    dst[pos++] = (byte)(bits >> 16);
+                    dst[pos++] = (byte)(bits >> 8);
+                    dst[pos++] = (byte)bits;
+                    bits = 0;
+                    quantum = 0;
+                }
+            } else if (value == XMLUtils.PAD) {
+                if (quantum == 2) {
+                    state = EXPECT_PAD;
+                } else if (quantum == 3) {
+                    state = PADDED;
+                } else {
+                    throw new IOException("Misplaced Base64 padding");
+                }
+                pos = decodeFinalQuantum(dst, pos);
+            }
+        }
+        return pos - dstOff;
+    }
+
+    /**
+     * Decodes the final quantum of unpadded data into the destination, which must have room
+     * for two bytes.
+     *
+     * @return the number of decoded bytes
+     */
+    int finish(byte[] dst, int dstOff) throws IOException {
+        if (state == EXPECT_PAD) {
+            throw new IOException("Incomplete Base64 padding");
+        }
+        if (quantum == 1) {
+            throw new IOException("Incomplete Base64 quantum");
+        }
+        return decodeFinalQuantum(dst, dstOff) - dstOff;
+    }
+
+    private int decodeFinalQuantum(byte[] dst, int dstOff) {
+        int pos = dstOff;
+        if (quantum == 3) {
+            dst[pos++] = (byte)(bits >> 10);
+            dst[pos++] = (byte)(bits >> 2);
+        } else if (quantum == 2) {
+            dst[pos++] = (byte)(bits >> 4);
+        }
+        bits = 0;
+        quantum = 0;
+        return pos;
+    }
+
+    /**
+     * Decodes the Base64 data written to it into the wrapped stream. Closing it decodes
+     * the final quantum, but doesn't close the wrapped stream.
+     */
+    static final class DecodingOutputStream extends OutputStream {
+
+        private static final int CHUNK_SIZE = 4 * 1024;
+
+        private final OutputStream out;
+        private final Base64Decoder decoder = new Base64Decoder();
+        private final byte[] buffer = new byte[(CHUNK_SIZE / 4 + 1) * 3];
+        private boolean closed;
+
+        DecodingOutputStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte)b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            for (int i = off, end = off + len; i < end; i += CHUNK_SIZE) {
+                int decoded = decoder.decode(b, i, Math.min(CHUNK_SIZE, end - i), buffer, 0);
+                if (decoded > 0) {
+                    out.write(buffer, 0, decoded);
+                }
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            int decoded = decoder.finish(buffer, 0);
+            if (decoded > 0) {
+                out.write(buffer, 0, decoded);
+            }
+            //do not close the wrapped output stream!
+            out.flush();
+        }
+    }
+
+    /**
+     * Decodes the Base64 data read from the wrapped stream.
+     */
+    static final class DecodingInputStream extends InputStream {
+
+        private static final int CHUNK_SIZE = 4 * 1024;
+
+        private final InputStream in;
+        private final Base64Decoder decoder = new Base64Decoder();
+        private final byte[] encoded = new byte[CHUNK_SIZE];
+        private final byte[] decoded = new byte[(CHUNK_SIZE / 4 + 1) * 3];
+        private int pos;
+        private int limit;
+        private boolean eof;
+
+        DecodingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return decoded[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, limit - pos);
+            System.arraycopy(decoded, pos, b, off, count);
+            pos += count;
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            while (pos == limit) {
+                if (eof) {
+                    return false;
+                }
+                pos = 0;
+                int read = in.read(encoded);
+                if (read == -1) {
+                    eof = true;
+                    limit = decoder.finish(decoded, 0);
+                } else {
+                    limit = decoder.decode(encoded, 0, read, decoded, 0);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return limit - pos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
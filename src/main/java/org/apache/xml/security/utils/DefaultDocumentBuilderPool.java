@@ -0,0 +1,362 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * The default {@link DocumentBuilderPool}. Idle DocumentBuilders are kept per context ClassLoader,
+ * so that a builder of one application's JAXP implementation is never handed to another, in
+ * lock-free bounded queues. The builders which reject doctype declarations are pooled separately
+ * with their own limit. The ClassLoaders are only weakly referenced.
+ * <p>
+ * In thread-local mode every thread caches at most one builder of each kind instead, so borrowing
+ * doesn't touch any shared state, at the cost of one idle builder per thread.
+ * <p>
+ * The DocumentBuilderFactory can be configured by overriding {@link #createDocumentBuilderFactory(boolean)}.
+ * Namespace awareness, secure processing and the doctype setting are always applied on top of it.
+ */
+public class DefaultDocumentBuilderPool implements DocumentBuilderPool {
+
+    private static final String DISALLOW_DOCTYPE_FEATURE = "http://apache.org/xml/features/disallow-doctype-decl";
+
+    private static final int ALLOW_DOCTYPE = 0;
+    private static final int DISALLOW_DOCTYPE = 1;
+
+    private final int[] maxIdle;
+    private final boolean threadLocal;
+
+    private final ConcurrentMap<LoaderKey, IdleBuilders[]> idleBuilders = new ConcurrentHashMap<>();
+    private final ReferenceQueue<ClassLoader> staleLoaders = new ReferenceQueue<>();
+    private final ThreadLocal<ThreadLocalBuilders> threadLocalBuilders = new ThreadLocal<>();
+
+    private final AtomicLong[] created = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong[] reused = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong[] released = {new AtomicLong(), new AtomicLong()};
+    private final AtomicLong[] discarded = {new AtomicLong(), new AtomicLong()};
+
+    /**
+     * Creates a pool configured by the system properties
+     * <code>org.apache.xml.security.parser.pool-size</code> (default 20),
+     * <code>org.apache.xml.security.parser.pool-size.disallow-doctype</code> (default: the former) and
+     * <code>org.apache.xml.security.parser.pool-mode</code> (<code>shared</code>, the default, or
+     * <code>thread-local</code>).
+     */
+    public DefaultDocumentBuilderPool() {
+        int poolSize = AccessController.doPrivileged(
+            (PrivilegedAction<Integer>) () -> Integer.getInteger("org.apache.xml.security.parser.pool-size", 20));
+        int disallowDocTypePoolSize = AccessController.doPrivileged(
+            (PrivilegedAction<Integer>) () ->
+                Integer.getInteger("org.apache.xml.security.parser.pool-size.disallow-doctype", poolSize));
+        String poolMode = AccessController.doPrivileged(
+            (PrivilegedAction<String>) () -> System.getProperty("org.apache.xml.security.parser.pool-mode", "shared"));
+        this.maxIdle = new int[] {poolSize, disallowDocTypePoolSize};
+        this.threadLocal = "thread-local".equals(poolMode);
+    }
+
+    /**
+     * @param maxIdle the maximum number of idle builders kept per ClassLoader which accept doctype declarations
+     * @param maxIdleDisallowDocType the maximum number of idle builders kept per ClassLoader which reject them
+     * @param threadLocal whether to cache the builders per thread instead. A limit of zero still disables
+     *                    pooling of that kind, any other limit is ignored in this mode.
+     */
+    public DefaultDocumentBuilderPool(int maxIdle, int maxIdleDisallowDocType, boolean threadLocal) {
+        this.maxIdle = new int[] {maxIdle, maxIdleDisallowDocType};
+        this.threadLocal = threadLocal;
+    }
+
+    @Override
+    public DocumentBuilder borrow(boolean disallowDocTypeDeclarations) throws ParserConfigurationException {
+        int kind = kind(disallowDocTypeDeclarations);
+        ClassLoader loader = maxIdle[kind] > 0 ? getClassLoader() : null;
+        // If the ClassLoader is null then just create a DocumentBuilder and don't pool it
+        if (loader != null) {
+            DocumentBuilder documentBuilder;
+            if (threadLocal) {
+                documentBuilder = getThreadLocalBuilders(loader).poll(kind);
+            } else {
+                documentBuilder = getIdleBuilders(loader)[kind].poll();
+            }
+            if (documentBuilder != null) {
+                reused[kind].incrementAndGet();
+                return documentBuilder;
+            }
+        }
+        created[kind].incrementAndGet();
+        return createDocumentBuilder(disallowDocTypeDeclarations);
+    }
+
+    @Override
+    public void release(DocumentBuilder documentBuilder, boolean disallowDocTypeDeclarations) {
+        if (documentBuilder == null) {
+            return;
+        }
+        int kind = kind(disallowDocTypeDeclarations);
+        ClassLoader loader = maxIdle[kind] > 0 ? getClassLoader() : null;
+        if (loader != null) {
+            documentBuilder.reset();
+            boolean pooled;
+            if (threadLocal) {
+                pooled = getThreadLocalBuilders(loader).offer(kind, documentBuilder);
+            } else {
+                pooled = getIdleBuilders(loader)[kind].offer(documentBuilder);
+            }
+            if (pooled) {
+                released[kind].incrementAndGet();
+                return;
+            }
+        }
+        discarded[kind].incrementAndGet();
+    }
+
+    /**
+     * Returns the factory a new DocumentBuilder is created from. Override to use a specific JAXP
+     * implementation or to set further features and attributes.
+     *
+     * @param disallowDocTypeDeclarations whether the builder will reject doctype declarations
+     */
+    protected DocumentBuilderFactory createDocumentBuilderFactory(boolean disallowDocTypeDeclarations)
+        throws ParserConfigurationException {
+        return DocumentBuilderFactory.newInstance();
+    }
+
+    /**
+     * @return the number of DocumentBuilders which had to be created because no idle one was available
+     */
+    public long getCreatedCount(boolean disallowDocTypeDeclarations) {
+        return created[kind(disallowDocTypeDeclarations)].get();
+    }
+
+    /**
+     * @return the number of borrows served by an idle DocumentBuilder
+     */
+    public long getReusedCount(boolean disallowDocTypeDeclarations) {
+        return reused[kind(disallowDocTypeDeclarations)].get();
+    }
+
+    /**
+     * @return the number of DocumentBuilders given back to the pool
+     */
+    public long getReleasedCount(boolean disallowDocTypeDeclarations) {
+        return released[kind(disallowDocTypeDeclarations)].get();
+    }
+
+    /**
+     * @return the number of released DocumentBuilders which were dropped because the pool was full
+     */
+    public long getDiscardedCount(boolean disallowDocTypeDeclarations) {
+        return discarded[kind(disallowDocTypeDeclarations)].get();
+    }
+
+    /**
+     * @return the number of DocumentBuilders currently idle in the pools of all ClassLoaders.
+     * The builders cached per thread in thread-local mode are not counted.
+     */
+    public int getIdleCount(boolean disallowDocTypeDeclarations) {
+        int kind = kind(disallowDocTypeDeclarations);
+        int idle = 0;
+        for (IdleBuilders[] builders : idleBuilders.values()) {
+            idle += builders[kind].size();
+        }
+        return idle;
+    }
+
+    private DocumentBuilder createDocumentBuilder(boolean disallowDocTypeDeclarations)
+        throws ParserConfigurationException {
+        DocumentBuilderFactory f = createDocumentBuilderFactory(disallowDocTypeDeclarations);
+        f.setNamespaceAware(true);
+        f.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+        f.setFeature(DISALLOW_DOCTYPE_FEATURE, disallowDocTypeDeclarations);
+        return f.newDocumentBuilder();
+    }
+
+    private IdleBuilders[] getIdleBuilders(ClassLoader loader) {
+        IdleBuilders[] builders = idleBuilders.get(new LoaderKey(loader, null));
+        if (builders == null) {
+            expungeStaleLoaders();
+            IdleBuilders[] newBuilders = {
+                new IdleBuilders(maxIdle[ALLOW_DOCTYPE]), new IdleBuilders(maxIdle[DISALLOW_DOCTYPE])
+            };
+            builders = idleBuilders.putIfAbsent(new LoaderKey(loader, staleLoaders), newBuilders);
+            if (builders == null) {
+                builders = newBuilders;
+            }
+        }
+        return builders;
+    }
+
+    private void expungeStaleLoaders() {
+        Object staleKey;
+        while ((staleKey = staleLoaders.poll()) != null) {
+            idleBuilders.remove(staleKey);
+        }
+    }
+
+    private ThreadLocalBuilders getThreadLocalBuilders(ClassLoader loader) {
+        ThreadLocalBuilders builders = threadLocalBuilders.get();
+        if (builders == null || builders.loader.get() != loader) {
+            builders = new ThreadLocalBuilders(loader);
+            threadLocalBuilders.set(builders);
+        }
+        return builders;
+    }
+
+    private static int kind(boolean disallowDocTypeDeclarations) {
+        return disallowDocTypeDeclarations ? DISALLOW_DOCTYPE : ALLOW_DOCTYPE;
+    }
+
+    private static ClassLoader getClassLoader() {
+        ClassLoader loader = getContextClassLoader();
+        if (loader == null) {
+            loader = getClassLoader(XMLUtils.class);
+        }
+        return loader;
+    }
+
+    private static ClassLoader getContextClassLoader() {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+                public ClassLoader run() {
+                    return Thread.currentThread().getContextClassLoader();
+                }
+            });
+        }
+        return Thread.currentThread().getContextClassLoader();
+    }
+
+    private static ClassLoader getClassLoader(final Class<?> clazz) {
+        final SecurityManager sm = System.getSecurityManager();
+        if (sm != null) {
+            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
+                public ClassLoader run() {
+                    return clazz.getClassLoader();
+                }
+            });
+        }
+        return clazz.getClassLoader();
+    }
+
+    /**
+     * A weak, identity based map key for a ClassLoader.
+     */
+    private static final class LoaderKey extends WeakReference<ClassLoader> {
+
+        private final int hash;
+
+        LoaderKey(ClassLoader loader, ReferenceQueue<ClassLoader> queue) {
+            super(loader, queue);
+            this.hash = System.identityHashCode(loader);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LoaderKey)) {
+                return false;
+            }
+            ClassLoader loader = get();
+            return loader != null && loader == ((LoaderKey) obj).get();
+        }
+    }
+
+    /**
+     * A lock-free queue of idle DocumentBuilders with an upper bound. The bound is kept with a
+     * counter as ConcurrentLinkedQueue.size() is not a constant time operation.
+     */
+    private static final class IdleBuilders {
+
+        private final Queue<DocumentBuilder> builders = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final int maxIdle;
+
+        IdleBuilders(int maxIdle) {
+            this.maxIdle = maxIdle;
+        }
+
+        DocumentBuilder poll() {
+            DocumentBuilder documentBuilder = builders.poll();
+            if (documentBuilder != null) {
+                size.decrementAndGet();
+            }
+            return documentBuilder;
+        }
+
+        boolean offer(DocumentBuilder documentBuilder) {
+            if (size.incrementAndGet() > maxIdle) {
+                size.decrementAndGet();
+                return false;
+            }
+            builders.offer(documentBuilder);
+            return true;
+        }
+
+        int size() {
+            return Math.max(0, size.get());
+        }
+    }
+
+    /**
+     * The builders cached by one thread for its current context ClassLoader.
+     */
+    private static final class ThreadLocalBuilders {
+
+        private final WeakReference<ClassLoader> loader;
+        private final DocumentBuilder[] builders = new DocumentBuilder[2];
+
+        ThreadLocalBuilders(ClassLoader loader) {
+            this.loader = new WeakReference<>(loader);
+        }
+
+        DocumentBuilder poll(int kind) {
+            DocumentBuilder documentBuilder = builders[kind];
+            builders[kind] = null;
+            return documentBuilder;
+        }
+
+        boolean offer(int kind, DocumentBuilder documentBuilder) {
+            if (builders[kind] != null) {
+                return false;
+            }
+            builders[kind] = documentBuilder;
+            return true;
+        }
+    }
+}
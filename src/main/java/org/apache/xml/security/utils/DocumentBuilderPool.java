@@ -0,0 +1,49 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Hands out the DocumentBuilders used by {@link XMLUtils#read(java.io.InputStream, boolean)}.
+ * A builder is borrowed for one parse and released afterwards with the same doctype setting.
+ * A builder which is not released, e.g. after a parse error, is left to the garbage collector.
+ * Implementations must be thread-safe and must return namespace aware builders with secure
+ * processing enabled.
+ *
+ * @see XMLUtils#setDocumentBuilderPool(DocumentBuilderPool)
+ * @see DefaultDocumentBuilderPool
+ */
+public interface DocumentBuilderPool {
+
+    /**
+     * @param disallowDocTypeDeclarations whether the builder must reject documents with a doctype declaration
+     * @return a DocumentBuilder for the exclusive use of the caller
+     */
+    DocumentBuilder borrow(boolean disallowDocTypeDeclarations) throws ParserConfigurationException;
+
+    /**
+     * Gives a borrowed DocumentBuilder back to the pool.
+     *
+     * @param documentBuilder the builder returned by {@link #borrow(boolean)}
+     * @param disallowDocTypeDeclarations the value the builder was borrowed with
+     */
+    void release(DocumentBuilder documentBuilder, boolean disallowDocTypeDeclarations);
+}
@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * An index of the attributes of a document, used to prevent wrapping attacks under secure
+ * validation without walking the whole document once per reference.
+ * <p>
+ * An index is meant for a single validation pass over a document which is not modified meanwhile,
+ * and is not cached on the document. It is built in one traversal on first use and maps every
+ * attribute value to the attributes carrying it. Whether an attribute is an Id attribute is only
+ * checked when the index is queried, so Id attributes which are registered with
+ * <code>setIdAttribute*</code> after the index was built are taken into account.
+ */
+public final class DocumentIdIndex {
+
+    private final Document doc;
+    private Map<String, List<Attr>> attributes;
+
+    /**
+     * @param doc the document to index
+     */
+    public DocumentIdIndex(Document doc) {
+        this.doc = doc;
+    }
+
+    /**
+     * @return the indexed document
+     */
+    public Document getDocument() {
+        return doc;
+    }
+
+    private synchronized Map<String, List<Attr>> getAttributes() {
+        if (attributes == null) {
+            attributes = index(doc);
+        }
+        return attributes;
+    }
+
+    private static Map<String, List<Attr>> index(Document doc) {
+        Map<String, List<Attr>> attributes = new HashMap<>();
+        Node startNode = doc.getDocumentElement();
+        Node processedNode = null;
+
+        while (startNode != null) {
+            if (startNode.getNodeType() == Node.ELEMENT_NODE) {
+                NamedNodeMap attributeMap = startNode.getAttributes();
+                if (attributeMap != null) {
+                    int length = attributeMap.getLength();
+                    for (int i = 0; i < length; i++) {
+                        Attr attr = (Attr)attributeMap.item(i);
+                        if (!Constants.NamespaceSpecNS.equals(attr.getNamespaceURI())) {
+                            add(attributes, attr);
+                        }
+                    }
+                }
+            }
+
+            processedNode = startNode;
+            startNode = startNode.getFirstChild();
+
+            // no child, this node is done.
+            if (startNode == null) {
+                // close node processing, get sibling
+                startNode = processedNode.getNextSibling();
+            }
+
+            // no more siblings, get parent, all children
+            // of parent are processed.
+            while (startNode == null) {
+                processedNode = processedNode.getParentNode();
+                if (processedNode == null || processedNode == doc) {
+                    return attributes;
+                }
+                // close parent node processing (processed node now)
+                startNode = processedNode.getNextSibling();
+            }
+        }
+        return attributes;
+    }
+
+    private static void add(Map<String, List<Attr>> attributes, Attr attr) {
+        String value = attr.getValue();
+        List<Attr> list = attributes.get(value);
+        if (list == null) {
+            attributes.put(value, Collections.singletonList(attr));
+        } else {
+            if (list.size() == 1) {
+                list = new ArrayList<>(list);
+                attributes.put(value, list);
+            }
+            list.add(attr);
+        }
+    }
+
+    private List<Attr> getAttributes(String id) {
+        List<Attr> list = getAttributes().get(normalize(id));
+        return list != null ? list : Collections.<Attr>emptyList();
+    }
+
+    /**
+     * @return the first element with an Id attribute of the given value, or null
+     */
+    public Element getElement(String id) {
+        if (id == null) {
+            return null;
+        }
+        for (Attr attr : getAttributes(id)) {
+            if (attr.isId()) {
+                return attr.getOwnerElement();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns false if more than one element has an Id attribute of the given value,
+     * like {@link XMLUtils#protectAgainstWrappingAttack(Node, String)}.
+     */
+    public boolean isUnique(String id) {
+        boolean found = false;
+        for (Attr attr : getAttributes(id)) {
+            if (attr.isId()) {
+                if (found) {
+                    return false;
+                }
+                found = true;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if an element other than the known element has an Id attribute of the given value,
+     * like {@link XMLUtils#protectAgainstWrappingAttack(Node, Element, String)}.
+     */
+    public boolean isUnique(String id, Element knownElement) {
+        for (Attr attr : getAttributes(id)) {
+            if (attr.isId() && attr.getOwnerElement() != knownElement) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns false if more than one element has an Id attribute of the given value. The given
+     * index is used if it covers the document, else the document is searched.
+     */
+    public static boolean isUnique(DocumentIdIndex idIndex, Document doc, String id) {
+        if (idIndex != null && idIndex.doc == doc) {
+            return idIndex.isUnique(id);
+        }
+        return XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), id);
+    }
+
+    /**
+     * Returns false if an element other than the known element has an Id attribute of the given
+     * value. The given index is used if it covers the document, else the document is searched.
+     */
+    public static boolean isUnique(DocumentIdIndex idIndex, Document doc, String id, Element knownElement) {
+        if (idIndex != null && idIndex.doc == doc) {
+            return idIndex.isUnique(id, knownElement);
+        }
+        return XMLUtils.protectAgainstWrappingAttack(doc.getDocumentElement(), knownElement, id);
+    }
+
+    private static String normalize(String value) {
+        String id = value.trim();
+        if (!id.isEmpty() && id.charAt(0) == '#') {
+            id = id.substring(1);
+        }
+        return id;
+    }
+}
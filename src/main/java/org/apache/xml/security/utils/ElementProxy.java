@@ -364,7 +364,7 @@ public abstract class ElementProxy {
     ) {
         Node n = XMLUtils.selectNode(getFirstChild(), namespace, localname, 0);
         if (n != null) {
-            return new BigInteger(1, XMLUtils.decode(XMLUtils.getFullTextChildrenFromNode(n)));
+            return new BigInteger(1, XMLUtils.decodeTextChildren(n));
         }
         return null;
     }
@@ -391,7 +391,7 @@ public abstract class ElementProxy {
      * @throws XMLSecurityException
      */
     public byte[] getBytesFromTextChild() throws XMLSecurityException {
-        return XMLUtils.decode(getTextFromTextChild());
+        return XMLUtils.decodeTextChildren(getElement());
     }
 
     /**
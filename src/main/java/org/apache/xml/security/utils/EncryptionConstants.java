@@ -87,6 +87,9 @@ public final class EncryptionConstants {
     /** Tag of Element MGF **/
     public static final String _TAG_MGF = "MGF";
 
+    /** Tag of Element SegmentSize **/
+    public static final String _TAG_SEGMENTSIZE = "SegmentSize";
+
     /** Tag of Element ReferenceList **/
     public static final String _TAG_REFERENCELIST = "ReferenceList";
 
@@ -121,6 +124,16 @@ public final class EncryptionConstants {
     public static final String EncryptionSpec11NS =
         "http://www.w3.org/2009/xmlenc11#";
 
+    /**
+     * The namespace of the Santuario specific EncryptionMethod parameters, e.g.
+     * the SegmentSize of segmented AES-GCM
+     */
+    public static final String SantuarioEncryptionNS =
+        "http://santuario.apache.org/xmlenc#";
+
+    /** The default prefix of the Santuario specific EncryptionMethod parameters */
+    public static final String SantuarioEncryptionPrefix = "sxenc";
+
     /** URI for content*/
     public static final String TYPE_CONTENT = EncryptionSpecNS + "Content";
 
@@ -0,0 +1,120 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.lang.reflect.Method;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Provides the default {@link Executor}s used for background work such as streaming decryption
+ * or fetching external references.
+ */
+public final class ExecutorUtils {
+
+    private static final org.slf4j.Logger LOG =
+        org.slf4j.LoggerFactory.getLogger(ExecutorUtils.class);
+
+    private static final Executor VIRTUAL_THREAD_EXECUTOR = createVirtualThreadExecutor();
+
+    private static final Executor DEFAULT_EXECUTOR =
+        createExecutor("xmlsec-worker-", "org.apache.xml.security.executor.pool-size",
+                       Runtime.getRuntime().availableProcessors());
+
+    private static final Executor DEFAULT_IO_EXECUTOR =
+        createExecutor("xmlsec-io-", "org.apache.xml.security.io-executor.pool-size",
+                       4 * Runtime.getRuntime().availableProcessors());
+
+    private ExecutorUtils() {
+        // we don't allow instantiation
+    }
+
+    /**
+     * Returns the shared default executor for CPU bound work such as the streaming decryption.
+     * On a runtime supporting virtual threads every task gets its own virtual thread. Otherwise
+     * the tasks run on a pool of daemon threads, limited by the system property
+     * <code>org.apache.xml.security.executor.pool-size</code> (default: the number of available
+     * processors). The pool never queues a task: when all threads are busy the task is rejected
+     * with a {@link java.util.concurrent.RejectedExecutionException}, so callers have to handle
+     * that, e.g. by running the work themselves.
+     *
+     * @return the default executor
+     */
+    public static Executor getDefaultExecutor() {
+        return DEFAULT_EXECUTOR;
+    }
+
+    /**
+     * Returns the shared default executor for work which mostly waits for I/O, such as fetching
+     * external references, so that it doesn't take the threads of {@link #getDefaultExecutor()}.
+     * It behaves the same, but its pool is limited by the system property
+     * <code>org.apache.xml.security.io-executor.pool-size</code> (default: four times the number
+     * of available processors).
+     *
+     * @return the default executor for I/O bound work
+     */
+    public static Executor getDefaultIOExecutor() {
+        return DEFAULT_IO_EXECUTOR;
+    }
+
+    private static Executor createVirtualThreadExecutor() {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOG.debug("Virtual threads are not available, using thread pools instead");
+            return null;
+        }
+    }
+
+    private static Executor createExecutor(String threadNamePrefix, String poolSizeProperty, int defaultPoolSize) {
+        if (VIRTUAL_THREAD_EXECUTOR != null) {
+            return VIRTUAL_THREAD_EXECUTOR;
+        }
+        int poolSize = AccessController.doPrivileged(
+            (PrivilegedAction<Integer>) () -> Integer.getInteger(poolSizeProperty, defaultPoolSize));
+        return new ThreadPoolExecutor(0, Math.max(1, poolSize), 60L, TimeUnit.SECONDS,
+                                      new SynchronousQueue<Runnable>(), new DaemonThreadFactory(threadNamePrefix));
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        DaemonThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.NORM_PRIORITY + 1);
+            return thread;
+        }
+    }
+}
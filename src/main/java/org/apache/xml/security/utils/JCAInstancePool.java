@@ -0,0 +1,220 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import java.io.InputStream;
+import java.security.KeyFactory;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.KeySpec;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Keeps JCA engine instances (KeyFactory, CertificateFactory, MessageDigest and Signature)
+ * for reuse, so that the provider lookup of the getInstance() methods isn't done again for
+ * every security token or reference. Ciphers are not pooled, since an idle instance would
+ * keep the key it was initialized with.
+ * <p>
+ * The instances are not thread-safe, so they are borrowed from a pool keyed by algorithm and
+ * provider and returned after use instead of being shared. A pool instead of a ThreadLocal is
+ * used since the StAX processing may run on short living (virtual) threads and no instances
+ * should be pinned to threads of the container. An instance which is never returned is simply
+ * left to the garbage collector.
+ */
+public final class JCAInstancePool {
+
+    /**
+     * The maximum number of idle instances kept per algorithm and provider.
+     */
+    private static final int MAX_IDLE_INSTANCES = 16;
+
+    private static final InstancePool<String, KeyFactory> KEY_FACTORIES = new InstancePool<>();
+    private static final InstancePool<String, CertificateFactory> CERTIFICATE_FACTORIES = new InstancePool<>();
+    private static final InstancePool<String, MessageDigest> MESSAGE_DIGESTS = new InstancePool<>();
+    private static final InstancePool<ProviderKey, Signature> SIGNATURES = new InstancePool<>();
+
+    private JCAInstancePool() {
+        // we don't allow instantiation
+    }
+
+    /**
+     * Generates a public key from the given key specification with a pooled KeyFactory.
+     */
+    public static PublicKey generatePublic(String algorithm, KeySpec keySpec)
+        throws NoSuchAlgorithmException, InvalidKeySpecException {
+        KeyFactory keyFactory = KEY_FACTORIES.poll(algorithm);
+        if (keyFactory == null) {
+            keyFactory = KeyFactory.getInstance(algorithm);
+        }
+        try {
+            return keyFactory.generatePublic(keySpec);
+        } finally {
+            KEY_FACTORIES.offer(algorithm, keyFactory);
+        }
+    }
+
+    /**
+     * Generates a certificate from the given stream with a pooled CertificateFactory.
+     */
+    public static Certificate generateCertificate(String type, InputStream inputStream)
+        throws CertificateException {
+        CertificateFactory certificateFactory = CERTIFICATE_FACTORIES.poll(type);
+        if (certificateFactory == null) {
+            certificateFactory = CertificateFactory.getInstance(type);
+        }
+        try {
+            return certificateFactory.generateCertificate(inputStream);
+        } finally {
+            CERTIFICATE_FACTORIES.offer(type, certificateFactory);
+        }
+    }
+
+    /**
+     * Borrows a MessageDigest for the given algorithm from the default provider lookup. It should
+     * be given back with {@link #releaseMessageDigest(String, MessageDigest)} after use.
+     */
+    public static MessageDigest getMessageDigest(String algorithm) throws NoSuchAlgorithmException {
+        MessageDigest messageDigest = MESSAGE_DIGESTS.poll(algorithm);
+        if (messageDigest != null) {
+            return messageDigest;
+        }
+        return MessageDigest.getInstance(algorithm);
+    }
+
+    /**
+     * Gives a MessageDigest obtained by {@link #getMessageDigest(String)} back to the pool.
+     */
+    public static void releaseMessageDigest(String algorithm, MessageDigest messageDigest) {
+        if (messageDigest != null) {
+            messageDigest.reset();
+            MESSAGE_DIGESTS.offer(algorithm, messageDigest);
+        }
+    }
+
+    /**
+     * Borrows a Signature for the given algorithm. The Signature must be initialized by the caller
+     * and should be given back with {@link #releaseSignature(String, Provider, Signature)} after use.
+     * Only Signatures which were initialized for verification should be given back, so that no
+     * private keys are kept in the pool.
+     *
+     * @param algorithm the JCA algorithm
+     * @param provider the provider or null for the default provider lookup
+     */
+    public static Signature getSignature(String algorithm, Provider provider) throws NoSuchAlgorithmException {
+        Signature signature = SIGNATURES.poll(new ProviderKey(algorithm, provider));
+        if (signature != null) {
+            return signature;
+        }
+        return provider == null ? Signature.getInstance(algorithm) : Signature.getInstance(algorithm, provider);
+    }
+
+    /**
+     * Gives a Signature obtained by {@link #getSignature(String, Provider)} back to the pool.
+     */
+    public static void releaseSignature(String algorithm, Provider provider, Signature signature) {
+        if (signature != null) {
+            SIGNATURES.offer(new ProviderKey(algorithm, provider), signature);
+        }
+    }
+
+    /**
+     * Drops all pooled instances, e.g. after the registered security providers have changed.
+     */
+    public static void clear() {
+        KEY_FACTORIES.clear();
+        CERTIFICATE_FACTORIES.clear();
+        MESSAGE_DIGESTS.clear();
+        SIGNATURES.clear();
+    }
+
+    /**
+     * Identifies a pool by algorithm and Provider instance. Provider instances of the same
+     * name might be configured differently, so they are compared by identity.
+     */
+    private static final class ProviderKey {
+
+        private final String algorithm;
+        private final Provider provider;
+
+        ProviderKey(String algorithm, Provider provider) {
+            this.algorithm = algorithm;
+            this.provider = provider;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof ProviderKey)) {
+                return false;
+            }
+            ProviderKey other = (ProviderKey) obj;
+            return algorithm.equals(other.algorithm) && provider == other.provider;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * algorithm.hashCode() + System.identityHashCode(provider);
+        }
+    }
+
+    private static final class InstancePool<K, T> {
+
+        private final ConcurrentMap<K, IdleInstances<T>> pools = new ConcurrentHashMap<>();
+
+        T poll(K key) {
+            IdleInstances<T> idleInstances = pools.get(key);
+            if (idleInstances == null) {
+                return null;
+            }
+            T instance = idleInstances.queue.poll();
+            if (instance != null) {
+                idleInstances.size.decrementAndGet();
+            }
+            return instance;
+        }
+
+        void offer(K key, T instance) {
+            IdleInstances<T> idleInstances = pools.computeIfAbsent(key, k -> new IdleInstances<>());
+            if (idleInstances.size.incrementAndGet() > MAX_IDLE_INSTANCES) {
+                idleInstances.size.decrementAndGet();
+                return;
+            }
+            idleInstances.queue.offer(instance);
+        }
+
+        void clear() {
+            pools.clear();
+        }
+    }
+
+    private static final class IdleInstances<T> {
+        private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+    }
+}
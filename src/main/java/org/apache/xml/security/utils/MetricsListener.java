@@ -0,0 +1,57 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+/**
+ * Receives the timings and sizes of the expensive operations of the DOM and the StAX
+ * implementations, e.g. to feed them into a metrics registry. No listener is registered by
+ * default, see {@link XMLSecurityMetrics#setListener(MetricsListener)}.
+ * <p>
+ * A listener is called on the hot path by the thread doing the work, so implementations must
+ * be thread-safe, fast and must not throw exceptions. Operations can be nested, e.g. the digest
+ * of a Reference includes the resolution and canonicalization of its content.
+ */
+public interface MetricsListener {
+
+    /**
+     * The operations which are reported.
+     */
+    enum Operation {
+        CANONICALIZATION,
+        DIGEST,
+        SIGN,
+        VERIFY,
+        KEY_RESOLUTION,
+        RESOURCE_RESOLUTION,
+        ENCRYPTION,
+        DECRYPTION
+    }
+
+    /**
+     * Called when an operation completed without an exception.
+     *
+     * @param operation the operation
+     * @param algorithm the algorithm URI or null if the operation has none, like key and resource resolution
+     * @param durationNanos the elapsed time in nanoseconds, or -1 for operations of the StAX implementation
+     *                      which are interleaved with the processing of the document and have no duration of their own
+     * @param bytes the number of bytes canonicalized, digested or en-/decrypted (cipher text including the IV),
+     *              or -1 if not known
+     */
+    void operationCompleted(Operation operation, String algorithm, long durationNanos, long bytes);
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.utils;
+
+import org.apache.xml.security.utils.MetricsListener.Operation;
+
+/**
+ * Reports operations to the registered {@link MetricsListener}. Without a listener, which is the
+ * default, the measuring is skipped, so the hot path only pays for a volatile read.
+ */
+public final class XMLSecurityMetrics {
+
+    private static volatile MetricsListener listener;
+
+    private XMLSecurityMetrics() {
+        // we don't allow instantiation
+    }
+
+    /**
+     * Set the listener which receives the metrics of all operations.
+     *
+     * @param metricsListener the listener or null to disable the metrics
+     * @throws SecurityException if a security manager is installed and the
+     *    caller does not have permission to register the listener
+     */
+    public static void setListener(MetricsListener metricsListener) {
+        JavaUtils.checkRegisterPermission();
+        listener = metricsListener;
+    }
+
+    /**
+     * @return the registered listener or null
+     */
+    public static MetricsListener getListener() {
+        return listener;
+    }
+
+    /**
+     * @return true if a listener is registered
+     */
+    public static boolean isEnabled() {
+        return listener != null;
+    }
+
+    /**
+     * @return the start time of an operation to pass to {@link #record(Operation, String, long, long)},
+     * or 0 if no listener is registered
+     */
+    public static long start() {
+        return listener != null ? System.nanoTime() : 0L;
+    }
+
+    /**
+     * Reports an operation which was started with {@link #start()}.
+     */
+    public static void record(Operation operation, String algorithm, long startTime, long bytes) {
+        MetricsListener metricsListener = listener;
+        if (metricsListener != null && startTime != 0L) {
+            metricsListener.operationCompleted(operation, algorithm, System.nanoTime() - startTime, bytes);
+        }
+    }
+
+    /**
+     * Reports a streamed operation, which has no duration of its own.
+     */
+    public static void recordStreamed(Operation operation, String algorithm, long bytes) {
+        MetricsListener metricsListener = listener;
+        if (metricsListener != null) {
+            metricsListener.operationCompleted(operation, algorithm, -1L, bytes);
+        }
+    }
+}
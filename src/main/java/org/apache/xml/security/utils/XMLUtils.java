@@ -18,26 +18,24 @@
  */
 package org.apache.xml.security.utils;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 import java.util.Set;
-import java.util.WeakHashMap;
-import java.util.concurrent.ArrayBlockingQueue;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
 import org.apache.xml.security.c14n.CanonicalizationException;
@@ -58,14 +56,23 @@ import org.xml.sax.SAXException;
  */
 public final class XMLUtils {
 
+    static final int PAD = -2;
+    /** The values of the Base64 characters, -1 for other characters and PAD for '=' */
+    static final byte[] BASE64_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(BASE64_VALUES, (byte)-1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = (byte)i;
+        }
+        BASE64_VALUES['='] = PAD;
+    }
+
     private static boolean ignoreLineBreaks =
         AccessController.doPrivileged(
             (PrivilegedAction<Boolean>) () -> Boolean.getBoolean("org.apache.xml.security.ignoreLineBreaks"));
 
-    private static int parserPoolSize =
-        AccessController.doPrivileged(
-            (PrivilegedAction<Integer>) () -> Integer.getInteger("org.apache.xml.security.parser.pool-size", 20));
-
     private static volatile String dsPrefix = "ds";
     private static volatile String ds11Prefix = "dsig11";
     private static volatile String xencPrefix = "xenc";
@@ -74,11 +81,7 @@ public final class XMLUtils {
     private static final org.slf4j.Logger LOG =
         org.slf4j.LoggerFactory.getLogger(XMLUtils.class);
 
-    private static final Map<ClassLoader, Queue<DocumentBuilder>> DOCUMENT_BUILDERS =
-        Collections.synchronizedMap(new WeakHashMap<ClassLoader, Queue<DocumentBuilder>>());
-
-    private static final Map<ClassLoader, Queue<DocumentBuilder>> DOCUMENT_BUILDERS_DISALLOW_DOCTYPE =
-        Collections.synchronizedMap(new WeakHashMap<ClassLoader, Queue<DocumentBuilder>>());
+    private static volatile DocumentBuilderPool documentBuilderPool = new DefaultDocumentBuilderPool();
 
     /**
      * Constructor XMLUtils
@@ -268,9 +271,13 @@ public final class XMLUtils {
      * @return the string of children
      */
     public static String getFullTextChildrenFromNode(Node node) {
-        StringBuilder sb = new StringBuilder();
-
         Node child = node.getFirstChild();
+        if (child != null && child.getNextSibling() == null && child.getNodeType() == Node.TEXT_NODE) {
+            // the common case of a single text node doesn't need a copy
+            return ((Text)child).getData();
+        }
+
+        StringBuilder sb = new StringBuilder();
         while (child != null) {
             if (child.getNodeType() == Node.TEXT_NODE) {
                 sb.append(((Text)child).getData());
@@ -535,7 +542,107 @@ public final class XMLUtils {
     }
 
     public static byte[] decode(String encodedString) {
-        return Base64.getMimeDecoder().decode(encodedString);
+        byte[] decoded = decodeText(Collections.singletonList(encodedString));
+        if (decoded == null) {
+            return Base64.getMimeDecoder().decode(encodedString);
+        }
+        return decoded;
+    }
+
+    /**
+     * Base64 decodes the concatenated text children of the given node, like
+     * <code>decode(getFullTextChildrenFromNode(node))</code>, but decodes the text nodes
+     * directly into an output array of the exact size, without concatenating them first.
+     */
+    public static byte[] decodeTextChildren(Node node) {
+        List<String> texts = new ArrayList<>(1);
+        Node child = node.getFirstChild();
+        while (child != null) {
+            if (child.getNodeType() == Node.TEXT_NODE) {
+                texts.add(((Text)child).getData());
+            }
+            child = child.getNextSibling();
+        }
+        byte[] decoded = decodeText(texts);
+        if (decoded == null) {
+            return Base64.getMimeDecoder().decode(getFullTextChildrenFromNode(node));
+        }
+        return decoded;
+    }
+
+    /**
+     * Decodes the concatenation of the given Base64 text chunks like the MIME decoder,
+     * i.e. characters outside of the Base64 alphabet are ignored. Returns null if the text
+     * is not well-formed (e.g. misplaced padding), which is left to the MIME decoder to report.
+     */
+    private static byte[] decodeText(List<? extends CharSequence> chunks) {
+        // first pass: count the Base64 characters and check the padding
+        int count = 0;
+        boolean expectPad = false;
+        boolean padded = false;
+        for (CharSequence chunk : chunks) {
+            for (int i = 0, length = chunk.length(); i < length; i++) {
+                char c = chunk.charAt(i);
+                int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+                if (expectPad) {
+                    if (c != '=') {
+                        return null;
+                    }
+                    expectPad = false;
+                    padded = true;
+                } else if (padded) {
+                    if (value >= 0) {
+                        return null;
+                    }
+                } else if (value >= 0) {
+                    count++;
+                } else if (value == PAD) {
+                    if (count % 4 == 2) {
+                        expectPad = true;
+                    } else if (count % 4 == 3) {
+                        padded = true;
+                    } else {
+                        return null;
+                    }
+                }
+            }
+        }
+        int remainder = count % 4;
+        if (expectPad || remainder == 1) {
+            return null;
+        }
+
+        // second pass: decode into the exactly sized output
+        byte[] decoded = new byte[count / 4 * 3 + (remainder == 0 ? 0 : remainder - 1)];
+        int bits = 0;
+        int quantum = 0;
+        int pos = 0;
+        int remaining = count;
+        for (CharSequence chunk : chunks) {
+            for (int i = 0, length = chunk.length(); i < length && remaining > 0; i++) {
+                char c = chunk.charAt(i);
+                int value = c < BASE64_VALUES.length ? BASE64_VALUES[c] : -1;
+                if (value < 0) {
+                    continue;
+                }
+                remaining--;
+                bits = bits << 6 | value;
+                if (++quantum == 4) {
+                    decoded[pos++] = (byte)(bits >> 16);
+                    decoded[pos++] = (byte)(bits >> 8);
+                    decoded[pos++] = (byte)bits;
+                    bits = 0;
+                    quantum = 0;
+                }
+            }
+        }
+        if (quantum == 3) {
+            decoded[pos++] = (byte)(bits >> 10);
+            decoded[pos] = (byte)(bits >> 2);
+        } else if (quantum == 2) {
+            decoded[pos] = (byte)(bits >> 4);
+        }
+        return decoded;
     }
 
     public static byte[] decode(byte[] encodedBytes) {
@@ -546,6 +653,74 @@ public final class XMLUtils {
         return ignoreLineBreaks;
     }
 
+    /**
+     * Returns a ByteBuffer with the Base64 encoding of the remaining bytes of the given buffer,
+     * with line breaks unless {@link #isIgnoreLineBreaks()}.
+     */
+    public static ByteBuffer encode(ByteBuffer buffer) {
+        if (ignoreLineBreaks) {
+            return Base64.getEncoder().encode(buffer);
+        }
+        return Base64.getMimeEncoder().encode(buffer);
+    }
+
+    /**
+     * Returns a ByteBuffer with the decoded bytes of the remaining Base64 data of the given
+     * buffer. Line breaks and other characters outside of the Base64 alphabet are ignored.
+     */
+    public static ByteBuffer decode(ByteBuffer buffer) {
+        return Base64.getMimeDecoder().decode(buffer);
+    }
+
+    /**
+     * Wraps an OutputStream, so that the bytes written to the returned stream are Base64 encoded
+     * into the given one, with line breaks unless {@link #isIgnoreLineBreaks()}. Closing the
+     * returned stream writes the final (padded) quantum, but doesn't close the given stream.
+     */
+    public static OutputStream wrapEncoder(OutputStream os) {
+        if (ignoreLineBreaks) {
+            return Base64.getEncoder().wrap(new NonClosingOutputStream(os));
+        }
+        return Base64.getMimeEncoder().wrap(new NonClosingOutputStream(os));
+    }
+
+    /**
+     * Wraps an InputStream of Base64 data, so that the decoded bytes are read from the returned
+     * stream. Line breaks and other characters outside of the Base64 alphabet are ignored, but
+     * malformed data is rejected like by {@link #decode(byte[])}.
+     */
+    public static InputStream wrapDecoder(InputStream is) {
+        return new Base64Decoder.DecodingInputStream(is);
+    }
+
+    /**
+     * Wraps an OutputStream, so that the Base64 data written to the returned stream is decoded
+     * into the given one. Line breaks and other characters outside of the Base64 alphabet are
+     * ignored, but malformed data is rejected like by {@link #decode(byte[])}. Closing the returned
+     * stream decodes the final quantum, but doesn't close the given stream.
+     */
+    public static OutputStream wrapDecoder(OutputStream os) {
+        return new Base64Decoder.DecodingOutputStream(os);
+    }
+
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            //do not close the wrapped output stream!
+            flush();
+        }
+    }
+
     /**
      * Method convertNodelistToSet
      *
@@ -1004,23 +1179,32 @@ public final class XMLUtils {
     }
 
     public static Document read(InputStream inputStream, boolean disAllowDocTypeDeclarations) throws ParserConfigurationException, SAXException, IOException {
-        ClassLoader loader = getContextClassLoader();
-        if (loader == null) {
-            loader = getClassLoader(XMLUtils.class);
-        }
-        // If the ClassLoader is null then just create a DocumentBuilder and use it
-        if (loader == null) {
-            DocumentBuilder documentBuilder = createDocumentBuilder(disAllowDocTypeDeclarations);
-            return documentBuilder.parse(inputStream);
-        }
-
-        Queue<DocumentBuilder> queue = getDocumentBuilderQueue(disAllowDocTypeDeclarations, loader);
-        DocumentBuilder documentBuilder = getDocumentBuilder(disAllowDocTypeDeclarations, queue);
+        DocumentBuilderPool pool = documentBuilderPool;
+        DocumentBuilder documentBuilder = pool.borrow(disAllowDocTypeDeclarations);
         Document doc = documentBuilder.parse(inputStream);
-        repoolDocumentBuilder(documentBuilder, queue);
+        pool.release(documentBuilder, disAllowDocTypeDeclarations);
         return doc;
     }
 
+    /**
+     * Set the pool of the DocumentBuilders used by {@link #read(InputStream, boolean)}.
+     *
+     * @param pool the pool to use or null to restore a {@link DefaultDocumentBuilderPool}
+     * @throws SecurityException if a security manager is installed and the
+     *    caller does not have permission to register the pool
+     */
+    public static void setDocumentBuilderPool(DocumentBuilderPool pool) {
+        JavaUtils.checkRegisterPermission();
+        documentBuilderPool = pool != null ? pool : new DefaultDocumentBuilderPool();
+    }
+
+    /**
+     * @return the pool of the DocumentBuilders used by {@link #read(InputStream, boolean)}
+     */
+    public static DocumentBuilderPool getDocumentBuilderPool() {
+        return documentBuilderPool;
+    }
+
     /**
      * Returns a byte-array representation of a <code>{@link BigInteger}</code>.
      * No sign-bit is output.
@@ -1066,63 +1250,4 @@ public final class XMLUtils {
         return resizedBytes;
     }
 
-    private static Queue<DocumentBuilder> getDocumentBuilderQueue(boolean disAllowDocTypeDeclarations, ClassLoader loader) throws ParserConfigurationException {
-        Map<ClassLoader, Queue<DocumentBuilder>> docBuilderCache =
-            disAllowDocTypeDeclarations ? DOCUMENT_BUILDERS_DISALLOW_DOCTYPE : DOCUMENT_BUILDERS;
-        Queue<DocumentBuilder> queue = docBuilderCache.get(loader);
-        if (queue == null) {
-            queue = new ArrayBlockingQueue<>(parserPoolSize);
-            docBuilderCache.put(loader, queue);
-        }
-
-        return queue;
-    }
-
-    private static DocumentBuilder getDocumentBuilder(boolean disAllowDocTypeDeclarations, Queue<DocumentBuilder> queue) throws ParserConfigurationException {
-        DocumentBuilder db = queue.poll();
-        if (db == null) {
-            db = createDocumentBuilder(disAllowDocTypeDeclarations);
-        }
-        return db;
-    }
-
-    private static DocumentBuilder createDocumentBuilder(boolean disAllowDocTypeDeclarations) throws ParserConfigurationException {
-        DocumentBuilderFactory f = DocumentBuilderFactory.newInstance();
-        f.setNamespaceAware(true);
-        f.setFeature(javax.xml.XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        f.setFeature("http://apache.org/xml/features/disallow-doctype-decl", disAllowDocTypeDeclarations);
-        return f.newDocumentBuilder();
-    }
-
-    private static void repoolDocumentBuilder(DocumentBuilder db, Queue<DocumentBuilder> queue) {
-        if (queue != null) {
-            db.reset();
-            queue.offer(db);
-        }
-    }
-
-    private static ClassLoader getContextClassLoader() {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
-                public ClassLoader run() {
-                    return Thread.currentThread().getContextClassLoader();
-                }
-            });
-        }
-        return Thread.currentThread().getContextClassLoader();
-    }
-
-    private static ClassLoader getClassLoader(final Class<?> clazz) {
-        final SecurityManager sm = System.getSecurityManager();
-        if (sm != null) {
-            return AccessController.doPrivileged(new PrivilegedAction<ClassLoader>() {
-                public ClassLoader run() {
-                    return clazz.getClassLoader();
-                }
-            });
-        }
-        return clazz.getClassLoader();
-    }
-
 }
@@ -26,6 +26,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.utils.ClassLoaderUtils;
 import org.apache.xml.security.utils.JavaUtils;
+import org.apache.xml.security.utils.MetricsListener.Operation;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
 import org.apache.xml.security.utils.resolver.implementations.ResolverDirectHTTP;
 import org.apache.xml.security.utils.resolver.implementations.ResolverFragment;
 import org.apache.xml.security.utils.resolver.implementations.ResolverLocalFilesystem;
@@ -150,6 +152,14 @@ public class ResourceResolver {
      * @throws ResourceResolverException
      */
     public static XMLSignatureInput resolve(ResourceResolverContext context)
+        throws ResourceResolverException {
+        long start = XMLSecurityMetrics.start();
+        XMLSignatureInput input = resolveWithRegisteredResolvers(context);
+        XMLSecurityMetrics.record(Operation.RESOURCE_RESOLUTION, null, start, -1L);
+        return input;
+    }
+
+    private static XMLSignatureInput resolveWithRegisteredResolvers(ResourceResolverContext context)
         throws ResourceResolverException {
         for (ResourceResolverSpi resolver : resolverList) {
             LOG.debug("check resolvability by class {}", resolver.getClass().getName());
@@ -198,7 +208,10 @@ public class ResourceResolver {
                 LOG.debug("check resolvability by class {}", currentClass);
 
                 if (resolver.engineCanResolveURI(context)) {
-                    return resolver.engineResolveURI(context);
+                    long start = XMLSecurityMetrics.start();
+                    XMLSignatureInput input = resolver.engineResolveURI(context);
+                    XMLSecurityMetrics.record(Operation.RESOURCE_RESOLUTION, null, start, -1L);
+                    return input;
                 }
             }
         }
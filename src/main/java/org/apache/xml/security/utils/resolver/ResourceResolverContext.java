@@ -21,6 +21,7 @@ package org.apache.xml.security.utils.resolver;
 import java.util.Collections;
 import java.util.Map;
 
+import org.apache.xml.security.utils.DocumentIdIndex;
 import org.w3c.dom.Attr;
 
 public class ResourceResolverContext {
@@ -35,12 +36,23 @@ public class ResourceResolverContext {
 
     public final Attr attr;
 
+    /**
+     * The Id index of the current validation pass, or null
+     */
+    public final DocumentIdIndex idIndex;
+
     public ResourceResolverContext(Attr attr, String baseUri, boolean secureValidation) {
         this(attr, baseUri, secureValidation, Collections.emptyMap());
     }
 
     public ResourceResolverContext(Attr attr, String baseUri, boolean secureValidation, Map<String, String> properties) {
+        this(attr, baseUri, secureValidation, properties, null);
+    }
+
+    public ResourceResolverContext(Attr attr, String baseUri, boolean secureValidation, Map<String, String> properties,
+                                   DocumentIdIndex idIndex) {
         this.attr = attr;
+        this.idIndex = idIndex;
         this.baseUri = baseUri;
         this.secureValidation = secureValidation;
         this.uriToResolve = attr != null ? attr.getValue() : null;
@@ -23,10 +23,15 @@ package javax.xml.crypto.test.dsig;
 
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.security.MessageDigest;
 import java.security.Security;
 import java.util.*;
+import javax.xml.crypto.Data;
+import javax.xml.crypto.NodeSetData;
 import javax.xml.crypto.URIDereferencer;
+import javax.xml.crypto.URIReference;
+import javax.xml.crypto.XMLCryptoContext;
 import javax.xml.crypto.dsig.*;
 import javax.xml.crypto.dsig.keyinfo.*;
 import javax.xml.crypto.dsig.dom.DOMSignContext;
@@ -34,6 +39,8 @@ import javax.xml.crypto.dsig.dom.DOMValidateContext;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 import javax.xml.crypto.dsig.spec.TransformParameterSpec;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -282,6 +289,76 @@ public class ReferenceTest {
         }
     }
 
+    @org.junit.jupiter.api.Test
+    public void testvalidateNodeSetData() throws Exception {
+        testvalidateNodeSetData(false);
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testvalidateNodeSetDataWithCaching() throws Exception {
+        testvalidateNodeSetData(true);
+    }
+
+    private void testvalidateNodeSetData(boolean cache) throws Exception {
+        Document data = TestUtils.newDocument();
+        Element root = data.createElementNS(null, "root");
+        data.appendChild(root);
+        Element a = data.createElementNS(null, "a");
+        a.setAttributeNS(null, "attr", "1");
+        root.appendChild(a);
+        Element b = data.createElementNS(null, "b");
+        b.appendChild(data.createTextNode("text"));
+        a.appendChild(b);
+        a.appendChild(data.createComment("comment"));
+        final List<Node> nodes = Arrays.asList
+            (a, a.getAttributeNodeNS(null, "attr"), b, b.getFirstChild(), a.getLastChild());
+        URIDereferencer dereferencer = new URIDereferencer() {
+            public Data dereference(URIReference uriReference, XMLCryptoContext context) {
+                return new NodeSetData() {
+                    @SuppressWarnings("rawtypes")
+                    public Iterator iterator() {
+                        return nodes.iterator();
+                    }
+                };
+            }
+        };
+
+        // the node-set is canonicalized (without comments) straight into the digest
+        byte[] expected = MessageDigest.getInstance("SHA1").digest
+            ("<a attr=\"1\"><b>text</b></a>".getBytes(StandardCharsets.UTF_8));
+
+        Document doc = TestUtils.newDocument();
+        XMLSignContext signContext =
+            new DOMSignContext(TestUtils.getPrivateKey("RSA"), doc);
+        signContext.setURIDereferencer(dereferencer);
+        if (cache) {
+            signContext.setProperty
+                ("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        }
+        Reference ref = fac.newReference("urn:nodes", dmSHA1);
+        XMLSignature sig = fac.newXMLSignature(fac.newSignedInfo
+            (fac.newCanonicalizationMethod
+             (CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+            fac.newSignatureMethod(SignatureMethod.RSA_SHA1, null),
+            Collections.singletonList(ref)), null);
+        sig.sign(signContext);
+        assertArrayEquals(expected, ref.getDigestValue());
+        if (cache) {
+            assertTrue(digestInputEqual(ref));
+        } else {
+            assertNull(ref.getDigestInputStream());
+        }
+
+        XMLValidateContext validateContext = new DOMValidateContext
+            (TestUtils.getPublicKey("RSA"), doc.getDocumentElement());
+        validateContext.setURIDereferencer(dereferencer);
+        XMLSignature validateSig = fac.unmarshalXMLSignature(validateContext);
+        assertTrue(validateSig.validate(validateContext));
+        Reference validatedRef =
+            (Reference) validateSig.getSignedInfo().getReferences().get(0);
+        assertArrayEquals(expected, validatedRef.getCalculatedDigestValue());
+    }
+
     private boolean digestInputEqual(Reference ref) throws Exception {
         MessageDigest md = MessageDigest.getInstance("SHA1");
         InputStream is = ref.getDigestInputStream();
@@ -22,15 +22,27 @@
 package javax.xml.crypto.test.dsig;
 
 
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.security.Security;
 import java.util.*;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import javax.xml.crypto.dom.DOMStructure;
 import javax.xml.crypto.dsig.*;
+import javax.xml.crypto.dsig.dom.DOMSignContext;
 import javax.xml.crypto.dsig.spec.C14NMethodParameterSpec;
 
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 
@@ -138,6 +150,52 @@ public class SignedInfoTest {
         assertEquals(si.getId(), "id");
     }
 
+    @org.junit.jupiter.api.Test
+    public void testCanonicalizedData() throws Exception {
+        SecretKey key = new SecretKeySpec(new byte[16], "HmacSHA1");
+        assertNull(sign(key, false).getSignedInfo().getCanonicalizedData());
+
+        XMLSignature sig = sign(key, true);
+        SignedInfo si = sig.getSignedInfo();
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (InputStream is = si.getCanonicalizedData()) {
+            byte[] buf = new byte[256];
+            int read;
+            while ((read = is.read(buf)) != -1) {
+                bos.write(buf, 0, read);
+            }
+        }
+        String c14n = new String(bos.toByteArray(), StandardCharsets.UTF_8);
+        assertTrue(c14n.startsWith("<SignedInfo xmlns=\"http://www.w3.org/2000/09/xmldsig#\">"));
+
+        // the retained octets are the ones that were signed
+        Mac mac = Mac.getInstance("HmacSHA1");
+        mac.init(key);
+        assertArrayEquals(mac.doFinal(bos.toByteArray()),
+                          sig.getSignatureValue().getValue());
+    }
+
+    private XMLSignature sign(SecretKey key, boolean retain) throws Exception {
+        Document doc = TestUtils.newDocument();
+        Element content = doc.createElementNS(null, "Content");
+        content.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", "");
+        XMLObject obj = fac.newXMLObject(Collections.singletonList
+            (new DOMStructure(content)), "object", null, null);
+        SignedInfo si = fac.newSignedInfo(fac.newCanonicalizationMethod
+            (CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null),
+            fac.newSignatureMethod(SignatureMethod.HMAC_SHA1, null),
+            Collections.singletonList(fac.newReference
+                ("#object", fac.newDigestMethod(DigestMethod.SHA1, null))));
+        XMLSignature sig = fac.newXMLSignature
+            (si, null, Collections.singletonList(obj), null, null);
+        DOMSignContext dsc = new DOMSignContext(key, doc);
+        if (retain) {
+            dsc.setProperty("javax.xml.crypto.dsig.cacheReference", Boolean.TRUE);
+        }
+        sig.sign(dsc);
+        return sig;
+    }
+
     @SuppressWarnings({
      "unchecked", "rawtypes"
     })
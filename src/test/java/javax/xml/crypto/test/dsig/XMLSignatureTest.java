@@ -25,6 +25,8 @@ package javax.xml.crypto.test.dsig;
 import java.io.*;
 import java.util.*;
 import java.security.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.xml.crypto.URIDereferencer;
 import javax.xml.crypto.dom.DOMStructure;
@@ -42,6 +44,7 @@ import org.w3c.dom.*;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
@@ -306,6 +309,114 @@ public class XMLSignatureTest {
         }
     }
 
+    @org.junit.jupiter.api.Test
+    public void testValidateReferencesConcurrently() throws Exception {
+        Document doc = createSignatureWithObjects(4);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            DOMValidateContext dvc = new DOMValidateContext
+                (VALIDATE_KEYS[2], doc.getDocumentElement());
+            dvc.setProperty("org.apache.jcp.xml.dsig.referenceValidationExecutor", executor);
+            XMLSignature sig = fac.unmarshalXMLSignature(dvc);
+            assertTrue(sig.validate(dvc));
+            for (Object ref : sig.getSignedInfo().getReferences()) {
+                assertTrue(((Reference) ref).validate(dvc));
+            }
+
+            // tamper with the content of the second object
+            Element object = (Element) doc.getElementsByTagNameNS
+                (XMLSignature.XMLNS, "Object").item(1);
+            object.getFirstChild().setTextContent("tampered");
+
+            // fail-fast
+            dvc = new DOMValidateContext(VALIDATE_KEYS[2], doc.getDocumentElement());
+            dvc.setProperty("org.apache.jcp.xml.dsig.referenceValidationExecutor", executor);
+            assertFalse(fac.unmarshalXMLSignature(dvc).validate(dvc));
+
+            // full report
+            dvc = new DOMValidateContext(VALIDATE_KEYS[2], doc.getDocumentElement());
+            dvc.setProperty("org.apache.jcp.xml.dsig.referenceValidationExecutor", executor);
+            dvc.setProperty("org.apache.jcp.xml.dsig.validateAllReferences", Boolean.TRUE);
+            sig = fac.unmarshalXMLSignature(dvc);
+            assertFalse(sig.validate(dvc));
+            List<?> refs = sig.getSignedInfo().getReferences();
+            for (int i = 0; i < refs.size(); i++) {
+                Reference ref = (Reference) refs.get(i);
+                assertNotNull(ref.getCalculatedDigestValue());
+                assertEquals(i != 1, ref.validate(dvc));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testValidateAllReferences() throws Exception {
+        Document doc = createSignatureWithObjects(3);
+        Element object = (Element) doc.getElementsByTagNameNS
+            (XMLSignature.XMLNS, "Object").item(0);
+        object.getFirstChild().setTextContent("tampered");
+
+        DOMValidateContext dvc = new DOMValidateContext
+            (VALIDATE_KEYS[2], doc.getDocumentElement());
+        dvc.setProperty("org.apache.jcp.xml.dsig.validateAllReferences", Boolean.TRUE);
+        XMLSignature sig = fac.unmarshalXMLSignature(dvc);
+        assertFalse(sig.validate(dvc));
+        List<?> refs = sig.getSignedInfo().getReferences();
+        for (Object ref : refs) {
+            // all References were validated, the cached status is returned
+            assertNotNull(((Reference) ref).getCalculatedDigestValue());
+        }
+        assertFalse(((Reference) refs.get(0)).validate(dvc));
+        assertTrue(((Reference) refs.get(1)).validate(dvc));
+        assertTrue(((Reference) refs.get(2)).validate(dvc));
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testLazyUnmarshal() throws Exception {
+        // re-parse the signature, so that no Id attributes are registered yet
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        XMLUtils.outputDOM(createSignatureWithObjects(2), bos);
+        Document doc = XMLUtils.read(new ByteArrayInputStream(bos.toByteArray()), false);
+
+        // append an unsigned Object with an invalid Manifest
+        Element sigElem = doc.getDocumentElement();
+        Element object = doc.createElementNS(XMLSignature.XMLNS, "ds:Object");
+        object.appendChild(doc.createElementNS(XMLSignature.XMLNS, "ds:Manifest"));
+        sigElem.appendChild(object);
+
+        DOMValidateContext dvc = new DOMValidateContext(VALIDATE_KEYS[2], sigElem);
+        try {
+            fac.unmarshalXMLSignature(dvc);
+            fail("Should have failed to unmarshal the Manifest");
+        } catch (javax.xml.crypto.MarshalException expected) {
+            // expected
+        }
+
+        dvc = new DOMValidateContext(VALIDATE_KEYS[2], sigElem);
+        dvc.setProperty("org.apache.jcp.xml.dsig.lazyUnmarshal", Boolean.TRUE);
+        XMLSignature sig = fac.unmarshalXMLSignature(dvc);
+        // the References to the Objects resolve before the Objects are unmarshalled
+        assertTrue(sig.validate(dvc));
+        assertNull(sig.getKeyInfo());
+        try {
+            sig.getObjects();
+            fail("Should have failed to unmarshal the Manifest");
+        } catch (IllegalStateException expected) {
+            assertTrue(expected.getCause() instanceof javax.xml.crypto.MarshalException);
+        }
+
+        dvc = new DOMValidateContext(VALIDATE_KEYS[2], sigElem);
+        dvc.setProperty("org.apache.jcp.xml.dsig.lazyUnmarshal", Boolean.TRUE);
+        dvc.setProperty("org.jcp.xml.dsig.validateManifests", Boolean.TRUE);
+        try {
+            fac.unmarshalXMLSignature(dvc).validate(dvc);
+            fail("Should have failed to unmarshal the Manifest");
+        } catch (XMLSignatureException expected) {
+            assertTrue(expected.getCause() instanceof javax.xml.crypto.MarshalException);
+        }
+    }
+
     @org.junit.jupiter.api.Test
     public void testSignTemplateWithObjectNSDefs() throws Exception {
         String base = System.getProperty("basedir") == null ? "./"
@@ -402,6 +513,27 @@ public class XMLSignatureTest {
         assertTrue(sig.validate(validateContext));
     }
 
+    private Document createSignatureWithObjects(int count) throws Exception {
+        Document doc = TestUtils.newDocument();
+        DigestMethod dm = fac.newDigestMethod(DigestMethod.SHA1, null);
+        List<Reference> refs = new ArrayList<>();
+        List<XMLObject> objs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            refs.add(fac.newReference("#object-" + i, dm));
+            Element content = doc.createElementNS(null, "Content");
+            content.setAttributeNS("http://www.w3.org/2000/xmlns/", "xmlns", "");
+            content.appendChild(doc.createTextNode("content " + i));
+            objs.add(fac.newXMLObject(Collections.singletonList
+                (new DOMStructure(content)), "object-" + i, null, null));
+        }
+        CanonicalizationMethod cm = fac.newCanonicalizationMethod
+            (CanonicalizationMethod.INCLUSIVE, (C14NMethodParameterSpec) null);
+        SignedInfo si = fac.newSignedInfo(cm, SIG_METHODS[2], refs);
+        XMLSignature sig = fac.newXMLSignature(si, null, objs, "signature", null);
+        sig.sign(new DOMSignContext(SIGN_KEYS[2], doc));
+        return doc;
+    }
+
     private SignedInfo createSignedInfo(SignatureMethod sm) throws Exception {
         // set up the building blocks
         CanonicalizationMethod cm = fac.newCanonicalizationMethod
@@ -0,0 +1,219 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.encryption;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.encryption.EncryptedData;
+import org.apache.xml.security.encryption.SegmentedGCMCipher;
+import org.apache.xml.security.encryption.SegmentedGCMDecryptingInputStream;
+import org.apache.xml.security.encryption.SegmentedGCMEncryptingOutputStream;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.encryption.XMLEncryptionException;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the segmented AES-GCM encryption mode.
+ */
+public class SegmentedGCMCipherTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    static {
+        org.apache.xml.security.Init.init();
+    }
+
+    private final SecureRandom random = new SecureRandom();
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SecretKey key = generateKey();
+        // exercise the boundaries: empty, exactly one segment, and several segments
+        for (int length : new int[] {0, 1, SEGMENT_SIZE, SEGMENT_SIZE + 1, 10 * SEGMENT_SIZE + 17}) {
+            byte[] plaintext = randomBytes(length);
+            byte[] cipherText = encrypt(key, randomBytes(12), plaintext, null);
+            assertEquals(SegmentedGCMCipher.getCipherTextLength(length, SEGMENT_SIZE), cipherText.length);
+            assertArrayEquals(plaintext, decrypt(key, cipherText));
+        }
+    }
+
+    @Test
+    public void testConcurrentEncryption() throws Exception {
+        SecretKey key = generateKey();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // batches of four segments: a partial batch, exactly one batch, and several batches
+            for (int length : new int[] {0, 3 * SEGMENT_SIZE, 4 * SEGMENT_SIZE, 4 * SEGMENT_SIZE + 1,
+                                         10 * SEGMENT_SIZE + 17}) {
+                byte[] plaintext = randomBytes(length);
+                byte[] iv = randomBytes(12);
+                byte[] cipherText = encrypt(key, iv, plaintext, executor);
+                assertArrayEquals(encrypt(key, iv, plaintext, null), cipherText);
+                assertArrayEquals(plaintext, decrypt(key, cipherText));
+            }
+
+            // a saturated executor makes the writing thread encrypt the segments itself
+            byte[] plaintext = randomBytes(10 * SEGMENT_SIZE + 17);
+            byte[] cipherText = encrypt(key, randomBytes(12), plaintext, command -> {
+                throw new RejectedExecutionException();
+            });
+            assertArrayEquals(plaintext, decrypt(key, cipherText));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testTamperedSegmentIsRejected() throws Exception {
+        SecretKey key = generateKey();
+        byte[] cipherText = encrypt(key, randomBytes(12), randomBytes(3 * SEGMENT_SIZE), null);
+        cipherText[12 + SEGMENT_SIZE + 20] ^= 1;
+
+        assertThrows(IOException.class, () -> decrypt(key, cipherText));
+    }
+
+    @Test
+    public void testTruncationIsRejected() throws Exception {
+        SecretKey key = generateKey();
+        byte[] cipherText = encrypt(key, randomBytes(12), randomBytes(3 * SEGMENT_SIZE), null);
+        // dropping the final segment leaves a well-formed prefix whose last segment isn't flagged as final
+        byte[] truncated =
+            Arrays.copyOf(cipherText, cipherText.length - SEGMENT_SIZE - SegmentedGCMCipher.TAG_LENGTH);
+
+        assertThrows(IOException.class, () -> decrypt(key, truncated));
+    }
+
+    @Test
+    public void testXMLCipherRoundTrip() throws Exception {
+        StringBuilder content = new StringBuilder("<root><data>");
+        for (int i = 0; i < 500; i++) {
+            content.append("<item id=\"").append(i).append("\">some value</item>");
+        }
+        content.append("</data></root>");
+        Document document = XMLUtils.read(
+            new ByteArrayInputStream(content.toString().getBytes(StandardCharsets.UTF_8)), false);
+        Element data = (Element) document.getDocumentElement().getFirstChild();
+        String expected = data.getTextContent();
+
+        SecretKey key = generateKey();
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        cipher.setSegmentSize(SEGMENT_SIZE);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            cipher.setSegmentExecutor(executor);
+            cipher.doFinal(document, data);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        Element encryptedDataElement = (Element) document.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+        assertEquals(1, document.getElementsByTagNameNS(
+            EncryptionConstants.SantuarioEncryptionNS, EncryptionConstants._TAG_SEGMENTSIZE).getLength());
+
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128_GCM);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        EncryptedData encryptedData = cipher.loadEncryptedData(document, encryptedDataElement);
+        assertEquals(SEGMENT_SIZE, encryptedData.getEncryptionMethod().getSegmentSize());
+
+        cipher.doFinal(document, encryptedDataElement);
+        Element decrypted = (Element) document.getDocumentElement().getFirstChild();
+        assertEquals("data", decrypted.getLocalName());
+        assertEquals(500, decrypted.getChildNodes().getLength());
+        assertEquals(expected, decrypted.getTextContent());
+    }
+
+    @Test
+    public void testSegmentationRequiresGCM() throws Exception {
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, generateKey());
+        cipher.setSegmentSize(SEGMENT_SIZE);
+        Document document = XMLUtils.read(
+            new ByteArrayInputStream("<root><data/></root>".getBytes(StandardCharsets.UTF_8)), false);
+        Element data = (Element) document.getDocumentElement().getFirstChild();
+        assertThrows(XMLEncryptionException.class, () -> cipher.doFinal(document, data));
+    }
+
+    private SecretKey generateKey() throws Exception {
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        return keygen.generateKey();
+    }
+
+    private static byte[] encrypt(SecretKey key, byte[] iv, byte[] plaintext, Executor executor) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        ByteArrayOutputStream encrypted = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new SegmentedGCMEncryptingOutputStream(
+            encrypted, new SegmentedGCMCipher(cipher, key, iv, SEGMENT_SIZE), executor, 4)) {
+            // write in chunks which don't line up with the segments
+            for (int i = 0; i < plaintext.length; i += 100) {
+                outputStream.write(plaintext, i, Math.min(100, plaintext.length - i));
+            }
+        }
+        return encrypted.toByteArray();
+    }
+
+    private static byte[] decrypt(SecretKey key, byte[] cipherText) throws Exception {
+        Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        try (InputStream inputStream =
+            new SegmentedGCMDecryptingInputStream(new ByteArrayInputStream(cipherText), cipher, key, SEGMENT_SIZE)) {
+            return readAll(inputStream);
+        }
+    }
+
+    private byte[] randomBytes(int length) {
+        byte[] bytes = new byte[length];
+        random.nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        byte[] buffer = new byte[333];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+}
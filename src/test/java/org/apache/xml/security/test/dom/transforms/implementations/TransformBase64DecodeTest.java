@@ -20,7 +20,9 @@ package org.apache.xml.security.test.dom.transforms.implementations;
 
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.XPath;
@@ -30,12 +32,17 @@ import javax.xml.xpath.XPathFactory;
 import org.apache.xml.security.signature.XMLSignatureInput;
 import org.apache.xml.security.test.dom.DSNamespaceContext;
 import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.transforms.TransformationException;
 import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.utils.XMLUtils;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
  * Unit test for {@link org.apache.xml.security.transforms.implementations.TransformBase64Decode}
@@ -137,6 +144,59 @@ public class TransformBase64DecodeTest {
         );
     }
 
+    @org.junit.jupiter.api.Test
+    public void testDecodeIntoOutputStream() throws Exception {
+        byte[] data = new byte[100 * 1024];
+        new java.util.Random(42).nextBytes(data);
+        String encoded = java.util.Base64.getMimeEncoder().encodeToString(data);
+
+        Document doc = TransformBase64DecodeTest.createDocument();
+        Transforms t = new Transforms(doc);
+        doc.appendChild(t.getElement());
+        t.addTransform(Transforms.TRANSFORM_BASE64_DECODE);
+
+        // an octet stream is decoded chunk by chunk into the output stream
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        try (InputStream is = new ByteArrayInputStream(encoded.getBytes(StandardCharsets.US_ASCII))) {
+            XMLSignatureInput out = t.performTransforms(new XMLSignatureInput(is), os);
+            assertTrue(out.isOutputStreamSet());
+        }
+        assertArrayEquals(data, os.toByteArray());
+
+        // the text of an element is decoded without collecting it first
+        Element base64 = doc.createElementNS(null, "Base64");
+        int half = encoded.length() / 2;
+        base64.appendChild(doc.createTextNode(encoded.substring(0, half)));
+        base64.appendChild(doc.createElementNS(null, "Child"))
+            .appendChild(doc.createTextNode(encoded.substring(half)));
+        os = new ByteArrayOutputStream();
+        t.performTransforms(new XMLSignatureInput(base64), os);
+        assertArrayEquals(data, os.toByteArray());
+        assertArrayEquals(data, t.performTransforms(new XMLSignatureInput(base64)).getBytes());
+    }
+
+    @org.junit.jupiter.api.Test
+    public void testMalformedBase64() throws Exception {
+        Document doc = TransformBase64DecodeTest.createDocument();
+        Transforms t = new Transforms(doc);
+        doc.appendChild(t.getElement());
+        t.addTransform(Transforms.TRANSFORM_BASE64_DECODE);
+
+        // data after the padding, an incomplete quantum and a bad padding are rejected
+        for (String encoded : new String[] {"QQ==QUJD", "QUJDR", "QUJDRA=", "QQ=\n="}) {
+            byte[] encodedBytes = encoded.getBytes(StandardCharsets.US_ASCII);
+            assertThrows(TransformationException.class, () ->
+                t.performTransforms(new XMLSignatureInput(new ByteArrayInputStream(encodedBytes)),
+                                    new ByteArrayOutputStream()));
+
+            Element base64 = doc.createElementNS(null, "Base64");
+            base64.appendChild(doc.createTextNode(encoded));
+            assertThrows(TransformationException.class, () ->
+                t.performTransforms(new XMLSignatureInput(base64), new ByteArrayOutputStream()));
+            assertThrows(TransformationException.class, () -> t.performTransforms(new XMLSignatureInput(base64)));
+        }
+    }
+
     private static Document createDocument() throws ParserConfigurationException {
         Document doc = TestUtils.newDocument();
 
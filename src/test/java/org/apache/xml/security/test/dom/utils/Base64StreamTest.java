@@ -0,0 +1,215 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests for the streaming and text node Base64 decoding of XMLUtils.
+ */
+public class Base64StreamTest {
+
+    private static byte[] newData(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void testEncoderOutputStream() throws Exception {
+        for (int length : new int[] {0, 1, 2, 3, 57, 1000, 65537}) {
+            byte[] data = newData(length);
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+            try (OutputStream os = XMLUtils.wrapEncoder(encoded)) {
+                // write in odd chunks
+                for (int i = 0; i < length; i += 7) {
+                    os.write(data, i, Math.min(7, length - i));
+                }
+            }
+            // the wrapped stream is still open
+            encoded.write('\n');
+            String encodedString = new String(encoded.toByteArray(), StandardCharsets.US_ASCII).trim();
+            assertEquals(XMLUtils.encodeToString(data), encodedString);
+        }
+    }
+
+    @Test
+    public void testDecoderStreams() throws Exception {
+        byte[] data = newData(100000);
+        String encoded = java.util.Base64.getMimeEncoder().encodeToString(data);
+        byte[] encodedBytes = encoded.getBytes(StandardCharsets.US_ASCII);
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (InputStream is = XMLUtils.wrapDecoder(new ByteArrayInputStream(encodedBytes))) {
+            byte[] buffer = new byte[333];
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                decoded.write(buffer, 0, read);
+            }
+        }
+        assertArrayEquals(data, decoded.toByteArray());
+
+        decoded = new ByteArrayOutputStream();
+        try (OutputStream os = XMLUtils.wrapDecoder(decoded)) {
+            for (int i = 0; i < encodedBytes.length; i += 100) {
+                os.write(encodedBytes, i, Math.min(100, encodedBytes.length - i));
+            }
+        }
+        decoded.write(1);
+        byte[] decodedBytes = decoded.toByteArray();
+        assertEquals(data.length + 1, decodedBytes.length);
+        assertArrayEquals(data, java.util.Arrays.copyOf(decodedBytes, data.length));
+    }
+
+    @Test
+    public void testDecodeTextChildren() throws Exception {
+        Document doc = TestUtils.newDocument();
+        for (int length = 0; length < 200; length += 7) {
+            byte[] data = newData(length);
+            String encoded = java.util.Base64.getMimeEncoder(10, new byte[] {'\r', '\n'}).encodeToString(data);
+            Element element = doc.createElementNS(null, "Value");
+            // split the text, with other nodes in between
+            int split = encoded.length() / 3;
+            element.appendChild(doc.createTextNode(encoded.substring(0, split)));
+            element.appendChild(doc.createComment("comment"));
+            element.appendChild(doc.createTextNode(encoded.substring(split, 2 * split)));
+            element.appendChild(doc.createElementNS(null, "Child"));
+            element.appendChild(doc.createTextNode(encoded.substring(2 * split) + "\n"));
+            assertArrayEquals(data, XMLUtils.decodeTextChildren(element));
+            assertArrayEquals(data, XMLUtils.decode(encoded));
+        }
+
+        // malformed text is reported like the MIME decoder does
+        for (String text : new String[] {"QQ", "QQ=", "QUI", "QQ==\n", "QUI=\n=", "QQ\n==", "Q", "QQ=\n=",
+                                         "QUJD=", "QQ==QQ==", "=QQ=="}) {
+            Element element = doc.createElementNS(null, "Value");
+            element.appendChild(doc.createTextNode(text));
+            byte[] expected = null;
+            try {
+                expected = java.util.Base64.getMimeDecoder().decode(text);
+            } catch (IllegalArgumentException ex) {
+                assertThrows(IllegalArgumentException.class, () -> XMLUtils.decodeTextChildren(element));
+                assertThrows(IllegalArgumentException.class, () -> XMLUtils.decode(text));
+                continue;
+            }
+            assertArrayEquals(expected, XMLUtils.decodeTextChildren(element));
+            assertArrayEquals(expected, XMLUtils.decode(text));
+        }
+    }
+
+    @Test
+    public void testDecoderStreamsAreStrict() throws Exception {
+        // random text of Base64 characters, padding and line breaks, decoded in small chunks
+        Random random = new Random(47);
+        char[] alphabet = {'Q', 'U', 'J', 'D', '=', '=', '\n', ' '};
+        for (int i = 0; i < 20000; i++) {
+            char[] text = new char[random.nextInt(12)];
+            for (int j = 0; j < text.length; j++) {
+                text[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            byte[] encodedBytes = new String(text).getBytes(StandardCharsets.US_ASCII);
+            byte[] expected;
+            try {
+                expected = java.util.Base64.getMimeDecoder().decode(encodedBytes);
+            } catch (IllegalArgumentException ex) {
+                expected = null;
+            }
+            assertDecodedByStreams(expected, encodedBytes, 1 + random.nextInt(4));
+        }
+
+        for (String text : new String[] {"QQ==QUJD", "QUJDR", "QUJDRA=", "QUJD=", "QQ=\n=", "=QUJD"}) {
+            assertDecodedByStreams(null, text.getBytes(StandardCharsets.US_ASCII), 3);
+        }
+    }
+
+    private static void assertDecodedByStreams(byte[] expected, byte[] encodedBytes, int chunkSize)
+        throws Exception {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        try (InputStream is = XMLUtils.wrapDecoder(new ChunkedInputStream(encodedBytes, chunkSize))) {
+            int read;
+            while ((read = is.read()) != -1) {
+                decoded.write(read);
+            }
+            assertArrayEquals(expected, decoded.toByteArray());
+        } catch (IOException ex) {
+            assertNull(expected, new String(encodedBytes, StandardCharsets.US_ASCII));
+        }
+
+        decoded = new ByteArrayOutputStream();
+        try (OutputStream os = XMLUtils.wrapDecoder(decoded)) {
+            for (int i = 0; i < encodedBytes.length; i += chunkSize) {
+                os.write(encodedBytes, i, Math.min(chunkSize, encodedBytes.length - i));
+            }
+        } catch (IOException ex) {
+            assertNull(expected, new String(encodedBytes, StandardCharsets.US_ASCII));
+            return;
+        }
+        assertArrayEquals(expected, decoded.toByteArray());
+    }
+
+    /**
+     * Returns the data in chunks of at most the given size.
+     */
+    private static final class ChunkedInputStream extends ByteArrayInputStream {
+
+        private final int chunkSize;
+
+        ChunkedInputStream(byte[] data, int chunkSize) {
+            super(data);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunkSize));
+        }
+    }
+
+    @Test
+    public void testByteBuffers() throws Exception {
+        byte[] data = newData(5000);
+        ByteBuffer encoded = XMLUtils.encode(ByteBuffer.wrap(data));
+        byte[] encodedBytes = new byte[encoded.remaining()];
+        encoded.duplicate().get(encodedBytes);
+        assertEquals(XMLUtils.encodeToString(data), new String(encodedBytes, StandardCharsets.US_ASCII));
+
+        ByteBuffer decoded = XMLUtils.decode(encoded);
+        byte[] decodedBytes = new byte[decoded.remaining()];
+        decoded.get(decodedBytes);
+        assertArrayEquals(data, decodedBytes);
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.apache.xml.security.utils.DefaultDocumentBuilderPool;
+import org.apache.xml.security.utils.DocumentBuilderPool;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXParseException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ */
+public class DocumentBuilderPoolTest {
+
+    private static final String DOCTYPE_XML = "<!DOCTYPE root [<!ENTITY e \"v\">]><root>&e;</root>";
+
+    @Test
+    public void testSharedPool() throws Exception {
+        DefaultDocumentBuilderPool pool = new DefaultDocumentBuilderPool(1, 2, false);
+        DocumentBuilder first = pool.borrow(false);
+        DocumentBuilder second = pool.borrow(false);
+        assertNotSame(first, second);
+        assertTrue(first.isNamespaceAware());
+        pool.release(first, false);
+        pool.release(second, false);
+        assertEquals(1, pool.getIdleCount(false));
+        assertEquals(1, pool.getReleasedCount(false));
+        assertEquals(1, pool.getDiscardedCount(false));
+
+        assertSame(first, pool.borrow(false));
+        assertEquals(2, pool.getCreatedCount(false));
+        assertEquals(1, pool.getReusedCount(false));
+        assertEquals(0, pool.getIdleCount(false));
+
+        //the variants are pooled and sized separately
+        DocumentBuilder disallowing = pool.borrow(true);
+        pool.release(disallowing, true);
+        pool.release(pool.borrow(true), true);
+        assertEquals(1, pool.getIdleCount(true));
+        assertEquals(1, pool.getCreatedCount(true));
+        pool.release(pool.borrow(false), true);
+        assertEquals(2, pool.getIdleCount(true));
+        assertEquals(0, pool.getIdleCount(false));
+        assertThrows(SAXParseException.class, () -> disallowing.parse(stream(DOCTYPE_XML)));
+    }
+
+    @Test
+    public void testThreadLocalPool() throws Exception {
+        DefaultDocumentBuilderPool pool = new DefaultDocumentBuilderPool(20, 0, true);
+        DocumentBuilder documentBuilder = pool.borrow(false);
+        pool.release(documentBuilder, false);
+        assertSame(documentBuilder, pool.borrow(false));
+        assertEquals(0, pool.getIdleCount(false));
+
+        //another thread doesn't see the cached builder
+        DocumentBuilder[] other = new DocumentBuilder[1];
+        pool.release(documentBuilder, false);
+        Thread thread = new Thread(() -> {
+            try {
+                other[0] = pool.borrow(false);
+            } catch (ParserConfigurationException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        thread.start();
+        thread.join();
+        assertNotSame(documentBuilder, other[0]);
+        assertEquals(2, pool.getCreatedCount(false));
+
+        //a size of zero disables pooling
+        pool.release(pool.borrow(true), true);
+        pool.release(pool.borrow(true), true);
+        assertEquals(2, pool.getCreatedCount(true));
+        assertEquals(2, pool.getDiscardedCount(true));
+    }
+
+    @Test
+    public void testFactoryConfiguration() throws Exception {
+        AtomicInteger factories = new AtomicInteger();
+        DefaultDocumentBuilderPool pool = new DefaultDocumentBuilderPool(2, 2, false) {
+            @Override
+            protected DocumentBuilderFactory createDocumentBuilderFactory(boolean disallowDocTypeDeclarations)
+                throws ParserConfigurationException {
+                factories.incrementAndGet();
+                DocumentBuilderFactory factory = super.createDocumentBuilderFactory(disallowDocTypeDeclarations);
+                factory.setExpandEntityReferences(false);
+                return factory;
+            }
+        };
+        DocumentBuilder documentBuilder = pool.borrow(false);
+        assertEquals(1, factories.get());
+        Document doc = documentBuilder.parse(stream(DOCTYPE_XML));
+        assertEquals("root", doc.getDocumentElement().getLocalName());
+        //the secure settings are applied on top of the configured factory
+        assertThrows(SAXParseException.class, () -> pool.borrow(true).parse(stream(DOCTYPE_XML)));
+    }
+
+    @Test
+    public void testXMLUtilsUsesPool() throws Exception {
+        DocumentBuilderPool previous = XMLUtils.getDocumentBuilderPool();
+        DefaultDocumentBuilderPool pool = new DefaultDocumentBuilderPool(2, 2, false);
+        XMLUtils.setDocumentBuilderPool(pool);
+        try {
+            XMLUtils.read(stream("<a/>"), true);
+            XMLUtils.read(stream("<b/>"), true);
+            assertEquals(1, pool.getCreatedCount(true));
+            assertEquals(1, pool.getReusedCount(true));
+            assertEquals(1, pool.getIdleCount(true));
+
+            XMLUtils.setDocumentBuilderPool(null);
+            assertTrue(XMLUtils.getDocumentBuilderPool() instanceof DefaultDocumentBuilderPool);
+        } finally {
+            XMLUtils.setDocumentBuilderPool(previous);
+        }
+    }
+
+    private static ByteArrayInputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+}
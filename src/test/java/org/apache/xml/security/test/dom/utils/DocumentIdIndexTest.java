@@ -0,0 +1,123 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.xml.security.utils.DocumentIdIndex;
+import org.apache.xml.security.utils.XMLUtils;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Tests for the Id index which is used to prevent wrapping attacks
+ */
+public class DocumentIdIndexTest {
+
+    private static final String XML =
+        "<root><a Id=\"a\"/><b Id=\"b\"><c Id=\"c\"/></b><d Id=\"c\"/><e Id=\"e\"/></root>";
+
+    @Test
+    public void testIndex() throws Exception {
+        Document doc = readWithIds();
+        DocumentIdIndex idIndex = new DocumentIdIndex(doc);
+
+        Element a = (Element) doc.getDocumentElement().getFirstChild();
+        assertSame(a, idIndex.getElement("a"));
+        assertSame(a, idIndex.getElement(" #a "));
+        assertNull(idIndex.getElement("x"));
+
+        assertTrue(idIndex.isUnique("a"));
+        assertTrue(idIndex.isUnique("#b"));
+        assertTrue(idIndex.isUnique("x"));
+        assertFalse(idIndex.isUnique("c"));
+
+        assertTrue(idIndex.isUnique("a", a));
+        assertTrue(idIndex.isUnique("x", a));
+        assertFalse(idIndex.isUnique("b", a));
+        assertFalse(idIndex.isUnique("c", idIndex.getElement("c")));
+
+        // The result agrees with the tree-search
+        Element start = doc.getDocumentElement();
+        for (String id : new String[] {"a", "b", "c", "e", "x"}) {
+            assertSame(XMLUtils.protectAgainstWrappingAttack(start, id), idIndex.isUnique(id));
+            assertSame(XMLUtils.protectAgainstWrappingAttack(start, a, id), idIndex.isUnique(id, a));
+        }
+    }
+
+    @Test
+    public void testIdAttributeRegisteredAfterIndexing() throws Exception {
+        Document doc = XMLUtils.read(
+            new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), false);
+        Element a = (Element) doc.getDocumentElement().getFirstChild();
+        Element e = (Element) doc.getDocumentElement().getLastChild();
+        e.setAttributeNS(null, "Id", "a");
+        a.setIdAttributeNS(null, "Id", true);
+        DocumentIdIndex idIndex = new DocumentIdIndex(doc);
+        assertSame(a, idIndex.getElement("a"));
+        assertTrue(idIndex.isUnique("a", a));
+
+        // Registering an Id attribute doesn't mutate the document, the index must still see it
+        e.setIdAttributeNS(null, "Id", true);
+        assertFalse(idIndex.isUnique("a"));
+        assertFalse(idIndex.isUnique("a", a));
+        assertFalse(idIndex.isUnique("a", e));
+    }
+
+    @Test
+    public void testOtherDocumentIsSearched() throws Exception {
+        Document doc = readWithIds();
+        Document other = readWithIds();
+        DocumentIdIndex idIndex = new DocumentIdIndex(other);
+        Element a = (Element) doc.getDocumentElement().getFirstChild();
+
+        Element duplicate = doc.createElementNS(null, "f");
+        duplicate.setAttributeNS(null, "Id", "a");
+        duplicate.setIdAttributeNS(null, "Id", true);
+        doc.getDocumentElement().appendChild(duplicate);
+
+        assertTrue(idIndex.isUnique("a"));
+        assertFalse(DocumentIdIndex.isUnique(idIndex, doc, "a"));
+        assertFalse(DocumentIdIndex.isUnique(idIndex, doc, "a", a));
+        assertTrue(DocumentIdIndex.isUnique(idIndex, other, "a"));
+        assertTrue(DocumentIdIndex.isUnique(null, doc, "x"));
+        assertFalse(DocumentIdIndex.isUnique(null, doc, "c"));
+    }
+
+    private static Document readWithIds() throws Exception {
+        Document doc = XMLUtils.read(
+            new ByteArrayInputStream(XML.getBytes(StandardCharsets.UTF_8)), false);
+        Element element = (Element) doc.getDocumentElement().getFirstChild();
+        while (element != null) {
+            element.setIdAttributeNS(null, "Id", true);
+            if (element.getFirstChild() != null) {
+                ((Element) element.getFirstChild()).setIdAttributeNS(null, "Id", true);
+            }
+            element = (Element) element.getNextSibling();
+        }
+        return doc;
+    }
+}
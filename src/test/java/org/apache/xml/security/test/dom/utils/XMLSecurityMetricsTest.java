@@ -0,0 +1,160 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.dom.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+
+import org.apache.xml.security.Init;
+import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
+import org.apache.xml.security.encryption.XMLCipher;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.test.dom.TestUtils;
+import org.apache.xml.security.transforms.Transforms;
+import org.apache.xml.security.utils.EncryptionConstants;
+import org.apache.xml.security.utils.MetricsListener;
+import org.apache.xml.security.utils.XMLSecurityMetrics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ */
+public class XMLSecurityMetricsTest {
+
+    private final List<Event> events = new ArrayList<>();
+
+    static {
+        Init.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        XMLSecurityMetrics.setListener(null);
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        assertFalse(XMLSecurityMetrics.isEnabled());
+        assertEquals(0L, XMLSecurityMetrics.start());
+        //nothing is recorded without a start time
+        XMLSecurityMetrics.setListener(this::record);
+        XMLSecurityMetrics.record(MetricsListener.Operation.DIGEST, null, 0L, 10L);
+        assertTrue(events.isEmpty());
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        XMLSecurityMetrics.setListener(this::record);
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(null, "RootElement");
+        doc.appendChild(root);
+        root.appendChild(doc.createTextNode("Some simple text"));
+
+        XMLSignature sig = new XMLSignature(doc, null, XMLSignature.ALGO_ID_MAC_HMAC_SHA256);
+        root.appendChild(sig.getElement());
+        Transforms transforms = new Transforms(doc);
+        transforms.addTransform(Transforms.TRANSFORM_ENVELOPED_SIGNATURE);
+        sig.addDocument("", transforms, MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256);
+        SecretKey sk = sig.createSecretKey("secret".getBytes(StandardCharsets.US_ASCII));
+        sig.sign(sk);
+
+        Event digest = find(MetricsListener.Operation.DIGEST);
+        assertEquals(MessageDigestAlgorithm.ALGO_ID_DIGEST_SHA256, digest.algorithm);
+        assertTrue(digest.bytes > 0);
+        assertTrue(digest.duration >= 0);
+        assertNotNull(find(MetricsListener.Operation.CANONICALIZATION));
+        assertEquals(XMLSignature.ALGO_ID_MAC_HMAC_SHA256, find(MetricsListener.Operation.SIGN).algorithm);
+
+        events.clear();
+        XMLSignature signature = new XMLSignature(sig.getElement(), null);
+        assertTrue(signature.checkSignatureValue(sk));
+        assertEquals(XMLSignature.ALGO_ID_MAC_HMAC_SHA256, find(MetricsListener.Operation.VERIFY).algorithm);
+        assertNotNull(find(MetricsListener.Operation.RESOURCE_RESOLUTION));
+        assertEquals(digest.bytes, find(MetricsListener.Operation.DIGEST).bytes);
+    }
+
+    @Test
+    public void testEncryption() throws Exception {
+        XMLSecurityMetrics.setListener(this::record);
+        Document doc = TestUtils.newDocument();
+        Element root = doc.createElementNS(null, "RootElement");
+        doc.appendChild(root);
+        root.appendChild(doc.createTextNode("Some simple text"));
+
+        KeyGenerator keyGenerator = KeyGenerator.getInstance("AES");
+        keyGenerator.init(128);
+        SecretKey key = keyGenerator.generateKey();
+
+        XMLCipher cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.ENCRYPT_MODE, key);
+        doc = cipher.doFinal(doc, root);
+        Event encryption = find(MetricsListener.Operation.ENCRYPTION);
+        assertEquals(XMLCipher.AES_128, encryption.algorithm);
+        //IV and at least one block
+        assertTrue(encryption.bytes >= 32);
+
+        Element encryptedData = (Element) doc.getElementsByTagNameNS(
+            EncryptionConstants.EncryptionSpecNS, EncryptionConstants._TAG_ENCRYPTEDDATA).item(0);
+        cipher = XMLCipher.getInstance(XMLCipher.AES_128);
+        cipher.init(XMLCipher.DECRYPT_MODE, key);
+        cipher.doFinal(doc, encryptedData);
+        Event decryption = find(MetricsListener.Operation.DECRYPTION);
+        assertEquals(XMLCipher.AES_128, decryption.algorithm);
+        assertEquals(encryption.bytes, decryption.bytes);
+        assertEquals("RootElement", doc.getDocumentElement().getLocalName());
+    }
+
+    private void record(MetricsListener.Operation operation, String algorithm, long duration, long bytes) {
+        events.add(new Event(operation, algorithm, duration, bytes));
+    }
+
+    private Event find(MetricsListener.Operation operation) {
+        for (Event event : events) {
+            if (event.operation == operation) {
+                return event;
+            }
+        }
+        throw new AssertionError("No " + operation + " was recorded");
+    }
+
+    private static final class Event {
+        private final MetricsListener.Operation operation;
+        private final String algorithm;
+        private final long duration;
+        private final long bytes;
+
+        Event(MetricsListener.Operation operation, String algorithm, long duration, long bytes) {
+            this.operation = operation;
+            this.algorithm = algorithm;
+            this.duration = duration;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,264 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecComment;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecProcessingInstruction;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartDocument;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.stax.XMLSecCommentImpl;
+import org.apache.xml.security.stax.impl.util.CompactXMLSecEventBuffer;
+import org.apache.xml.security.stax.impl.util.DirectBufferPool;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ */
+public class CompactXMLSecEventBufferTest {
+
+    private static final String XML =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>"
+        + "<?pi data?><!--comment-->"
+        + "<a:root xmlns:a=\"urn:a\" xmlns=\"urn:default\" a:attr=\"1\" attr=\"2\">"
+        + "<child a:attr=\"3\">text ä€😀</child><![CDATA[<cdata>]]>"
+        + "<a:child xmlns:a=\"urn:other\" a:attr=\"4\"/><b:child xmlns:b=\"urn:a\"/></a:root>";
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<XMLSecEvent> events = allocate(XML);
+        CompactXMLSecEventBuffer buffer = new CompactXMLSecEventBuffer(null, -1);
+        for (XMLSecEvent xmlSecEvent : events) {
+            buffer.offer(xmlSecEvent);
+        }
+        assertEquals(events.size(), buffer.size());
+        assertEventsEqual(events, buffer);
+        assertFalse(buffer.isSpilled());
+        buffer.close();
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        StringBuilder stringBuilder = new StringBuilder("<root xmlns:p=\"urn:p\">");
+        for (int i = 0; i < 5000; i++) {
+            stringBuilder.append("<p:element p:id=\"id-").append(i).append("\">value é ").append(i)
+                .append("</p:element>");
+        }
+        stringBuilder.append("</root>");
+        List<XMLSecEvent> events = allocate(stringBuilder.toString());
+
+        CompactXMLSecEventBuffer buffer = new CompactXMLSecEventBuffer(new DirectBufferPool(1024, 4), 4096);
+        for (XMLSecEvent xmlSecEvent : events) {
+            buffer.offer(xmlSecEvent);
+        }
+        assertTrue(buffer.isSpilled());
+        assertEventsEqual(events, buffer);
+        buffer.close();
+    }
+
+    @Test
+    public void testExhaustedDirectBufferPool() throws Exception {
+        StringBuilder stringBuilder = new StringBuilder("<root>");
+        for (int i = 0; i < 1000; i++) {
+            stringBuilder.append("<element id=\"id-").append(i).append("\">value ").append(i).append("</element>");
+        }
+        stringBuilder.append("</root>");
+        List<XMLSecEvent> events = allocate(stringBuilder.toString());
+
+        CompactXMLSecEventBuffer buffer = new CompactXMLSecEventBuffer(new DirectBufferPool(1024, 1, 2), -1);
+        for (XMLSecEvent xmlSecEvent : events) {
+            buffer.offer(xmlSecEvent);
+        }
+        assertFalse(buffer.isSpilled());
+        assertEventsEqual(events, buffer);
+        buffer.close();
+    }
+
+    @Test
+    public void testPushBackAndInterleaving() throws Exception {
+        List<XMLSecEvent> events = allocate(XML);
+        CompactXMLSecEventBuffer buffer = new CompactXMLSecEventBuffer(null, -1);
+        buffer.offer(events.get(0));
+        buffer.offer(events.get(1));
+
+        XMLSecEvent first = buffer.pop();
+        buffer.push(first);
+        assertSame(first, buffer.peek());
+        assertSame(first, buffer.pop());
+        assertEquals(1, buffer.size());
+
+        for (int i = 2; i < events.size(); i++) {
+            buffer.offer(events.get(i));
+        }
+        List<XMLSecEvent> expected = events.subList(1, events.size());
+        assertEventsEqual(expected, buffer);
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testDequeOperations() throws Exception {
+        List<XMLSecEvent> events = allocate(XML);
+        CompactXMLSecEventBuffer buffer = new CompactXMLSecEventBuffer(null, -1);
+        for (XMLSecEvent xmlSecEvent : events) {
+            buffer.offer(xmlSecEvent);
+        }
+        XMLSecEvent first = buffer.pop();
+        buffer.push(first);
+
+        int count = 0;
+        for (XMLSecEvent xmlSecEvent : buffer) {
+            assertEquals(events.get(count++).getEventType(), xmlSecEvent.getEventType());
+        }
+        assertEquals(events.size(), count);
+        assertSame(first, buffer.getFirst());
+        assertTrue(buffer.contains(first));
+        assertEquals(events.size(), buffer.toArray().length);
+
+        XMLSecEvent last = buffer.getLast();
+        assertEquals(XMLStreamConstants.END_DOCUMENT, last.getEventType());
+        assertSame(last, buffer.descendingIterator().next());
+        assertSame(last, buffer.removeLast());
+        assertTrue(buffer.removeFirstOccurrence(first));
+        assertEquals(events.size() - 2, buffer.size());
+
+        // events offered afterwards are still encoded and follow the decoded ones
+        buffer.offer(events.get(events.size() - 1));
+        assertEventsEqual(events.subList(1, events.size()), buffer);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.pollLast());
+        buffer.close();
+    }
+
+    @Test
+    public void testForeignEventsAreKept() throws Exception {
+        XMLSecEvent comment = new XMLSecCommentImpl("foreign", null) {
+        };
+        CompactXMLSecEventBuffer buffer = new CompactXMLSecEventBuffer(null, -1);
+        List<XMLSecEvent> events = allocate(XML);
+        buffer.offer(events.get(0));
+        buffer.offer(comment);
+        buffer.offer(events.get(1));
+        buffer.pop();
+        assertSame(comment, buffer.pop());
+        assertEquals(events.get(1).getEventType(), buffer.pop().getEventType());
+        assertTrue(buffer.isEmpty());
+    }
+
+    private static void assertEventsEqual(List<XMLSecEvent> expected, CompactXMLSecEventBuffer buffer) {
+        for (XMLSecEvent expectedEvent : expected) {
+            XMLSecEvent actualEvent = buffer.pop();
+            assertEquals(expectedEvent.getEventType(), actualEvent.getEventType());
+            assertEquals(expectedEvent.getElementPath(), actualEvent.getElementPath());
+            switch (expectedEvent.getEventType()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    XMLSecStartElement expectedElement = expectedEvent.asStartElement();
+                    XMLSecStartElement actualElement = actualEvent.asStartElement();
+                    assertEquals(expectedElement.getName().getPrefix(), actualElement.getName().getPrefix());
+                    List<XMLSecNamespace> expectedNamespaces = new ArrayList<>();
+                    expectedElement.getNamespacesFromCurrentScope(expectedNamespaces);
+                    List<XMLSecNamespace> actualNamespaces = new ArrayList<>();
+                    actualElement.getNamespacesFromCurrentScope(actualNamespaces);
+                    assertEquals(expectedNamespaces.size(), actualNamespaces.size());
+                    for (int i = 0; i < expectedNamespaces.size(); i++) {
+                        assertEquals(expectedNamespaces.get(i).getPrefix(), actualNamespaces.get(i).getPrefix());
+                        assertEquals(expectedNamespaces.get(i).getNamespaceURI(),
+                                     actualNamespaces.get(i).getNamespaceURI());
+                    }
+                    List<XMLSecAttribute> expectedAttributes = expectedElement.getOnElementDeclaredAttributes();
+                    List<XMLSecAttribute> actualAttributes = actualElement.getOnElementDeclaredAttributes();
+                    assertEquals(expectedAttributes.size(), actualAttributes.size());
+                    for (int i = 0; i < expectedAttributes.size(); i++) {
+                        assertEquals(expectedAttributes.get(i).getName(), actualAttributes.get(i).getName());
+                        assertEquals(expectedAttributes.get(i).getName().getPrefix(),
+                                     actualAttributes.get(i).getName().getPrefix());
+                        assertEquals(expectedAttributes.get(i).getValue(), actualAttributes.get(i).getValue());
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    assertEquals(expectedEvent.asEndElement().getName(), actualEvent.asEndElement().getName());
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                    assertEquals(expectedEvent.asCharacters().getData(), actualEvent.asCharacters().getData());
+                    assertEquals(expectedEvent.asCharacters().isWhiteSpace(), actualEvent.asCharacters().isWhiteSpace());
+                    break;
+                case XMLStreamConstants.START_DOCUMENT:
+                    XMLSecStartDocument expectedDocument = (XMLSecStartDocument) expectedEvent;
+                    XMLSecStartDocument actualDocument = (XMLSecStartDocument) actualEvent;
+                    assertEquals(expectedDocument.standaloneSet(), actualDocument.standaloneSet());
+                    assertEquals(expectedDocument.isStandalone(), actualDocument.isStandalone());
+                    assertEquals(expectedDocument.getCharacterEncodingScheme(),
+                                 actualDocument.getCharacterEncodingScheme());
+                    assertEquals(expectedDocument.getVersion(), actualDocument.getVersion());
+                    break;
+                case XMLStreamConstants.COMMENT:
+                    assertEquals(((XMLSecComment) expectedEvent).getText(), ((XMLSecComment) actualEvent).getText());
+                    break;
+                case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                    XMLSecProcessingInstruction expectedInstruction = (XMLSecProcessingInstruction) expectedEvent;
+                    XMLSecProcessingInstruction actualInstruction = (XMLSecProcessingInstruction) actualEvent;
+                    assertEquals(expectedInstruction.getTarget(), actualInstruction.getTarget());
+                    assertEquals(expectedInstruction.getData(), actualInstruction.getData());
+                    break;
+                default:
+                    break;
+            }
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    private static List<XMLSecEvent> allocate(String xml) throws Exception {
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(new StringReader(xml));
+        List<XMLSecEvent> events = new ArrayList<>();
+        XMLSecStartElement parentXMLSecStartElement = null;
+        int eventType = xmlStreamReader.getEventType();
+        while (true) {
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXMLSecStartElement);
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                parentXMLSecStartElement = xmlSecEvent.asStartElement();
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+            }
+            events.add(xmlSecEvent);
+            if (!xmlStreamReader.hasNext()) {
+                break;
+            }
+            eventType = xmlStreamReader.next();
+        }
+        return events;
+    }
+}
@@ -0,0 +1,193 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.apache.xml.security.stax.impl.util.DirectBufferPool;
+import org.apache.xml.security.stax.impl.util.FullyBufferedOutputStream;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ */
+public class FullyBufferedOutputStreamTest {
+
+    private final byte[] data = new byte[300000];
+
+    public FullyBufferedOutputStreamTest() {
+        new Random(7).nextBytes(data);
+    }
+
+    @Test
+    public void testHeapBuffer() throws Exception {
+        testBuffering(null, -1);
+    }
+
+    @Test
+    public void testDirectBuffers() throws Exception {
+        testBuffering(new DirectBufferPool(1024, 4), -1);
+    }
+
+    @Test
+    public void testSpillToFile() throws Exception {
+        testBuffering(null, 50000);
+    }
+
+    @Test
+    public void testDirectBuffersAndSpillToFile() throws Exception {
+        testBuffering(new DirectBufferPool(1024, 4), 50000);
+    }
+
+    @Test
+    public void testExhaustedDirectBufferPoolFallsBackToHeap() throws Exception {
+        DirectBufferPool bufferPool = new DirectBufferPool(1024, 2, 8);
+        testBuffering(bufferPool, -1);
+        assertTrue(bufferPool.acquire().isDirect());
+    }
+
+    @Test
+    public void testExhaustedDirectBufferPoolSpillsToFile() throws Exception {
+        testBuffering(new DirectBufferPool(1024, 2, 8), data.length * 2L);
+    }
+
+    @Test
+    public void testSingleByteWrites() throws Exception {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new FullyBufferedOutputStream(result, new DirectBufferPool(16, 1, 4), -1)) {
+            for (int i = 0; i < 100; i++) {
+                outputStream.write(data[i]);
+            }
+        }
+        byte[] expected = new byte[100];
+        System.arraycopy(data, 0, expected, 0, expected.length);
+        assertArrayEquals(expected, result.toByteArray());
+    }
+
+    @Test
+    public void testDirectBufferPoolLimit() throws Exception {
+        DirectBufferPool bufferPool = new DirectBufferPool(16, 1, 2);
+        ByteBuffer first = bufferPool.acquire();
+        ByteBuffer second = bufferPool.acquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(bufferPool.acquire());
+
+        bufferPool.release(first);
+        assertSame(first, bufferPool.acquire());
+        assertNull(bufferPool.acquire());
+    }
+
+    @Test
+    public void testDirectBufferPoolReuse() throws Exception {
+        DirectBufferPool bufferPool = new DirectBufferPool(16, 1);
+        ByteBuffer buffer = bufferPool.acquire();
+        assertTrue(buffer.isDirect());
+        buffer.put(new byte[] {1, 2, 3});
+        bufferPool.release(buffer);
+
+        ByteBuffer reused = bufferPool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position());
+        assertEquals(0, reused.get(0));
+    }
+
+    @Test
+    public void testDirectBuffersReleasedOnAbort() throws Exception {
+        CountingBufferPool bufferPool = new CountingBufferPool();
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        FullyBufferedOutputStream outputStream = new FullyBufferedOutputStream(result, bufferPool, -1);
+        outputStream.write(data, 0, 100);
+        outputStream.abort();
+
+        assertEquals(0, result.size());
+        assertTrue(bufferPool.acquired > 1);
+        assertEquals(bufferPool.acquired, bufferPool.released);
+    }
+
+    @Test
+    public void testDirectBuffersReleasedOnFailedClose() throws Exception {
+        CountingBufferPool bufferPool = new CountingBufferPool();
+        OutputStream failingOutputStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("Pipe closed");
+            }
+        };
+        FullyBufferedOutputStream outputStream = new FullyBufferedOutputStream(failingOutputStream, bufferPool, -1);
+        outputStream.write(data, 0, 100);
+        assertThrows(IOException.class, outputStream::close);
+
+        assertTrue(bufferPool.acquired > 1);
+        assertEquals(bufferPool.acquired, bufferPool.released);
+    }
+
+    private void testBuffering(DirectBufferPool bufferPool, long spillThreshold) throws Exception {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new FullyBufferedOutputStream(result, bufferPool, spillThreshold)) {
+            for (int i = 0; i < data.length; i += 777) {
+                outputStream.write(data, i, Math.min(777, data.length - i));
+            }
+            outputStream.write(0x42);
+            outputStream.flush();
+            //nothing is released before the stream is closed
+            assertEquals(0, result.size());
+        }
+
+        byte[] bytes = result.toByteArray();
+        assertEquals(data.length + 1, bytes.length);
+        assertEquals(0x42, bytes[data.length]);
+        byte[] received = new byte[data.length];
+        System.arraycopy(bytes, 0, received, 0, data.length);
+        assertArrayEquals(data, received);
+    }
+
+    private static class CountingBufferPool extends DirectBufferPool {
+
+        private int acquired;
+        private int released;
+
+        CountingBufferPool() {
+            super(16, 4);
+        }
+
+        @Override
+        public ByteBuffer acquire() {
+            acquired++;
+            return super.acquire();
+        }
+
+        @Override
+        public void release(ByteBuffer buffer) {
+            released++;
+            super.release(buffer);
+        }
+    }
+}
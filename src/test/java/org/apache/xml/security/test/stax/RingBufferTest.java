@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.xml.security.stax.impl.util.RingBuffer;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ */
+public class RingBufferTest {
+
+    @Test
+    public void testTransferWithBackPressure() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(42).nextBytes(data);
+
+        //a small buffer forces the writer to wait for the reader many times
+        RingBuffer ringBuffer = new RingBuffer(97);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executorService.submit(() -> {
+                try (OutputStream outputStream = ringBuffer.getOutputStream()) {
+                    for (int i = 0; i < data.length; i += 1000) {
+                        outputStream.write(data, i, Math.min(1000, data.length - i));
+                    }
+                    outputStream.write(0x7F);
+                }
+                return null;
+            });
+
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            InputStream inputStream = ringBuffer.getInputStream();
+            byte[] buffer = new byte[333];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                result.write(buffer, 0, read);
+            }
+            writer.get(10, TimeUnit.SECONDS);
+
+            byte[] bytes = result.toByteArray();
+            assertEquals(data.length + 1, bytes.length);
+            assertEquals(0x7F, bytes[data.length]);
+            byte[] received = new byte[data.length];
+            System.arraycopy(bytes, 0, received, 0, data.length);
+            assertArrayEquals(data, received);
+            assertEquals(-1, inputStream.read());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailureIsForwardedToReader() throws Exception {
+        RingBuffer ringBuffer = new RingBuffer(16);
+        ringBuffer.getOutputStream().write(new byte[8]);
+        Exception failure = new Exception("decryption failed");
+        ringBuffer.fail(failure);
+
+        IOException e = assertThrows(IOException.class, () -> ringBuffer.getInputStream().read());
+        assertSame(failure, e.getCause());
+    }
+
+    @Test
+    public void testClosedReaderReleasesWriter() throws Exception {
+        RingBuffer ringBuffer = new RingBuffer(16);
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executorService.submit(() -> {
+                //blocks as soon as the buffer is full
+                ringBuffer.getOutputStream().write(new byte[64]);
+                return null;
+            });
+            assertEquals(1, ringBuffer.getInputStream().read(new byte[1]));
+            ringBuffer.getInputStream().close();
+
+            ExecutionException e =
+                assertThrows(ExecutionException.class, () -> writer.get(10, TimeUnit.SECONDS));
+            assertEquals(IOException.class, e.getCause().getClass());
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testDeadReaderReleasesWriter() throws Exception {
+        RingBuffer ringBuffer = new RingBuffer(16, 0);
+        OutputStream outputStream = ringBuffer.getOutputStream();
+        outputStream.write(1);
+
+        //the reader reads once and drops the stream without closing it
+        Thread reader = new Thread(() -> {
+            try {
+                ringBuffer.getInputStream().read();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        reader.start();
+        reader.join();
+
+        IOException e = assertThrows(IOException.class, () -> outputStream.write(new byte[64]));
+        assertEquals("Read end dead", e.getMessage());
+    }
+
+    @Test
+    public void testWriteTimeout() throws Exception {
+        RingBuffer ringBuffer = new RingBuffer(16, 100);
+        OutputStream outputStream = ringBuffer.getOutputStream();
+
+        //nobody reads, so the writer gives up after the timeout
+        IOException e = assertThrows(IOException.class, () -> outputStream.write(new byte[64]));
+        assertEquals("Timed out waiting for the reader", e.getMessage());
+    }
+}
@@ -25,11 +25,15 @@ import org.apache.xml.security.stax.ext.XMLSec;
 import org.apache.xml.security.stax.ext.XMLSecurityConfigurationException;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.impl.util.DirectBufferPool;
 
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.List;
 
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -71,4 +75,25 @@ public class UncategorizedTest {
             assertTrue(ex.getMessage().contains("Duplicate Actions are not allowed"));
         }
     }
+
+    @Test
+    public void testDirectBufferPoolSharedByCopies() throws Exception {
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        assertNull(properties.getDirectBufferPool());
+
+        properties.setDirectBufferPoolSize(2);
+        DirectBufferPool bufferPool = properties.getDirectBufferPool();
+        assertNotNull(bufferPool);
+        // Setting the same size again keeps the pool
+        properties.setDirectBufferPoolSize(2);
+        assertSame(bufferPool, properties.getDirectBufferPool());
+        // Copies share the pool
+        assertSame(bufferPool, new XMLSecurityProperties(properties) { }.getDirectBufferPool());
+
+        DirectBufferPool explicitBufferPool = new DirectBufferPool(1024, 1);
+        properties.setDirectBufferPool(explicitBufferPool);
+        assertSame(explicitBufferPool, properties.getDirectBufferPool());
+        properties.setDirectBufferPool(null);
+        assertNull(properties.getDirectBufferPool());
+    }
 }
@@ -0,0 +1,116 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.io.StringReader;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBElement;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.transform.stream.StreamSource;
+
+import org.apache.xml.security.binding.xmldsig.DigestMethodType;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.impl.util.UnmarshallerPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ */
+public class UnmarshallerPoolTest {
+
+    private static final String DIGEST_METHOD =
+        "<ds:DigestMethod xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" "
+        + "Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\"/>";
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        XMLSec.init();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        UnmarshallerPool unmarshallerPool = newPool(false, 2);
+        Unmarshaller unmarshaller = unmarshallerPool.borrow();
+        assertSame(XMLSecurityConstants.getJaxbSchemas(), unmarshaller.getSchema());
+        unmarshal(unmarshaller);
+        unmarshallerPool.release(unmarshaller);
+        assertEquals(1, unmarshallerPool.getIdleCount());
+
+        Unmarshaller reused = unmarshallerPool.borrow();
+        assertSame(unmarshaller, reused);
+        //a borrowed instance is not handed out twice
+        Unmarshaller other = unmarshallerPool.borrow();
+        assertNotSame(reused, other);
+        unmarshal(reused);
+
+        assertEquals(2, unmarshallerPool.getCreatedCount());
+        assertEquals(1, unmarshallerPool.getReusedCount());
+        assertEquals(1, unmarshallerPool.getReleasedCount());
+        assertEquals(0, unmarshallerPool.getIdleCount());
+    }
+
+    @Test
+    public void testBounded() throws Exception {
+        UnmarshallerPool unmarshallerPool = newPool(true, 1);
+        Unmarshaller first = unmarshallerPool.borrow();
+        Unmarshaller second = unmarshallerPool.borrow();
+        assertNull(first.getSchema());
+        unmarshallerPool.release(first);
+        unmarshallerPool.release(second);
+        assertEquals(1, unmarshallerPool.getIdleCount());
+        assertEquals(1, unmarshallerPool.getReleasedCount());
+        assertEquals(1, unmarshallerPool.getDiscardedCount());
+    }
+
+    @Test
+    public void testReconfiguredUnmarshallerIsDiscarded() throws Exception {
+        UnmarshallerPool unmarshallerPool = newPool(true, 2);
+        Unmarshaller unmarshaller = unmarshallerPool.borrow();
+        unmarshaller.setSchema(XMLSecurityConstants.getJaxbSchemas());
+        unmarshallerPool.release(unmarshaller);
+        assertEquals(0, unmarshallerPool.getIdleCount());
+        assertEquals(1, unmarshallerPool.getDiscardedCount());
+    }
+
+    @Test
+    public void testSchemaValidationSetting() throws Exception {
+        assertSame(XMLSecurityConstants.getJaxbSchemas(),
+                   XMLSecurityConstants.getJaxbUnmarshallerPool(false).borrow().getSchema());
+        assertNull(XMLSecurityConstants.getJaxbUnmarshallerPool(true).borrow().getSchema());
+    }
+
+    private UnmarshallerPool newPool(boolean disableSchemaValidation, int maxIdle) throws Exception {
+        JAXBContext jaxbContext = JAXBContext.newInstance(org.apache.xml.security.binding.xmldsig.ObjectFactory.class);
+        return new UnmarshallerPool(jaxbContext,
+                                    disableSchemaValidation ? null : XMLSecurityConstants.getJaxbSchemas(), maxIdle);
+    }
+
+    private void unmarshal(Unmarshaller unmarshaller) throws Exception {
+        JAXBElement<DigestMethodType> digestMethod =
+            unmarshaller.unmarshal(new StreamSource(new StringReader(DIGEST_METHOD)), DigestMethodType.class);
+        assertEquals("http://www.w3.org/2000/09/xmldsig#sha1", digestMethod.getValue().getAlgorithm());
+    }
+}
@@ -0,0 +1,332 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import javax.xml.bind.JAXBElement;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xml.security.binding.excc14n.InclusiveNamespaces;
+import org.apache.xml.security.binding.xmldsig.SignatureType;
+import org.apache.xml.security.binding.xmlenc.EncryptedKeyType;
+import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.AbstractInputSecurityHeaderHandler;
+import org.apache.xml.security.stax.ext.InputProcessorChain;
+import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
+import org.apache.xml.security.stax.ext.XMLSecurityProperties;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.impl.XMLSecurityEventReader;
+import org.apache.xml.security.stax.impl.util.UnmarshallerPool;
+import org.apache.xml.security.stax.impl.util.XMLSecStructureBinder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the XMLSecStructureBinder binds exactly what JAXB unmarshals and leaves everything else to JAXB
+ */
+public class XMLSecStructureBinderTest {
+
+    private static final List<QName> BOUND_ELEMENTS = Arrays.asList(
+        XMLSecurityConstants.TAG_dsig_Signature, XMLSecurityConstants.TAG_dsig_SignedInfo,
+        XMLSecurityConstants.TAG_xenc_EncryptedKey, XMLSecurityConstants.TAG_xenc_EncryptedData);
+
+    private static final String SIGNATURE =
+        "<ds:Signature xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" Id=\" sig-1 \">\n"
+        + "  <ds:SignedInfo>\n"
+        + "    <ds:CanonicalizationMethod Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\">"
+        + "<ec:InclusiveNamespaces xmlns:ec=\"http://www.w3.org/2001/10/xml-exc-c14n#\" PrefixList=\" a  b\"/>"
+        + "</ds:CanonicalizationMethod>\n"
+        + "    <ds:SignatureMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#hmac-sha1\">"
+        + "<ds:HMACOutputLength> +160 </ds:HMACOutputLength></ds:SignatureMethod>\n"
+        + "    <ds:Reference URI=\"#body\" Type=\"http://www.w3.org/2000/09/xmldsig#Object\">\n"
+        + "      <ds:Transforms><ds:Transform Algorithm=\"http://www.w3.org/2001/10/xml-exc-c14n#\"/></ds:Transforms>\n"
+        + "      <ds:DigestMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\"></ds:DigestMethod>\n"
+        + "      <ds:DigestValue>\n  AAEC\n  AwQ=\n</ds:DigestValue>\n"
+        + "    </ds:Reference>\n"
+        + "  </ds:SignedInfo>\n"
+        + "  <ds:SignatureValue>AAECAwQFBgc<![CDATA[I]]>CQ==</ds:SignatureValue>\n"
+        + "  <!-- comments are ignored -->\n"
+        + "  <ds:KeyInfo Id=\"ki-1\">\n"
+        + "    <ds:KeyName>key</ds:KeyName>\n"
+        + "    <ds:X509Data><ds:X509IssuerSerial><ds:X509IssuerName>CN=Test</ds:X509IssuerName>"
+        + "<ds:X509SerialNumber>12345678901234567890</ds:X509SerialNumber></ds:X509IssuerSerial>"
+        + "<ds:X509SKI>AAEC</ds:X509SKI></ds:X509Data>\n"
+        + "  </ds:KeyInfo>\n"
+        + "</ds:Signature>";
+
+    private static final String ENCRYPTED_KEY =
+        "<xenc:EncryptedKey xmlns:xenc=\"http://www.w3.org/2001/04/xmlenc#\" Id=\"ek-1\" Recipient=\"me\">\n"
+        + "  <xenc:EncryptionMethod Algorithm=\"http://www.w3.org/2009/xmlenc11#rsa-oaep\">\n"
+        + "    <xenc:OAEPparams>AAEC</xenc:OAEPparams>\n"
+        + "    <ds:DigestMethod xmlns:ds=\"http://www.w3.org/2000/09/xmldsig#\" "
+        + "Algorithm=\"http://www.w3.org/2001/04/xmlenc#sha256\"/>\n"
+        + "    <xenc11:MGF xmlns:xenc11=\"http://www.w3.org/2009/xmlenc11#\" "
+        + "Algorithm=\"http://www.w3.org/2009/xmlenc11#mgf1sha256\"/>\n"
+        + "  </xenc:EncryptionMethod>\n"
+        + "  <xenc:CipherData><xenc:CipherValue>AAECAwQF</xenc:CipherValue></xenc:CipherData>\n"
+        + "  <xenc:ReferenceList><xenc:DataReference URI=\"#ed-1\"/><xenc:KeyReference URI=\"#ek-2\"/></xenc:ReferenceList>\n"
+        + "  <xenc:CarriedKeyName>carried</xenc:CarriedKeyName>\n"
+        + "</xenc:EncryptedKey>";
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        XMLSec.init();
+    }
+
+    @Test
+    public void testSignature() throws Exception {
+        Deque<XMLSecEvent> eventDeque = readEvents(SIGNATURE);
+        SignatureType signatureType = (SignatureType) compareWithJaxb(eventDeque).getValue();
+        assertEquals("sig-1", signatureType.getId());
+        InclusiveNamespaces inclusiveNamespaces = (InclusiveNamespaces) ((JAXBElement<?>) signatureType.getSignedInfo()
+            .getCanonicalizationMethod().getContent().get(0)).getValue();
+        assertEquals(Arrays.asList("a", "b"), inclusiveNamespaces.getPrefixList());
+        assertEquals(5, signatureType.getSignedInfo().getReference().get(0).getDigestValue().length);
+        assertEquals(10, signatureType.getSignatureValue().getValue().length);
+    }
+
+    @Test
+    public void testEncryptedKey() throws Exception {
+        Deque<XMLSecEvent> eventDeque = readEvents(ENCRYPTED_KEY);
+        EncryptedKeyType encryptedKeyType = (EncryptedKeyType) compareWithJaxb(eventDeque).getValue();
+        assertEquals("me", encryptedKeyType.getRecipient());
+        assertEquals(2, encryptedKeyType.getReferenceList().getDataReferenceOrKeyReference().size());
+    }
+
+    @Test
+    public void testOnlyUsedWithoutSchemaValidation() throws Exception {
+        HeaderHandler headerHandler = new HeaderHandler();
+        XMLSecurityProperties securityProperties = new XMLSecurityProperties();
+        UnmarshallerPool unmarshallerPool = XMLSecurityConstants.getJaxbUnmarshallerPool(false);
+
+        //the schema is validated by JAXB
+        long borrowed = unmarshallerPool.getCreatedCount() + unmarshallerPool.getReusedCount();
+        JAXBElement<?> unmarshalled = headerHandler.parse(readEvents(SIGNATURE), securityProperties);
+        assertEquals(borrowed + 1, unmarshallerPool.getCreatedCount() + unmarshallerPool.getReusedCount());
+
+        securityProperties.setDisableSchemaValidation(true);
+        borrowed = unmarshallerPool.getCreatedCount() + unmarshallerPool.getReusedCount();
+        JAXBElement<?> bound = headerHandler.parse(readEvents(SIGNATURE), securityProperties);
+        assertEquals(borrowed, unmarshallerPool.getCreatedCount() + unmarshallerPool.getReusedCount());
+        assertDeepEquals(unmarshalled, bound, "Signature");
+    }
+
+    @Test
+    public void testInteropSamples() throws Exception {
+        int boundStructures = 0;
+        for (String directory : new String[] {
+            "ie/baltimore/merlin-examples/merlin-xmldsig-twenty-three",
+            "ie/baltimore/merlin-examples/merlin-xmlenc-five",
+            "org/w3c/www/interop/xmlenc-core-11",
+            "org/apache/xml/security/encryption"}) {
+            File[] files = new File(getClass().getClassLoader().getResource(directory).toURI()).listFiles();
+            assertNotNull(files);
+            for (File file : files) {
+                //base64.xml is the base64 encoded payload of an encryption sample
+                if (!file.getName().endsWith(".xml") || "base64.xml".equals(file.getName())) {
+                    continue;
+                }
+                for (Deque<XMLSecEvent> structure : readStructures(file)) {
+                    if (XMLSecStructureBinder.bind(structure, 0) != null) {
+                        compareWithJaxb(structure);
+                        boundStructures++;
+                    }
+                }
+            }
+        }
+        assertTrue(boundStructures > 50, "Only " + boundStructures + " structures were bound");
+    }
+
+    @Test
+    public void testUnsupportedContent() throws Exception {
+        //unknown attribute
+        assertFallback(SIGNATURE.replace("Id=\" sig-1 \"", "Id=\"sig-1\" foo=\"bar\""));
+        //ds:Object
+        assertFallback(SIGNATURE.replace("</ds:Signature>", "<ds:Object/></ds:Signature>"));
+        //wrong order
+        assertFallback(SIGNATURE.replace("<ds:SignedInfo>", "<ds:SignatureValue/><ds:SignedInfo>"));
+        //missing Algorithm
+        assertFallback(SIGNATURE.replace("<ds:DigestMethod Algorithm=\"http://www.w3.org/2000/09/xmldsig#sha1\">",
+                                         "<ds:DigestMethod>"));
+        //text in element only content
+        assertFallback(SIGNATURE.replace("</ds:SignedInfo>", "text</ds:SignedInfo>"));
+        //invalid base64
+        assertFallback(SIGNATURE.replace("AwQ=", "A*Q="));
+        //invalid integer
+        assertFallback(SIGNATURE.replace("+160", "16O"));
+        //invalid and duplicate Ids
+        assertFallback(SIGNATURE.replace("Id=\"ki-1\"", "Id=\"1ki\""));
+        assertFallback(SIGNATURE.replace("Id=\"ki-1\"", "Id=\"sig-1\""));
+        //empty X509Data
+        assertFallback(SIGNATURE.replace("<ds:X509Data>", "<ds:X509Data/><ds:X509Data>"));
+        //unknown KeyInfo content
+        assertFallback(SIGNATURE.replace("<ds:KeyName>key</ds:KeyName>",
+                                         "<ds:RetrievalMethod URI=\"#foo\"/>"));
+        //KeySize after OAEPparams
+        assertFallback(ENCRYPTED_KEY.replace("</xenc:EncryptionMethod>",
+                                             "<xenc:KeySize>128</xenc:KeySize></xenc:EncryptionMethod>"));
+        //CipherReference
+        assertFallback(ENCRYPTED_KEY.replace("<xenc:CipherValue>AAECAwQF</xenc:CipherValue>",
+                                             "<xenc:CipherReference URI=\"#foo\"/>"));
+        //DataReference without URI
+        assertFallback(ENCRYPTED_KEY.replace("<xenc:DataReference URI=\"#ed-1\"/>", "<xenc:DataReference/>"));
+    }
+
+    private void assertFallback(String xml) throws Exception {
+        assertNull(XMLSecStructureBinder.bind(readEvents(xml), 0), xml);
+    }
+
+    private JAXBElement<?> compareWithJaxb(Deque<XMLSecEvent> eventDeque) throws Exception {
+        JAXBElement<?> bound = XMLSecStructureBinder.bind(eventDeque, 0);
+        assertNotNull(bound);
+        JAXBElement<?> unmarshalled = (JAXBElement<?>) XMLSecurityConstants.getJaxbUnmarshaller(false)
+            .unmarshal(new XMLSecurityEventReader(eventDeque, 0));
+        assertDeepEquals(unmarshalled, bound, unmarshalled.getName().getLocalPart());
+        return bound;
+    }
+
+    private static void assertDeepEquals(Object expected, Object actual, String path) throws Exception {
+        if (expected instanceof List || actual instanceof List) {
+            List<?> expectedList = expected == null ? Collections.emptyList() : (List<?>) expected;
+            List<?> actualList = actual == null ? Collections.emptyList() : (List<?>) actual;
+            assertEquals(expectedList.size(), actualList.size(), path);
+            for (int i = 0; i < expectedList.size(); i++) {
+                assertDeepEquals(expectedList.get(i), actualList.get(i), path + "[" + i + "]");
+            }
+        } else if (expected == null || actual == null) {
+            assertEquals(expected, actual, path);
+        } else if (expected instanceof byte[]) {
+            assertTrue(Arrays.equals((byte[]) expected, (byte[]) actual), path);
+        } else if (expected instanceof JAXBElement) {
+            JAXBElement<?> expectedElement = (JAXBElement<?>) expected;
+            JAXBElement<?> actualElement = (JAXBElement<?>) actual;
+            assertEquals(expectedElement.getName(), actualElement.getName(), path);
+            assertEquals(expectedElement.getDeclaredType(), actualElement.getDeclaredType(), path);
+            assertEquals(expectedElement.getScope(), actualElement.getScope(), path);
+            assertDeepEquals(expectedElement.getValue(), actualElement.getValue(),
+                             path + "/" + expectedElement.getName().getLocalPart());
+        } else if (expected.getClass().getName().startsWith("org.apache.xml.security.binding.")) {
+            assertEquals(expected.getClass(), actual.getClass(), path);
+            for (Class<?> clazz = expected.getClass(); clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    if (Modifier.isStatic(field.getModifiers())) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    assertDeepEquals(field.get(expected), field.get(actual), path + "@" + field.getName());
+                }
+            }
+        } else {
+            assertEquals(expected, actual, path);
+        }
+    }
+
+    private static final class HeaderHandler extends AbstractInputSecurityHeaderHandler {
+
+        @Override
+        public void handle(InputProcessorChain inputProcessorChain, XMLSecurityProperties securityProperties,
+                           Deque<XMLSecEvent> eventQueue, Integer index) throws XMLSecurityException {
+        }
+
+        JAXBElement<?> parse(Deque<XMLSecEvent> eventDeque, XMLSecurityProperties securityProperties)
+            throws XMLSecurityException {
+            return parseStructure(eventDeque, 0, securityProperties);
+        }
+    }
+
+    private static Deque<XMLSecEvent> readEvents(String xml) throws Exception {
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(xml));
+        List<Deque<XMLSecEvent>> structures = readStructures(xmlStreamReader);
+        return structures.get(0);
+    }
+
+    private static List<Deque<XMLSecEvent>> readStructures(File file) throws Exception {
+        try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+            XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+            xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            return readStructures(xmlInputFactory.createXMLStreamReader(inputStream));
+        }
+    }
+
+    /**
+     * Collects the events of every Signature, SignedInfo, EncryptedKey and EncryptedData element in document
+     * order, with the newest event at the head of the deque like the input processors do.
+     */
+    private static List<Deque<XMLSecEvent>> readStructures(XMLStreamReader xmlStreamReader) throws Exception {
+        List<Deque<XMLSecEvent>> structures = new ArrayList<>();
+        List<Deque<XMLSecEvent>> openStructures = new ArrayList<>();
+        List<Integer> openDepths = new ArrayList<>();
+        XMLSecStartElement parentXMLSecStartElement = null;
+        int depth = 0;
+        while (xmlStreamReader.hasNext()) {
+            int eventType = xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.END_DOCUMENT || eventType == XMLStreamConstants.DTD) {
+                continue;
+            }
+            XMLSecEvent xmlSecEvent = XMLSecEventFactory.allocate(xmlStreamReader, parentXMLSecStartElement);
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                parentXMLSecStartElement = xmlSecEvent.asStartElement();
+                depth++;
+                if (BOUND_ELEMENTS.contains(xmlStreamReader.getName())) {
+                    Deque<XMLSecEvent> structure = new ArrayDeque<>();
+                    structures.add(structure);
+                    openStructures.add(structure);
+                    openDepths.add(depth);
+                }
+            }
+            for (Deque<XMLSecEvent> structure : openStructures) {
+                structure.push(xmlSecEvent);
+            }
+            if (eventType == XMLStreamConstants.END_ELEMENT) {
+                parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+                int last = openDepths.size() - 1;
+                if (last >= 0 && openDepths.get(last) == depth) {
+                    openDepths.remove(last);
+                    openStructures.remove(last);
+                }
+                depth--;
+            }
+        }
+        xmlStreamReader.close();
+        return structures;
+    }
+}
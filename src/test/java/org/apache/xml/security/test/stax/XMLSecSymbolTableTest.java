@@ -0,0 +1,159 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.xml.security.stax.ext.stax.XMLSecAttribute;
+import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.ext.stax.XMLSecEventFactory;
+import org.apache.xml.security.stax.ext.stax.XMLSecNamespace;
+import org.apache.xml.security.stax.ext.stax.XMLSecStartElement;
+import org.apache.xml.security.stax.ext.stax.XMLSecSymbolTable;
+import org.apache.xml.security.stax.impl.transformer.canonicalizer.CanonicalizerBase;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ */
+public class XMLSecSymbolTableTest {
+
+    private static final String XML =
+        "<a:root xmlns:a=\"urn:a\" xmlns=\"urn:default\" a:attr=\"1\" attr=\"2\">"
+        + "<child a:attr=\"3\"/><a:child xmlns:a=\"urn:other\" a:attr=\"4\"/></a:root>";
+
+    @Test
+    public void testInterning() throws Exception {
+        XMLSecSymbolTable symbolTable = new XMLSecSymbolTable();
+        QName qName = symbolTable.getQName("urn:a", "root", "a");
+        assertEquals(new QName("urn:a", "root", "a"), qName);
+        assertSame(qName, symbolTable.getQName(new String("urn:a"), new String("root"), new String("a")));
+        assertNotSame(qName, symbolTable.getQName("urn:a", "root", "b"));
+        assertSame(symbolTable.getQName(null, "root", null), symbolTable.getQName("", "root", ""));
+
+        XMLSecNamespace namespace = symbolTable.getNamespace("a", "urn:a");
+        assertEquals("a", namespace.getPrefix());
+        assertEquals("urn:a", namespace.getNamespaceURI());
+        assertSame(namespace, symbolTable.getNamespace(new String("a"), new String("urn:a")));
+        assertEquals("urn:other", symbolTable.getNamespace("a", "urn:other").getNamespaceURI());
+    }
+
+    @Test
+    public void testManyNames() throws Exception {
+        XMLSecSymbolTable symbolTable = new XMLSecSymbolTable();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("name" + i, symbolTable.getQName("urn:a", "name" + i, "a").getLocalPart());
+        }
+        //the first names are still interned after the table was grown
+        QName qName = symbolTable.getQName("urn:a", "name1", "a");
+        assertSame(qName, symbolTable.getQName("urn:a", "name1", "a"));
+    }
+
+    @Test
+    public void testAllocatedEvents() throws Exception {
+        List<XMLSecEvent> expected = allocate(null);
+        List<XMLSecEvent> interned = allocate(new XMLSecSymbolTable());
+        assertEquals(expected.size(), interned.size());
+        for (int i = 0; i < expected.size(); i++) {
+            XMLSecEvent expectedEvent = expected.get(i);
+            XMLSecEvent internedEvent = interned.get(i);
+            assertEquals(expectedEvent.getEventType(), internedEvent.getEventType());
+            if (expectedEvent.isStartElement()) {
+                XMLSecStartElement expectedElement = expectedEvent.asStartElement();
+                XMLSecStartElement internedElement = internedEvent.asStartElement();
+                assertEquals(expectedElement.getName(), internedElement.getName());
+                assertEquals(expectedElement.getName().getPrefix(), internedElement.getName().getPrefix());
+                assertNamespaceEquals(expectedElement.getElementNamespace(), internedElement.getElementNamespace());
+                assertEquals(expectedElement.getOnElementDeclaredNamespaces(),
+                             internedElement.getOnElementDeclaredNamespaces());
+                List<XMLSecAttribute> expectedAttributes = expectedElement.getOnElementDeclaredAttributes();
+                List<XMLSecAttribute> internedAttributes = internedElement.getOnElementDeclaredAttributes();
+                assertEquals(expectedAttributes.size(), internedAttributes.size());
+                for (int j = 0; j < expectedAttributes.size(); j++) {
+                    assertEquals(expectedAttributes.get(j).getName(), internedAttributes.get(j).getName());
+                    assertEquals(expectedAttributes.get(j).getValue(), internedAttributes.get(j).getValue());
+                    assertNamespaceEquals(expectedAttributes.get(j).getAttributeNamespace(),
+                                          internedAttributes.get(j).getAttributeNamespace());
+                }
+            } else if (expectedEvent.isEndElement()) {
+                assertEquals(expectedEvent.asEndElement().getName(), internedEvent.asEndElement().getName());
+            }
+        }
+        //the end element shares the name of the start element
+        assertSame(interned.get(0).asStartElement().getName(), interned.get(interned.size() - 1).asEndElement().getName());
+    }
+
+    @Test
+    public void testC14NStack() throws Exception {
+        XMLSecSymbolTable symbolTable = new XMLSecSymbolTable();
+        CanonicalizerBase.C14NStack<XMLSecEvent> stack = new CanonicalizerBase.C14NStack<>();
+        stack.push(Collections.<Comparable>emptyList());
+        stack.peek().add(symbolTable.getNamespace("a", "urn:a"));
+        stack.push(Collections.<Comparable>emptyList());
+        assertEquals("urn:a", ((XMLSecNamespace) stack.containsOnStack(symbolTable.getNamespace("a", "urn:x")))
+            .getNamespaceURI());
+        stack.peek().add(symbolTable.getNamespace("a", "urn:b"));
+        assertEquals("urn:b", ((XMLSecNamespace) stack.containsOnStack(symbolTable.getNamespace("a", "urn:x")))
+            .getNamespaceURI());
+        assertNull(stack.containsOnStack(symbolTable.getNamespace("b", "urn:a")));
+        stack.pop();
+        assertEquals("urn:a", ((XMLSecNamespace) stack.containsOnStack(symbolTable.getNamespace("a", "urn:x")))
+            .getNamespaceURI());
+        stack.pop();
+        assertNull(stack.containsOnStack(symbolTable.getNamespace("a", "urn:x")));
+    }
+
+    private static void assertNamespaceEquals(XMLSecNamespace expected, XMLSecNamespace actual) {
+        assertEquals(expected.getPrefix(), actual.getPrefix());
+        assertEquals(expected.getNamespaceURI(), actual.getNamespaceURI());
+    }
+
+    private static List<XMLSecEvent> allocate(XMLSecSymbolTable symbolTable) throws Exception {
+        XMLStreamReader xmlStreamReader = XMLInputFactory.newInstance().createXMLStreamReader(new StringReader(XML));
+        List<XMLSecEvent> events = new ArrayList<>();
+        XMLSecStartElement parentXMLSecStartElement = null;
+        while (xmlStreamReader.hasNext()) {
+            int eventType = xmlStreamReader.next();
+            if (eventType == XMLStreamConstants.END_DOCUMENT) {
+                break;
+            }
+            XMLSecEvent xmlSecEvent =
+                XMLSecEventFactory.allocate(xmlStreamReader, parentXMLSecStartElement, symbolTable);
+            if (eventType == XMLStreamConstants.START_ELEMENT) {
+                parentXMLSecStartElement = xmlSecEvent.asStartElement();
+            } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+                parentXMLSecStartElement = parentXMLSecStartElement.getParentXMLSecStartElement();
+            }
+            events.add(xmlSecEvent);
+        }
+        return events;
+    }
+}
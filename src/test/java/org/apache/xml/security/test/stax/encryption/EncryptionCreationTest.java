@@ -39,18 +39,22 @@ import javax.crypto.spec.DESedeKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.stream.XMLStreamWriter;
 
 import org.apache.xml.security.encryption.XMLCipher;
 import org.apache.xml.security.exceptions.XMLSecurityException;
+import org.apache.xml.security.stax.ext.DefaultXMLStreamFactorySupplier;
+import org.apache.xml.security.stax.ext.InboundXMLSec;
 import org.apache.xml.security.stax.ext.OutboundXMLSec;
 import org.apache.xml.security.stax.ext.SecurePart;
 import org.apache.xml.security.stax.ext.XMLSec;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.securityToken.SecurityTokenConstants;
+import org.apache.xml.security.test.stax.utils.StAX2DOM;
 import org.apache.xml.security.test.stax.utils.XMLSecEventAllocator;
 import org.apache.xml.security.test.stax.utils.XmlReaderToWriter;
 import org.apache.xml.security.utils.XMLUtils;
@@ -144,6 +148,56 @@ public class EncryptionCreationTest {
         assertEquals(nodeList.getLength(), 1);
     }
 
+    @Test
+    public void testEncryptionWithXMLStreamFactorySupplier() throws Exception {
+        CountingXMLStreamFactorySupplier xmlStreamFactorySupplier = new CountingXMLStreamFactorySupplier();
+
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        actions.add(XMLSecurityConstants.ENCRYPT);
+        properties.setActions(actions);
+        properties.setXMLStreamFactorySupplier(xmlStreamFactorySupplier);
+
+        // Set the key up
+        SecretKey key = generateDESSecretKey();
+        properties.setEncryptionKey(key);
+        properties.setEncryptionSymAlgorithm("http://www.w3.org/2001/04/xmlenc#tripledes-cbc");
+
+        SecurePart securePart =
+               new SecurePart(new QName("urn:example:po", "PaymentInfo"), SecurePart.Modifier.Content);
+        properties.addEncryptionPart(securePart);
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+
+        // the final writer and the writer of the encrypted content came from the supplier
+        assertEquals(1, xmlStreamFactorySupplier.repairingOutputFactoryCount);
+        assertEquals(1, xmlStreamFactorySupplier.nonRepairingOutputFactoryCount);
+
+        // Decrypt using StAX API
+        properties = new XMLSecurityProperties();
+        properties.setDecryptionKey(key);
+        properties.setXMLStreamFactorySupplier(xmlStreamFactorySupplier);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+        XMLStreamReader securityStreamReader = inboundXMLSec.processInMessage(xmlStreamReader);
+
+        Document doc = StAX2DOM.readDoc(securityStreamReader);
+        NodeList nodeList = doc.getElementsByTagNameNS("urn:example:po", "CreditCard");
+        assertEquals(nodeList.getLength(), 1);
+        assertEquals(1, xmlStreamFactorySupplier.inputFactoryCount);
+    }
+
     @Test
     public void testEncryptRootElementInRequest() throws Exception {
         // Set up the Configuration
@@ -1677,6 +1731,97 @@ public class EncryptionCreationTest {
         assertEquals(nodeList.getLength(), 1);
     }
 
+    @Test
+    public void testSegmentedGCMEncryption() throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        actions.add(XMLSecurityConstants.ENCRYPT);
+        properties.setActions(actions);
+
+        // Set the key up
+        KeyGenerator keygen = KeyGenerator.getInstance("AES");
+        keygen.init(128);
+        SecretKey key = keygen.generateKey();
+        properties.setEncryptionKey(key);
+        properties.setEncryptionSymAlgorithm("http://www.w3.org/2009/xmlenc11#aes128-gcm");
+        properties.setEncryptionSegmentSize(1024);
+        // encrypt the segments of a batch through an Executor, here in the writing thread
+        properties.setEncryptionSegmentExecutor(Runnable::run);
+
+        SecurePart securePart =
+               new SecurePart(new QName("urn:example:po", "PaymentInfo"), SecurePart.Modifier.Element);
+        properties.addEncryptionPart(securePart);
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+
+        Document document = null;
+        try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+            document = XMLUtils.read(is, false);
+        }
+
+        NodeList nodeList = document.getElementsByTagNameNS("urn:example:po", "CreditCard");
+        assertEquals(nodeList.getLength(), 0);
+
+        nodeList = document.getElementsByTagNameNS(
+                XMLSecurityConstants.TAG_sxenc_SegmentSize.getNamespaceURI(),
+                XMLSecurityConstants.TAG_sxenc_SegmentSize.getLocalPart()
+            );
+        assertEquals(nodeList.getLength(), 1);
+
+        // Decrypt using DOM API
+        Document doc =
+            decryptUsingDOM("http://www.w3.org/2009/xmlenc11#aes128-gcm", key, null, document);
+
+        // Check the CreditCard decrypted ok
+        nodeList = doc.getElementsByTagNameNS("urn:example:po", "CreditCard");
+        assertEquals(nodeList.getLength(), 1);
+
+        // Decrypt using StAX API
+        properties = new XMLSecurityProperties();
+        properties.setDecryptionKey(key);
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        xmlStreamReader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(baos.toByteArray()));
+        XMLStreamReader securityStreamReader = inboundXMLSec.processInMessage(xmlStreamReader);
+
+        doc = StAX2DOM.readDoc(securityStreamReader);
+        nodeList = doc.getElementsByTagNameNS("urn:example:po", "CreditCard");
+        assertEquals(nodeList.getLength(), 1);
+    }
+
+    private static class CountingXMLStreamFactorySupplier extends DefaultXMLStreamFactorySupplier {
+
+        private int inputFactoryCount;
+        private int repairingOutputFactoryCount;
+        private int nonRepairingOutputFactoryCount;
+
+        @Override
+        public XMLInputFactory getXMLInputFactory() {
+            inputFactoryCount++;
+            return super.getXMLInputFactory();
+        }
+
+        @Override
+        public XMLOutputFactory getXMLOutputFactory(boolean repairingNamespaces) {
+            if (repairingNamespaces) {
+                repairingOutputFactoryCount++;
+            } else {
+                nonRepairingOutputFactoryCount++;
+            }
+            return super.getXMLOutputFactory(repairingNamespaces);
+        }
+    }
+
     /**
      * Generate a secret key
      */
@@ -0,0 +1,173 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.xml.security.test.stax.performance;
+
+import java.math.BigInteger;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureSpi;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.RSAPublicKeySpec;
+
+import org.apache.xml.security.binding.xmldsig.RSAKeyValueType;
+import org.apache.xml.security.stax.impl.securityToken.RsaKeyValueSecurityToken;
+import org.apache.xml.security.utils.JCAInstancePool;
+import org.junit.jupiter.api.Test;
+
+import com.carrotsearch.junitbenchmarks.AbstractBenchmark;
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * Some benchmark tests for the reuse of JCA instances in the inbound security token handling
+ */
+public class JCAInstancePoolPerformanceTest extends AbstractBenchmark {
+
+    private static final RSAPublicKey PUBLIC_KEY;
+
+    static {
+        try {
+            KeyPairGenerator keyPairGenerator = KeyPairGenerator.getInstance("RSA");
+            keyPairGenerator.initialize(2048);
+            PUBLIC_KEY = (RSAPublicKey) keyPairGenerator.generateKeyPair().getPublic();
+        } catch (Exception e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @BenchmarkOptions(callgc = false, benchmarkRounds = 10000, warmupRounds = 100)
+    @Test
+    public void testRsaKeyValueSecurityToken() throws Exception {
+        RSAKeyValueType rsaKeyValueType = new RSAKeyValueType();
+        rsaKeyValueType.setModulus(PUBLIC_KEY.getModulus().toByteArray());
+        rsaKeyValueType.setExponent(PUBLIC_KEY.getPublicExponent().toByteArray());
+        RsaKeyValueSecurityToken securityToken = new RsaKeyValueSecurityToken(rsaKeyValueType, null);
+        assertEquals(PUBLIC_KEY, securityToken.getPublicKey());
+    }
+
+    @BenchmarkOptions(callgc = false, benchmarkRounds = 10000, warmupRounds = 100)
+    @Test
+    public void testKeyFactoryPerToken() throws Exception {
+        RSAPublicKeySpec rsaPublicKeySpec =
+            new RSAPublicKeySpec(new BigInteger(1, PUBLIC_KEY.getModulus().toByteArray()),
+                                 new BigInteger(1, PUBLIC_KEY.getPublicExponent().toByteArray()));
+        PublicKey publicKey = KeyFactory.getInstance("RSA").generatePublic(rsaPublicKeySpec);
+        assertEquals(PUBLIC_KEY, publicKey);
+    }
+
+    @Test
+    public void testMessageDigestIsReusedAfterReset() throws Exception {
+        MessageDigest messageDigest = JCAInstancePool.getMessageDigest("SHA-256");
+        messageDigest.update(new byte[] {1, 2, 3});
+        JCAInstancePool.releaseMessageDigest("SHA-256", messageDigest);
+
+        MessageDigest reused = JCAInstancePool.getMessageDigest("SHA-256");
+        assertSame(messageDigest, reused);
+        assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(), reused.digest());
+        JCAInstancePool.releaseMessageDigest("SHA-256", reused);
+    }
+
+    @Test
+    public void testSignatureIsPooledPerProvider() throws Exception {
+        Provider provider = Signature.getInstance("SHA256withRSA").getProvider();
+        Signature signature = JCAInstancePool.getSignature("SHA256withRSA", null);
+        JCAInstancePool.releaseSignature("SHA256withRSA", null, signature);
+        Signature withProvider = JCAInstancePool.getSignature("SHA256withRSA", provider);
+        assertNotSame(signature, withProvider);
+        assertSame(provider, withProvider.getProvider());
+        JCAInstancePool.releaseSignature("SHA256withRSA", provider, withProvider);
+
+        assertSame(signature, JCAInstancePool.getSignature("SHA256withRSA", null));
+        assertSame(withProvider, JCAInstancePool.getSignature("SHA256withRSA", provider));
+    }
+
+    @Test
+    public void testSignatureIsPooledPerProviderInstance() throws Exception {
+        Provider provider = new DummyProvider();
+        Provider sameNamedProvider = new DummyProvider();
+        Signature signature = JCAInstancePool.getSignature("Dummy", provider);
+        JCAInstancePool.releaseSignature("Dummy", provider, signature);
+
+        Signature other = JCAInstancePool.getSignature("Dummy", sameNamedProvider);
+        assertNotSame(signature, other);
+        assertSame(sameNamedProvider, other.getProvider());
+        JCAInstancePool.releaseSignature("Dummy", sameNamedProvider, other);
+
+        assertSame(signature, JCAInstancePool.getSignature("Dummy", provider));
+    }
+
+    private static class DummyProvider extends Provider {
+
+        private static final long serialVersionUID = 1L;
+
+        DummyProvider() {
+            super("Dummy", 1.0, "Provider instances of the same name");
+            put("Signature.Dummy", DummySignatureSpi.class.getName());
+        }
+    }
+
+    public static class DummySignatureSpi extends SignatureSpi {
+
+        @Override
+        protected void engineInitVerify(PublicKey publicKey) {
+        }
+
+        @Override
+        protected void engineInitSign(PrivateKey privateKey) {
+        }
+
+        @Override
+        protected void engineUpdate(byte b) {
+        }
+
+        @Override
+        protected void engineUpdate(byte[] b, int off, int len) {
+        }
+
+        @Override
+        protected byte[] engineSign() {
+            return new byte[0];
+        }
+
+        @Override
+        protected boolean engineVerify(byte[] sigBytes) {
+            return false;
+        }
+
+        @Override
+        @Deprecated
+        protected void engineSetParameter(String param, Object value) {
+        }
+
+        @Override
+        @Deprecated
+        protected Object engineGetParameter(String param) {
+            return null;
+        }
+    }
+}
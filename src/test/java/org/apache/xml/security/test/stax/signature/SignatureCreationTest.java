@@ -22,6 +22,8 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.Key;
 import java.security.KeyStore;
 import java.security.Security;
@@ -129,6 +131,154 @@ public class SignatureCreationTest extends AbstractSignatureCreationTest {
         verifyUsingDOM(document, cert, properties.getSignatureSecureParts());
     }
 
+    @Test
+    public void testSignatureCreationWithReusedProcessors() throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+
+        // Set the key up
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        properties.setSignatureKey(key);
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+        properties.setSignatureCerts(new X509Certificate[]{cert});
+
+        SecurePart securePart =
+               new SecurePart(new QName("urn:example:po", "PaymentInfo"), SecurePart.Modifier.Content);
+        properties.addSignaturePart(securePart);
+        securePart =
+               new SecurePart(new QName("urn:example:po", "ShippingAddress"), SecurePart.Modifier.Element);
+        properties.addSignaturePart(securePart);
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        for (int i = 0; i < 3; i++) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+
+            InputStream sourceDocument =
+                    this.getClass().getClassLoader().getResourceAsStream(
+                            "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+
+            Document document = null;
+            try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+                document = XMLUtils.read(is, false);
+            }
+
+            // Verify using DOM
+            verifyUsingDOM(document, cert, properties.getSignatureSecureParts());
+        }
+
+        // the signature processor of the first message was reset and used for the other ones
+        assertEquals(1, outboundXMLSec.getSignatureProcessorPool().getCreatedCount());
+        assertEquals(2, outboundXMLSec.getSignatureProcessorPool().getReusedCount());
+        assertEquals(1, outboundXMLSec.getSignatureProcessorPool().getIdleCount());
+    }
+
+    @Test
+    public void testSignatureCreationCompactEventBuffer() throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+        properties.setCompactEventBuffer(true);
+        properties.setEventBufferSpillThreshold(0);
+
+        // Set the key up
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        properties.setSignatureKey(key);
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+        properties.setSignatureCerts(new X509Certificate[]{cert});
+
+        SecurePart securePart =
+               new SecurePart(new QName("urn:example:po", "PaymentInfo"), SecurePart.Modifier.Content);
+        properties.addSignaturePart(securePart);
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+
+        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+        xmlStreamWriter.close();
+
+        Document document = null;
+        try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+            document = XMLUtils.read(is, false);
+        }
+
+        // Verify using DOM
+        verifyUsingDOM(document, cert, properties.getSignatureSecureParts());
+    }
+
+    @Test
+    public void testTwoPassSignatureCreation() throws Exception {
+        // Set up the Configuration
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        List<XMLSecurityConstants.Action> actions = new ArrayList<>();
+        actions.add(XMLSecurityConstants.SIGNATURE);
+        properties.setActions(actions);
+
+        // Set the key up
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        properties.setSignatureKey(key);
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+        properties.setSignatureCerts(new X509Certificate[]{cert});
+
+        SecurePart securePart =
+               new SecurePart(new QName("urn:example:po", "PaymentInfo"), SecurePart.Modifier.Content);
+        properties.addSignaturePart(securePart);
+        securePart =
+               new SecurePart(new QName("urn:example:po", "ShippingAddress"), SecurePart.Modifier.Element);
+        properties.addSignaturePart(securePart);
+
+        OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        Path sourceDocument = Paths.get(this.getClass().getClassLoader().getResource(
+            "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml").toURI());
+        outboundXMLSec.processOutMessage(sourceDocument, baos, StandardCharsets.UTF_8.name(), securityEventListener);
+
+        Document document = null;
+        try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+            document = XMLUtils.read(is, false);
+        }
+
+        //first child element must be the dsig:Signature
+        Element signature = (Element) XMLUtils.getNextElement(document.getDocumentElement().getFirstChild());
+        assertEquals("Signature", signature.getLocalName());
+        assertEquals(2, signature.getElementsByTagNameNS(XMLSecurityConstants.NS_DSIG, "Reference").getLength());
+        assertNotNull(securityEventListener.getSecurityEvent(SecurityEventConstants.SignatureValue));
+
+        // Verify using DOM
+        verifyUsingDOM(document, cert, properties.getSignatureSecureParts());
+    }
+
     @Test
     public void testSignatureCreationRetrieveSignatureValue() throws Exception {
         // Set up the Configuration
@@ -370,11 +520,34 @@ public class SignatureCreationTest extends AbstractSignatureCreationTest {
         signAtSpecificPosition(0, new QName("urn:example:po", "ShippingAddress"), false);
     }
 
+    @Test
+    public void testTwoPassSignAtSpecificPosition() throws Exception {
+        signAtSpecificPosition(-1, null, false, true);
+        signAtSpecificPosition(0, null, false, true);
+        signAtSpecificPosition(1, null, false, true);
+        signAtSpecificPosition(2, null, false, true);
+        signAtSpecificPosition(999, null, false, true);
+    }
+
+    @Test
+    public void testTwoPassSignAtSpecificPositionViaQName() throws Exception {
+        signAtSpecificPosition(0, new QName("urn:example:po", "PurchaseOrder"), true, true);
+        signAtSpecificPosition(0, new QName("urn:example:po", "Items"), true, true);
+        signAtSpecificPosition(0, new QName("urn:example:po", "Items"), false, true);
+        signAtSpecificPosition(0, new QName("urn:example:po", "ShippingAddress"), true, true);
+        signAtSpecificPosition(0, new QName("urn:example:po", "ShippingAddress"), false, true);
+    }
+
     private void signAtSpecificPosition(int position) throws Exception {
         signAtSpecificPosition(position, null, false);
     }
 
     private void signAtSpecificPosition(int position, QName positionQName, boolean start) throws Exception {
+        signAtSpecificPosition(position, positionQName, start, false);
+    }
+
+    private void signAtSpecificPosition(int position, QName positionQName, boolean start, boolean twoPass)
+            throws Exception {
         // Set up the Configuration
         XMLSecurityProperties properties = new XMLSecurityProperties();
         List<XMLSecurityConstants.Action> actions = new ArrayList<>();
@@ -410,15 +583,21 @@ public class SignatureCreationTest extends AbstractSignatureCreationTest {
 
         OutboundXMLSec outboundXMLSec = XMLSec.getOutboundXMLSec(properties);
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
+        if (twoPass) {
+            Path sourceDocument = Paths.get(this.getClass().getClassLoader().getResource(
+                "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml").toURI());
+            outboundXMLSec.processOutMessage(sourceDocument, baos, StandardCharsets.UTF_8.name());
+        } else {
+            XMLStreamWriter xmlStreamWriter = outboundXMLSec.processOutMessage(baos, StandardCharsets.UTF_8.name());
 
-        InputStream sourceDocument
-                = this.getClass().getClassLoader().getResourceAsStream(
-                "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
-        XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
+            InputStream sourceDocument
+                    = this.getClass().getClassLoader().getResourceAsStream(
+                    "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+            XMLStreamReader xmlStreamReader = xmlInputFactory.createXMLStreamReader(sourceDocument);
 
-        XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
-        xmlStreamWriter.close();
+            XmlReaderToWriter.writeAll(xmlStreamReader, xmlStreamWriter);
+            xmlStreamWriter.close();
+        }
 
         // System.out.println("Got:\n" + new String(baos.toByteArray(), StandardCharsets.UTF_8.name()));
 
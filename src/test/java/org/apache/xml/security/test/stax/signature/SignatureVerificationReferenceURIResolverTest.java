@@ -32,6 +32,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.dom.DOMSource;
@@ -43,8 +47,11 @@ import javax.xml.xpath.XPathFactory;
 import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.stax.ext.InboundXMLSec;
 import org.apache.xml.security.stax.ext.XMLSec;
+import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityProperties;
 import org.apache.xml.security.stax.impl.resourceResolvers.ResolverHttp;
+import org.apache.xml.security.stax.securityEvent.AlgorithmSuiteSecurityEvent;
+import org.apache.xml.security.stax.securityEvent.SecurityEventConstants;
 import org.apache.xml.security.test.dom.DSNamespaceContext;
 import org.apache.xml.security.test.stax.utils.HttpRequestRedirectorProxy;
 import org.apache.xml.security.test.stax.utils.StAX2DOM;
@@ -55,6 +62,7 @@ import org.junit.jupiter.api.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 
 /**
@@ -198,6 +206,101 @@ public class SignatureVerificationReferenceURIResolverTest extends AbstractSigna
         }
     }
 
+    @Test
+    public void testSignatureVerificationWithConcurrentExternalReferences() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        Document document = XMLUtils.read(sourceDocument, false);
+
+        // Set up the Key
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+                this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+                "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        X509Certificate cert = (X509Certificate) keyStore.getCertificate("transmitter");
+
+        // Sign using DOM
+        List<String> localNames = new ArrayList<>();
+        localNames.add("PaymentInfo");
+
+        List<ReferenceInfo> referenceInfos = new ArrayList<>();
+        String[] resources = new String[] {"plaintext.xml", "base64.xml", "dsa.p8"};
+        for (String resource : resources) {
+            File file = new File(BASEDIR +
+                    "/src/test/resources/ie/baltimore/merlin-examples/merlin-xmlenc-five/" + resource).getCanonicalFile();
+            referenceInfos.add(new ReferenceInfo(
+                    file.toURI().toString(),
+                    null,
+                    "http://www.w3.org/2000/09/xmldsig#sha1",
+                    true
+            ));
+        }
+
+        XMLSignature sig = signUsingDOM(
+                "http://www.w3.org/2000/09/xmldsig#rsa-sha1",
+                document,
+                localNames,
+                key,
+                referenceInfos
+        );
+
+        // Add KeyInfo
+        sig.addKeyInfo(cert);
+
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        // references the executor rejects are verified at the end of the document instead
+        Executor rejectingExecutor = command -> {
+            throw new RejectedExecutionException();
+        };
+        try {
+            for (int i = 0; i < 4; i++) {
+                boolean eager = i % 2 == 1;
+                XMLStreamReader xmlStreamReader = null;
+                try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+                   xmlStreamReader = xmlInputFactory.createXMLStreamReader(is);
+                }
+
+                // Verify signature
+                XMLSecurityProperties properties = new XMLSecurityProperties();
+                properties.setSignatureVerificationKey(cert.getPublicKey());
+                properties.setExternalReferenceExecutor(i < 2 ? executorService : rejectingExecutor);
+                properties.setVerifyExternalReferencesEagerly(eager);
+                InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+                TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+                XMLStreamReader securityStreamReader =
+                        inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+                try {
+                    TestUtils.switchAllowNotSameDocumentReferences(true);
+                    StAX2DOM.readDoc(securityStreamReader);
+                } finally {
+                    TestUtils.switchAllowNotSameDocumentReferences(false);
+                }
+
+                int digestAlgorithmEvents = 0;
+                List<AlgorithmSuiteSecurityEvent> algorithmSuiteSecurityEvents =
+                        securityEventListener.getSecurityEvents(SecurityEventConstants.AlgorithmSuite);
+                for (AlgorithmSuiteSecurityEvent algorithmSuiteSecurityEvent : algorithmSuiteSecurityEvents) {
+                    if (XMLSecurityConstants.SigDig.equals(algorithmSuiteSecurityEvent.getAlgorithmUsage())) {
+                        digestAlgorithmEvents++;
+                    }
+                }
+                assertEquals(resources.length + 1, digestAlgorithmEvents);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     @Test
     public void testSignatureVerificationWithExternalHttpReference() throws Exception {
 
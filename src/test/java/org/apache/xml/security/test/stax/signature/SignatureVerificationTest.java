@@ -33,6 +33,7 @@ import java.util.Map;
 
 import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
+import javax.xml.namespace.QName;
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
@@ -68,6 +69,7 @@ import org.apache.xml.security.test.stax.utils.StAX2DOM;
 import org.apache.xml.security.test.stax.utils.TestUtils;
 import org.apache.xml.security.test.stax.utils.XMLSecEventAllocator;
 import org.apache.xml.security.transforms.Transform;
+import org.apache.xml.security.transforms.Transforms;
 import org.apache.xml.security.transforms.implementations.TransformC14N;
 import org.apache.xml.security.utils.XMLUtils;
 
@@ -176,6 +178,62 @@ public class SignatureVerificationTest extends AbstractSignatureVerificationTest
                 signatureSecurityEvents.size() + signedElementSecurityEvents.size());
     }
 
+    @Test
+    public void testSignatureVerificationWithReusedProcessors() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        Document document = XMLUtils.read(sourceDocument, false);
+
+        // Set up the Key
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+
+        // Sign using DOM
+        List<String> localNames = new ArrayList<>();
+        localNames.add("PaymentInfo");
+        XMLSignature sig = signUsingDOM(
+            "http://www.w3.org/2000/09/xmldsig#rsa-sha1", document, localNames, key
+        );
+
+        // Add KeyInfo
+        sig.addKeyInfo(cert);
+
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+
+        // Verify signature, the same engine is used for all messages
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        for (int i = 0; i < 3; i++) {
+            XMLStreamReader xmlStreamReader = null;
+            try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+               xmlStreamReader = xmlInputFactory.createXMLStreamReader(is);
+            }
+
+            TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+            XMLStreamReader securityStreamReader =
+                    inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+            StAX2DOM.readDoc(securityStreamReader);
+
+            // Check the SecurityEvents
+            checkSecurityEvents(securityEventListener);
+            checkSignedElementSecurityEvents(securityEventListener);
+        }
+
+        assertEquals(1, inboundXMLSec.getSecurityProcessorPool().getCreatedCount());
+        assertEquals(2, inboundXMLSec.getSecurityProcessorPool().getReusedCount());
+    }
+
     @Test
     public void testMultipleElements() throws Exception {
         // Read in plaintext document
@@ -261,6 +319,66 @@ public class SignatureVerificationTest extends AbstractSignatureVerificationTest
                 signatureSecurityEvents.size() + signedElementSecurityEvents1.size() + signedElementSecurityEvents2.size());
     }
 
+    @Test
+    public void testCustomIdAttributeWithMultipleReferences() throws Exception {
+        // Read in plaintext document
+        InputStream sourceDocument =
+                this.getClass().getClassLoader().getResourceAsStream(
+                        "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext.xml");
+        Document document = XMLUtils.read(sourceDocument, false);
+
+        // Set up the Key
+        KeyStore keyStore = KeyStore.getInstance("jks");
+        keyStore.load(
+            this.getClass().getClassLoader().getResource("transmitter.jks").openStream(),
+            "default".toCharArray()
+        );
+        Key key = keyStore.getKey("transmitter", "default".toCharArray());
+        X509Certificate cert = (X509Certificate)keyStore.getCertificate("transmitter");
+
+        // Sign using DOM, referencing the same element twice by a custom Id attribute
+        XMLSignature sig = new XMLSignature(document, "", "http://www.w3.org/2000/09/xmldsig#rsa-sha1",
+                                            0, "http://www.w3.org/2001/10/xml-exc-c14n#", null, null);
+        document.getDocumentElement().appendChild(sig.getElement());
+
+        Element paymentInfo = (Element)document.getElementsByTagNameNS("urn:example:po", "PaymentInfo").item(0);
+        paymentInfo.setAttributeNS(null, "ID", "payment");
+        paymentInfo.setIdAttributeNS(null, "ID", true);
+
+        Transforms transforms = new Transforms(document);
+        transforms.addTransform("http://www.w3.org/2001/10/xml-exc-c14n#");
+        sig.addDocument("#payment", transforms, "http://www.w3.org/2000/09/xmldsig#sha1");
+        transforms = new Transforms(document);
+        transforms.addTransform("http://www.w3.org/TR/2001/REC-xml-c14n-20010315");
+        sig.addDocument("#payment", transforms, "http://www.w3.org/2001/04/xmlenc#sha256");
+        sig.addKeyInfo(cert);
+        sig.sign(key);
+
+        // Convert Document to a Stream Reader
+        javax.xml.transform.Transformer transformer = transformerFactory.newTransformer();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(document), new StreamResult(baos));
+
+        XMLStreamReader xmlStreamReader = null;
+        try (InputStream is = new ByteArrayInputStream(baos.toByteArray())) {
+           xmlStreamReader = xmlInputFactory.createXMLStreamReader(is);
+        }
+
+        // Verify signature
+        XMLSecurityProperties properties = new XMLSecurityProperties();
+        properties.setIdAttributeNS(new QName("ID"));
+        InboundXMLSec inboundXMLSec = XMLSec.getInboundWSSec(properties);
+        TestSecurityEventListener securityEventListener = new TestSecurityEventListener();
+        XMLStreamReader securityStreamReader =
+            inboundXMLSec.processInMessage(xmlStreamReader, null, securityEventListener);
+
+        StAX2DOM.readDoc(securityStreamReader);
+
+        List<SignedElementSecurityEvent> signedElementSecurityEventList =
+            securityEventListener.getSecurityEvents(SecurityEventConstants.SignedElement);
+        assertEquals(2, signedElementSecurityEventList.size());
+    }
+
     @Test
     public void testMultipleSignatures() throws Exception {
         // Read in plaintext document
@@ -24,6 +24,7 @@ import org.apache.xml.security.stax.ext.Transformer;
 import org.apache.xml.security.stax.ext.XMLSecurityConstants;
 import org.apache.xml.security.stax.ext.XMLSecurityUtils;
 import org.apache.xml.security.stax.ext.stax.XMLSecEvent;
+import org.apache.xml.security.stax.impl.transformer.TransformIdentity;
 import org.apache.xml.security.stax.impl.transformer.canonicalizer.Canonicalizer20010315_OmitCommentsTransformer;
 import org.apache.xml.security.test.stax.utils.XMLSecEventAllocator;
 import org.junit.jupiter.api.BeforeEach;
@@ -39,7 +40,9 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 /**
@@ -309,4 +312,38 @@ public class TransformCanonicalizerTest {
 
         assertEquals(554, byteArrayOutputStream.size());
     }
+
+    @Test
+    public void testResetTransformerChain() throws Exception {
+        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        Transformer canonicalizerTransformer = XMLSecurityUtils.getTransformer(
+                null, byteArrayOutputStream, null, XMLSecurityConstants.NS_C14N_EXCL_OMIT_COMMENTS,
+                XMLSecurityConstants.DIRECTION.OUT);
+        Transformer transformer = XMLSecurityUtils.getTransformer(
+                canonicalizerTransformer, null, null, XMLSecurityConstants.NS_XMLDSIG_ENVELOPED_SIGNATURE,
+                XMLSecurityConstants.DIRECTION.OUT);
+        assertTrue(TransformIdentity.isResettable(transformer));
+
+        transform(transformer, "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext-base64.xml");
+        byte[] first = byteArrayOutputStream.toByteArray();
+        assertEquals(554, first.length);
+
+        //the reset chain produces the same output again
+        ((TransformIdentity) transformer).reset();
+        byteArrayOutputStream.reset();
+        transform(transformer, "ie/baltimore/merlin-examples/merlin-xmlenc-five/plaintext-base64.xml");
+        assertArrayEquals(first, byteArrayOutputStream.toByteArray());
+    }
+
+    private void transform(Transformer transformer, String resource) throws Exception {
+        XMLEventReader xmlSecEventReader = xmlInputFactory.createXMLEventReader(
+                this.getClass().getClassLoader().getResourceAsStream(resource)
+        );
+
+        while (xmlSecEventReader.hasNext()) {
+            XMLSecEvent xmlSecEvent = (XMLSecEvent) xmlSecEventReader.nextEvent();
+            transformer.transform(xmlSecEvent);
+        }
+        transformer.doFinal();
+    }
 }